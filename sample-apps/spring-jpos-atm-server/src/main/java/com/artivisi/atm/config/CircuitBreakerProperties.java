@@ -0,0 +1,37 @@
+package com.artivisi.atm.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Circuit breakers on the HSM and the database (see DependencyHealth).
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "circuit-breaker")
+public class CircuitBreakerProperties {
+
+    private Breaker hsm = new Breaker(5, Duration.ofSeconds(2), Duration.ofSeconds(30));
+
+    private Breaker database = new Breaker(5, Duration.ofSeconds(2), Duration.ofSeconds(30));
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Breaker {
+
+        /** Consecutive failed or slow calls that open the circuit; 0 never opens it */
+        private int failureThreshold;
+
+        /** Calls slower than this count as failures */
+        private Duration slowCallThreshold;
+
+        /** Time calls fail fast before a trial call */
+        private Duration openDuration;
+    }
+}
@@ -0,0 +1,38 @@
+package com.artivisi.atm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Multi-node deployment: terminal session directory and node-to-node forwarding
+ * (see TerminalDirectory and TerminalMessageRouter).
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+
+    /** Publish terminal ownership and forward server-initiated messages to the owning node */
+    private boolean enabled = false;
+
+    /** Unique name of this node */
+    private String nodeId = "atm-server-1";
+
+    /** Base URL other nodes reach this node's REST API at */
+    private String advertisedUrl = "http://localhost:9090";
+
+    /** Shared secret of the forwarding endpoint (X-Cluster-Token header) */
+    private String token;
+
+    /** A node without a heartbeat for this long is dead: its terminals are not reachable through it */
+    private Duration nodeTimeout = Duration.ofSeconds(30);
+
+    /** How long the owner of a terminal connected to another node is cached */
+    private Duration ownerCacheTtl = Duration.ofSeconds(5);
+
+    /** Connect and read timeout of a forwarded message */
+    private Duration forwardTimeout = Duration.ofSeconds(5);
+}
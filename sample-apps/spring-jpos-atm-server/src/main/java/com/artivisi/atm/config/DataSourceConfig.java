@@ -0,0 +1,101 @@
+package com.artivisi.atm.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+
+/**
+ * Separate connection pools for writes (primary) and read-only work (replica).
+ *
+ * The application DataSource routes each transaction by its read-only flag:
+ * - @Transactional(readOnly = true) (KeyRotationCampaignService progress): read pool
+ * - everything else (debits, journal, key lookups and rotation, Flyway): write pool
+ * The physical connection is only taken when the first statement runs, after the transaction
+ * marked it read-only, so the choice is made per transaction without a routing key.
+ *
+ * Each pool has its own size (spring.datasource.hikari, datasource.read.hikari), so a burst of
+ * inquiries can exhaust the read pool without a withdrawal waiting for a connection.
+ * Connection wait time is published per pool as hikaricp.connections.acquire (tag pool=write|read|batch).
+ */
+@Configuration
+@Slf4j
+public class DataSourceConfig {
+
+    static final String WRITE_POOL = "write";
+    static final String READ_POOL = "read";
+    static final String BATCH_POOL = "batch";
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource writeDataSource(DataSourceProperties properties, MeterRegistry meterRegistry) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        return configurePool(dataSource, WRITE_POOL, meterRegistry);
+    }
+
+    @Bean
+    @ConfigurationProperties("datasource.read.hikari")
+    public HikariDataSource readDataSource(DataSourceProperties properties, ReadDataSourceProperties read,
+                                           MeterRegistry meterRegistry) {
+        HikariDataSource dataSource = replicaDataSource(properties, read);
+        log.info("Read pool on {}", dataSource.getJdbcUrl());
+        return configurePool(dataSource, READ_POOL, meterRegistry);
+    }
+
+    /**
+     * Long-running batch reads (settlement) on the primary, in their own small pool so that they
+     * never hold connections online work needs. Settlement must see every committed row of the day,
+     * which a lagging replica does not guarantee. Not used by the application DataSource.
+     */
+    @Bean
+    @ConfigurationProperties("datasource.batch.hikari")
+    public HikariDataSource batchDataSource(DataSourceProperties properties, MeterRegistry meterRegistry) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        return configurePool(dataSource, BATCH_POOL, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("writeDataSource") DataSource writeDataSource,
+                                 @Qualifier("readDataSource") DataSource readDataSource) {
+        return routingDataSource(writeDataSource, readDataSource);
+    }
+
+    static DataSource routingDataSource(DataSource writeDataSource, DataSource readDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(writeDataSource);
+        dataSource.setReadOnlyDataSource(readDataSource);
+        return dataSource;
+    }
+
+    private static HikariDataSource replicaDataSource(DataSourceProperties properties, ReadDataSourceProperties read) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(StringUtils.hasText(read.getUrl()) ? read.getUrl() : properties.determineUrl())
+                .username(StringUtils.hasText(read.getUsername()) ? read.getUsername() : properties.determineUsername())
+                .password(StringUtils.hasText(read.getPassword()) ? read.getPassword() : properties.determinePassword())
+                .build();
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    private static HikariDataSource configurePool(HikariDataSource dataSource, String name,
+                                                  MeterRegistry meterRegistry) {
+        dataSource.setPoolName(name);
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return dataSource;
+    }
+}
@@ -2,16 +2,25 @@ package com.artivisi.atm.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.support.RestClientAdapter;
 import org.springframework.web.service.invoker.HttpServiceProxyFactory;
 
+import com.artivisi.atm.exception.DependencyUnavailableException;
+import com.artivisi.atm.service.DependencyHealth;
 import com.artivisi.atm.service.HsmClient;
+import com.artivisi.atm.util.CircuitBreaker;
+import com.artivisi.atm.util.Deadline;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
 @Slf4j
 @Configuration
 @RequiredArgsConstructor
@@ -25,16 +34,36 @@ public class HsmConfig {
     }
 
     @Bean
-    public RestClient hsmRestClient(ObjectMapper objectMapper) {
+    public RestClient hsmRestClient(ObjectMapper objectMapper, DependencyHealth dependencyHealth) {
         String baseUrl = hsmProperties.getUrl();
 
         log.info("Configuring HSM RestClient with base URL: {}", baseUrl);
         log.info("  Encrypted PIN Block endpoint: {}", hsmProperties.getPin().getEncryptedPinBlock().getEndpoint());
         log.info("  PVV endpoint: {}", hsmProperties.getPin().getPvv().getEndpoint());
 
+        HsmProperties.Connection connection = hsmProperties.getConnection();
+        DeadlineAwareRequestFactory requestFactory = new DeadlineAwareRequestFactory();
+        if (connection != null) {
+            requestFactory.setConnectTimeout(connection.getTimeout());
+            requestFactory.setReadTimeout(connection.getReadTimeout());
+        }
+
         return RestClient.builder()
                 .baseUrl(baseUrl)
+                .requestFactory(requestFactory)
                 .requestInterceptor((request, body, execution) -> {
+                    // Terminal already gave up: do not spend HSM capacity on the request
+                    Deadline deadline = Deadline.current();
+                    if (deadline != null) {
+                        deadline.check("HSM call " + request.getURI().getPath());
+                    }
+
+                    // HSM down or slow: fail fast instead of waiting for the timeout
+                    CircuitBreaker circuit = dependencyHealth.hsm();
+                    if (!circuit.tryAcquire()) {
+                        throw new DependencyUnavailableException("HSM circuit open");
+                    }
+
                     // Log request
                     log.info("→ HSM Request: {} {}", request.getMethod(), request.getURI());
                     if (body != null && body.length > 0) {
@@ -42,7 +71,22 @@ public class HsmConfig {
                     }
 
                     // Execute and log response
-                    var response = execution.execute(request, body);
+                    long start = System.nanoTime();
+                    ClientHttpResponse response;
+                    try {
+                        response = execution.execute(request, body);
+                    } catch (IOException e) {
+                        // A read timeout capped by the transaction deadline says nothing about the HSM
+                        if (deadline == null || !deadline.isExpired()) {
+                            circuit.onFailure();
+                        }
+                        throw e;
+                    }
+                    if (response.getStatusCode().is5xxServerError()) {
+                        circuit.onFailure();
+                    } else {
+                        circuit.onSuccess(System.nanoTime() - start);
+                    }
                     log.info("← HSM Response: {}", response.getStatusCode());
 
                     return response;
@@ -58,4 +102,21 @@ public class HsmConfig {
 
         return factory.createClient(HsmClient.class);
     }
+
+    /**
+     * Caps connect and read timeouts of each HSM call by the remaining budget of the
+     * ISO transaction on the calling thread (see Deadline).
+     */
+    static class DeadlineAwareRequestFactory extends SimpleClientHttpRequestFactory {
+
+        @Override
+        protected void prepareConnection(HttpURLConnection connection, String httpMethod) throws IOException {
+            super.prepareConnection(connection, httpMethod);
+            Deadline deadline = Deadline.current();
+            if (deadline != null) {
+                connection.setConnectTimeout(deadline.cap(connection.getConnectTimeout()));
+                connection.setReadTimeout(deadline.cap(connection.getReadTimeout()));
+            }
+        }
+    }
 }
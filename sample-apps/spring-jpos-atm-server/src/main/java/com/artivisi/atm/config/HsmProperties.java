@@ -6,6 +6,8 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "hsm")
@@ -15,6 +17,7 @@ public class HsmProperties {
     private Mac mac;
     private Connection connection;
     private Keys keys;
+    private Outbox outbox = new Outbox();
 
     @Data
     public static class Pin {
@@ -58,4 +61,24 @@ public class HsmProperties {
         private String tskMasterKey;
         private String tpkMasterKey;
     }
+
+    /**
+     * Delivery of key rotation notifications from hsm_outbox (see HsmOutboxDispatcher).
+     */
+    @Data
+    public static class Outbox {
+        /** Deliver notifications; when false they are stored and wait */
+        private boolean enabled = true;
+        /** Messages claimed per batch */
+        private int batchSize = 50;
+        /** Time a claimed message is held by one node before it is due again */
+        private Duration lease = Duration.ofMinutes(1);
+        /** Delay before the first retry, doubled after each failed attempt */
+        private Duration initialBackoff = Duration.ofSeconds(5);
+        private Duration maxBackoff = Duration.ofMinutes(10);
+        /** Failed attempts before a message is given up (DEAD) */
+        private int maxAttempts = 20;
+        /** Delivered messages are deleted after this */
+        private Duration retention = Duration.ofDays(7);
+    }
 }
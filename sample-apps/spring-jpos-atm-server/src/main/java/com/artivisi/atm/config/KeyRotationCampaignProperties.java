@@ -0,0 +1,38 @@
+package com.artivisi.atm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Defaults for fleet-wide key rotation campaigns.
+ * Rate and concurrency can be overridden per campaign, but never above the max values.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "key-rotation.campaign")
+public class KeyRotationCampaignProperties {
+
+    /** Default notifications sent per second */
+    private int ratePerSecond = 10;
+
+    /** Default number of notifications in flight at the same time */
+    private int maxConcurrency = 20;
+
+    /** Upper bound for per-campaign rate, protects the HSM from key request bursts */
+    private int maxRatePerSecond = 100;
+
+    /** Upper bound for per-campaign concurrency */
+    private int maxConcurrencyLimit = 200;
+
+    /** Resume RUNNING campaigns after application restart */
+    private boolean resumeOnStartup = true;
+
+    /** NOTIFIED or REQUESTED terminals that do not complete the key change within this time are FAILED */
+    private Duration responseTimeout = Duration.ofMinutes(10);
+
+    /** PENDING terminals that do not connect within this time are FAILED (retry-failed queues them again) */
+    private Duration unreachableTimeout = Duration.ofHours(24);
+}
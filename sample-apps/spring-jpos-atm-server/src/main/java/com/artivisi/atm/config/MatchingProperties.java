@@ -0,0 +1,25 @@
+package com.artivisi.atm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Repeat and reversal matching of ISO-8583 requests (see TransactionMatchIndex).
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "matching")
+public class MatchingProperties {
+
+    /** How long a request stays in memory for repeat and reversal matching */
+    private Duration ttl = Duration.ofMinutes(15);
+
+    /** Entries kept in memory; the oldest are evicted first */
+    private int maxEntries = 100_000;
+
+    /** How far back the journal is searched for an original no longer in memory */
+    private Duration journalLookback = Duration.ofDays(2);
+}
@@ -0,0 +1,90 @@
+package com.artivisi.atm.config;
+
+import com.artivisi.atm.util.Deadline;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * JPA transaction manager that bounds every transaction by the deadline of the ISO transaction
+ * running on the current thread (see Deadline).
+ *
+ * The transaction timeout is applied by Spring to each repository query, so a debit that would
+ * finish after the terminal gave up times out and rolls back instead of committing. A transaction
+ * started with no budget left is refused before it touches the database.
+ *
+ * The JdbcClient used by the ledger (see LedgerRepository) applies the same bound to each statement,
+ * since its single-statement debits run outside any Spring transaction.
+ */
+@Configuration
+public class PersistenceConfig {
+
+    @Bean
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new DeadlineAwareTransactionManager(entityManagerFactory);
+    }
+
+    @Bean
+    @Primary
+    public JdbcClient jdbcClient(DataSource dataSource) {
+        return JdbcClient.create(new DeadlineAwareJdbcTemplate(dataSource));
+    }
+
+    /**
+     * Transaction timeouts are in seconds; round up so a short remaining budget is not 0 (no timeout).
+     */
+    private static int remainingSeconds(Deadline deadline) {
+        return (int) Math.max(1, (deadline.remainingMillis() + 999) / 1000);
+    }
+
+    static class DeadlineAwareTransactionManager extends JpaTransactionManager {
+
+        DeadlineAwareTransactionManager(EntityManagerFactory entityManagerFactory) {
+            super(entityManagerFactory);
+        }
+
+        @Override
+        protected int determineTimeout(TransactionDefinition definition) {
+            int timeout = super.determineTimeout(definition);
+            Deadline deadline = Deadline.current();
+            if (deadline == null) {
+                return timeout;
+            }
+            deadline.check("database transaction " + definition.getName());
+            int remainingSeconds = remainingSeconds(deadline);
+            return timeout == TransactionDefinition.TIMEOUT_DEFAULT ? remainingSeconds : Math.min(timeout, remainingSeconds);
+        }
+    }
+
+    static class DeadlineAwareJdbcTemplate extends JdbcTemplate {
+
+        DeadlineAwareJdbcTemplate(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        protected void applyStatementSettings(Statement stmt) throws SQLException {
+            super.applyStatementSettings(stmt);
+            Deadline deadline = Deadline.current();
+            if (deadline == null) {
+                return;
+            }
+            deadline.check("database statement");
+            int remainingSeconds = remainingSeconds(deadline);
+            int timeout = stmt.getQueryTimeout();
+            if (timeout == 0 || timeout > remainingSeconds) {
+                stmt.setQueryTimeout(remainingSeconds);
+            }
+        }
+    }
+}
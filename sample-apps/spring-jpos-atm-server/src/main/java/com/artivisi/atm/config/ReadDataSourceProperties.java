@@ -0,0 +1,24 @@
+package com.artivisi.atm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Connection to the read replica used by read-only work (see DataSourceConfig).
+ * Unset values fall back to spring.datasource, so without a replica the read pool is a
+ * second pool on the primary: reads still never wait behind debits for a connection.
+ * Pool settings are under datasource.read.hikari, like spring.datasource.hikari.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "datasource.read")
+public class ReadDataSourceProperties {
+
+    /** JDBC URL of the replica */
+    private String url;
+
+    private String username;
+
+    private String password;
+}
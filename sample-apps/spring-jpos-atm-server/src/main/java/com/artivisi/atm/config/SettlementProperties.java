@@ -0,0 +1,35 @@
+package com.artivisi.atm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * End-of-day settlement batch (see SettlementService).
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "settlement")
+public class SettlementProperties {
+
+    /** Settle the previous day on the cron schedule */
+    private boolean enabled = true;
+
+    /** When to settle the previous day (Spring cron: second minute hour day month weekday) */
+    private String cron = "0 15 0 * * *";
+
+    /** The day is streamed in windows of this many minutes; each window is one checkpoint */
+    private int windowMinutes = 60;
+
+    /** Windows streamed at the same time (connections of the batch pool, besides the one holding the run lock) */
+    private int parallelism = 2;
+
+    /** Settled days before the previous day checked for late postings on each scheduled run */
+    private int recheckDays = 7;
+
+    /** Rows fetched per round trip by the server-side cursor */
+    private int fetchSize = 5000;
+
+    /** Directory for settlement files (settlement-YYYYMMDD.csv) */
+    private String outputDirectory = "settlement";
+}
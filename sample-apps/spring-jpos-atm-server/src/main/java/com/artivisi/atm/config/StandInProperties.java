@@ -0,0 +1,49 @@
+package com.artivisi.atm.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+/**
+ * Stand-in processing while the HSM or the database is unavailable (see StandInService).
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "stand-in")
+public class StandInProperties {
+
+    /** Approve eligible transactions in stand-in; otherwise they fail fast while a circuit is open */
+    private boolean enabled = false;
+
+    /** Withdrawals above this amount are never approved in stand-in */
+    private BigDecimal floorLimit = new BigDecimal("500000");
+
+    /** Answer balance inquiries from the read model in stand-in */
+    private boolean balanceInquiry = true;
+
+    /** Stand-in withdrawals per card over the exposure window */
+    private Exposure card = new Exposure(new BigDecimal("1000000"), 3);
+
+    /** Window of the per-card exposure */
+    private Duration exposureWindow = Duration.ofHours(24);
+
+    /** Directory of the stand-in journal, on local disk that survives a restart */
+    private String directory = "data/stand-in";
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Exposure {
+
+        /** Total amount approved in stand-in; 0 for no limit */
+        private BigDecimal maxAmount = BigDecimal.ZERO;
+
+        /** Number of approvals in stand-in; 0 for no limit */
+        private int maxCount;
+    }
+}
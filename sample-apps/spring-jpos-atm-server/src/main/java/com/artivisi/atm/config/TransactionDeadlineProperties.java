@@ -0,0 +1,36 @@
+package com.artivisi.atm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Time budget of a transaction, from receipt of the request to the response.
+ * Set below the terminal's response timeout: after that the terminal has given up and
+ * any further work only produces a reversal.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "jpos.deadline")
+public class TransactionDeadlineProperties {
+
+    /** Budget for processing codes without their own entry */
+    private long defaultBudgetMs = 25000;
+
+    /** Budget per processing code (field 3), e.g. 010000 withdrawal, 310000 balance inquiry, 380000 mini-statement */
+    private Map<String, Long> processingCodes = new HashMap<>();
+
+    /**
+     * @param processingCode Field 3 of the request (null for messages without one)
+     * @return Budget in milliseconds
+     */
+    public long budgetFor(String processingCode) {
+        if (processingCode == null) {
+            return defaultBudgetMs;
+        }
+        return processingCodes.getOrDefault(processingCode, defaultBudgetMs);
+    }
+}
@@ -0,0 +1,91 @@
+package com.artivisi.atm.config;
+
+import com.artivisi.atm.jpos.util.TransactionLane;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Concurrency and admission timeout of each TransactionManager lane.
+ * Each lane's TransactionManager gets max-in-flight sessions (split across shards for the financial lane).
+ *
+ * Every financial transaction needs a write pool connection. The financial lane is therefore capped at
+ * the write pool size × in-flight-per-connection (the part of a transaction spent on the HSM and the
+ * network holds no connection). Beyond that, admitted transactions would wait up to Hikari's
+ * connection-timeout for a connection, instead of being declined with RC 96 after the lane's admission
+ * timeout. Without financial.max-in-flight the cap is used as the limit; a larger value is refused
+ * at startup.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "jpos.txnmgr.lanes")
+public class TransactionLaneProperties {
+
+    /** Withdrawals and balance inquiries (0200); max-in-flight 0 = write pool size × in-flight-per-connection */
+    private Lane financial = new Lane(0, 2000);
+
+    /** Sign-on, sign-off, echo handled by the TransactionManager (0800 + field 70) */
+    private Lane network = new Lane(32, 1000);
+
+    /** Key change requests (0800 + field 53): synchronous HSM calls and DB writes */
+    private Lane key = new Lane(16, 5000);
+
+    /** Financial transactions in flight per write pool connection */
+    private int inFlightPerConnection = 2;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int writePoolSize;
+
+    @PostConstruct
+    void resolveFinancialLimit() {
+        financial.setMaxInFlight(financialLimit(financial.getMaxInFlight(), writePoolSize, inFlightPerConnection));
+    }
+
+    /**
+     * @param configured financial.max-in-flight, 0 if not set
+     * @return Financial lane limit
+     * @throws IllegalStateException The configured limit exceeds what the write pool can serve
+     */
+    static int financialLimit(int configured, int writePoolSize, int inFlightPerConnection) {
+        int cap = Math.max(1, writePoolSize) * Math.max(1, inFlightPerConnection);
+        if (configured <= 0) {
+            return cap;
+        }
+        if (configured > cap) {
+            throw new IllegalStateException("jpos.txnmgr.lanes.financial.max-in-flight=" + configured
+                    + " exceeds the write pool (" + writePoolSize + " connections × in-flight-per-connection "
+                    + inFlightPerConnection + " = " + cap + "): transactions would queue for a connection instead"
+                    + " of being declined with RC 96. Lower it, or raise spring.datasource.hikari.maximum-pool-size");
+        }
+        return configured;
+    }
+
+    public Lane get(TransactionLane lane) {
+        return switch (lane) {
+            case FINANCIAL -> financial;
+            case NETWORK -> network;
+            case KEY_MANAGEMENT -> key;
+        };
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Lane {
+
+        /** Transactions in flight on this lane; also its TransactionManager session count */
+        private int maxInFlight;
+
+        /** Wait for a free slot before declining the request with RC 96 */
+        private long admissionTimeoutMs;
+    }
+}
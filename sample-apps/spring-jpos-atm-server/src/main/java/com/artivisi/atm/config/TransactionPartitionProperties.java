@@ -0,0 +1,29 @@
+package com.artivisi.atm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Maintenance of the monthly transactions partitions (see TransactionPartitionService).
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "transactions.partitioning")
+public class TransactionPartitionProperties {
+
+    /** Run partition maintenance (on startup and on the cron schedule) */
+    private boolean enabled = true;
+
+    /** When to run maintenance (Spring cron: second minute hour day month weekday) */
+    private String cron = "0 30 1 * * *";
+
+    /** Months of partitions created ahead of the current month */
+    private int monthsAhead = 3;
+
+    /** Months kept online before the current month; older months are archived and dropped */
+    private int retentionMonths = 24;
+
+    /** Directory for archived partitions (one gzip-compressed CSV file per month) */
+    private String archiveDirectory = "archive/transactions";
+}
@@ -0,0 +1,49 @@
+package com.artivisi.atm.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+/**
+ * Withdrawal velocity limits per card and per account (see VelocityService).
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "velocity")
+public class VelocityProperties {
+
+    /** Enforce the limits (counters are kept and rebuilt either way). Must be false when cluster.enabled */
+    private boolean enabled = true;
+
+    /** Sliding window the limits apply to */
+    private Duration window = Duration.ofHours(24);
+
+    /** Buckets per window: withdrawals leave the window with this granularity */
+    private int buckets = 96;
+
+    /** HMAC-SHA256 key for the card hash stored on the journal instead of the PAN */
+    private String panHashKey = "change-me";
+
+    /** Limits per card (field 2) */
+    private Limits card = new Limits(new BigDecimal("10000000"), 10);
+
+    /** Limits per account (field 102), all cards together */
+    private Limits account = new Limits(new BigDecimal("20000000"), 20);
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limits {
+
+        /** Total amount withdrawn in the window; 0 for no limit */
+        private BigDecimal maxAmount = BigDecimal.ZERO;
+
+        /** Number of withdrawals in the window; 0 for no limit */
+        private int maxCount;
+    }
+}
@@ -0,0 +1,69 @@
+package com.artivisi.atm.dto;
+
+import com.artivisi.atm.entity.Account;
+import com.artivisi.atm.entity.PinVerificationType;
+import lombok.Builder;
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable copy of the account columns needed to serve balance inquiries, account validation
+ * and PIN verification without a database round trip (see AccountReadModel).
+ */
+@Value
+@Builder
+public class AccountSnapshot {
+
+    Long id;
+    String accountNumber;
+    String accountHolderName;
+    BigDecimal balance;
+    String currency;
+    Account.AccountType accountType;
+    Account.AccountStatus status;
+    PinVerificationType pinVerificationType;
+    String encryptedPinBlock;
+    String pvv;
+    long version;
+
+    public static AccountSnapshot from(Account account) {
+        return AccountSnapshot.builder()
+                .id(account.getId())
+                .accountNumber(account.getAccountNumber())
+                .accountHolderName(account.getAccountHolderName())
+                .balance(account.getBalance())
+                .currency(account.getCurrency())
+                .accountType(account.getAccountType())
+                .status(account.getStatus())
+                .pinVerificationType(account.getPinVerificationType())
+                .encryptedPinBlock(account.getEncryptedPinBlock())
+                .pvv(account.getPvv())
+                .version(account.getVersion() != null ? account.getVersion() : 0L)
+                .build();
+    }
+
+    /**
+     * Detached Account for code that takes the entity (PIN verification strategies).
+     * Never pass it to a repository.
+     */
+    public Account toAccount() {
+        return Account.builder()
+                .id(id)
+                .accountNumber(accountNumber)
+                .accountHolderName(accountHolderName)
+                .balance(balance)
+                .currency(currency)
+                .accountType(accountType)
+                .status(status)
+                .pinVerificationType(pinVerificationType)
+                .encryptedPinBlock(encryptedPinBlock)
+                .pvv(pvv)
+                .version(version)
+                .build();
+    }
+
+    public boolean isActive() {
+        return status == Account.AccountStatus.ACTIVE;
+    }
+}
@@ -0,0 +1,26 @@
+package com.artivisi.atm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MiniStatementResponse {
+
+    private String accountNumber;
+    private String accountHolderName;
+    private BigDecimal balance;
+    private String currency;
+    /** Most recent first */
+    private List<StatementEntry> entries;
+    private LocalDateTime timestamp;
+    private String referenceNumber;
+}
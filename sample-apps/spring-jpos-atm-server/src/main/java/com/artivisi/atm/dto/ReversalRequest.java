@@ -0,0 +1,30 @@
+package com.artivisi.atm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reversal of a journaled withdrawal (ISO-8583 0400/0420).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReversalRequest {
+
+    /** Id of the withdrawal row (transactions.id) */
+    private long journalId;
+
+    /** transaction_date of the withdrawal row */
+    private LocalDateTime originalDate;
+
+    /** Fields 42, 41, 11 and 7 of the reversal message */
+    private String institutionId;
+    private String terminalId;
+    private String stan;
+    private String transmissionDateTime;
+}
@@ -0,0 +1,24 @@
+package com.artivisi.atm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReversalResponse {
+
+    private String accountNumber;
+    private BigDecimal reversedAmount;
+    private BigDecimal balanceAfter;
+    private LocalDateTime timestamp;
+    private String referenceNumber;
+    /** Id of the REVERSAL row (transactions.id) */
+    private Long journalId;
+}
@@ -0,0 +1,22 @@
+package com.artivisi.atm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SettlementSummary {
+
+    private LocalDate businessDate;
+    private long transactionCount;
+    private BigDecimal totalAmount;
+    private long exceptionCount;
+    private String settlementFile;
+}
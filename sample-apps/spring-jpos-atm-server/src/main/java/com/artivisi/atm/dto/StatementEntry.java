@@ -0,0 +1,40 @@
+package com.artivisi.atm.dto;
+
+import com.artivisi.atm.entity.Transaction;
+import lombok.Builder;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One journal row of a mini-statement (see RecentTransactions).
+ */
+@Value
+@Builder
+public class StatementEntry {
+
+    long journalId;
+    LocalDateTime transactionDate;
+    Transaction.TransactionType transactionType;
+    BigDecimal amount;
+    BigDecimal balanceAfter;
+
+    public static StatementEntry from(Transaction transaction) {
+        return StatementEntry.builder()
+                .journalId(transaction.getId())
+                .transactionDate(transaction.getTransactionDate())
+                .transactionType(transaction.getTransactionType())
+                .amount(transaction.getAmount())
+                .balanceAfter(transaction.getBalanceAfter())
+                .build();
+    }
+
+    /**
+     * @return true for entries that take money out of the account
+     */
+    public boolean isDebit() {
+        return transactionType == Transaction.TransactionType.WITHDRAWAL
+                || transactionType == Transaction.TransactionType.TRANSFER_OUT;
+    }
+}
@@ -22,4 +22,19 @@ public class WithdrawalRequest {
     @NotNull(message = "Amount is required")
     @Positive(message = "Amount must be positive")
     private BigDecimal amount;
+
+    /** Field 41 of the ISO-8583 request, for settlement (null outside ISO-8583) */
+    private String terminalId;
+
+    /** Field 42 of the ISO-8583 request, for settlement (null outside ISO-8583) */
+    private String institutionId;
+
+    /** HMAC of the PAN (field 2) for velocity limits, see VelocityService.hashPan (null outside ISO-8583) */
+    private String cardHash;
+
+    /** Field 11 of the ISO-8583 request, for repeat and reversal matching (null outside ISO-8583) */
+    private String stan;
+
+    /** Field 7 of the ISO-8583 request, for repeat and reversal matching (null outside ISO-8583) */
+    private String transmissionDateTime;
 }
@@ -22,4 +22,6 @@ public class WithdrawalResponse {
     private String currency;
     private LocalDateTime timestamp;
     private String referenceNumber;
+    /** Id of the journal row (transactions.id) */
+    private Long journalId;
 }
@@ -0,0 +1,24 @@
+package com.artivisi.atm.dto.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Server-initiated ISO message forwarded to the node a terminal is connected to.
+ * Only character fields are carried: enough for network management messages (0800).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ForwardedMessage {
+
+    /**
+     * Field number -> value. Field 0 is the MTI.
+     */
+    private Map<Integer, String> fields;
+}
@@ -0,0 +1,43 @@
+package com.artivisi.atm.dto.rotation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Progress snapshot of a key rotation campaign.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeyRotationCampaignProgress {
+
+    private UUID campaignId;
+
+    private String keyType;
+
+    private String status;
+
+    private String selection;
+
+    private Integer ratePerSecond;
+
+    private Integer maxConcurrency;
+
+    private Integer totalTerminals;
+
+    /**
+     * Terminal count per status (PENDING, NOTIFIED, REQUESTED, CONFIRMED, FAILED).
+     */
+    private Map<String, Long> terminals;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,53 @@
+package com.artivisi.atm.dto.rotation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Request DTO for creating a fleet-wide key rotation campaign.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeyRotationCampaignRequest {
+
+    /**
+     * Type of key to rotate: TPK or TSK.
+     */
+    private String keyType;
+
+    /**
+     * Terminal selection: ALL, INSTITUTION or LIST.
+     */
+    private String selection;
+
+    /**
+     * Institution code for INSTITUTION selection (e.g., "TRM-ISS001").
+     */
+    private String institution;
+
+    /**
+     * Terminal IDs for LIST selection.
+     */
+    private List<String> terminalIds;
+
+    /**
+     * Optional notifications per second (defaults to key-rotation.campaign.rate-per-second).
+     */
+    private Integer ratePerSecond;
+
+    /**
+     * Optional concurrency cap (defaults to key-rotation.campaign.max-concurrency).
+     */
+    private Integer maxConcurrency;
+
+    /**
+     * Optional description for audit trail.
+     */
+    private String description;
+}
@@ -0,0 +1,38 @@
+package com.artivisi.atm.dto.rotation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Request DTO to notify the HSM that a terminal failed to install a new key.
+ * The HSM can then cancel the rotation and keep the current key.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeyRotationFailure {
+
+    /**
+     * Rotation ID received from the initial rotation request.
+     */
+    private String rotationId;
+
+    /**
+     * Key type of the rotation (TPK or TSK).
+     */
+    private String keyType;
+
+    /**
+     * Failure reason reported by the terminal.
+     */
+    private String failureReason;
+
+    /**
+     * Identifier of the application reporting the failure.
+     * For audit trail purposes.
+     */
+    private String reportedBy;
+}
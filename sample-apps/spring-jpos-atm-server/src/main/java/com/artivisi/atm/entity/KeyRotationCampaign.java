@@ -0,0 +1,89 @@
+package com.artivisi.atm.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Entity representing a fleet-wide key rotation campaign.
+ * A campaign notifies a selection of terminals to rotate one key type,
+ * and tracks per-terminal progress in {@link KeyRotationCampaignTerminal}.
+ */
+@Entity
+@Table(name = "key_rotation_campaigns")
+@Data
+public class KeyRotationCampaign {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "key_type", nullable = false, length = 10)
+    @Enumerated(EnumType.STRING)
+    private CryptoKey.KeyType keyType;
+
+    @Column(name = "selection_type", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private SelectionType selectionType;
+
+    @Column(name = "selection_value", length = 100)
+    private String selectionValue;
+
+    @Column(name = "status", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private CampaignStatus status;
+
+    @Column(name = "rate_per_second", nullable = false)
+    private Integer ratePerSecond;
+
+    @Column(name = "max_concurrency", nullable = false)
+    private Integer maxConcurrency;
+
+    @Column(name = "total_terminals", nullable = false)
+    private Integer totalTerminals;
+
+    @Column(name = "description", length = 500)
+    private String description;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    public enum SelectionType {
+        /** All terminals that have an active key of the campaign key type */
+        ALL,
+        /** Terminals of one institution (terminal ID prefix, e.g. "TRM-ISS001") */
+        INSTITUTION,
+        /** Explicit list of terminal IDs */
+        LIST
+    }
+
+    public enum CampaignStatus {
+        /** Notifications are being sent to terminals */
+        RUNNING,
+        /** All notifications sent, waiting for terminals to complete key change */
+        DISPATCHED,
+        /** Every terminal confirmed or failed */
+        COMPLETED,
+        /** Stopped by operator */
+        CANCELLED
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
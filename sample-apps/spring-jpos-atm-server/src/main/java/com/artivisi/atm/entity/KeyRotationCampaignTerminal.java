@@ -0,0 +1,64 @@
+package com.artivisi.atm.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Per-terminal progress of a key rotation campaign.
+ *
+ * Lifecycle: PENDING -> NOTIFIED (0800 sent) -> REQUESTED (terminal sent operation 01/02)
+ * -> CONFIRMED (terminal sent operation 03/04). Any step may end in FAILED.
+ */
+@Entity
+@Table(name = "key_rotation_campaign_terminals")
+@Data
+public class KeyRotationCampaignTerminal {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "campaign_id", nullable = false)
+    private UUID campaignId;
+
+    @Column(name = "terminal_id", nullable = false, length = 50)
+    private String terminalId;
+
+    @Column(name = "status", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private TerminalStatus status;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "last_error", length = 255)
+    private String lastError;
+
+    @Column(name = "notified_at")
+    private LocalDateTime notifiedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public enum TerminalStatus {
+        /** Not yet notified */
+        PENDING,
+        /** Key change notification (0800, field 53 operation 07) sent */
+        NOTIFIED,
+        /** Terminal requested the new key (operation 01/02) */
+        REQUESTED,
+        /** Terminal confirmed key installation (operation 03/04) */
+        CONFIRMED,
+        /** Notification could not be sent or terminal reported installation failure */
+        FAILED
+    }
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
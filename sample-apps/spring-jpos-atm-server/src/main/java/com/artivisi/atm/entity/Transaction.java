@@ -40,9 +40,30 @@ public class Transaction {
     @Column(name = "description", length = 500)
     private String description;
 
-    @Column(name = "reference_number", unique = true, length = 50)
+    // Unique per transaction_date: unique constraints of the partitioned table include the partition key
+    @Column(name = "reference_number", length = 50)
     private String referenceNumber;
 
+    @Column(name = "institution_id", length = 20)
+    private String institutionId;
+
+    @Column(name = "terminal_id", length = 16)
+    private String terminalId;
+
+    @Column(name = "card_hash", length = 64)
+    private String cardHash;
+
+    // Field 11 and field 7 of the request, for repeat and reversal matching
+    @Column(name = "stan", length = 6)
+    private String stan;
+
+    @Column(name = "transmission_date_time", length = 10)
+    private String transmissionDateTime;
+
+    @Builder.Default
+    @Column(name = "reversed", nullable = false)
+    private boolean reversed = false;
+
     @Column(name = "transaction_date", nullable = false)
     private LocalDateTime transactionDate;
 
@@ -55,6 +76,8 @@ public class Transaction {
         WITHDRAWAL,
         DEPOSIT,
         TRANSFER_IN,
-        TRANSFER_OUT
+        TRANSFER_OUT,
+        /** Credit that takes back a withdrawal (ISO-8583 0400/0420) */
+        REVERSAL
     }
 }
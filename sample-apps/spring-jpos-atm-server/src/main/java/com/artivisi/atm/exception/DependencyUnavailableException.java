@@ -0,0 +1,26 @@
+package com.artivisi.atm.exception;
+
+import lombok.Getter;
+
+/**
+ * A dependency (HSM, database) failed, or its circuit breaker is open and the call was not made.
+ */
+@Getter
+public class DependencyUnavailableException extends RuntimeException {
+
+    /**
+     * false if the dependency was never reached (open circuit, no connection): a write cannot have
+     * happened. true if the call may have been executed before it failed.
+     */
+    private final boolean callMade;
+
+    public DependencyUnavailableException(String message) {
+        super(message);
+        this.callMade = false;
+    }
+
+    public DependencyUnavailableException(String message, Throwable cause, boolean callMade) {
+        super(message, cause);
+        this.callMade = callMade;
+    }
+}
@@ -0,0 +1,11 @@
+package com.artivisi.atm.exception;
+
+/**
+ * The business day is being settled by another node (or another request on this node).
+ */
+public class SettlementInProgressException extends RuntimeException {
+
+    public SettlementInProgressException(String message) {
+        super(message);
+    }
+}
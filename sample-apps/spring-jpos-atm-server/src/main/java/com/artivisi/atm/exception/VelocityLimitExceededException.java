@@ -0,0 +1,21 @@
+package com.artivisi.atm.exception;
+
+import lombok.Getter;
+
+@Getter
+public class VelocityLimitExceededException extends RuntimeException {
+
+    public enum Limit {
+        /** Total amount withdrawn in the window (RC 61) */
+        AMOUNT,
+        /** Number of withdrawals in the window (RC 65) */
+        COUNT
+    }
+
+    private final Limit limit;
+
+    public VelocityLimitExceededException(Limit limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+}
@@ -1,5 +1,15 @@
 package com.artivisi.atm.jpos;
 
+import com.artivisi.atm.config.TransactionDeadlineProperties;
+import com.artivisi.atm.jpos.service.ChannelRegistry;
+import com.artivisi.atm.jpos.service.TerminalSession;
+import com.artivisi.atm.jpos.service.TransactionConcurrencyLimiter;
+import com.artivisi.atm.jpos.service.TransactionLaneLimiters;
+import com.artivisi.atm.jpos.util.ResponseTemplates;
+import com.artivisi.atm.jpos.util.TerminalIdUtil;
+import com.artivisi.atm.jpos.util.TransactionLane;
+import com.artivisi.atm.jpos.util.TransactionShards;
+import com.artivisi.atm.util.Deadline;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.core.Configurable;
 import org.jpos.core.Configuration;
@@ -17,38 +27,101 @@ import java.io.PrintStream;
 @Slf4j
 public class IsoRequestListener implements ISORequestListener, Configurable {
 
+    // [lane][shard]: one space and queue per TransactionManager (see TransactionLane, TransactionShards)
     @SuppressWarnings("rawtypes")
-    private Space space;
-    private String queue;
+    private Space[][] spaces;
+    private String[][] queues;
+
+    private ChannelRegistry getChannelRegistry() {
+        return SpringBeanFactory.getBean(ChannelRegistry.class);
+    }
+
+    private TransactionLaneLimiters getLaneLimiters() {
+        return SpringBeanFactory.getBean(TransactionLaneLimiters.class);
+    }
+
+    private TransactionDeadlineProperties getDeadlineProperties() {
+        return SpringBeanFactory.getBean(TransactionDeadlineProperties.class);
+    }
 
     @Override
     public void setConfiguration(Configuration cfg) throws ConfigurationException {
-        this.space = SpaceFactory.getSpace(cfg.get("space", "tspace:default"));
-        this.queue = cfg.get("queue", "txnmgr");
-        log.info("IsoRequestListener configured with space={} queue={}",
-                 cfg.get("space", "tspace:default"), queue);
+        String space = cfg.get("space", "tspace:default");
+        String queue = cfg.get("queue", "txnmgr");
+        // Only the financial lane is sharded
+        int shards = Math.max(1, cfg.getInt("shards", 1));
+
+        TransactionLane[] lanes = TransactionLane.values();
+        this.spaces = new Space[lanes.length][];
+        this.queues = new String[lanes.length][];
+        for (TransactionLane lane : lanes) {
+            int laneShards = lane == TransactionLane.FINANCIAL ? shards : 1;
+            spaces[lane.ordinal()] = new Space[laneShards];
+            queues[lane.ordinal()] = new String[laneShards];
+            for (int i = 0; i < laneShards; i++) {
+                spaces[lane.ordinal()][i] = SpaceFactory.getSpace(lane.spaceName(space, i, laneShards));
+                queues[lane.ordinal()][i] = lane.queueName(queue, i, laneShards);
+            }
+        }
+        log.info("IsoRequestListener configured with space={} queue={} shards={}",
+                 space, queue, shards);
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public boolean process(ISOSource source, ISOMsg msg) {
-        log.info("IsoRequestListener.process() called - START");
         try {
+            // Budget starts at receipt: time waiting for a permit or a session counts against it
+            Deadline deadline = Deadline.after(getDeadlineProperties().budgetFor(msg.getString(3)));
+
             log.info("Received ISO message: MTI={} STAN={}",
                      msg.getMTI(), msg.getString(11));
 
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            PrintStream ps = new PrintStream(baos);
-            msg.dump(ps, "  ");
-            log.info("Full message dump:\n{}", baos.toString());
+            // Dumping decodes every field (defeats lazy unpack) and prints PIN block and MAC
+            if (log.isDebugEnabled()) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                PrintStream ps = new PrintStream(baos);
+                msg.dump(ps, "  ");
+                log.debug("Full message dump:\n{}", baos.toString());
+            }
+
+            // Released by SendResponseParticipant together with the terminal's in-flight slot
+            TransactionLane lane = TransactionLane.of(msg);
+            TransactionConcurrencyLimiter.Permit permit = getLaneLimiters().get(lane).acquire();
+            if (permit == null) {
+                ISOMsg response = ResponseTemplates.createResponse(msg, "96");
+                source.send(response);
+                log.warn("Request declined, {} lane limit reached: MTI={} STAN={}",
+                         lane.getId(), msg.getMTI(), msg.getString(11));
+                return true;
+            }
 
             Context ctx = new Context();
             ctx.put("SOURCE", source);
             ctx.put("REQUEST", msg);
+            ctx.put("TXN_PERMIT", permit);
+            ctx.put("DEADLINE", deadline);
+
+            // Count the request as in-flight until SendResponseParticipant completes it
+            String terminalId = TerminalIdUtil.extractTerminalId(msg);
+            TerminalSession session = getChannelRegistry().requestStarted(terminalId);
+            if (session != null) {
+                ctx.put("TERMINAL_SESSION", session);
+            }
 
-            space.out(queue, ctx);
+            String[] laneQueues = queues[lane.ordinal()];
+            int shard = TransactionShards.shardOf(terminalId, laneQueues.length);
+            try {
+                spaces[lane.ordinal()][shard].out(laneQueues[shard], ctx);
+            } catch (RuntimeException e) {
+                permit.release();
+                if (session != null) {
+                    session.requestCompleted();
+                }
+                throw e;
+            }
 
-            log.debug("Message queued to TransactionManager");
+            log.debug("Message queued to TransactionManager: lane={} shard={}", lane.getId(), shard);
             return true;
 
         } catch (Exception e) {
@@ -1,9 +1,22 @@
 package com.artivisi.atm.jpos;
 
+import com.artivisi.atm.config.TransactionLaneProperties;
+import com.artivisi.atm.jpos.packager.LazyUnpackPackager;
+import com.artivisi.atm.jpos.server.VirtualThreadQServer;
+import com.artivisi.atm.jpos.space.QueueSpace;
+import com.artivisi.atm.jpos.util.TransactionLane;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.jpos.core.Environment;
 import org.jpos.q2.Q2;
+import org.jpos.q2.iso.QServer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
@@ -12,6 +25,7 @@ import org.springframework.stereotype.Component;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -35,24 +49,72 @@ public class JposConfig {
     @Value("${jpos.server.packager:org.jpos.iso.packager.BASE24Packager}")
     private String packager;
 
+    // Field layout for Configurable packagers (GenericPackager); ignored by BASE24Packager
+    @Value("${jpos.server.packager-config:jar:packager/atm-binary.xml}")
+    private String packagerConfig;
+
+    // Wrap the packager in LazyUnpackPackager: inbound fields are decoded on first access
+    @Value("${jpos.server.lazy-unpack:true}")
+    private boolean lazyUnpack;
+
+    // One virtual thread per terminal connection instead of QServer's thread pool (requires Java 24+)
+    @Value("${jpos.server.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    // Financial lane TransactionManager instances, each with its own queue and space
+    @Value("${jpos.txnmgr.shards:1}")
+    private int txnmgrShards;
+
+    // Space carrying the listener -> TransactionManager hand-off: tspace:default or qspace:default (QueueSpace)
+    @Value("${jpos.txnmgr.space:tspace:default}")
+    private String txnmgrSpace;
+
+    private static final String TXNMGR_DESCRIPTOR = "20_txnmgr.xml";
+
+    // Per-lane concurrency: TransactionManager sessions and admission limits
+    private final TransactionLaneProperties laneProperties;
+
     private Q2 q2;
 
+    public JposConfig(TransactionLaneProperties laneProperties) {
+        this.laneProperties = laneProperties;
+    }
+
     @PostConstruct
     public void startQ2() throws IOException {
         log.info("Initializing Q2 with deploy directory: {}", deployDir);
         log.info("jPOS server port: {}", serverPort);
-        log.info("jPOS max sessions: {}", maxSessions);
+        log.info("jPOS max sessions: {}, virtual threads: {}", maxSessions, virtualThreads);
         log.info("jPOS channel: {}", channel);
-        log.info("jPOS packager: {}", packager);
+        log.info("jPOS packager: {} ({}), lazy unpack: {}", packager, packagerConfig, lazyUnpack);
+        log.info("jPOS transaction manager lanes: {}, financial shards: {}, space: {}",
+                laneProperties, txnmgrShards, txnmgrSpace);
 
         // Set system properties for Q2 XML property placeholders
         System.setProperty("jpos.server.port", String.valueOf(serverPort));
         System.setProperty("jpos.server.max-sessions", String.valueOf(maxSessions));
+        System.setProperty("jpos.server.class",
+                virtualThreads ? VirtualThreadQServer.class.getName() : QServer.class.getName());
         System.setProperty("jpos.server.channel", channel);
         System.setProperty("jpos.server.packager", packager);
+        int shards = Math.max(1, txnmgrShards);
+        System.setProperty("jpos.txnmgr.shards", String.valueOf(shards));
+        System.setProperty("jpos.txnmgr.space", txnmgrSpace);
+        if (txnmgrSpace.startsWith(QueueSpace.SCHEME + ":")) {
+            // SpaceFactory does not create qspace instances; register them before Q2 deploys
+            for (TransactionLane lane : TransactionLane.values()) {
+                int laneShards = laneShards(lane);
+                for (int shard = 0; shard < laneShards; shard++) {
+                    QueueSpace.register(lane.spaceName(txnmgrSpace, shard, laneShards));
+                }
+            }
+        }
+        System.setProperty("jpos.server.packager-config", packagerConfig);
+        System.setProperty("jpos.server.channel-packager",
+                lazyUnpack ? LazyUnpackPackager.class.getName() : packager);
 
         // Prepare deploy directory - extract from classpath if needed
-        File deployDirectory = prepareDeployDirectory();
+        File deployDirectory = prepareTransactionManagerDescriptors(prepareDeployDirectory());
 
         q2 = new Q2(deployDirectory.getAbsolutePath());
 
@@ -118,6 +180,76 @@ public class JposConfig {
         return tempDeployDir.toFile();
     }
 
+    private int laneShards(TransactionLane lane) {
+        return lane == TransactionLane.FINANCIAL ? Math.max(1, txnmgrShards) : 1;
+    }
+
+    /**
+     * Copies the deploy descriptors to a temporary directory, replacing 20_txnmgr.xml with one
+     * descriptor per lane (and per shard of the financial lane). Each is the same TransactionManager
+     * (participants unchanged) with its own name, space, queue and session count
+     * (see TransactionLane, TransactionShards).
+     */
+    private File prepareTransactionManagerDescriptors(File sourceDir) throws IOException {
+        Path laneDir = Files.createTempDirectory("jpos-deploy-lanes-");
+        laneDir.toFile().deleteOnExit();
+
+        File[] descriptors = sourceDir.listFiles((dir, name) -> name.endsWith(".xml"));
+        if (descriptors == null) {
+            throw new IllegalStateException("Cannot list deploy directory: " + sourceDir);
+        }
+
+        for (File descriptor : descriptors) {
+            if (!TXNMGR_DESCRIPTOR.equals(descriptor.getName())) {
+                Files.copy(descriptor.toPath(), laneDir.resolve(descriptor.getName()),
+                        StandardCopyOption.REPLACE_EXISTING);
+                continue;
+            }
+
+            Document template;
+            try {
+                template = new SAXBuilder().build(descriptor);
+            } catch (JDOMException e) {
+                throw new IOException("Invalid descriptor: " + descriptor, e);
+            }
+
+            for (TransactionLane lane : TransactionLane.values()) {
+                int shards = laneShards(lane);
+                // Sessions: one per admitted transaction, split across the lane's shards
+                int sessions = Math.max(1, (laneProperties.get(lane).getMaxInFlight() + shards - 1) / shards);
+                for (int shard = 0; shard < shards; shard++) {
+                    Document document = laneDescriptor(template, lane, shard, shards, sessions);
+                    String fileName = TXNMGR_DESCRIPTOR.replace(".xml",
+                            "-" + lane.getId() + (shards > 1 ? "-" + shard : "") + ".xml");
+                    try (OutputStream out = Files.newOutputStream(laneDir.resolve(fileName))) {
+                        new XMLOutputter(Format.getPrettyFormat()).output(document, out);
+                    }
+                }
+            }
+        }
+
+        log.info("Transaction manager descriptors for {} lanes written to: {}", TransactionLane.values().length, laneDir);
+        return laneDir.toFile();
+    }
+
+    private static Document laneDescriptor(Document template, TransactionLane lane, int shard, int shards, int sessions) {
+        Document document = template.clone();
+        Element root = document.getRootElement();
+        root.setAttribute("name", lane.managerName(root.getAttributeValue("name"), shard, shards));
+        for (Element property : root.getChildren("property")) {
+            String name = property.getAttributeValue("name");
+            // Resolve ${...} first so the lane and shard suffixes apply to the configured name
+            String value = Environment.get(property.getAttributeValue("value"));
+            switch (name) {
+                case "space" -> property.setAttribute("value", lane.spaceName(value, shard, shards));
+                case "queue" -> property.setAttribute("value", lane.queueName(value, shard, shards));
+                case "sessions", "max-sessions" -> property.setAttribute("value", String.valueOf(sessions));
+                default -> { }
+            }
+        }
+        return document;
+    }
+
     @PreDestroy
     public void stopQ2() {
         log.info("Shutting down Q2");
@@ -0,0 +1,112 @@
+package com.artivisi.atm.jpos.listener;
+
+import com.artivisi.atm.entity.CryptoKey;
+import com.artivisi.atm.jpos.SpringBeanFactory;
+import com.artivisi.atm.jpos.service.ChannelRegistry;
+import com.artivisi.atm.jpos.service.TerminalMacService;
+import com.artivisi.atm.jpos.util.ResponseTemplates;
+import com.artivisi.atm.jpos.util.TerminalIdUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISORequestListener;
+import org.jpos.iso.ISOSource;
+
+/**
+ * Inline responder for echo test messages (MTI 0800, field 70 = "301").
+ *
+ * Echo traffic is answered directly on the channel thread without going through
+ * the TransactionManager, so heartbeats from a large terminal fleet do not occupy
+ * TM sessions. Sign-on, sign-off and key change (field 53) messages are passed on
+ * to the next listener and keep using the TransactionManager.
+ *
+ * MAC handling (hsm.mac.verify-enabled):
+ * - Field 64 is verified with cached TSK keys; an echo without field 64 is rejected, since the
+ *   echo's only effect is to keep the terminal's session alive
+ * - A missing or failed MAC is answered with response code 96 and does not mark the terminal seen
+ * - The response is MAC'd only when the request MAC was verified
+ *
+ * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
+ * Uses SpringBeanFactory to access Spring beans.
+ */
+@Slf4j
+public class NetworkManagementListener implements ISORequestListener {
+
+    private static final String ECHO_TEST = "301";
+
+    private ChannelRegistry getChannelRegistry() {
+        return SpringBeanFactory.getBean(ChannelRegistry.class);
+    }
+
+    private TerminalMacService getTerminalMacService() {
+        return SpringBeanFactory.getBean(TerminalMacService.class);
+    }
+
+    /**
+     * Answer echo test messages inline.
+     *
+     * @param source The ISO source that received the message
+     * @param m The received ISO message
+     * @return true if the echo was answered (stops the listener chain),
+     *         false to pass the message to the next listener (IsoRequestListener)
+     */
+    @Override
+    public boolean process(ISOSource source, ISOMsg m) {
+        try {
+            if (!isEchoTest(m)) {
+                return false;
+            }
+
+            String terminalId = TerminalIdUtil.extractTerminalId(m);
+            ChannelRegistry channelRegistry = getChannelRegistry();
+
+            TerminalMacService macService = getTerminalMacService();
+            String responseCode = "00";
+            Integer keyVersionUsed = null;
+
+            if (macService.isVerifyEnabled()) {
+                if (!m.hasField(64)) {
+                    log.error("Echo without MAC rejected: terminalId={}", terminalId);
+                    responseCode = "96";
+                } else {
+                    keyVersionUsed = macService.verify(terminalId, macService.buildMacData(m), m.getBytes(64));
+                    if (keyVersionUsed == null) {
+                        log.error("Echo MAC verification failed: terminalId={}", terminalId);
+                        responseCode = "96";
+                    } else {
+                        channelRegistry.recordKeyVersion(terminalId, CryptoKey.KeyType.TSK, keyVersionUsed);
+                    }
+                }
+            }
+
+            // Only an authenticated echo keeps the session alive
+            if ("00".equals(responseCode)) {
+                channelRegistry.markSeen(terminalId);
+            }
+
+            ISOMsg response = ResponseTemplates.createResponse(m, responseCode);
+
+            if (keyVersionUsed != null && macService.isGenerateEnabled()) {
+                response.set(64, macService.generate(terminalId, macService.buildMacData(response), keyVersionUsed));
+            }
+
+            source.send(response);
+            log.debug("Echo answered inline: terminalId={}, STAN={}, RC={}",
+                    terminalId, m.getString(11), responseCode);
+            return true;
+
+        } catch (Exception e) {
+            log.warn("Inline echo handling failed, passing to transaction manager: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Echo test: 0800 with field 70 = "301" and no field 53.
+     * Server-initiated key change notifications also use 301, but always carry field 53.
+     */
+    private boolean isEchoTest(ISOMsg m) throws Exception {
+        return "0800".equals(m.getMTI())
+                && ECHO_TEST.equals(m.getString(70))
+                && !m.hasField(53);
+    }
+}
@@ -2,6 +2,7 @@ package com.artivisi.atm.jpos.listener;
 
 import com.artivisi.atm.jpos.SpringBeanFactory;
 import com.artivisi.atm.jpos.service.ChannelRegistry;
+import com.artivisi.atm.jpos.service.TerminalWarmupService;
 import com.artivisi.atm.jpos.util.TerminalIdUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOChannel;
@@ -24,6 +25,10 @@ public class TerminalConnectionListener implements org.jpos.iso.ISORequestListen
         return SpringBeanFactory.getBean(ChannelRegistry.class);
     }
 
+    private TerminalWarmupService getTerminalWarmupService() {
+        return SpringBeanFactory.getBean(TerminalWarmupService.class);
+    }
+
     /**
      * Called when a message is received from a connected terminal.
      * Handles sign-on messages specially to register terminals.
@@ -88,7 +93,7 @@ public class TerminalConnectionListener implements org.jpos.iso.ISORequestListen
 
     /**
      * Handle sign-on message from terminal.
-     * Registers the channel and marks terminal as signed on.
+     * Registers the channel, marks terminal as signed on and schedules asynchronous warm-up.
      */
     private void handleSignOn(String terminalId, ISOChannel channel) {
         log.info("Processing sign-on: terminalId={}, channel={}", terminalId, channel.getName());
@@ -99,6 +104,9 @@ public class TerminalConnectionListener implements org.jpos.iso.ISORequestListen
         // Mark as signed on
         getChannelRegistry().signOn(terminalId);
 
+        // Preload keys and derived MAC keys so the first transaction skips the cold path
+        getTerminalWarmupService().warmUp(terminalId);
+
         log.info("Terminal signed on successfully: {}", terminalId);
     }
 
@@ -0,0 +1,130 @@
+package com.artivisi.atm.jpos.packager;
+
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOException;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Field component created by LazyUnpackPackager.
+ *
+ * Holds the field's position in the received frame and decodes the value with the
+ * delegate field packager on first access. getValue()/getBytes() return exactly what
+ * an eagerly unpacked ISOField or ISOBinaryField would return, so ISOMsg.getString(),
+ * getBytes() and hasField() behave the same.
+ *
+ * While the value has not been modified, the original bytes can be re-emitted as-is
+ * by the same field packager (see LazyUnpackPackager.RawFieldPackager).
+ */
+final class LazyField extends ISOComponent {
+
+    private final LazyUnpackPackager.RawFieldPackager packager;
+    private final byte[] frame;
+    private final int offset;
+    private final int length;
+
+    private int fieldNumber;
+    private volatile ISOComponent decoded;
+    private volatile boolean modified;
+
+    LazyField(int fieldNumber, LazyUnpackPackager.RawFieldPackager packager, byte[] frame, int offset, int length) {
+        this.fieldNumber = fieldNumber;
+        this.packager = packager;
+        this.frame = frame;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public Object getKey() {
+        return fieldNumber;
+    }
+
+    @Override
+    public Object getValue() throws ISOException {
+        return decode().getValue();
+    }
+
+    @Override
+    public byte[] getBytes() throws ISOException {
+        return decode().getBytes();
+    }
+
+    @Override
+    public void setFieldNumber(int fieldNumber) {
+        this.fieldNumber = fieldNumber;
+    }
+
+    @Override
+    public int getFieldNumber() {
+        return fieldNumber;
+    }
+
+    @Override
+    public void setValue(Object value) throws ISOException {
+        decode().setValue(value);
+        modified = true;
+    }
+
+    @Override
+    public byte[] pack() throws ISOException {
+        throw new ISOException("Not available on Leaf - use ISOMsg.pack()");
+    }
+
+    @Override
+    public int unpack(byte[] b) throws ISOException {
+        throw new ISOException("Not available on Leaf - use ISOMsg.unpack()");
+    }
+
+    @Override
+    public void unpack(InputStream in) throws ISOException {
+        throw new ISOException("Not available on Leaf - use ISOMsg.unpack()");
+    }
+
+    @Override
+    public void dump(PrintStream p, String indent) {
+        try {
+            decode().dump(p, indent);
+        } catch (ISOException e) {
+            p.println(indent + "<!-- field " + fieldNumber + " cannot be decoded: " + e.getMessage() + " -->");
+        }
+    }
+
+    /**
+     * @return true if the value has been decoded from the frame
+     */
+    boolean isDecoded() {
+        return decoded != null;
+    }
+
+    /**
+     * @return true if the original bytes are still valid output for the given field packager
+     */
+    boolean isRawFrom(LazyUnpackPackager.RawFieldPackager fieldPackager) {
+        return packager == fieldPackager && !modified;
+    }
+
+    /**
+     * @return Copy of the field's original bytes (length prefix included)
+     */
+    byte[] rawBytes() {
+        return Arrays.copyOfRange(frame, offset, offset + length);
+    }
+
+    private ISOComponent decode() throws ISOException {
+        ISOComponent c = decoded;
+        if (c == null) {
+            synchronized (this) {
+                c = decoded;
+                if (c == null) {
+                    c = packager.createComponent(fieldNumber);
+                    packager.unpack(c, frame, offset);
+                    decoded = c;
+                }
+            }
+        }
+        return c;
+    }
+}
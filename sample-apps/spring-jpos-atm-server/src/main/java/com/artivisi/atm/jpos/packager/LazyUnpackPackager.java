@@ -0,0 +1,372 @@
+package com.artivisi.atm.jpos.packager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.core.Configurable;
+import org.jpos.core.Configuration;
+import org.jpos.core.ConfigurationException;
+import org.jpos.iso.ISOBasePackager;
+import org.jpos.iso.ISOBinaryField;
+import org.jpos.iso.ISOBinaryFieldPackager;
+import org.jpos.iso.ISOBitMap;
+import org.jpos.iso.ISOBitMapPackager;
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOFieldPackager;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOStringFieldPackager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.TreeMap;
+
+/**
+ * ISOPackager wrapper that unpacks inbound messages lazily.
+ *
+ * unpack() decodes only the MTI and bitmap, then walks the present fields reading their
+ * length prefixes to record where each field sits in the frame. Values are decoded on first
+ * access (getString/getBytes/getValue), so fields no participant reads are never decoded.
+ * hasField() is answered from the bitmap.
+ *
+ * pack() re-emits the original bytes of unmodified lazy fields. Re-packing the request for
+ * MAC verification (request without field 64) and packing echo fields shared into the
+ * response therefore copy bytes instead of decoding and encoding every field.
+ *
+ * Field lengths are read from the length prefix with a table learned when the packager is
+ * wrapped: the delegate field packager packs a value of every length up to its maximum (public
+ * pack() only), which gives the prefix bytes and packed size of each length. This applies to
+ * ISOStringFieldPackager and ISOBinaryFieldPackager fields whose unpack is the base class one.
+ * Other field packagers (amounts, nested messages, custom unpack, maximum length above
+ * 9999) are decoded eagerly. Messages with a third bitmap are unpacked by the delegate.
+ * The frame passed to unpack() must not be modified afterwards.
+ *
+ * Channel properties (10_qserver.xml):
+ * - delegate-packager: packager class to wrap (e.g., BASE24Packager, GenericPackager)
+ * - packager-config: passed through to a Configurable delegate
+ */
+@Slf4j
+public class LazyUnpackPackager extends ISOBasePackager implements Configurable {
+
+    private static final int MAX_FIELD = 128;
+
+    private ISOBasePackager delegate;
+    private FieldLength[] fieldLengths;
+
+    public LazyUnpackPackager() {
+    }
+
+    public LazyUnpackPackager(ISOBasePackager delegate) {
+        wrap(delegate);
+    }
+
+    @Override
+    public void setConfiguration(Configuration cfg) throws ConfigurationException {
+        String className = cfg.get("delegate-packager", null);
+        if (className == null || className.isBlank()) {
+            throw new ConfigurationException("delegate-packager property cannot be null");
+        }
+
+        Object packager;
+        try {
+            packager = Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new ConfigurationException("Cannot create delegate packager: " + className, e);
+        }
+        if (packager instanceof Configurable configurable) {
+            configurable.setConfiguration(cfg);
+        }
+        if (!(packager instanceof ISOBasePackager basePackager)) {
+            throw new ConfigurationException("Delegate packager must extend ISOBasePackager: " + className);
+        }
+        wrap(basePackager);
+    }
+
+    private void wrap(ISOBasePackager delegate) {
+        this.delegate = delegate;
+
+        ISOFieldPackager[] fields = new ISOFieldPackager[MAX_FIELD + 1];
+        fieldLengths = new FieldLength[MAX_FIELD + 1];
+        int lazyFields = 0;
+
+        for (int i = 0; i <= MAX_FIELD; i++) {
+            ISOFieldPackager fieldPackager = delegate.getFieldPackager(i);
+            if (fieldPackager == null || i == 0 || fieldPackager instanceof ISOBitMapPackager) {
+                // MTI and bitmap are always unpacked eagerly
+                fields[i] = fieldPackager;
+                continue;
+            }
+            fields[i] = new RawFieldPackager(fieldPackager);
+            fieldLengths[i] = FieldLength.of(i, fieldPackager);
+            if (fieldLengths[i] != null) {
+                lazyFields++;
+            }
+        }
+
+        setFieldPackager(fields);
+        setHeaderLength(delegate.getHeaderLength());
+        log.info("Lazy unpack enabled: delegate={}, lazyFields={}", delegate.getClass().getSimpleName(), lazyFields);
+    }
+
+    @Override
+    public int unpack(ISOComponent m, byte[] b) throws ISOException {
+        if (fld[0] == null || fld[0] instanceof ISOBitMapPackager || !emitBitMap()) {
+            // No MTI or no bitmap: nothing to skip over lazily
+            return delegate.unpack(m, b);
+        }
+        if (m.getComposite() != m) {
+            throw new ISOException("Can't call packager on non Composite");
+        }
+
+        int consumed = 0;
+        if (m instanceof ISOMsg msg && headerLength > 0) {
+            msg.setHeader(Arrays.copyOf(b, headerLength));
+            consumed += headerLength;
+        }
+
+        ISOComponent mti = fld[0].createComponent(0);
+        consumed += fld[0].unpack(mti, b, consumed);
+
+        ISOBitMap bitmap = new ISOBitMap(-1);
+        consumed += getBitMapfieldPackager().unpack(bitmap, b, consumed);
+        BitSet bmap = (BitSet) bitmap.getValue();
+        if (bmap.length() - 1 > MAX_FIELD) {
+            return delegate.unpack(m, b);
+        }
+        m.set(mti);
+        m.set(bitmap);
+
+        int maxField = Math.min(fld.length - 1, bmap.length() - 1);
+        for (int i = getFirstField(); i <= maxField; i++) {
+            if (!bmap.get(i)) {
+                continue;
+            }
+            if (fld[i] == null) {
+                throw new ISOException("field packager '" + i + "' is null");
+            }
+
+            FieldLength fieldLength = fieldLengths[i];
+            if (fieldLength == null) {
+                ISOComponent c = fld[i].createComponent(i);
+                consumed += fld[i].unpack(c, b, consumed);
+                m.set(c);
+                continue;
+            }
+
+            int packedLength = fieldLength.packedLength(i, b, consumed);
+            if (consumed + packedLength > b.length) {
+                throw new ISOException("field " + i + " exceeds message length: offset=" + consumed
+                        + ", length=" + packedLength + ", message=" + b.length);
+            }
+            m.set(new LazyField(i, (RawFieldPackager) fld[i], b, consumed, packedLength));
+            consumed += packedLength;
+        }
+
+        if (consumed != b.length) {
+            log.warn("Unpack length mismatch: consumed={}, message={}", consumed, b.length);
+        }
+        return consumed;
+    }
+
+    @Override
+    public void unpack(ISOComponent m, InputStream in) throws IOException, ISOException {
+        delegate.unpack(m, in);
+    }
+
+    @Override
+    public String getDescription() {
+        return getClass().getName() + "[" + delegate.getDescription() + "]";
+    }
+
+    /**
+     * Field packager that re-emits the original bytes of unmodified lazy fields
+     * and delegates everything else.
+     */
+    static final class RawFieldPackager extends ISOFieldPackager {
+
+        private final ISOFieldPackager delegate;
+
+        RawFieldPackager(ISOFieldPackager delegate) {
+            super(delegate.getLength(), delegate.getDescription());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int getMaxPackedLength() {
+            return delegate.getMaxPackedLength();
+        }
+
+        @Override
+        public ISOComponent createComponent(int fieldNumber) {
+            return delegate.createComponent(fieldNumber);
+        }
+
+        @Override
+        public byte[] pack(ISOComponent c) throws ISOException {
+            if (c instanceof LazyField lazy && lazy.isRawFrom(this)) {
+                return lazy.rawBytes();
+            }
+            return delegate.pack(c);
+        }
+
+        @Override
+        public int unpack(ISOComponent c, byte[] b, int offset) throws ISOException {
+            return delegate.unpack(c, b, offset);
+        }
+
+        @Override
+        public void unpack(ISOComponent c, InputStream in) throws IOException, ISOException {
+            delegate.unpack(c, in);
+        }
+    }
+
+    /**
+     * Reads a field's packed length from its length prefix without decoding the value.
+     */
+    static final class FieldLength {
+
+        private static final int MAX_PROBED_LENGTH = 9999;
+        private static final int MAX_PREFIX_LENGTH = 4;
+
+        // 0 for a fixed-length field
+        private final int prefixLength;
+        private final int fixedLength;
+        // Prefix bytes (big-endian int, sorted) -> packed length of the field, prefix included
+        private final int[] prefixes;
+        private final int[] packedLengths;
+
+        private FieldLength(int prefixLength, int fixedLength, int[] prefixes, int[] packedLengths) {
+            this.prefixLength = prefixLength;
+            this.fixedLength = fixedLength;
+            this.prefixes = prefixes;
+            this.packedLengths = packedLengths;
+        }
+
+        int packedLength(int fieldNumber, byte[] b, int offset) throws ISOException {
+            if (prefixLength == 0) {
+                return fixedLength;
+            }
+            if (offset + prefixLength > b.length) {
+                throw new ISOException("field " + fieldNumber + " length prefix exceeds message length: offset="
+                        + offset + ", message=" + b.length);
+            }
+            int index = Arrays.binarySearch(prefixes, prefix(b, offset, prefixLength));
+            if (index < 0) {
+                throw new ISOException("Invalid length prefix for field " + fieldNumber
+                        + " (not a length the field packager produces, e.g. above its maximum)");
+            }
+            return packedLengths[index];
+        }
+
+        /**
+         * @return Length reader, or null if the field packager must be unpacked eagerly
+         */
+        static FieldLength of(int fieldNumber, ISOFieldPackager fieldPackager) {
+            int maxLength = fieldPackager.getLength();
+            if (maxLength <= 0 || maxLength > MAX_PROBED_LENGTH
+                    || !(usesBaseUnpack(fieldPackager, ISOStringFieldPackager.class)
+                         || usesBaseUnpack(fieldPackager, ISOBinaryFieldPackager.class))) {
+                return null;
+            }
+            try {
+                byte[][] packed = new byte[maxLength + 1][];
+                for (int length = 0; length <= maxLength; length++) {
+                    packed[length] = probe(fieldNumber, fieldPackager, length);
+                }
+                if (packed[maxLength] == null) {
+                    throw new ISOException("cannot pack a value of the maximum length " + maxLength);
+                }
+                FieldLength fieldLength = learn(packed);
+                if (fieldLength == null) {
+                    log.debug("Field {} ({}): no length prefix found, unpacked eagerly",
+                            fieldNumber, fieldPackager.getClass().getSimpleName());
+                }
+                return fieldLength;
+            } catch (ISOException | RuntimeException e) {
+                log.debug("Field {} ({}) will be unpacked eagerly: {}",
+                        fieldNumber, fieldPackager.getClass().getSimpleName(), e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * @return The field packed with a value of the given length, or null if the field packager
+         *         does not accept the length (e.g. a fixed-length binary field)
+         */
+        private static byte[] probe(int fieldNumber, ISOFieldPackager fieldPackager, int length) throws ISOException {
+            ISOComponent c = fieldPackager.createComponent(fieldNumber);
+            // Digits are valid for both character and numeric fields
+            c.setValue(c instanceof ISOBinaryField ? new byte[length] : "1".repeat(length));
+            try {
+                return fieldPackager.pack(c);
+            } catch (ISOException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Find the shortest leading byte sequence that determines the packed length, over the
+         * packed values of every length.
+         */
+        static FieldLength learn(byte[][] packed) {
+            int fixedLength = -1;
+            boolean fixed = true;
+            for (byte[] p : packed) {
+                if (p != null) {
+                    fixed &= fixedLength == -1 || p.length == fixedLength;
+                    fixedLength = p.length;
+                }
+            }
+            if (fixedLength == -1) {
+                return null;
+            }
+            if (fixed) {
+                return new FieldLength(0, fixedLength, null, null);
+            }
+
+            for (int prefixLength = 1; prefixLength <= MAX_PREFIX_LENGTH; prefixLength++) {
+                TreeMap<Integer, Integer> table = new TreeMap<>();
+                boolean determined = true;
+                for (byte[] p : packed) {
+                    if (p == null) {
+                        continue;
+                    }
+                    if (p.length < prefixLength) {
+                        determined = false;
+                        break;
+                    }
+                    Integer previous = table.putIfAbsent(prefix(p, 0, prefixLength), p.length);
+                    if (previous != null && previous != p.length) {
+                        determined = false;
+                        break;
+                    }
+                }
+                if (determined) {
+                    return new FieldLength(prefixLength, -1,
+                            table.keySet().stream().mapToInt(Integer::intValue).toArray(),
+                            table.values().stream().mapToInt(Integer::intValue).toArray());
+                }
+            }
+            return null;
+        }
+
+        private static int prefix(byte[] b, int offset, int length) {
+            int value = 0;
+            for (int i = 0; i < length; i++) {
+                value = (value << 8) | (b[offset + i] & 0xFF);
+            }
+            return value;
+        }
+
+        private static boolean usesBaseUnpack(ISOFieldPackager fieldPackager, Class<?> baseClass) {
+            try {
+                return baseClass.isInstance(fieldPackager)
+                        && fieldPackager.getClass()
+                                .getMethod("unpack", ISOComponent.class, byte[].class, int.class)
+                                .getDeclaringClass() == baseClass;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    }
+}
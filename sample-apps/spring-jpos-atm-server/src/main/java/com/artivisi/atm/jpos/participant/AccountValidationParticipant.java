@@ -3,6 +3,7 @@ package com.artivisi.atm.jpos.participant;
 import com.artivisi.atm.exception.AccountNotActiveException;
 import com.artivisi.atm.exception.AccountNotFoundException;
 import com.artivisi.atm.jpos.SpringBeanFactory;
+import com.artivisi.atm.jpos.util.MessageTypes;
 import com.artivisi.atm.service.BankService;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOMsg;
@@ -37,12 +38,19 @@ public class AccountValidationParticipant implements TransactionParticipant {
             }
 
             String mti = msg.getMTI();
-            // Only process financial transactions (0200), skip network management (0800)
-            if (!"0200".equals(mti)) {
+            // Only process financial transactions (0200/0201), skip network management (0800)
+            if (!MessageTypes.isFinancialRequest(mti)) {
                 log.debug("Skipping account validation for MTI: {}", mti);
                 return PREPARED | NO_JOIN | READONLY;
             }
 
+            // Skip validation if an error response code is already set (e.g., deadline passed)
+            String existingResponseCode = (String) ctx.get("RESPONSE_CODE");
+            if (existingResponseCode != null && !"00".equals(existingResponseCode)) {
+                log.debug("Skipping account validation - error response code already set: {}", existingResponseCode);
+                return PREPARED | NO_JOIN | READONLY;
+            }
+
             String accountNumber = msg.getString(102);
 
             if (accountNumber == null || accountNumber.isEmpty()) {
@@ -69,7 +77,7 @@ public class AccountValidationParticipant implements TransactionParticipant {
             return PREPARED | NO_JOIN | READONLY;
         } catch (Exception e) {
             log.error("Error validating account: {}", e.getMessage());
-            ctx.put("RESPONSE_CODE", "96");
+            ctx.put("RESPONSE_CODE", DeadlineParticipant.failureResponseCode(ctx, "96"));
             return PREPARED | NO_JOIN | READONLY;
         }
     }
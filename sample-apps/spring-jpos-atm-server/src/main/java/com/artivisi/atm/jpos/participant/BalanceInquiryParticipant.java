@@ -5,7 +5,9 @@ import com.artivisi.atm.dto.BalanceInquiryResponse;
 import com.artivisi.atm.exception.AccountNotActiveException;
 import com.artivisi.atm.exception.AccountNotFoundException;
 import com.artivisi.atm.jpos.SpringBeanFactory;
+import com.artivisi.atm.jpos.util.MessageTypes;
 import com.artivisi.atm.service.BankService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOMsg;
 import org.jpos.transaction.Context;
@@ -37,8 +39,8 @@ public class BalanceInquiryParticipant implements TransactionParticipant {
             }
 
             String mti = msg.getMTI();
-            // Only process financial transactions (0200), skip network management (0800)
-            if (!"0200".equals(mti)) {
+            // Only process financial transactions (0200/0201), skip network management (0800)
+            if (!MessageTypes.isFinancialRequest(mti)) {
                 log.debug("Skipping balance inquiry for MTI: {}", mti);
                 return PREPARED | NO_JOIN | READONLY;
             }
@@ -72,6 +74,10 @@ public class BalanceInquiryParticipant implements TransactionParticipant {
 
             ctx.put("BALANCE", response.getBalance());
             ctx.put("RESPONSE_CODE", "00");
+            if (ctx.get("STAND_IN") != null) {
+                SpringBeanFactory.getBean(MeterRegistry.class)
+                        .counter("stand_in.approvals", "type", "balance_inquiry").increment();
+            }
             ctx.put("ACCOUNT_HOLDER_NAME", response.getAccountHolderName());
 
             return PREPARED | NO_JOIN;
@@ -86,7 +92,7 @@ public class BalanceInquiryParticipant implements TransactionParticipant {
             return PREPARED | NO_JOIN;
         } catch (Exception e) {
             log.error("Error processing balance inquiry: ", e);
-            ctx.put("RESPONSE_CODE", "96");
+            ctx.put("RESPONSE_CODE", DeadlineParticipant.failureResponseCode(ctx, "96"));
             return PREPARED | NO_JOIN;
         }
     }
@@ -0,0 +1,59 @@
+package com.artivisi.atm.jpos.participant;
+
+import com.artivisi.atm.util.Deadline;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.transaction.Context;
+import org.jpos.transaction.TransactionParticipant;
+
+import java.io.Serializable;
+
+/**
+ * jPOS TransactionParticipant that enforces the transaction deadline set by IsoRequestListener.
+ *
+ * Binds the deadline to the session thread, so HSM calls and JPA transactions made by later
+ * participants are bounded by the remaining budget (see Deadline). Once the budget is gone it sets
+ * response code 68 (response received too late); the following participants skip their work because
+ * a response code is already set. Deployed first, and again right before the debit so a withdrawal
+ * that ran out of time during PIN verification is never posted.
+ *
+ * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
+ */
+@Slf4j
+public class DeadlineParticipant implements TransactionParticipant {
+
+    static final String RESPONSE_CODE_LATE = "68";
+
+    @Override
+    public int prepare(long id, Serializable context) {
+        Context ctx = (Context) context;
+        Deadline deadline = (Deadline) ctx.get("DEADLINE");
+        Deadline.bind(deadline);
+
+        if (deadline != null && deadline.isExpired()) {
+            String existingResponseCode = (String) ctx.get("RESPONSE_CODE");
+            if (existingResponseCode == null || "00".equals(existingResponseCode)) {
+                log.warn("Transaction {} past its deadline ({} ms budget), declining with RC {}",
+                        id, deadline.getBudgetMillis(), RESPONSE_CODE_LATE);
+                ctx.put("RESPONSE_CODE", RESPONSE_CODE_LATE);
+            }
+        }
+        return PREPARED | NO_JOIN | READONLY;
+    }
+
+    @Override
+    public void commit(long id, Serializable context) {
+    }
+
+    @Override
+    public void abort(long id, Serializable context) {
+    }
+
+    /**
+     * Response code for a participant failure: 68 if the failure came after the deadline
+     * (a timed out HSM call or database transaction), the participant's own code otherwise.
+     */
+    static String failureResponseCode(Context ctx, String responseCode) {
+        Deadline deadline = (Deadline) ctx.get("DEADLINE");
+        return deadline != null && deadline.isExpired() ? RESPONSE_CODE_LATE : responseCode;
+    }
+}
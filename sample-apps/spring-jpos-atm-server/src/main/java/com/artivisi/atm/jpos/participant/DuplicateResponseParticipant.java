@@ -0,0 +1,58 @@
+package com.artivisi.atm.jpos.participant;
+
+import com.artivisi.atm.jpos.service.TransactionMatchIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.transaction.Context;
+import org.jpos.transaction.TransactionParticipant;
+
+import java.io.Serializable;
+
+/**
+ * jPOS TransactionParticipant for the Duplicate group: answers a repeated financial request with
+ * the outcome of the original (ORIGINAL_ENTRY, found by MTISelector), without processing it again.
+ * ResponseBuilderParticipant then builds the same response: response code, RRN, balance and
+ * mini-statement.
+ *
+ * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
+ */
+@Slf4j
+public class DuplicateResponseParticipant implements TransactionParticipant {
+
+    @Override
+    public int prepare(long id, Serializable context) {
+        Context ctx = (Context) context;
+        TransactionMatchIndex.Entry original = (TransactionMatchIndex.Entry) ctx.get("ORIGINAL_ENTRY");
+        if (original == null) {
+            return PREPARED | NO_JOIN | READONLY;
+        }
+
+        // Skip if the repeat failed MAC verification
+        String existingResponseCode = (String) ctx.get("RESPONSE_CODE");
+        if (existingResponseCode != null && !"00".equals(existingResponseCode)) {
+            log.debug("Skipping duplicate response - error response code already set: {}", existingResponseCode);
+            return PREPARED | NO_JOIN | READONLY;
+        }
+
+        log.info("Repeat of {} answered with the original outcome: RC={}",
+                original.getKey(), original.getResponseCode());
+        ctx.put("RESPONSE_CODE", original.getResponseCode());
+        if (original.getReferenceNumber() != null) {
+            ctx.put("REFERENCE_NUMBER", original.getReferenceNumber());
+        }
+        if (original.getBalance() != null) {
+            ctx.put("BALANCE", original.getBalance());
+        }
+        if (original.getMiniStatement() != null) {
+            ctx.put("MINI_STATEMENT", original.getMiniStatement());
+        }
+        return PREPARED | NO_JOIN | READONLY;
+    }
+
+    @Override
+    public void commit(long id, Serializable context) {
+    }
+
+    @Override
+    public void abort(long id, Serializable context) {
+    }
+}
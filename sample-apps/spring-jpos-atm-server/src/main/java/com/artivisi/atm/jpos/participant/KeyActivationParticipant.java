@@ -1,10 +1,9 @@
 package com.artivisi.atm.jpos.participant;
 
-import com.artivisi.atm.dto.rotation.KeyRotationConfirmation;
 import com.artivisi.atm.entity.CryptoKey;
 import com.artivisi.atm.jpos.SpringBeanFactory;
 import com.artivisi.atm.service.CryptoKeyService;
-import com.artivisi.atm.service.HsmClient;
+import com.artivisi.atm.service.KeyRotationCampaignService;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOMsg;
 import org.jpos.transaction.Context;
@@ -16,7 +15,9 @@ import java.io.Serializable;
  * jPOS TransactionParticipant for auto-activating PENDING keys after successful use.
  *
  * When a terminal starts using a PENDING key (detected via MAC verification),
- * this participant activates the key in the database and confirms to the HSM.
+ * this participant activates the key in the database and queues the confirmation to the HSM.
+ * The HSM is never called here: confirmations and failure notifications are stored in hsm_outbox
+ * with the key change, and delivered by HsmOutboxDispatcher.
  *
  * This runs in the commit phase AFTER the response has been sent to the terminal,
  * ensuring the terminal successfully received and can use the new key before activation.
@@ -26,12 +27,14 @@ import java.io.Serializable;
 @Slf4j
 public class KeyActivationParticipant implements TransactionParticipant {
 
+    private static final String CONFIRMED_BY = "ATM_SERVER_EXPLICIT_CONFIRMATION";
+
     private CryptoKeyService getCryptoKeyService() {
         return SpringBeanFactory.getBean(CryptoKeyService.class);
     }
 
-    private HsmClient getHsmClient() {
-        return SpringBeanFactory.getBean(HsmClient.class);
+    private KeyRotationCampaignService getKeyRotationCampaignService() {
+        return SpringBeanFactory.getBean(KeyRotationCampaignService.class);
     }
 
     /**
@@ -138,25 +141,21 @@ public class KeyActivationParticipant implements TransactionParticipant {
     }
 
     /**
-     * Activate a PENDING key and confirm to HSM.
+     * Activate a PENDING key and queue its confirmation to HSM, in one database transaction.
      */
     private void activatePendingKey(String terminalId, CryptoKey.KeyType keyType, Integer version) {
         log.info("Activating PENDING {} key version {} for terminal: {}",
                 keyType, version, terminalId);
 
         try {
-            // Get PENDING key to retrieve rotation ID before activation
-            CryptoKey pendingKey = getCryptoKeyService().getKeyByVersion(terminalId, keyType, version);
-            String rotationId = pendingKey.getRotationId();
-
-            // Activate the key in database
-            getCryptoKeyService().activateKey(terminalId, keyType, version);
+            // Activate the key in database; the confirmation is delivered after the commit
+            getCryptoKeyService().activateKey(terminalId, keyType, version, CONFIRMED_BY);
 
             log.info("Successfully activated {} key version {} for terminal: {}",
                     keyType, version, terminalId);
 
-            // Confirm to HSM (asynchronously - don't block transaction completion)
-            confirmToHsmAsync(terminalId, keyType, version, rotationId);
+            // Track progress if the terminal is part of a rotation campaign
+            getKeyRotationCampaignService().onKeyConfirmed(terminalId, keyType);
 
         } catch (Exception e) {
             log.error("Failed to activate {} key version {} for terminal {}: {}",
@@ -167,21 +166,20 @@ public class KeyActivationParticipant implements TransactionParticipant {
 
     /**
      * Handle key installation failure reported by terminal.
-     * Removes PENDING key from database and notifies HSM.
+     * Removes PENDING key from database and queues the failure notification to HSM.
      */
     private void handleKeyInstallationFailure(String terminalId, CryptoKey.KeyType keyType, String failureReason) {
         log.error("Handling key installation failure: terminal={}, keyType={}, reason={}",
                 terminalId, keyType, failureReason);
 
         try {
-            // Remove PENDING key from database
-            getCryptoKeyService().removePendingKey(terminalId, keyType);
+            // Remove PENDING key from database; the HSM is notified after the commit
+            getCryptoKeyService().removePendingKey(terminalId, keyType, failureReason);
 
             log.info("Removed PENDING {} key after installation failure: terminal={}",
                     keyType, terminalId);
 
-            // Notify HSM that rotation failed (asynchronously - don't block)
-            notifyHsmFailureAsync(terminalId, keyType, failureReason);
+            getKeyRotationCampaignService().onKeyFailed(terminalId, keyType, failureReason);
 
         } catch (Exception e) {
             log.error("Failed to handle key installation failure: terminal={}, keyType={}, error={}",
@@ -189,67 +187,4 @@ public class KeyActivationParticipant implements TransactionParticipant {
             // Don't throw - failure handling should not block transaction
         }
     }
-
-    /**
-     * Notify HSM that key rotation failed asynchronously.
-     */
-    private void notifyHsmFailureAsync(String terminalId, CryptoKey.KeyType keyType, String reason) {
-        // For now, just log - HSM notification for failure not implemented yet
-        // In production, this should:
-        // 1. Call HSM API to report rotation failure
-        // 2. Include failure reason
-        // 3. Allow HSM to clean up its records
-        log.warn("HSM failure notification not implemented: terminal={}, keyType={}, reason={}",
-                terminalId, keyType, reason);
-
-        // TODO: Implement HSM failure notification
-        // Example:
-        // try {
-        //     KeyRotationFailure failure = KeyRotationFailure.builder()
-        //             .terminalId(terminalId)
-        //             .keyType(keyType)
-        //             .failureReason(reason)
-        //             .build();
-        //     getHsmClient().notifyRotationFailure(terminalId, failure);
-        // } catch (Exception e) {
-        //     log.error("Failed to notify HSM of rotation failure", e);
-        // }
-    }
-
-    /**
-     * Confirm key activation to HSM asynchronously.
-     * This is done in a separate thread to avoid blocking transaction completion.
-     * Uses the rotation ID provided by HSM during key distribution.
-     */
-    private void confirmToHsmAsync(String terminalId, CryptoKey.KeyType keyType, Integer version, String rotationId) {
-        // For now, do it synchronously
-        // In production, this should be done via async message queue or CompletableFuture
-        try {
-            if (rotationId == null || rotationId.trim().isEmpty()) {
-                log.warn("No rotation ID available for HSM confirmation: terminal={}, keyType={}, version={}",
-                        terminalId, keyType, version);
-                return;
-            }
-
-            KeyRotationConfirmation confirmation = KeyRotationConfirmation.builder()
-                    .rotationId(rotationId)
-                    .confirmedBy("ATM_SERVER_EXPLICIT_CONFIRMATION")
-                    .build();
-
-            log.debug("Confirming key activation to HSM: terminalId={}, keyType={}, version={}, rotationId={}",
-                    terminalId, keyType, version, rotationId);
-
-            getHsmClient().confirmKeyRotation(terminalId, confirmation);
-
-            log.info("Successfully confirmed {} key activation to HSM: terminal={}, version={}, rotationId={}",
-                    keyType, terminalId, version, rotationId);
-
-        } catch (Exception e) {
-            // Log error but don't fail - key is already activated in database
-            // HSM confirmation can be retried manually if needed
-            log.error("Failed to confirm key activation to HSM (key already activated locally): " +
-                    "terminal={}, keyType={}, version={}, rotationId={}, error={}",
-                    terminalId, keyType, version, rotationId, e.getMessage());
-        }
-    }
 }
@@ -4,6 +4,7 @@ import com.artivisi.atm.dto.rotation.KeyRotationResponse;
 import com.artivisi.atm.entity.CryptoKey;
 import com.artivisi.atm.jpos.SpringBeanFactory;
 import com.artivisi.atm.jpos.util.TerminalIdUtil;
+import com.artivisi.atm.service.KeyRotationCampaignService;
 import com.artivisi.atm.service.KeyRotationService;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOMsg;
@@ -43,6 +44,10 @@ public class KeyChangeParticipant implements TransactionParticipant {
         return SpringBeanFactory.getBean(KeyRotationService.class);
     }
 
+    private KeyRotationCampaignService getKeyRotationCampaignService() {
+        return SpringBeanFactory.getBean(KeyRotationCampaignService.class);
+    }
+
     @Override
     public int prepare(long id, Serializable context) {
         Context ctx = (Context) context;
@@ -63,6 +68,13 @@ public class KeyChangeParticipant implements TransactionParticipant {
                 return PREPARED | NO_JOIN | READONLY;
             }
 
+            // Skip key change if an error response code is already set (e.g., deadline passed)
+            String existingResponseCode = (String) ctx.get("RESPONSE_CODE");
+            if (existingResponseCode != null && !"00".equals(existingResponseCode)) {
+                log.debug("Skipping key change - error response code already set: {}", existingResponseCode);
+                return PREPARED | NO_JOIN | READONLY;
+            }
+
             // Check if this is a key change message (field 53 present)
             String securityControl = request.getString(53);
             if (securityControl == null || securityControl.length() < 2) {
@@ -104,7 +116,7 @@ public class KeyChangeParticipant implements TransactionParticipant {
 
         } catch (Exception e) {
             log.error("Error processing key change request: ", e);
-            ctx.put("RESPONSE_CODE", "96");
+            ctx.put("RESPONSE_CODE", DeadlineParticipant.failureResponseCode(ctx, "96"));
             return PREPARED | NO_JOIN | READONLY;
         }
     }
@@ -135,11 +147,14 @@ public class KeyChangeParticipant implements TransactionParticipant {
             log.info("Key distribution prepared successfully: rotationId={}, terminalId={}, keyType={}",
                     rotationResponse.getRotationId(), terminalId, keyType);
 
+            // Track progress if the terminal is part of a rotation campaign
+            getKeyRotationCampaignService().onKeyRequested(terminalId, keyType);
+
             return PREPARED | NO_JOIN | READONLY;
 
         } catch (Exception e) {
             log.error("Failed to process key request: {}", e.getMessage(), e);
-            ctx.put("RESPONSE_CODE", "96");
+            ctx.put("RESPONSE_CODE", DeadlineParticipant.failureResponseCode(ctx, "96"));
             return PREPARED | NO_JOIN | READONLY;
         }
     }
@@ -1,5 +1,8 @@
 package com.artivisi.atm.jpos.participant;
 
+import com.artivisi.atm.jpos.SpringBeanFactory;
+import com.artivisi.atm.jpos.service.TransactionMatchIndex;
+import com.artivisi.atm.jpos.util.MessageTypes;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
@@ -15,18 +18,32 @@ import java.io.Serializable;
  * Routing Logic:
  * - MTI 0800 + Field 70 (Network Mgmt Code) → NetworkManagement group (sign-on/sign-off)
  * - MTI 0800 + Field 53 (Security Control) → KeyChange group (key rotation)
- * - MTI 0200 → FinancialTransaction group (balance inquiry, withdrawal)
+ * - MTI 0200/0201 → FinancialTransaction group (balance inquiry, mini-statement, withdrawal)
+ * - MTI 0200/0201 repeating a completed request → Duplicate group (original response, not processed again)
+ * - MTI 0200/0201 repeating a request in progress or reversed → no group, RC 94 (duplicate transmission)
+ * - MTI 0400/0401/0420/0421 → Reversal group
+ *
+ * Repeats are matched by terminal, STAN and transmission date-time in TransactionMatchIndex:
+ * a new request is registered there (MATCH_ENTRY) and its outcome recorded by
+ * TransactionMatchParticipant. MacVerificationParticipant runs before this selector; a request
+ * already declined (MAC failure, not signed on, deadline) is answered without a group and is not
+ * registered, so a forged message cannot claim the key of the genuine one.
  *
  * This enables:
- * - Reusable participants (e.g., MacVerificationParticipant in multiple groups)
+ * - Reusable participants (e.g., DeadlineParticipant in several places)
  * - Clear separation of concerns
  * - Easy-to-read XML configuration
  *
  * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
+ * Spring beans are accessed via SpringBeanFactory.
  */
 @Slf4j
 public class MTISelector implements GroupSelector {
 
+    private TransactionMatchIndex getMatchIndex() {
+        return SpringBeanFactory.getBean(TransactionMatchIndex.class);
+    }
+
     /**
      * Select the appropriate participant group based on message type.
      * Called by TransactionManager during the prepare phase.
@@ -54,9 +71,13 @@ public class MTISelector implements GroupSelector {
                 case "0800":
                     return selectNetworkManagementGroup(request);
 
-                case "0200":
-                    log.info("Routing to FinancialTransaction group: MTI={}", mti);
-                    return "FinancialTransaction";
+                case MessageTypes.FINANCIAL_REQUEST, MessageTypes.FINANCIAL_REQUEST_REPEAT:
+                    return selectFinancialGroup(ctx, request);
+
+                case MessageTypes.REVERSAL_REQUEST, MessageTypes.REVERSAL_REQUEST_REPEAT,
+                     MessageTypes.REVERSAL_ADVICE, MessageTypes.REVERSAL_ADVICE_REPEAT:
+                    log.info("Routing to Reversal group: MTI={}", mti);
+                    return "Reversal";
 
                 default:
                     log.warn("Unsupported MTI: {}", mti);
@@ -71,6 +92,46 @@ public class MTISelector implements GroupSelector {
         }
     }
 
+    /**
+     * Select the group of a financial request (0200/0201): new requests are processed, repeats are
+     * answered from the original.
+     *
+     * @param ctx Transaction context, receives MATCH_ENTRY or ORIGINAL_ENTRY
+     * @param request The ISO-8583 message
+     * @return Group name, or null for a request already declined or, with RC 94, a repeat that cannot be answered
+     */
+    private String selectFinancialGroup(Context ctx, ISOMsg request) throws ISOException {
+        String mti = request.getMTI();
+        if (ctx.get("RESPONSE_CODE") != null) {
+            log.warn("Financial request declined before matching: MTI={}, RC={}", mti, ctx.get("RESPONSE_CODE"));
+            return null;
+        }
+        TransactionMatchIndex.Key key = TransactionMatchIndex.Key.of(request);
+        if (key == null) {
+            log.info("Routing to FinancialTransaction group: MTI={} (no STAN or transmission date-time to match)", mti);
+            return "FinancialTransaction";
+        }
+
+        TransactionMatchIndex.Match match = getMatchIndex().register(key, MessageTypes.isRepeat(mti));
+        if (!match.duplicate()) {
+            ctx.put("MATCH_ENTRY", match.entry());
+            log.info("Routing to FinancialTransaction group: MTI={}", mti);
+            return "FinancialTransaction";
+        }
+
+        TransactionMatchIndex.State state = match.entry().getState();
+        if (state == TransactionMatchIndex.State.COMPLETED) {
+            ctx.put("ORIGINAL_ENTRY", match.entry());
+            log.info("Routing to Duplicate group: MTI={} repeats {}", mti, key);
+            return "Duplicate";
+        }
+
+        // In progress: the original's response is on its way. Reversed: must not be processed any more.
+        log.warn("Duplicate transmission: MTI={} repeats {} ({})", mti, key, state);
+        ctx.put("RESPONSE_CODE", "94");
+        return null;
+    }
+
     /**
      * Select appropriate group for network management messages (0800).
      * Determines routing based on presence of specific fields.
@@ -1,19 +1,15 @@
 package com.artivisi.atm.jpos.participant;
 
 import java.io.Serializable;
-import java.util.List;
 
-import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
 import org.jpos.transaction.Context;
 import org.jpos.transaction.TransactionParticipant;
 
-import com.artivisi.atm.config.HsmProperties;
 import com.artivisi.atm.entity.CryptoKey;
 import com.artivisi.atm.jpos.SpringBeanFactory;
-import com.artivisi.atm.service.CryptoKeyService;
-import com.artivisi.atm.util.AesCmacUtil;
-import com.artivisi.atm.util.CryptoUtil;
+import com.artivisi.atm.jpos.service.ChannelRegistry;
+import com.artivisi.atm.jpos.service.TerminalMacService;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -21,17 +17,18 @@ import lombok.extern.slf4j.Slf4j;
  * jPOS TransactionParticipant for MAC (Message Authentication Code) verification.
  * Verifies MAC in field 64 for incoming requests and generates MAC for responses.
  * Supports AES-CMAC and HMAC-SHA256 (truncated to 16 bytes).
+ * Key lookup and derivation are delegated to TerminalMacService (cached keys).
  * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
  */
 @Slf4j
 public class MacVerificationParticipant implements TransactionParticipant {
 
-    private HsmProperties getHsmProperties() {
-        return SpringBeanFactory.getBean(HsmProperties.class);
+    private TerminalMacService getTerminalMacService() {
+        return SpringBeanFactory.getBean(TerminalMacService.class);
     }
 
-    private CryptoKeyService getCryptoKeyService() {
-        return SpringBeanFactory.getBean(CryptoKeyService.class);
+    private ChannelRegistry getChannelRegistry() {
+        return SpringBeanFactory.getBean(ChannelRegistry.class);
     }
 
     /**
@@ -76,23 +73,6 @@ public class MacVerificationParticipant implements TransactionParticipant {
         }
     }
 
-    /**
-     * Try to verify MAC with a specific key.
-     */
-    private boolean tryVerifyMacWithKey(byte[] data, byte[] receivedMac, CryptoKey key, HsmProperties.MacAlgorithm algorithm) {
-        byte[] keyBytes = CryptoUtil.hexToBytes(key.getKeyValue());
-        String bankUuid = key.getBankUuid();
-
-        return switch (algorithm) {
-            case AES_CMAC -> AesCmacUtil.verifyMacWithKeyDerivation(data, receivedMac, keyBytes, bankUuid);
-            case HMAC_SHA256_TRUNCATED -> {
-                String context = "TSK:" + bankUuid + ":MAC";
-                byte[] tskOperationalKey = CryptoUtil.deriveKeyFromParent(keyBytes, context, 128);
-                yield AesCmacUtil.verifyHmacSha256Truncated(data, receivedMac, tskOperationalKey);
-            }
-        };
-    }
-
     @Override
     public int prepare(long id, Serializable context) {
         Context ctx = (Context) context;
@@ -105,8 +85,8 @@ public class MacVerificationParticipant implements TransactionParticipant {
                 return PREPARED | NO_JOIN | READONLY;
             }
 
-            HsmProperties.Mac macConfig = getHsmProperties().getMac();
-            if (macConfig == null || !macConfig.isVerifyEnabled()) {
+            TerminalMacService macService = getTerminalMacService();
+            if (!macService.isVerifyEnabled()) {
                 log.debug("MAC verification disabled, skipping");
                 return PREPARED | NO_JOIN | READONLY;
             }
@@ -121,12 +101,13 @@ public class MacVerificationParticipant implements TransactionParticipant {
             log.debug("Received MAC from field 64: {} bytes", receivedMac.length);
 
             // Build MAC data from message fields (excluding field 64)
-            byte[] macData = buildMacData(msg);
+            byte[] macData = macService.buildMacData(msg);
 
-            // Verify MAC based on configured algorithm
-            boolean macValid = verifyMac(macData, receivedMac, macConfig.getAlgorithm(), ctx);
+            // Verify MAC with ACTIVE key first, then PENDING keys (grace period)
+            String terminalId = getTerminalId(ctx);
+            Integer keyVersionUsed = macService.verify(terminalId, macData, receivedMac);
 
-            if (!macValid) {
+            if (keyVersionUsed == null) {
                 log.error("MAC verification failed for transaction {}", id);
                 ctx.put("RESPONSE_CODE", "96"); // System malfunction
                 return PREPARED | NO_JOIN | READONLY;
@@ -134,6 +115,11 @@ public class MacVerificationParticipant implements TransactionParticipant {
 
             log.info("MAC verification successful for transaction {}", id);
             ctx.put("MAC_VERIFIED", true);
+            // Track key version so the response MAC uses the same key
+            // Note: PENDING key will only be activated upon explicit confirmation
+            // (operation codes 03/04) via KeyActivationParticipant
+            ctx.put("TSK_KEY_VERSION_USED", keyVersionUsed);
+            getChannelRegistry().recordKeyVersion(terminalId, CryptoKey.KeyType.TSK, keyVersionUsed);
             // Remove NO_JOIN to allow commit() phase for response MAC generation
             return PREPARED | READONLY;
 
@@ -149,8 +135,8 @@ public class MacVerificationParticipant implements TransactionParticipant {
         // Generate MAC for response if enabled
         Context ctx = (Context) context;
         try {
-            HsmProperties.Mac macConfig = getHsmProperties().getMac();
-            if (macConfig == null || !macConfig.isGenerateEnabled()) {
+            TerminalMacService macService = getTerminalMacService();
+            if (!macService.isGenerateEnabled()) {
                 log.debug("MAC generation disabled, skipping");
                 return;
             }
@@ -162,10 +148,11 @@ public class MacVerificationParticipant implements TransactionParticipant {
             }
 
             // Build MAC data from response fields (excluding field 64)
-            byte[] macData = buildMacData(response);
+            byte[] macData = macService.buildMacData(response);
 
-            // Generate MAC
-            byte[] mac = generateMac(macData, macConfig.getAlgorithm(), ctx);
+            // Generate MAC with the same key version that verified the request
+            Integer keyVersionUsed = (Integer) ctx.get("TSK_KEY_VERSION_USED");
+            byte[] mac = macService.generate(getTerminalId(ctx), macData, keyVersionUsed);
 
             // Set MAC in field 64
             response.set(64, mac);
@@ -180,107 +167,4 @@ public class MacVerificationParticipant implements TransactionParticipant {
     public void abort(long id, Serializable context) {
         log.debug("MAC verification participant aborted for transaction: {}", id);
     }
-
-    /**
-     * Build MAC data from ISO message fields.
-     * Typically includes all fields except the MAC field itself (field 64).
-     */
-    private byte[] buildMacData(ISOMsg msg) throws ISOException {
-        // Clone message and remove MAC field
-        ISOMsg msgCopy = (ISOMsg) msg.clone();
-        msgCopy.unset(64);
-
-        // Pack the message to get raw bytes
-        byte[] packedMsg = msgCopy.pack();
-
-        log.debug("Built MAC data: {} bytes", packedMsg.length);
-        return packedMsg;
-    }
-
-    /**
-     * Verify MAC using configured algorithm with TSK key derivation.
-     * Tries ACTIVE key first, then PENDING keys if ACTIVE fails.
-     * Tracks which key version was used for MAC generation in response.
-     */
-    private boolean verifyMac(byte[] data, byte[] receivedMac, HsmProperties.MacAlgorithm algorithm, Context ctx) {
-        String terminalId = getTerminalId(ctx);
-
-        // Try ACTIVE key first
-        try {
-            CryptoKey activeKey = getCryptoKeyService().getActiveKey(terminalId, CryptoKey.KeyType.TSK);
-            if (tryVerifyMacWithKey(data, receivedMac, activeKey, algorithm)) {
-                log.debug("MAC verified with ACTIVE TSK key version: {}", activeKey.getKeyVersion());
-                ctx.put("TSK_KEY_VERSION_USED", activeKey.getKeyVersion());
-                return true;
-            }
-        } catch (Exception e) {
-            log.warn("Failed to verify MAC with ACTIVE key: {}", e.getMessage());
-        }
-
-        // Try PENDING keys (during grace period)
-        try {
-            List<CryptoKey> validKeys = getCryptoKeyService().getValidKeys(terminalId, CryptoKey.KeyType.TSK);
-            for (CryptoKey key : validKeys) {
-                if (key.getStatus() == CryptoKey.KeyStatus.PENDING) {
-                    if (tryVerifyMacWithKey(data, receivedMac, key, algorithm)) {
-                        log.info("MAC verified with PENDING TSK key version: {}",
-                                key.getKeyVersion());
-                        ctx.put("TSK_KEY_VERSION_USED", key.getKeyVersion());
-                        // Note: PENDING key will only be activated upon explicit confirmation
-                        // (operation codes 03/04) via KeyActivationParticipant
-                        return true;
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error trying PENDING keys: {}", e.getMessage(), e);
-        }
-
-        log.error("MAC verification failed with all available keys");
-        return false;
-    }
-
-    /**
-     * Generate MAC using configured algorithm with TSK key derivation.
-     * Uses the same key version that was used for request verification.
-     */
-    private byte[] generateMac(byte[] data, HsmProperties.MacAlgorithm algorithm, Context ctx) {
-        String terminalId = getTerminalId(ctx);
-
-        // Use the same key version that was used for request verification
-        Integer keyVersionUsed = (Integer) ctx.get("TSK_KEY_VERSION_USED");
-        CryptoKey tskKey;
-
-        if (keyVersionUsed != null) {
-            // Use the specific version that verified the request
-            log.debug("Generating MAC using TSK key version: {}", keyVersionUsed);
-            tskKey = getCryptoKeyService().getKeyByVersion(
-                    terminalId, CryptoKey.KeyType.TSK, keyVersionUsed);
-        } else {
-            // Fallback to active key if version not tracked
-            log.debug("Generating MAC using ACTIVE TSK key (no version tracked)");
-            tskKey = getCryptoKeyService().getActiveKey(terminalId, CryptoKey.KeyType.TSK);
-        }
-
-        byte[] tskMasterKeyBytes = CryptoUtil.hexToBytes(tskKey.getKeyValue());
-        String bankUuid = tskKey.getBankUuid();
-
-        log.debug("SERVER MAC generation details:");
-        log.debug("  MAC data length: {} bytes", data.length);
-        log.debug("  MAC data (first 32 bytes): {}", CryptoUtil.bytesToHex(java.util.Arrays.copyOf(data, Math.min(32, data.length))));
-        log.debug("  TSK key version: {}", tskKey.getKeyVersion());
-        log.debug("  TSK key status: {}", tskKey.getStatus());
-        log.debug("  Bank UUID: {}", bankUuid);
-
-        return switch (algorithm) {
-            case AES_CMAC -> AesCmacUtil.generateMacWithKeyDerivation(data, tskMasterKeyBytes, bankUuid);
-            case HMAC_SHA256_TRUNCATED -> {
-                // For HMAC, still use key derivation for consistency
-                String context = "TSK:" + bankUuid + ":MAC";
-                byte[] tskOperationalKey = CryptoUtil.deriveKeyFromParent(tskMasterKeyBytes, context, 128);
-                yield AesCmacUtil.generateHmacSha256Truncated(data, tskOperationalKey);
-            }
-        };
-    }
-
 }
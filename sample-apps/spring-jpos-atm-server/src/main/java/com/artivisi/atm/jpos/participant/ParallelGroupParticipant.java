@@ -0,0 +1,217 @@
+package com.artivisi.atm.jpos.participant;
+
+import com.artivisi.atm.util.Deadline;
+import lombok.extern.slf4j.Slf4j;
+import org.jdom2.Element;
+import org.jpos.core.ConfigurationException;
+import org.jpos.core.XmlConfigurable;
+import org.jpos.transaction.Context;
+import org.jpos.transaction.TransactionManager;
+import org.jpos.transaction.TransactionParticipant;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * jPOS TransactionParticipant that runs independent prepare stages concurrently.
+ *
+ * Nested participants are declared inside it in 20_txnmgr.xml (like jPOS Join):
+ * <pre>
+ * &lt;participant class="com.artivisi.atm.jpos.participant.ParallelGroupParticipant" realm="..."&gt;
+ *     &lt;participant class="...AccountValidationParticipant" /&gt;
+ *     &lt;participant class="...PinVerificationParticipant" /&gt;
+ * &lt;/participant&gt;
+ * </pre>
+ *
+ * Each stage prepares on its own virtual thread against a copy of the Context, so a stage never
+ * sees another stage's writes. When all stages are done, their outputs are merged into the Context
+ * in declaration order, up to and including the first stage that failed (ABORTED, exception, or an
+ * error RESPONSE_CODE). The result is the same as running the stages one after another, where the
+ * stages after a failure skip their work. When a stage fails, the stages declared after it are
+ * cancelled (interrupted) at once. Earlier stages still finish, because their outcome takes
+ * precedence. The executor is closed before prepare returns, so no stage outlives the transaction.
+ *
+ * Only for stages that do not read each other's output, nor need another stage to have passed: a
+ * cancelled stage may already have made its external call, so a gate such as MAC verification runs
+ * before the group, not in it. The transaction deadline is bound on every
+ * stage thread (see DeadlineParticipant). Stages that join the transaction get commit/abort calls
+ * in declaration order.
+ *
+ * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
+ */
+@Slf4j
+public class ParallelGroupParticipant implements TransactionParticipant, XmlConfigurable {
+
+    private TransactionManager mgr;
+    private String name = "parallel";
+    private final List<TransactionParticipant> stages = new ArrayList<>();
+
+    // Stages that joined each transaction, for commit/abort
+    private final Map<Long, List<TransactionParticipant>> joined = new ConcurrentHashMap<>();
+
+    public ParallelGroupParticipant() {
+    }
+
+    ParallelGroupParticipant(List<TransactionParticipant> stages) {
+        this.stages.addAll(stages);
+    }
+
+    /**
+     * Called by the TransactionManager before setConfiguration, to create the nested participants.
+     */
+    public void setTransactionManager(TransactionManager mgr) {
+        this.mgr = mgr;
+    }
+
+    @Override
+    public void setConfiguration(Element e) throws ConfigurationException {
+        if (mgr == null) {
+            throw new ConfigurationException("ParallelGroupParticipant must be deployed inside a TransactionManager");
+        }
+        if (e.getAttributeValue("realm") != null) {
+            name = e.getAttributeValue("realm");
+        }
+        for (Element child : e.getChildren("participant")) {
+            stages.add(mgr.createParticipant(child));
+        }
+        if (stages.isEmpty()) {
+            throw new ConfigurationException("ParallelGroupParticipant " + name + " has no participants");
+        }
+    }
+
+    @Override
+    public int prepare(long id, Serializable context) {
+        Context ctx = (Context) context;
+        Map<Object, Object> snapshot = new HashMap<>(ctx.getMap());
+        Deadline deadline = Deadline.current();
+
+        int count = stages.size();
+        StageResult[] results = new StageResult[count];
+        AtomicInteger failedAt = new AtomicInteger(count);
+        AtomicReferenceArray<Future<?>> futures = new AtomicReferenceArray<>(count);
+
+        long start = System.nanoTime();
+        try (ExecutorService scope = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                futures.set(index, scope.submit(() -> {
+                    // A stage declared after a failed one would have been skipped
+                    if (index > failedAt.get()) {
+                        return;
+                    }
+                    StageResult result = runStage(id, stages.get(index), snapshot, deadline);
+                    results[index] = result;
+                    if (result.failed()) {
+                        failedAt.accumulateAndGet(index, Math::min);
+                        cancelAfter(futures, failedAt.get());
+                    }
+                }));
+            }
+            // Stages may have failed before the later ones were submitted
+            cancelAfter(futures, failedAt.get());
+        }
+
+        int action = PREPARED | NO_JOIN | READONLY;
+        List<TransactionParticipant> members = new ArrayList<>();
+        for (int i = 0; i < count && i <= failedAt.get(); i++) {
+            StageResult result = results[i];
+            if (result == null) {
+                continue;
+            }
+            merge(ctx, snapshot, result.context());
+            if ((result.action() & NO_JOIN) == 0) {
+                members.add(stages.get(i));
+            }
+            if ((result.action() & READONLY) == 0) {
+                action &= ~READONLY;
+            }
+            if ((result.action() & PREPARED) == 0) {
+                action &= ~PREPARED;
+            }
+        }
+        if (!members.isEmpty()) {
+            joined.put(id, members);
+            action &= ~NO_JOIN;
+        }
+
+        log.debug("Parallel group {} prepared {} stages in {} ms, first failure: {}", name, count,
+                (System.nanoTime() - start) / 1_000_000, failedAt.get() < count ? failedAt.get() : "none");
+        return action;
+    }
+
+    @Override
+    public void commit(long id, Serializable context) {
+        List<TransactionParticipant> members = joined.remove(id);
+        if (members != null) {
+            members.forEach(p -> p.commit(id, context));
+        }
+    }
+
+    @Override
+    public void abort(long id, Serializable context) {
+        List<TransactionParticipant> members = joined.remove(id);
+        if (members != null) {
+            members.forEach(p -> p.abort(id, context));
+        }
+    }
+
+    private StageResult runStage(long id, TransactionParticipant stage, Map<Object, Object> snapshot, Deadline deadline) {
+        Context stageContext = new Context();
+        snapshot.forEach(stageContext::put);
+        Deadline.bind(deadline);
+        try {
+            int action = stage.prepare(id, stageContext);
+            String responseCode = stageContext.getString("RESPONSE_CODE");
+            boolean failed = (action & PREPARED) == 0
+                    || (responseCode != null && !"00".equals(responseCode)
+                        && !responseCode.equals(snapshot.get("RESPONSE_CODE")));
+            return new StageResult(action, stageContext, failed);
+        } catch (RuntimeException e) {
+            // Participants handle their own errors; an escaped exception fails the group like a 96
+            log.error("Stage {} of parallel group {} failed: ", stage.getClass().getSimpleName(), name, e);
+            stageContext.put("RESPONSE_CODE", DeadlineParticipant.failureResponseCode(stageContext, "96"));
+            return new StageResult(PREPARED | NO_JOIN | READONLY, stageContext, true);
+        } finally {
+            Deadline.clear();
+        }
+    }
+
+    private static void cancelAfter(AtomicReferenceArray<Future<?>> futures, int index) {
+        for (int i = index + 1; i < futures.length(); i++) {
+            Future<?> future = futures.get(i);
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Copy the entries a stage added, changed or removed into the transaction Context.
+     */
+    private static void merge(Context ctx, Map<Object, Object> snapshot, Context stageContext) {
+        Map<Object, Object> output = stageContext.getMap();
+        output.forEach((key, value) -> {
+            if (!Objects.equals(value, snapshot.get(key))) {
+                ctx.put(key, value);
+            }
+        });
+        for (Object key : snapshot.keySet()) {
+            if (!output.containsKey(key)) {
+                ctx.remove(key);
+            }
+        }
+    }
+
+    private record StageResult(int action, Context context, boolean failed) {
+    }
+}
@@ -1,6 +1,7 @@
 package com.artivisi.atm.jpos.participant;
 
 import java.io.Serializable;
+import java.math.BigDecimal;
 
 import org.jpos.iso.ISOMsg;
 import org.jpos.transaction.Context;
@@ -8,16 +9,24 @@ import org.jpos.transaction.TransactionParticipant;
 
 import com.artivisi.atm.config.HsmProperties;
 import com.artivisi.atm.entity.PinEncryptionAlgorithm;
+import com.artivisi.atm.exception.DependencyUnavailableException;
 import com.artivisi.atm.jpos.SpringBeanFactory;
+import com.artivisi.atm.jpos.util.MessageTypes;
 import com.artivisi.atm.service.BankService;
+import com.artivisi.atm.service.StandInService;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 
 /**
  * jPOS TransactionParticipant for PIN verification.
  * Supports AES-128 and AES-256 PIN blocks in field 123 (binary field, 32 bytes).
  * PIN verification is MANDATORY - transactions without PIN blocks will be rejected (response code 55).
  * This keeps jPOS layer minimal - business logic stays in service layer.
+ * If the HSM circuit is open, an eligible request is passed on in stand-in (STAND_IN = "hsm") instead of
+ * declined: see StandInService. A single failed HSM call (5xx, I/O error) with the circuit closed is
+ * declined with RC 96: the PIN is only skipped once the circuit breaker has decided the HSM is down.
  * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
  */
 @Slf4j
@@ -31,6 +40,10 @@ public class PinVerificationParticipant implements TransactionParticipant {
         return SpringBeanFactory.getBean(HsmProperties.class);
     }
 
+    private StandInService getStandInService() {
+        return SpringBeanFactory.getBean(StandInService.class);
+    }
+
     @Override
     public int prepare(long id, Serializable context) {
         Context ctx = (Context) context;
@@ -44,8 +57,8 @@ public class PinVerificationParticipant implements TransactionParticipant {
             }
 
             String mti = msg.getMTI();
-            // Only process financial transactions (0200), skip network management (0800)
-            if (!"0200".equals(mti)) {
+            // Only process financial transactions (0200/0201), skip network management (0800)
+            if (!MessageTypes.isFinancialRequest(mti)) {
                 log.debug("Skipping PIN verification for MTI: {}", mti);
                 return PREPARED | NO_JOIN | READONLY;
             }
@@ -106,12 +119,58 @@ public class PinVerificationParticipant implements TransactionParticipant {
             return PREPARED | NO_JOIN | READONLY;
 
         } catch (Exception e) {
+            if (isCircuitOpen(e) && standIn(ctx)) {
+                log.warn("HSM unavailable, PIN not verified - stand-in: {}", e.getMessage());
+                ctx.put("STAND_IN", "hsm");
+                return PREPARED | NO_JOIN | READONLY;
+            }
+            if (isCircuitOpen(e) || isHsmError(e)) {
+                log.error("PIN verification failed, HSM error: {}", e.getMessage());
+                ctx.put("RESPONSE_CODE", DeadlineParticipant.failureResponseCode(ctx, "96"));
+                return PREPARED | NO_JOIN | READONLY;
+            }
             log.error("PIN verification failed: {}", e.getMessage());
-            ctx.put("RESPONSE_CODE", "55");
+            ctx.put("RESPONSE_CODE", DeadlineParticipant.failureResponseCode(ctx, "55"));
             return PREPARED | NO_JOIN | READONLY;
         }
     }
 
+    private boolean standIn(Context ctx) {
+        try {
+            ISOMsg msg = (ISOMsg) ctx.get("REQUEST");
+            String amount = msg.getString(4);
+            return getStandInService().eligible(msg.getString(3),
+                    amount != null && !amount.isEmpty() ? new BigDecimal(amount).movePointLeft(2) : null);
+        } catch (Exception e) {
+            log.debug("Not eligible for stand-in: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the HSM circuit breaker is open: the HSM is considered down
+     */
+    private static boolean isCircuitOpen(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DependencyUnavailableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if this HSM call failed (I/O error, server error), as opposed to an invalid PIN
+     */
+    private static boolean isHsmError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ResourceAccessException || cause instanceof HttpServerErrorException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void commit(long id, Serializable context) {
     }
@@ -1,5 +1,6 @@
 package com.artivisi.atm.jpos.participant;
 
+import com.artivisi.atm.jpos.util.ResponseTemplates;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
@@ -11,6 +12,7 @@ import java.math.BigDecimal;
 
 /**
  * jPOS TransactionParticipant for building ISO-8583 response messages.
+ * Starts from the per-MTI template in ResponseTemplates and adds response-specific fields.
  * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
  */
 @Slf4j
@@ -41,14 +43,9 @@ public class ResponseBuilderParticipant implements TransactionParticipant {
             }
 
             if (request != null) {
-                ISOMsg response = (ISOMsg) request.clone();
-                response.setDirection(ISOMsg.OUTGOING);
-
-                String mti = request.getMTI();
-                String responseMTI = mti.substring(0, 2) + "10";
-                response.setMTI(responseMTI);
-
-                response.set(39, responseCode);
+                // Echo-back fields only: PIN block, request MAC and account number stay out of the response
+                ISOMsg response = ResponseTemplates.createResponse(request, responseCode);
+                String responseMTI = response.getMTI();
 
                 // Handle key change response (MTI 0810)
                 if ("0810".equals(responseMTI)) {
@@ -75,6 +72,12 @@ public class ResponseBuilderParticipant implements TransactionParticipant {
                     response.set(54, "001360" + balanceStr);
                 }
 
+                // Mini-statement entries (see MiniStatementFormat)
+                String miniStatement = (String) ctx.get("MINI_STATEMENT");
+                if (miniStatement != null) {
+                    response.set(48, miniStatement);
+                }
+
                 String referenceNumber = (String) ctx.get("REFERENCE_NUMBER");
                 if (referenceNumber != null) {
                     String rrn = referenceNumber.length() > 12
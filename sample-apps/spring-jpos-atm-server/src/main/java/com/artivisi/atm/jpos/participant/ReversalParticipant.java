@@ -0,0 +1,165 @@
+package com.artivisi.atm.jpos.participant;
+
+import com.artivisi.atm.dto.ReversalRequest;
+import com.artivisi.atm.dto.ReversalResponse;
+import com.artivisi.atm.jpos.SpringBeanFactory;
+import com.artivisi.atm.jpos.service.TransactionMatchIndex;
+import com.artivisi.atm.jpos.util.MessageTypes;
+import com.artivisi.atm.service.LedgerService;
+import com.artivisi.atm.service.StandInService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOMsg;
+import org.jpos.transaction.Context;
+import org.jpos.transaction.TransactionParticipant;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * jPOS TransactionParticipant for reversals (0400/0420 and repeats 0401/0421).
+ *
+ * Finds the original through TransactionMatchIndex (field 90, or fields 11 and 7) and credits its
+ * withdrawal back once (LedgerService.reverse). Every reversal is acknowledged with RC 00, as
+ * the terminal keeps sending it until it is:
+ * - Approved withdrawal: credited, BALANCE set to the balance after the credit
+ * - Original declined, not a debit, or already reversed: nothing to credit
+ * - Original still in progress: credited as soon as it completes (see TransactionMatchParticipant)
+ * - Original unknown: recorded as reversed, so the original is declined with RC 94 if it arrives late
+ * - Withdrawal approved in stand-in: cancelled if not yet posted, otherwise credited on the ledger
+ * RC 96 only if the credit failed; the repeated reversal tries again.
+ *
+ * Full reversals only: replacement amounts (field 95) are not supported.
+ *
+ * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
+ * Spring beans are accessed via SpringBeanFactory.
+ */
+@Slf4j
+public class ReversalParticipant implements TransactionParticipant {
+
+    private TransactionMatchIndex getMatchIndex() {
+        return SpringBeanFactory.getBean(TransactionMatchIndex.class);
+    }
+
+    @Override
+    public int prepare(long id, Serializable context) {
+        Context ctx = (Context) context;
+        try {
+            ISOMsg msg = (ISOMsg) ctx.get("REQUEST");
+
+            if (msg == null || !MessageTypes.isReversal(msg.getMTI())) {
+                return PREPARED | NO_JOIN | READONLY;
+            }
+
+            // Skip processing if an error response code is already set by previous participants
+            String existingResponseCode = (String) ctx.get("RESPONSE_CODE");
+            if (existingResponseCode != null && !"00".equals(existingResponseCode)) {
+                log.debug("Skipping reversal - error response code already set: {}", existingResponseCode);
+                return PREPARED | NO_JOIN | READONLY;
+            }
+
+            TransactionMatchIndex.Key originalKey = TransactionMatchIndex.Key.original(msg);
+            if (originalKey == null) {
+                log.error("Reversal without terminal, STAN or transmission date-time");
+                ctx.put("RESPONSE_CODE", "30");
+                return PREPARED | NO_JOIN;
+            }
+
+            TransactionMatchIndex index = getMatchIndex();
+            TransactionMatchIndex.Entry original = index.lookup(originalKey);
+            if (original == null) {
+                TransactionMatchIndex.Entry tombstone = index.tombstone(originalKey);
+                if (tombstone.getState() == TransactionMatchIndex.State.REVERSED) {
+                    log.info("Reversal of unknown original {}: recorded", originalKey);
+                    count("unknown");
+                    // Not in the index after a restart, but maybe still in the stand-in journal
+                    reverseStandIn(originalKey, TransactionMatchIndex.Key.of(msg))
+                            .ifPresent(response -> ctx.put("BALANCE", response.getBalanceAfter()));
+                    ctx.put("RESPONSE_CODE", "00");
+                    return PREPARED | NO_JOIN;
+                }
+                // The original was registered meanwhile
+                original = tombstone;
+            }
+
+            reverse(original, TransactionMatchIndex.Key.of(msg))
+                    .ifPresent(response -> ctx.put("BALANCE", response.getBalanceAfter()));
+            ctx.put("RESPONSE_CODE", "00");
+            return PREPARED | NO_JOIN;
+
+        } catch (Exception e) {
+            log.error("Error processing reversal: ", e);
+            ctx.put("RESPONSE_CODE", DeadlineParticipant.failureResponseCode(ctx, "96"));
+            return PREPARED | NO_JOIN;
+        }
+    }
+
+    /**
+     * Apply a reversal to its original: credit the withdrawal, or mark the reversal pending.
+     *
+     * @param reversalKey Key of the reversal message, journaled on the REVERSAL row
+     * @return Committed credit, or empty if there was nothing to credit now
+     */
+    static Optional<ReversalResponse> reverse(TransactionMatchIndex.Entry original,
+                                              TransactionMatchIndex.Key reversalKey) {
+        TransactionMatchIndex.ReversalAction action = original.requestReversal(reversalKey);
+        count(action.name().toLowerCase());
+        if (action != TransactionMatchIndex.ReversalAction.REVERSE) {
+            log.info("Reversal of {}: {}", original.getKey(), action);
+            if (action == TransactionMatchIndex.ReversalAction.NONE && "00".equals(original.getResponseCode())
+                    && original.getJournalId() == null) {
+                // Approved without a journal row: a stand-in withdrawal, or not a debit. Idempotent, so
+                // a repeated reversal tries again if this one fails.
+                return reverseStandIn(original.getKey(), reversalKey);
+            }
+            return Optional.empty();
+        }
+
+        try {
+            Optional<ReversalResponse> response = credit(original.getJournalId(), original.getTransactionDate(),
+                    reversalKey);
+            original.reversed();
+            return response;
+        } catch (RuntimeException e) {
+            original.reversalFailed();
+            throw e;
+        }
+    }
+
+    private static void count(String result) {
+        SpringBeanFactory.getBean(MeterRegistry.class).counter("matching.reversals", "result", result).increment();
+    }
+
+    /**
+     * Cancel a stand-in withdrawal before it is posted, or credit it once posted.
+     */
+    private static Optional<ReversalResponse> reverseStandIn(TransactionMatchIndex.Key originalKey,
+                                                             TransactionMatchIndex.Key reversalKey) {
+        return SpringBeanFactory.getBean(StandInService.class)
+                .cancel(originalKey.institutionId(), originalKey.terminalId(), originalKey.stan(),
+                        originalKey.transmissionDateTime())
+                .flatMap(posted -> credit(posted.journalId(), posted.transactionDate(), reversalKey));
+    }
+
+    private static Optional<ReversalResponse> credit(Long journalId, LocalDateTime originalDate,
+                                                     TransactionMatchIndex.Key reversalKey) {
+        return SpringBeanFactory.getBean(LedgerService.class)
+                .reverse(ReversalRequest.builder()
+                        .journalId(journalId)
+                        .originalDate(originalDate)
+                        .institutionId(reversalKey != null ? reversalKey.institutionId() : null)
+                        .terminalId(reversalKey != null ? reversalKey.terminalId() : null)
+                        .stan(reversalKey != null ? reversalKey.stan() : null)
+                        .transmissionDateTime(reversalKey != null ? reversalKey.transmissionDateTime() : null)
+                        .build());
+    }
+
+    @Override
+    public void commit(long id, Serializable context) {
+    }
+
+    @Override
+    public void abort(long id, Serializable context) {
+    }
+}
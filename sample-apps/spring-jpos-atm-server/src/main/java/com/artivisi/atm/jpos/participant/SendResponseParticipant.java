@@ -1,5 +1,9 @@
 package com.artivisi.atm.jpos.participant;
 
+import com.artivisi.atm.jpos.service.TerminalSession;
+import com.artivisi.atm.jpos.service.TransactionConcurrencyLimiter;
+import com.artivisi.atm.jpos.util.ResponseTemplates;
+import com.artivisi.atm.util.Deadline;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
@@ -43,6 +47,8 @@ public class SendResponseParticipant implements TransactionParticipant {
 
         } catch (Exception e) {
             log.error("Error sending response: ", e);
+        } finally {
+            completeRequest(ctx);
         }
     }
 
@@ -60,18 +66,12 @@ public class SendResponseParticipant implements TransactionParticipant {
             if (response == null) {
                 ISOMsg request = (ISOMsg) ctx.get("REQUEST");
                 if (request != null) {
-                    response = (ISOMsg) request.clone();
-                    response.setDirection(ISOMsg.OUTGOING);
-                    String mti = request.getMTI();
-                    String responseMTI = mti.substring(0, 2) + "10";
-                    response.setMTI(responseMTI);
-
                     String responseCode = (String) ctx.get("RESPONSE_CODE");
                     if (responseCode == null) {
                         responseCode = "96"; // System error
                     }
-                    response.set(39, responseCode);
-                    log.info("Built error response in abort: MTI={} RC={}", responseMTI, responseCode);
+                    response = ResponseTemplates.createResponse(request, responseCode);
+                    log.info("Built error response in abort: MTI={} RC={}", response.getMTI(), responseCode);
                 }
             }
 
@@ -87,6 +87,24 @@ public class SendResponseParticipant implements TransactionParticipant {
 
         } catch (Exception e) {
             log.error("Error sending abort response: ", e);
+        } finally {
+            completeRequest(ctx);
+        }
+    }
+
+    /**
+     * Release the in-flight slot and transaction permit taken by IsoRequestListener for this request,
+     * and unbind the deadline: work after the response (key activation) is not bounded by it.
+     */
+    private void completeRequest(Context ctx) {
+        Deadline.clear();
+        TerminalSession session = (TerminalSession) ctx.remove("TERMINAL_SESSION");
+        if (session != null) {
+            session.requestCompleted();
+        }
+        TransactionConcurrencyLimiter.Permit permit = (TransactionConcurrencyLimiter.Permit) ctx.remove("TXN_PERMIT");
+        if (permit != null) {
+            permit.release();
         }
     }
 }
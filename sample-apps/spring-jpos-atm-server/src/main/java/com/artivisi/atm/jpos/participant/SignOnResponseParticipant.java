@@ -1,5 +1,6 @@
 package com.artivisi.atm.jpos.participant;
 
+import com.artivisi.atm.jpos.util.ResponseTemplates;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
@@ -18,7 +19,7 @@ import java.io.Serializable;
  *
  * Sends 0810 response with:
  * - Field 39 = "00" (approved)
- * - Echoed fields: 11 (STAN), 41 (Terminal ID), 42 (Institution ID), 70 (Network Mgmt Code)
+ * - Echoed fields: 7, 11 (STAN), 12, 13, 41 (Terminal ID), 42 (Institution ID), 70 (Network Mgmt Code)
  *
  * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
  */
@@ -87,25 +88,8 @@ public class SignOnResponseParticipant implements TransactionParticipant {
      * Build sign-on response (0810).
      */
     private void buildSignOnResponse(Context ctx, ISOMsg request) throws ISOException {
-        ISOMsg response = (ISOMsg) request.clone();
-        response.setMTI("0810");
-
-        // Field 39: Response code = "00" (approved)
-        response.set(39, "00");
-
-        // Echo fields from request
-        if (request.hasField(11)) {
-            response.set(11, request.getString(11)); // STAN
-        }
-        if (request.hasField(41)) {
-            response.set(41, request.getString(41)); // Terminal ID
-        }
-        if (request.hasField(42)) {
-            response.set(42, request.getString(42)); // Institution ID
-        }
-        if (request.hasField(70)) {
-            response.set(70, request.getString(70)); // Network management code
-        }
+        // Field 39: Response code = "00" (approved), echo fields per ResponseTemplates
+        ISOMsg response = ResponseTemplates.createResponse(request, "00");
 
         ctx.put("RESPONSE", response);
         ctx.put("RESPONSE_CODE", "00");
@@ -117,25 +101,8 @@ public class SignOnResponseParticipant implements TransactionParticipant {
      * Build sign-off response (0810).
      */
     private void buildSignOffResponse(Context ctx, ISOMsg request) throws ISOException {
-        ISOMsg response = (ISOMsg) request.clone();
-        response.setMTI("0810");
-
-        // Field 39: Response code = "00" (approved)
-        response.set(39, "00");
-
-        // Echo fields from request
-        if (request.hasField(11)) {
-            response.set(11, request.getString(11)); // STAN
-        }
-        if (request.hasField(41)) {
-            response.set(41, request.getString(41)); // Terminal ID
-        }
-        if (request.hasField(42)) {
-            response.set(42, request.getString(42)); // Institution ID
-        }
-        if (request.hasField(70)) {
-            response.set(70, request.getString(70)); // Network management code
-        }
+        // Field 39: Response code = "00" (approved), echo fields per ResponseTemplates
+        ISOMsg response = ResponseTemplates.createResponse(request, "00");
 
         ctx.put("RESPONSE", response);
         ctx.put("RESPONSE_CODE", "00");
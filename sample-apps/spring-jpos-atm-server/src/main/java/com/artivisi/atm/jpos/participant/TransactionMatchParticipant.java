@@ -0,0 +1,78 @@
+package com.artivisi.atm.jpos.participant;
+
+import com.artivisi.atm.jpos.service.TransactionMatchIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.transaction.Context;
+import org.jpos.transaction.TransactionParticipant;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * jPOS TransactionParticipant that records the outcome of a financial request on its
+ * TransactionMatchIndex entry (MATCH_ENTRY, registered by MTISelector), so a repeat gets the same
+ * response and a reversal finds the withdrawal to credit.
+ *
+ * Deployed first in the FinancialTransaction group: it joins in prepare, so its commit runs before
+ * SendResponseParticipant's and a repeat after the response always finds the outcome. A reversal
+ * received while the request was in progress is applied once the outcome is known, on its own
+ * virtual thread: the credit is a database round trip and must not delay the response.
+ *
+ * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
+ */
+@Slf4j
+public class TransactionMatchParticipant implements TransactionParticipant {
+
+    @Override
+    public int prepare(long id, Serializable context) {
+        Context ctx = (Context) context;
+        if (ctx.get("MATCH_ENTRY") == null) {
+            // No STAN or transmission date-time: not matched
+            return PREPARED | NO_JOIN | READONLY;
+        }
+        return PREPARED | READONLY;
+    }
+
+    @Override
+    public void commit(long id, Serializable context) {
+        complete((Context) context, "00");
+    }
+
+    @Override
+    public void abort(long id, Serializable context) {
+        complete((Context) context, "96");
+    }
+
+    /**
+     * @param defaultResponseCode Response code sent when none is set (see ResponseBuilderParticipant
+     *                            and SendResponseParticipant)
+     */
+    private void complete(Context ctx, String defaultResponseCode) {
+        TransactionMatchIndex.Entry entry = (TransactionMatchIndex.Entry) ctx.get("MATCH_ENTRY");
+        if (entry == null) {
+            return;
+        }
+        String responseCode = (String) ctx.get("RESPONSE_CODE");
+        TransactionMatchIndex.Key pendingReversal = entry.complete(
+                responseCode != null ? responseCode : defaultResponseCode,
+                (String) ctx.get("REFERENCE_NUMBER"),
+                (BigDecimal) ctx.get("BALANCE"),
+                (String) ctx.get("MINI_STATEMENT"),
+                (Long) ctx.get("JOURNAL_ID"),
+                (LocalDateTime) ctx.get("TRANSACTION_DATE"));
+
+        if (pendingReversal != null) {
+            Thread.ofVirtual().name("pending-reversal").start(() -> applyReversal(entry, pendingReversal));
+        }
+    }
+
+    private static void applyReversal(TransactionMatchIndex.Entry entry, TransactionMatchIndex.Key reversalKey) {
+        try {
+            ReversalParticipant.reverse(entry, reversalKey);
+        } catch (Exception e) {
+            // The terminal repeats the reversal until it gets a response code 00 from a later attempt
+            log.error("Pending reversal of {} failed: ", entry.getKey(), e);
+        }
+    }
+}
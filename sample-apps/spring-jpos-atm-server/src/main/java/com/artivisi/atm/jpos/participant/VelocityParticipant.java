@@ -0,0 +1,96 @@
+package com.artivisi.atm.jpos.participant;
+
+import com.artivisi.atm.exception.VelocityLimitExceededException;
+import com.artivisi.atm.jpos.SpringBeanFactory;
+import com.artivisi.atm.jpos.util.MessageTypes;
+import com.artivisi.atm.service.VelocityService;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOMsg;
+import org.jpos.transaction.Context;
+import org.jpos.transaction.TransactionParticipant;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * jPOS TransactionParticipant for withdrawal velocity limits, before the debit.
+ * Reserves the amount on the card and account counters (see VelocityService), or declines with
+ * RC 61 (amount limit) or RC 65 (count limit). The reservation is kept when the debit commits and
+ * released when it is declined (RC other than 00) or the transaction aborts.
+ * Also puts CARD_HASH in the context for the journal.
+ * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
+ * Spring beans are accessed via SpringBeanFactory.
+ */
+@Slf4j
+public class VelocityParticipant implements TransactionParticipant {
+
+    private VelocityService getVelocityService() {
+        return SpringBeanFactory.getBean(VelocityService.class);
+    }
+
+    @Override
+    public int prepare(long id, Serializable context) {
+        Context ctx = (Context) context;
+        try {
+            ISOMsg msg = (ISOMsg) ctx.get("REQUEST");
+
+            if (msg == null || !MessageTypes.isFinancialRequest(msg.getMTI()) || !"010000".equals(msg.getString(3))) {
+                return PREPARED | NO_JOIN | READONLY;
+            }
+
+            // Skip processing if an error response code is already set by previous participants
+            String existingResponseCode = (String) ctx.get("RESPONSE_CODE");
+            if (existingResponseCode != null && !"00".equals(existingResponseCode)) {
+                log.debug("Skipping velocity check - error response code already set: {}", existingResponseCode);
+                return PREPARED | NO_JOIN | READONLY;
+            }
+
+            String accountNumber = msg.getString(102);
+            String amountStr = msg.getString(4);
+            if (accountNumber == null || accountNumber.isEmpty() || amountStr == null || amountStr.isEmpty()) {
+                // Declined with RC 30 by WithdrawalParticipant
+                return PREPARED | NO_JOIN | READONLY;
+            }
+
+            VelocityService velocityService = getVelocityService();
+            String pan = msg.getString(2);
+            String cardHash = pan != null && !pan.isEmpty() ? velocityService.hashPan(pan) : null;
+            ctx.put("CARD_HASH", cardHash);
+
+            BigDecimal amount = new BigDecimal(amountStr).movePointLeft(2);
+            ctx.put("VELOCITY_RESERVATION", velocityService.reserve(cardHash, accountNumber, amount));
+
+            return PREPARED;
+
+        } catch (VelocityLimitExceededException e) {
+            log.warn("Velocity limit exceeded: {}", e.getMessage());
+            ctx.put("RESPONSE_CODE", e.getLimit() == VelocityLimitExceededException.Limit.COUNT ? "65" : "61");
+            return PREPARED | NO_JOIN;
+        } catch (Exception e) {
+            log.error("Error checking velocity limits: ", e);
+            ctx.put("RESPONSE_CODE", DeadlineParticipant.failureResponseCode(ctx, "96"));
+            return PREPARED | NO_JOIN;
+        }
+    }
+
+    @Override
+    public void commit(long id, Serializable context) {
+        Context ctx = (Context) context;
+        // Declined debits (RC 51, 62, 68...) still commit the jPOS transaction
+        if (!"00".equals(ctx.get("RESPONSE_CODE"))) {
+            release(ctx);
+        }
+    }
+
+    @Override
+    public void abort(long id, Serializable context) {
+        release((Context) context);
+    }
+
+    private void release(Context ctx) {
+        VelocityService.Reservation reservation = (VelocityService.Reservation) ctx.remove("VELOCITY_RESERVATION");
+        if (reservation != null) {
+            getVelocityService().release(reservation);
+        }
+    }
+}
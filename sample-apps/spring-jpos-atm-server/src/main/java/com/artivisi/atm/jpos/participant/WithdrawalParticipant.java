@@ -4,9 +4,13 @@ import com.artivisi.atm.dto.WithdrawalRequest;
 import com.artivisi.atm.dto.WithdrawalResponse;
 import com.artivisi.atm.exception.AccountNotActiveException;
 import com.artivisi.atm.exception.AccountNotFoundException;
+import com.artivisi.atm.exception.DependencyUnavailableException;
 import com.artivisi.atm.exception.InsufficientBalanceException;
+import com.artivisi.atm.exception.VelocityLimitExceededException;
 import com.artivisi.atm.jpos.SpringBeanFactory;
-import com.artivisi.atm.service.BankService;
+import com.artivisi.atm.jpos.util.MessageTypes;
+import com.artivisi.atm.service.LedgerService;
+import com.artivisi.atm.service.StandInService;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOMsg;
 import org.jpos.transaction.Context;
@@ -17,14 +21,20 @@ import java.math.BigDecimal;
 
 /**
  * jPOS TransactionParticipant for withdrawal operations.
+ * In stand-in (HSM unavailable, or the database unavailable before the debit was sent), an eligible
+ * withdrawal is approved by StandInService and posted to the ledger later.
  * Note: This class is NOT managed by Spring - it's instantiated by jPOS Q2.
  * Spring beans are accessed via SpringBeanFactory.
  */
 @Slf4j
 public class WithdrawalParticipant implements TransactionParticipant {
 
-    private BankService getBankService() {
-        return SpringBeanFactory.getBean(BankService.class);
+    private LedgerService getLedgerService() {
+        return SpringBeanFactory.getBean(LedgerService.class);
+    }
+
+    private StandInService getStandInService() {
+        return SpringBeanFactory.getBean(StandInService.class);
     }
 
     @Override
@@ -39,8 +49,8 @@ public class WithdrawalParticipant implements TransactionParticipant {
             }
 
             String mti = msg.getMTI();
-            // Only process financial transactions (0200), skip network management (0800)
-            if (!"0200".equals(mti)) {
+            // Only process financial transactions (0200/0201), skip network management (0800)
+            if (!MessageTypes.isFinancialRequest(mti)) {
                 log.debug("Skipping withdrawal for MTI: {}", mti);
                 return PREPARED | NO_JOIN | READONLY;
             }
@@ -87,15 +97,25 @@ public class WithdrawalParticipant implements TransactionParticipant {
             WithdrawalRequest request = WithdrawalRequest.builder()
                     .accountNumber(accountNumber)
                     .amount(amount)
+                    .terminalId(trim(msg.getString(41)))
+                    .institutionId(trim(msg.getString(42)))
+                    .cardHash((String) ctx.get("CARD_HASH"))
+                    .stan(msg.getString(11))
+                    .transmissionDateTime(msg.getString(7))
                     .build();
 
-            WithdrawalResponse response = getBankService().withdraw(request);
+            WithdrawalResponse response = ctx.get("STAND_IN") != null
+                    ? getStandInService().withdraw(request)
+                    : withdraw(ctx, request, processingCode);
 
             ctx.put("WITHDRAWAL_AMOUNT", response.getWithdrawalAmount());
             ctx.put("BALANCE_BEFORE", response.getBalanceBefore());
             ctx.put("BALANCE_AFTER", response.getBalanceAfter());
             ctx.put("RESPONSE_CODE", "00");
             ctx.put("REFERENCE_NUMBER", response.getReferenceNumber());
+            // Withdrawal to credit back if reversed (see TransactionMatchParticipant); none yet in stand-in
+            ctx.put("JOURNAL_ID", response.getJournalId());
+            ctx.put("TRANSACTION_DATE", response.getTimestamp());
 
             return PREPARED;
 
@@ -111,13 +131,39 @@ public class WithdrawalParticipant implements TransactionParticipant {
             log.error("Account not active: {}", e.getMessage());
             ctx.put("RESPONSE_CODE", "62");
             return PREPARED | NO_JOIN;
+        } catch (VelocityLimitExceededException e) {
+            log.warn("Stand-in exposure exceeded: {}", e.getMessage());
+            ctx.put("RESPONSE_CODE", e.getLimit() == VelocityLimitExceededException.Limit.COUNT ? "65" : "61");
+            return PREPARED | NO_JOIN;
         } catch (Exception e) {
             log.error("Unexpected error in WithdrawalParticipant: ", e);
-            ctx.put("RESPONSE_CODE", "96");
+            // A debit that timed out against the deadline was rolled back
+            ctx.put("RESPONSE_CODE", DeadlineParticipant.failureResponseCode(ctx, "96"));
             return PREPARED | NO_JOIN;
         }
     }
 
+    /**
+     * Debit on the ledger, or approve in stand-in if the database is unavailable and the debit was not sent.
+     */
+    private WithdrawalResponse withdraw(Context ctx, WithdrawalRequest request, String processingCode) {
+        try {
+            return getLedgerService().withdraw(request);
+        } catch (DependencyUnavailableException e) {
+            StandInService standInService = getStandInService();
+            if (e.isCallMade() || !standInService.eligible(processingCode, request.getAmount())) {
+                throw e;
+            }
+            log.warn("Database unavailable, withdrawal in stand-in: {}", e.getMessage());
+            ctx.put("STAND_IN", "database");
+            return standInService.withdraw(request);
+        }
+    }
+
+    private static String trim(String value) {
+        return value != null ? value.trim() : null;
+    }
+
     @Override
     public void commit(long id, Serializable context) {
         log.info("Transaction {} committed", id);
@@ -0,0 +1,260 @@
+package com.artivisi.atm.jpos.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOChannel;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOFilter;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISORequestListener;
+import org.jpos.iso.ISOServerClientDisconnectEvent;
+import org.jpos.iso.ISOServerEventListener;
+import org.jpos.iso.ISOServerShutdownEvent;
+import org.jpos.iso.ServerChannel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketException;
+import java.util.EventObject;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ISO-8583 server with one virtual thread per connection.
+ *
+ * ISOServer runs each session on a platform thread from a bounded pool, so the number of
+ * connected terminals is limited by OS threads. Here an idle terminal is a virtual thread
+ * parked in channel.receive(): a few KB of heap, no OS thread. Thousands of persistent,
+ * mostly idle ATM connections are carried by the virtual thread scheduler's carrier pool
+ * (one carrier per core, -Djdk.virtualThreadScheduler.parallelism to bound it).
+ *
+ * Listener contract is the same as ISOServer:
+ * - ISORequestListeners are called in order until one returns true
+ * - ISOServerEventListeners receive ISOServerClientDisconnectEvent when a session ends
+ *   and ISOServerShutdownEvent on stop. ISOServerAcceptEvent requires an ISOServer
+ *   source and is not sent (no listener in this application uses it).
+ *
+ * Requires Java 24+ (JEP 491): BaseChannel.receive() blocks inside a synchronized block,
+ * which pins the carrier thread on earlier releases.
+ */
+@Slf4j
+public class VirtualThreadISOServer {
+
+    /** Pause after a failed accept, doubled on each consecutive failure up to the maximum */
+    static final long ACCEPT_BACKOFF_INITIAL_MS = 50;
+    static final long ACCEPT_BACKOFF_MAX_MS = 1000;
+
+    private final String name;
+    private final int port;
+    private final ServerChannel channelTemplate;
+    private final int maxSessions;
+    private final int backlog;
+
+    private final List<ISORequestListener> requestListeners = new CopyOnWriteArrayList<>();
+    private final List<ISOServerEventListener> eventListeners = new CopyOnWriteArrayList<>();
+    private final Set<ISOChannel> sessions = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile boolean ignoreISOExceptions;
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+
+    /**
+     * @param name Server name (used for thread names and logging)
+     * @param port Listen port (0 = ephemeral, see getLocalPort())
+     * @param channelTemplate Channel cloned for each accepted connection
+     * @param maxSessions Maximum concurrent connections; further connections are closed
+     * @param backlog Listen backlog (pending, not yet accepted connections)
+     */
+    public VirtualThreadISOServer(String name, int port, ServerChannel channelTemplate,
+                                  int maxSessions, int backlog) {
+        this.name = name;
+        this.port = port;
+        this.channelTemplate = channelTemplate;
+        this.maxSessions = maxSessions;
+        this.backlog = backlog;
+    }
+
+    public void addISORequestListener(ISORequestListener listener) {
+        requestListeners.add(listener);
+    }
+
+    public void addServerEventListener(ISOServerEventListener listener) {
+        eventListeners.add(listener);
+    }
+
+    public void setIgnoreISOExceptions(boolean ignoreISOExceptions) {
+        this.ignoreISOExceptions = ignoreISOExceptions;
+    }
+
+    /**
+     * Bind the listen socket and start accepting connections.
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port), backlog);
+        running = true;
+
+        acceptThread = Thread.ofVirtual()
+                .name(name + "-accept")
+                .start(this::acceptLoop);
+
+        log.info("Virtual thread ISO server '{}' listening on port {} (maxSessions={}, backlog={})",
+                name, serverSocket.getLocalPort(), maxSessions, backlog);
+    }
+
+    /**
+     * Stop accepting, close all sessions and notify event listeners.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.warn("Error closing server socket: {}", e.getMessage());
+        }
+        for (ISOChannel channel : sessions) {
+            close(channel);
+        }
+        if (acceptThread != null) {
+            acceptThread.interrupt();
+        }
+
+        fireEvent(new ISOServerShutdownEvent(this));
+        log.info("Virtual thread ISO server '{}' stopped: accepted={}, rejected={}",
+                name, acceptedCount.get(), rejectedCount.get());
+    }
+
+    private void acceptLoop() {
+        long backoffMillis = 0;
+        while (running) {
+            ServerChannel channel = (ServerChannel) channelTemplate.clone();
+            try {
+                channel.accept(serverSocket);
+                backoffMillis = 0;
+            } catch (IOException e) {
+                if (!running) {
+                    break;
+                }
+                // A persistent failure (e.g. out of file descriptors) would otherwise spin the accept thread
+                backoffMillis = backoffMillis == 0
+                        ? ACCEPT_BACKOFF_INITIAL_MS : Math.min(backoffMillis * 2, ACCEPT_BACKOFF_MAX_MS);
+                log.warn("Accept failed on '{}', retrying in {} ms: {}", name, backoffMillis, e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                continue;
+            }
+
+            if (sessions.size() >= maxSessions) {
+                rejectedCount.incrementAndGet();
+                log.warn("Max sessions reached ({}), rejecting connection: {}", maxSessions, channel.getName());
+                close(channel);
+                continue;
+            }
+
+            sessions.add(channel);
+            acceptedCount.incrementAndGet();
+            Thread.ofVirtual()
+                    .name(name + "-session-" + channel.getName())
+                    .start(() -> runSession(channel));
+        }
+    }
+
+    private void runSession(ServerChannel channel) {
+        log.debug("Session started: {}", channel.getName());
+        try {
+            while (running && channel.isConnected()) {
+                ISOMsg m;
+                try {
+                    m = channel.receive();
+                } catch (ISOFilter.VetoException e) {
+                    log.warn("Message vetoed on {}: {}", channel.getName(), e.getMessage());
+                    continue;
+                } catch (ISOException e) {
+                    if (!ignoreISOExceptions) {
+                        throw e;
+                    }
+                    log.warn("Invalid message on {}: {}", channel.getName(), e.getMessage());
+                    continue;
+                }
+
+                for (ISORequestListener listener : requestListeners) {
+                    if (listener.process(channel, m)) {
+                        break;
+                    }
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            log.debug("Session closed by peer: {}", channel.getName());
+        } catch (Exception e) {
+            if (running) {
+                log.warn("Session error on {}: {}", channel.getName(), e.getMessage());
+            }
+        } finally {
+            sessions.remove(channel);
+            close(channel);
+            fireEvent(new ISOServerClientDisconnectEvent(this, channel));
+        }
+    }
+
+    private void close(ISOChannel channel) {
+        try {
+            channel.disconnect();
+        } catch (IOException e) {
+            log.debug("Error closing {}: {}", channel.getName(), e.getMessage());
+        }
+    }
+
+    private void fireEvent(EventObject event) {
+        for (ISOServerEventListener listener : eventListeners) {
+            try {
+                listener.handleISOServerEvent(event);
+            } catch (Exception e) {
+                log.warn("Server event listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return Actual listen port (useful when started with port 0)
+     */
+    public int getLocalPort() {
+        ServerSocket socket = serverSocket;
+        return socket != null ? socket.getLocalPort() : port;
+    }
+
+    public int getConnectionCount() {
+        return sessions.size();
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,107 @@
+package com.artivisi.atm.jpos.server;
+
+import org.jdom2.Element;
+import org.jpos.core.ConfigurationException;
+import org.jpos.iso.ISOChannel;
+import org.jpos.iso.ISORequestListener;
+import org.jpos.iso.ISOServerEventListener;
+import org.jpos.iso.ServerChannel;
+import org.jpos.q2.QBeanSupport;
+import org.jpos.q2.QFactory;
+import org.jpos.q2.iso.ChannelAdaptor;
+
+/**
+ * Q2 wrapper for VirtualThreadISOServer - drop-in replacement for org.jpos.q2.iso.QServer.
+ *
+ * Reads the same deploy descriptor elements as QServer (10_qserver.xml):
+ * - attr port, maxSessions
+ * - channel (class, packager, properties)
+ * - request-listener and connection-listener (class, properties)
+ *
+ * Additional properties:
+ * - backlog: listen backlog for connection bursts, e.g. after a network outage (default 1000)
+ * - ignore-iso-exceptions: keep the session open on unparseable messages (default false)
+ *
+ * Selected with jpos.server.virtual-threads=true (see JposConfig).
+ */
+public class VirtualThreadQServer extends QBeanSupport implements VirtualThreadQServerMBean {
+
+    private int port;
+    private int maxSessions = 100;
+    private VirtualThreadISOServer server;
+
+    @Override
+    protected void initService() throws ConfigurationException {
+        Element persist = getPersist();
+        QFactory factory = getFactory();
+
+        Element channelElement = persist.getChild("channel");
+        if (channelElement == null) {
+            throw new ConfigurationException("channel element missing");
+        }
+        ISOChannel channel = new ChannelAdaptor().newChannel(channelElement, factory);
+        if (!(channel instanceof ServerChannel serverChannel)) {
+            throw new ConfigurationException("Channel must implement ServerChannel: " + channel.getClass().getName());
+        }
+
+        server = new VirtualThreadISOServer(getName(), port, serverChannel,
+                maxSessions, cfg.getInt("backlog", 1000));
+        server.setIgnoreISOExceptions(cfg.getBoolean("ignore-iso-exceptions", false));
+
+        for (Element e : persist.getChildren("request-listener")) {
+            server.addISORequestListener(newListener(factory, e));
+        }
+        for (Element e : persist.getChildren("connection-listener")) {
+            server.addServerEventListener(newListener(factory, e));
+        }
+    }
+
+    private <T> T newListener(QFactory factory, Element e) throws ConfigurationException {
+        T listener = factory.newInstance(QFactory.getAttributeValue(e, "class"));
+        factory.setLogger(listener, e);
+        factory.setConfiguration(listener, e);
+        if (!(listener instanceof ISORequestListener) && !(listener instanceof ISOServerEventListener)) {
+            throw new ConfigurationException("Not a listener: " + listener.getClass().getName());
+        }
+        return listener;
+    }
+
+    @Override
+    protected void startService() throws Exception {
+        server.start();
+    }
+
+    @Override
+    protected void stopService() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Override
+    public synchronized void setPort(int port) {
+        this.port = port;
+        setModified(true);
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public synchronized void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+        setModified(true);
+    }
+
+    @Override
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return server != null ? server.getConnectionCount() : 0;
+    }
+}
@@ -0,0 +1,19 @@
+package com.artivisi.atm.jpos.server;
+
+import org.jpos.q2.QBeanSupportMBean;
+
+/**
+ * JMX/Q2 attributes of VirtualThreadQServer (same names as QServer's port and maxSessions).
+ */
+public interface VirtualThreadQServerMBean extends QBeanSupportMBean {
+
+    void setPort(int port);
+
+    int getPort();
+
+    void setMaxSessions(int maxSessions);
+
+    int getMaxSessions();
+
+    int getConnectionCount();
+}
@@ -1,33 +1,52 @@
 package com.artivisi.atm.jpos.service;
 
+import com.artivisi.atm.entity.CryptoKey;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOChannel;
 import org.springframework.stereotype.Service;
 
-import java.lang.ref.WeakReference;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * Registry for tracking connected ATM terminals and their ISO channels.
- * Uses WeakReference to prevent memory leaks when channels disconnect.
+ * Keeps one {@link TerminalSession} per terminal, indexed by terminal ID and by channel name.
  * Thread-safe for concurrent access.
  *
  * Manages terminal sign-on state - terminals must sign on before transacting.
+ *
+ * State transitions run inside ConcurrentHashMap.compute() for the terminal, so the
+ * connected and signed-on counters are maintained atomically and lookups never sweep
+ * the whole registry. Cleanup is event-driven: TerminalDisconnectListener calls
+ * {@link #unregisterByChannelName(String)} when QServer reports a disconnect.
+ *
+ * In a cluster, TerminalDirectory publishes the terminals of this node: it enables change
+ * tracking and drains the IDs of terminals whose connection or sign-on changed.
  */
 @Service
 @Slf4j
 public class ChannelRegistry {
 
-    // Map: terminalId -> WeakReference<ISOChannel>
-    private final Map<String, WeakReference<ISOChannel>> channels = new ConcurrentHashMap<>();
+    // Map: terminalId -> session
+    private final Map<String, TerminalSession> sessions = new ConcurrentHashMap<>();
 
     // Reverse map: channelName -> terminalId (for disconnect event lookup)
     private final Map<String, String> channelNameToTerminalId = new ConcurrentHashMap<>();
 
-    // Set of signed-on terminal IDs
-    private final Set<String> signedOnTerminals = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectedCount = new AtomicInteger();
+    private final AtomicInteger signedOnCount = new AtomicInteger();
+
+    // Terminal IDs changed since the last drainChanges(), when tracked
+    private final Set<String> changes = ConcurrentHashMap.newKeySet();
+    private volatile boolean trackChanges;
 
     /**
      * Register a connected terminal's ISO channel.
@@ -36,7 +55,7 @@ public class ChannelRegistry {
      * @param channel ISO channel for communication
      */
     public void register(String terminalId, ISOChannel channel) {
-        if (terminalId == null || terminalId.trim().isEmpty()) {
+        if (isBlank(terminalId)) {
             log.warn("Cannot register channel with null or empty terminal ID");
             return;
         }
@@ -46,10 +65,27 @@ public class ChannelRegistry {
             return;
         }
 
-        channels.put(terminalId, new WeakReference<>(channel));
-        channelNameToTerminalId.put(channel.getName(), terminalId);
-        log.info("Registered channel for terminal: {}, channelName={}, connected={}",
-                terminalId, channel.getName(), channel.isConnected());
+        sessions.compute(terminalId, (id, session) -> {
+            if (session == null) {
+                session = new TerminalSession(id);
+            }
+
+            String previousChannelName = session.getChannelName();
+            if (previousChannelName == null) {
+                connectedCount.incrementAndGet();
+            } else if (!previousChannelName.equals(channel.getName())) {
+                // Terminal reconnected on a new channel
+                channelNameToTerminalId.remove(previousChannelName, id);
+            }
+
+            session.attach(channel);
+            session.markSeen();
+            channelNameToTerminalId.put(channel.getName(), id);
+            return session;
+        });
+        changed(terminalId);
+
+        log.info("Registered channel for terminal: {}, channelName={}", terminalId, channel.getName());
     }
 
     /**
@@ -59,11 +95,21 @@ public class ChannelRegistry {
      * @param terminalId Terminal identifier
      */
     public void signOn(String terminalId) {
-        if (terminalId == null || terminalId.trim().isEmpty()) {
+        if (isBlank(terminalId)) {
             return;
         }
 
-        signedOnTerminals.add(terminalId);
+        sessions.compute(terminalId, (id, session) -> {
+            if (session == null) {
+                session = new TerminalSession(id);
+            }
+            if (!session.isSignedOn()) {
+                session.setSignedOn(true);
+                signedOnCount.incrementAndGet();
+            }
+            return session;
+        });
+        changed(terminalId);
         log.info("Terminal signed on: {}", terminalId);
     }
 
@@ -74,11 +120,18 @@ public class ChannelRegistry {
      * @param terminalId Terminal identifier
      */
     public void signOff(String terminalId) {
-        if (terminalId == null || terminalId.trim().isEmpty()) {
+        if (isBlank(terminalId)) {
             return;
         }
 
-        signedOnTerminals.remove(terminalId);
+        sessions.computeIfPresent(terminalId, (id, session) -> {
+            if (session.isSignedOn()) {
+                session.setSignedOn(false);
+                signedOnCount.decrementAndGet();
+            }
+            return session;
+        });
+        changed(terminalId);
         log.info("Terminal signed off: {}", terminalId);
     }
 
@@ -89,10 +142,81 @@ public class ChannelRegistry {
      * @return true if terminal has completed sign-on
      */
     public boolean isSignedOn(String terminalId) {
-        if (terminalId == null || terminalId.trim().isEmpty()) {
-            return false;
+        TerminalSession session = getSession(terminalId);
+        return session != null && session.isSignedOn();
+    }
+
+    /**
+     * Get the session for a terminal.
+     *
+     * @param terminalId Terminal identifier
+     * @return TerminalSession, or null if the terminal is not registered
+     */
+    public TerminalSession getSession(String terminalId) {
+        if (isBlank(terminalId)) {
+            return null;
+        }
+        return sessions.get(terminalId);
+    }
+
+    /**
+     * Get all sessions (read-only view, for admin endpoints).
+     */
+    public Collection<TerminalSession> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * Record that a message was received from a terminal (e.g., echo test).
+     *
+     * @param terminalId Terminal identifier
+     */
+    public void markSeen(String terminalId) {
+        TerminalSession session = getSession(terminalId);
+        if (session != null) {
+            session.markSeen();
+        }
+    }
+
+    /**
+     * Get the last time a message was received from a terminal.
+     *
+     * @param terminalId Terminal identifier
+     * @return Last-seen timestamp, or null if the terminal is not registered
+     */
+    public Instant getLastSeen(String terminalId) {
+        TerminalSession session = getSession(terminalId);
+        return session != null ? session.getLastSeen() : null;
+    }
+
+    /**
+     * Record that a request from a terminal entered processing.
+     * The returned session must be passed back via {@link TerminalSession#requestCompleted()}
+     * once the response has been sent.
+     *
+     * @param terminalId Terminal identifier
+     * @return Session the request was counted against, or null if the terminal is not registered
+     */
+    public TerminalSession requestStarted(String terminalId) {
+        TerminalSession session = getSession(terminalId);
+        if (session != null) {
+            session.requestStarted();
+        }
+        return session;
+    }
+
+    /**
+     * Record the key version a terminal used successfully (e.g., TSK that verified its MAC).
+     *
+     * @param terminalId Terminal identifier
+     * @param keyType Key type (TPK or TSK)
+     * @param version Key version
+     */
+    public void recordKeyVersion(String terminalId, CryptoKey.KeyType keyType, Integer version) {
+        TerminalSession session = getSession(terminalId);
+        if (session != null && version != null) {
+            session.setKeyVersion(keyType, version);
         }
-        return signedOnTerminals.contains(terminalId);
     }
 
     /**
@@ -101,19 +225,19 @@ public class ChannelRegistry {
      * @param terminalId Terminal identifier
      */
     public void unregister(String terminalId) {
-        if (terminalId == null || terminalId.trim().isEmpty()) {
+        if (isBlank(terminalId)) {
             return;
         }
 
-        WeakReference<ISOChannel> ref = channels.remove(terminalId);
-        signedOnTerminals.remove(terminalId);  // Also remove from signed-on set
+        TerminalSession[] removed = new TerminalSession[1];
+        sessions.computeIfPresent(terminalId, (id, session) -> {
+            release(session);
+            removed[0] = session;
+            return null;
+        });
 
-        // Remove from reverse map
-        if (ref != null) {
-            ISOChannel channel = ref.get();
-            if (channel != null) {
-                channelNameToTerminalId.remove(channel.getName());
-            }
+        if (removed[0] != null) {
+            changed(terminalId);
             log.info("Unregistered channel for terminal: {}", terminalId);
         }
     }
@@ -121,56 +245,57 @@ public class ChannelRegistry {
     /**
      * Unregister a terminal by channel name (used by disconnect event handler).
      * This is called when we receive a disconnect event and need to lookup the terminal.
+     * A terminal that has already reconnected on a different channel is left untouched.
      *
      * @param channelName The channel name from ISOChannel.getName()
      */
     public void unregisterByChannelName(String channelName) {
-        if (channelName == null || channelName.trim().isEmpty()) {
+        if (isBlank(channelName)) {
             return;
         }
 
-        String terminalId = channelNameToTerminalId.remove(channelName);
-        if (terminalId != null) {
-            channels.remove(terminalId);
-            signedOnTerminals.remove(terminalId);
+        String terminalId = channelNameToTerminalId.get(channelName);
+        if (terminalId == null) {
+            log.debug("No terminal found for channel name: {}", channelName);
+            return;
+        }
+
+        TerminalSession[] removed = new TerminalSession[1];
+        sessions.computeIfPresent(terminalId, (id, session) -> {
+            if (!channelName.equals(session.getChannelName())) {
+                return session;
+            }
+            release(session);
+            removed[0] = session;
+            return null;
+        });
+        channelNameToTerminalId.remove(channelName, terminalId);
+
+        if (removed[0] != null) {
+            changed(terminalId);
             log.info("Unregistered terminal by channel name: terminalId={}, channelName={}",
                     terminalId, channelName);
-        } else {
-            log.debug("No terminal found for channel name: {}", channelName);
         }
     }
 
     /**
      * Get the ISO channel for a specific terminal.
+     * Does not probe the socket: disconnected channels are removed by disconnect events.
      *
      * @param terminalId Terminal identifier
-     * @return ISOChannel if available and connected, null otherwise
+     * @return ISOChannel if registered, null otherwise
      */
     public ISOChannel getChannel(String terminalId) {
-        if (terminalId == null || terminalId.trim().isEmpty()) {
-            return null;
-        }
-
-        WeakReference<ISOChannel> ref = channels.get(terminalId);
-        if (ref == null) {
+        TerminalSession session = getSession(terminalId);
+        if (session == null) {
             log.debug("No channel registered for terminal: {}", terminalId);
             return null;
         }
 
-        ISOChannel channel = ref.get();
+        ISOChannel channel = session.getChannel();
         if (channel == null) {
-            // WeakReference was garbage collected
-            log.debug("Channel was garbage collected for terminal: {}", terminalId);
-            channels.remove(terminalId);
-            return null;
-        }
-
-        if (!channel.isConnected()) {
-            log.debug("Channel disconnected for terminal: {}", terminalId);
-            channels.remove(terminalId);
-            return null;
+            log.debug("No channel available for terminal: {}", terminalId);
         }
-
         return channel;
     }
 
@@ -178,7 +303,7 @@ public class ChannelRegistry {
      * Check if a terminal is currently connected.
      *
      * @param terminalId Terminal identifier
-     * @return true if terminal has an active connection
+     * @return true if terminal has a registered connection
      */
     public boolean isConnected(String terminalId) {
         return getChannel(terminalId) != null;
@@ -187,36 +312,89 @@ public class ChannelRegistry {
     /**
      * Get all currently connected terminal IDs.
      *
-     * @return Set of terminal IDs with active connections
+     * @return Set of terminal IDs with registered connections
      */
     public Set<String> getConnectedTerminals() {
-        // Clean up disconnected channels
-        channels.entrySet().removeIf(entry -> {
-            WeakReference<ISOChannel> ref = entry.getValue();
-            ISOChannel channel = ref.get();
-            return channel == null || !channel.isConnected();
-        });
-
-        return Set.copyOf(channels.keySet());
+        return sessions.values().stream()
+                .filter(session -> session.getChannelName() != null)
+                .map(TerminalSession::getTerminalId)
+                .collect(Collectors.toUnmodifiableSet());
     }
 
     /**
      * Get count of currently connected terminals.
      *
-     * @return Number of active connections
+     * @return Number of registered connections
      */
     public int getConnectedCount() {
-        return getConnectedTerminals().size();
+        return connectedCount.get();
+    }
+
+    /**
+     * Get count of signed-on terminals.
+     *
+     * @return Number of terminals that completed sign-on
+     */
+    public int getSignedOnCount() {
+        return signedOnCount.get();
     }
 
     /**
      * Clear all registered channels (for shutdown/testing).
      */
     public void clear() {
-        int count = channels.size();
-        channels.clear();
+        int count = sessions.size();
+        sessions.keySet().forEach(this::changed);
+        sessions.clear();
         channelNameToTerminalId.clear();
-        signedOnTerminals.clear();
+        connectedCount.set(0);
+        signedOnCount.set(0);
         log.info("Cleared {} channel registrations", count);
     }
+
+    /**
+     * Start recording the terminals whose connection or sign-on changes (see {@link #drainChanges()}).
+     */
+    public void trackChanges() {
+        trackChanges = true;
+    }
+
+    /**
+     * Get and forget the IDs of terminals changed since the previous call.
+     * The current state is read with {@link #getSession(String)}: null or no channel means gone.
+     *
+     * @return Terminal IDs, empty unless {@link #trackChanges()} was called
+     */
+    public Set<String> drainChanges() {
+        Set<String> drained = new HashSet<>();
+        for (Iterator<String> iterator = changes.iterator(); iterator.hasNext(); ) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+
+    private void changed(String terminalId) {
+        if (trackChanges) {
+            changes.add(terminalId);
+        }
+    }
+
+    /**
+     * Adjust counters and reverse index for a session being removed.
+     * Must be called inside compute() for the session's terminal ID.
+     */
+    private void release(TerminalSession session) {
+        if (session.getChannelName() != null) {
+            channelNameToTerminalId.remove(session.getChannelName(), session.getTerminalId());
+            connectedCount.decrementAndGet();
+        }
+        if (session.isSignedOn()) {
+            signedOnCount.decrementAndGet();
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
 }
@@ -0,0 +1,220 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.config.ClusterProperties;
+import com.artivisi.atm.repository.TerminalDirectoryRepository;
+import com.artivisi.atm.repository.TerminalDirectoryRepository.Session;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Cluster-wide directory of terminal sessions: which node each terminal is connected to.
+ *
+ * ChannelRegistry stays the source of truth for the terminals of this node, and the hot path
+ * (channel lookup, sign-on check) never leaves it. This node publishes its changes to
+ * terminal_sessions in the background and heartbeats in cluster_nodes; lookups of terminals
+ * connected to other nodes are cached for owner-cache-ttl.
+ *
+ * Sign-on stays bound to the connection, as on a single node: a terminal signs on again after
+ * reconnecting, wherever it lands. When it does on another node, the session it had here is
+ * dropped, so a terminal has one signed-on session in the cluster. Connections are ordered by the
+ * database clock (see TerminalDirectoryRepository), never by comparing the clocks of two nodes.
+ *
+ * Disabled unless cluster.enabled: then every lookup answers "not connected elsewhere".
+ */
+@Service
+@Slf4j
+public class TerminalDirectory {
+
+    private final ChannelRegistry channelRegistry;
+    private final TerminalDirectoryRepository repository;
+    private final ClusterProperties properties;
+    private final LongSupplier clock;
+
+    // Terminal IDs to publish; kept until written, so a database outage only delays them
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    // Terminal ID -> owner on another node (or none), as of the last lookup
+    private final Map<String, CachedOwner> owners = new ConcurrentHashMap<>();
+
+    private volatile boolean started;
+
+    @Autowired
+    public TerminalDirectory(ChannelRegistry channelRegistry, TerminalDirectoryRepository repository,
+                             ClusterProperties properties) {
+        this(channelRegistry, repository, properties, System::currentTimeMillis);
+    }
+
+    TerminalDirectory(ChannelRegistry channelRegistry, TerminalDirectoryRepository repository,
+                      ClusterProperties properties, LongSupplier clock) {
+        this.channelRegistry = channelRegistry;
+        this.repository = repository;
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        if (properties.getToken() == null || properties.getToken().isBlank()) {
+            log.warn("cluster.token is not set: messages forwarded by other nodes will be rejected");
+        }
+        channelRegistry.trackChanges();
+        try {
+            // Sessions left by a previous run of this node that stopped without cleanup
+            repository.releaseAll(properties.getNodeId());
+            repository.heartbeat(properties.getNodeId(), properties.getAdvertisedUrl());
+        } catch (DataAccessException e) {
+            log.warn("Terminal directory unavailable at startup: {}", e.getMessage());
+        }
+        started = true;
+        log.info("Terminal directory started: node={}, url={}", properties.getNodeId(), properties.getAdvertisedUrl());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        try {
+            repository.removeNode(properties.getNodeId());
+        } catch (DataAccessException e) {
+            log.warn("Could not remove node {} from the terminal directory: {}", properties.getNodeId(), e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return started;
+    }
+
+    public String getNodeId() {
+        return properties.getNodeId();
+    }
+
+    /**
+     * Publish the terminals of this node whose connection or sign-on changed.
+     */
+    @Scheduled(fixedDelayString = "${cluster.publish-interval-ms:500}")
+    public void publish() {
+        if (!started) {
+            return;
+        }
+        pending.addAll(channelRegistry.drainChanges());
+        for (String terminalId : pending) {
+            try {
+                publish(terminalId);
+                pending.remove(terminalId);
+            } catch (DataAccessException e) {
+                log.warn("Terminal directory unavailable, {} changes wait: {}", pending.size(), e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Keep this node live, and drop the local sessions of terminals that connected to another node since.
+     */
+    @Scheduled(fixedDelayString = "${cluster.heartbeat-interval-ms:5000}")
+    public void heartbeat() {
+        if (!started) {
+            return;
+        }
+        try {
+            repository.heartbeat(properties.getNodeId(), properties.getAdvertisedUrl());
+            repository.claimedElsewhere(properties.getNodeId(), properties.getNodeTimeout())
+                    .forEach(this::dropIfOlder);
+        } catch (DataAccessException e) {
+            log.warn("Terminal directory heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Find the node a terminal is connected to, when it is not this one.
+     *
+     * @return Session on another live node, or empty if the terminal is local, not connected,
+     *         or the cluster is disabled
+     */
+    public Optional<Session> remoteOwner(String terminalId) {
+        if (!started || terminalId == null) {
+            return Optional.empty();
+        }
+        long now = clock.getAsLong();
+        CachedOwner cached = owners.get(terminalId);
+        if (cached == null || cached.expiresAt() <= now) {
+            try {
+                Session session = repository.find(terminalId, properties.getNodeTimeout()).orElse(null);
+                cached = new CachedOwner(session, now + properties.getOwnerCacheTtl().toMillis());
+                owners.put(terminalId, cached);
+            } catch (DataAccessException e) {
+                log.warn("Terminal directory lookup failed: terminalId={}, error={}", terminalId, e.getMessage());
+                return Optional.empty();
+            }
+        }
+        Session session = cached.session();
+        if (session == null || session.nodeId().equals(properties.getNodeId())) {
+            return Optional.empty();
+        }
+        return Optional.of(session);
+    }
+
+    /**
+     * Forget the cached owner of a terminal (e.g., the owner answered that the terminal is gone).
+     */
+    public void evict(String terminalId) {
+        owners.remove(terminalId);
+    }
+
+    /**
+     * @return Sessions of the terminals connected to live nodes, this one included (empty when disabled)
+     */
+    public List<Session> sessions() {
+        if (!started) {
+            return List.of();
+        }
+        return repository.findAll(properties.getNodeTimeout());
+    }
+
+    private void publish(String terminalId) {
+        owners.remove(terminalId);
+        TerminalSession session = channelRegistry.getSession(terminalId);
+        if (session == null || session.getChannelName() == null) {
+            repository.release(terminalId, properties.getNodeId());
+            return;
+        }
+        if (!repository.claim(terminalId, properties.getNodeId(), session.getChannelName(), session.isSignedOn(),
+                session.getConnectedFor())) {
+            log.info("Terminal {} has a more recent connection on another node", terminalId);
+        }
+    }
+
+    private void dropIfOlder(String terminalId, Duration claimConnectedFor) {
+        TerminalSession session = channelRegistry.getSession(terminalId);
+        // Ages, not timestamps: both are measured against the database clock at the same instant
+        if (session == null || session.getChannelName() == null
+                || session.getConnectedFor().compareTo(claimConnectedFor) <= 0) {
+            return;
+        }
+        log.info("Terminal {} connected to another node, dropping its session on this node", terminalId);
+        owners.remove(terminalId);
+        channelRegistry.unregisterByChannelName(session.getChannelName());
+    }
+
+    private record CachedOwner(Session session, long expiresAt) {
+    }
+}
@@ -0,0 +1,129 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.config.HsmProperties;
+import com.artivisi.atm.entity.CryptoKey;
+import com.artivisi.atm.service.TerminalKeyCache;
+import com.artivisi.atm.util.AesCmacUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.springframework.stereotype.Service;
+
+/**
+ * MAC generation and verification for terminal messages (field 64).
+ * Supports AES-CMAC and HMAC-SHA256 (truncated to 16 bytes), both keyed with the
+ * TSK operational key derived from the terminal's TSK master key.
+ *
+ * Keys and derived operational keys come from {@link TerminalKeyCache}, so steady-state
+ * MAC operations do not touch the database or repeat the PBKDF2 derivation.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TerminalMacService {
+
+    private final TerminalKeyCache terminalKeyCache;
+    private final HsmProperties hsmProperties;
+
+    /**
+     * Build MAC data from ISO message fields.
+     * Includes all fields except the MAC field itself (field 64).
+     * Responses are MAC'd before field 64 is set, so they are packed without a copy.
+     */
+    public byte[] buildMacData(ISOMsg msg) throws ISOException {
+        ISOMsg msgCopy = msg;
+        if (msg.hasField(64)) {
+            msgCopy = (ISOMsg) msg.clone();
+            msgCopy.unset(64);
+        }
+        byte[] packedMsg = msgCopy.pack();
+        log.debug("Built MAC data: {} bytes", packedMsg.length);
+        return packedMsg;
+    }
+
+    /**
+     * Verify a MAC received from a terminal.
+     * Tries the ACTIVE TSK first, then PENDING TSKs (grace period during rotation).
+     *
+     * @param terminalId Full terminal ID
+     * @param data MAC data (message without field 64)
+     * @param receivedMac MAC from field 64
+     * @return Version of the TSK that verified the MAC, or null if no key matched
+     */
+    public Integer verify(String terminalId, byte[] data, byte[] receivedMac) {
+        CryptoKey activeKey = terminalKeyCache.getActiveKey(terminalId, CryptoKey.KeyType.TSK);
+        if (activeKey != null && tryVerify(data, receivedMac, activeKey)) {
+            log.debug("MAC verified with ACTIVE TSK key version: {}", activeKey.getKeyVersion());
+            return activeKey.getKeyVersion();
+        }
+
+        for (CryptoKey key : terminalKeyCache.getValidKeys(terminalId, CryptoKey.KeyType.TSK)) {
+            if (key.getStatus() == CryptoKey.KeyStatus.PENDING && tryVerify(data, receivedMac, key)) {
+                log.info("MAC verified with PENDING TSK key version: {}", key.getKeyVersion());
+                return key.getKeyVersion();
+            }
+        }
+
+        log.error("MAC verification failed with all available keys: terminal={}", terminalId);
+        return null;
+    }
+
+    /**
+     * Generate a MAC for a response.
+     * Uses the key version that verified the request, or the ACTIVE key if none was tracked.
+     *
+     * @param terminalId Full terminal ID
+     * @param data MAC data (message without field 64)
+     * @param keyVersion TSK version used for request verification (nullable)
+     * @return 16-byte MAC for field 64
+     */
+    public byte[] generate(String terminalId, byte[] data, Integer keyVersion) {
+        CryptoKey tskKey = keyVersion != null
+                ? terminalKeyCache.getKeyByVersion(terminalId, CryptoKey.KeyType.TSK, keyVersion)
+                : null;
+        if (tskKey == null) {
+            tskKey = terminalKeyCache.getActiveKey(terminalId, CryptoKey.KeyType.TSK);
+        }
+        if (tskKey == null) {
+            throw new IllegalStateException("No TSK key available for terminal: " + terminalId);
+        }
+
+        log.debug("Generating MAC: terminal={}, TSK version={}, data={} bytes",
+                terminalId, tskKey.getKeyVersion(), data.length);
+
+        byte[] operationalKey = terminalKeyCache.getMacKey(tskKey);
+        return switch (getAlgorithm()) {
+            case AES_CMAC -> AesCmacUtil.generateMac(data, operationalKey);
+            case HMAC_SHA256_TRUNCATED -> AesCmacUtil.generateHmacSha256Truncated(data, operationalKey);
+        };
+    }
+
+    public boolean isVerifyEnabled() {
+        HsmProperties.Mac macConfig = hsmProperties.getMac();
+        return macConfig != null && macConfig.isVerifyEnabled();
+    }
+
+    public boolean isGenerateEnabled() {
+        HsmProperties.Mac macConfig = hsmProperties.getMac();
+        return macConfig != null && macConfig.isGenerateEnabled();
+    }
+
+    private boolean tryVerify(byte[] data, byte[] receivedMac, CryptoKey key) {
+        try {
+            byte[] operationalKey = terminalKeyCache.getMacKey(key);
+            return switch (getAlgorithm()) {
+                case AES_CMAC -> AesCmacUtil.verifyMac(data, receivedMac, operationalKey);
+                case HMAC_SHA256_TRUNCATED -> AesCmacUtil.verifyHmacSha256Truncated(data, receivedMac, operationalKey);
+            };
+        } catch (Exception e) {
+            log.warn("Failed to verify MAC with TSK key version {}: {}", key.getKeyVersion(), e.getMessage());
+            return false;
+        }
+    }
+
+    private HsmProperties.MacAlgorithm getAlgorithm() {
+        HsmProperties.Mac macConfig = hsmProperties.getMac();
+        return macConfig != null ? macConfig.getAlgorithm() : HsmProperties.MacAlgorithm.AES_CMAC;
+    }
+}
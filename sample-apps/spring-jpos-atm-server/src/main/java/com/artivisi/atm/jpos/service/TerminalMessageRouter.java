@@ -0,0 +1,160 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.config.ClusterProperties;
+import com.artivisi.atm.dto.cluster.ForwardedMessage;
+import com.artivisi.atm.repository.TerminalDirectoryRepository.Session;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOChannel;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Sends server-initiated messages to a terminal, wherever it is connected.
+ *
+ * A terminal connected to this node gets the message on its channel. Otherwise, in a cluster,
+ * the message is forwarded over HTTP to the node that holds the terminal's connection
+ * (see TerminalDirectory), which sends it on the channel (ClusterController).
+ */
+@Service
+@Slf4j
+public class TerminalMessageRouter {
+
+    public static final String TOKEN_HEADER = "X-Cluster-Token";
+    public static final String FORWARD_PATH = "/api/internal/cluster/terminals/{terminalId}/messages";
+
+    private final ChannelRegistry channelRegistry;
+    private final TerminalDirectory terminalDirectory;
+    private final ClusterProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final RestClient restClient;
+
+    public TerminalMessageRouter(ChannelRegistry channelRegistry, TerminalDirectory terminalDirectory,
+                                 ClusterProperties properties, MeterRegistry meterRegistry) {
+        this.channelRegistry = channelRegistry;
+        this.terminalDirectory = terminalDirectory;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(properties.getForwardTimeout());
+        requestFactory.setReadTimeout(properties.getForwardTimeout());
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+    }
+
+    /**
+     * Check if a terminal is connected to this node or to another live node.
+     */
+    public boolean isReachable(String terminalId) {
+        return channelRegistry.isConnected(terminalId) || terminalDirectory.remoteOwner(terminalId).isPresent();
+    }
+
+    /**
+     * Send a message to a terminal, forwarding it to the terminal's node if needed.
+     *
+     * @return false if the terminal is not connected anywhere, or the owning node could not deliver it
+     * @throws ISOException, IOException if sending on a local channel failed
+     */
+    public boolean send(String terminalId, ISOMsg message) throws ISOException, IOException {
+        if (sendLocal(terminalId, message)) {
+            return true;
+        }
+        Optional<Session> owner = terminalDirectory.remoteOwner(terminalId);
+        if (owner.isEmpty()) {
+            log.debug("Terminal not connected to any node: {}", terminalId);
+            return false;
+        }
+        return forward(owner.get(), message);
+    }
+
+    /**
+     * Send a message on the terminal's channel on this node.
+     *
+     * @return false if the terminal is not connected to this node
+     */
+    public boolean sendLocal(String terminalId, ISOMsg message) throws ISOException, IOException {
+        ISOChannel channel = channelRegistry.getChannel(terminalId);
+        if (channel == null) {
+            return false;
+        }
+        channel.send(message);
+        return true;
+    }
+
+    /**
+     * Check the token of a forwarded message.
+     */
+    public boolean isTrusted(String token) {
+        String expected = properties.getToken();
+        if (expected == null || expected.isBlank() || token == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean forward(Session owner, ISOMsg message) throws ISOException {
+        String terminalId = owner.terminalId();
+        log.info("Forwarding {} to node {}: terminalId={}", message.getMTI(), owner.nodeId(), terminalId);
+        try {
+            restClient.post()
+                    .uri(owner.url() + FORWARD_PATH, terminalId)
+                    .header(TOKEN_HEADER, properties.getToken())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(toForwarded(message))
+                    .retrieve()
+                    .toBodilessEntity();
+            count("delivered");
+            return true;
+        } catch (HttpClientErrorException.NotFound e) {
+            // Disconnected from that node since the directory was read
+            log.info("Terminal {} no longer connected to node {}", terminalId, owner.nodeId());
+            terminalDirectory.evict(terminalId);
+            count("not_connected");
+            return false;
+        } catch (RestClientException e) {
+            log.error("Forwarding to node {} failed: terminalId={}, error={}", owner.nodeId(), terminalId, e.getMessage());
+            terminalDirectory.evict(terminalId);
+            count("failed");
+            return false;
+        }
+    }
+
+    static ForwardedMessage toForwarded(ISOMsg message) throws ISOException {
+        Map<Integer, String> fields = new TreeMap<>();
+        for (int i = 0; i <= message.getMaxField(); i++) {
+            if (!message.hasField(i)) {
+                continue;
+            }
+            if (!(message.getValue(i) instanceof String value)) {
+                throw new ISOException("Field " + i + " cannot be forwarded: not a character field");
+            }
+            fields.put(i, value);
+        }
+        return ForwardedMessage.builder().fields(fields).build();
+    }
+
+    public static ISOMsg toIsoMsg(ForwardedMessage forwarded) throws ISOException {
+        ISOMsg message = new ISOMsg();
+        for (Map.Entry<Integer, String> field : forwarded.getFields().entrySet()) {
+            message.set(field.getKey(), field.getValue());
+        }
+        return message;
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("cluster.forwards", "result", result).increment();
+    }
+}
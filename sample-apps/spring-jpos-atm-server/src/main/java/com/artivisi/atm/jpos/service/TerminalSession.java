@@ -0,0 +1,129 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.entity.CryptoKey;
+import lombok.Getter;
+import org.jpos.iso.ISOChannel;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runtime state of a single terminal, owned by {@link ChannelRegistry}.
+ *
+ * Holds the terminal's ISO channel, sign-on state, key versions in use,
+ * last-seen time and number of in-flight requests. State transitions
+ * (register, sign-on, sign-off) are performed by ChannelRegistry so that
+ * its counters stay consistent; per-message updates (last seen, in-flight,
+ * key versions) are cheap and lock-free.
+ */
+public class TerminalSession {
+
+    @Getter
+    private final String terminalId;
+
+    // WeakReference prevents memory leaks if a disconnect event is missed
+    private volatile WeakReference<ISOChannel> channelRef;
+
+    @Getter
+    private volatile String channelName;
+
+    @Getter
+    private volatile boolean signedOn;
+
+    // Time the current channel was attached
+    @Getter
+    private volatile Instant connectedAt;
+
+    // System.nanoTime() when the current channel was attached (monotonic, for the connection age)
+    private volatile long connectedNanos;
+
+    @Getter
+    private volatile Instant lastSeen;
+
+    // Key type -> key version last used successfully by the terminal
+    private final Map<CryptoKey.KeyType, Integer> keyVersions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    TerminalSession(String terminalId) {
+        this.terminalId = terminalId;
+        this.lastSeen = Instant.now();
+    }
+
+    /**
+     * Get the terminal's ISO channel.
+     *
+     * @return ISOChannel, or null if not registered or garbage collected
+     */
+    public ISOChannel getChannel() {
+        WeakReference<ISOChannel> ref = channelRef;
+        return ref != null ? ref.get() : null;
+    }
+
+    public boolean hasChannel() {
+        return getChannel() != null;
+    }
+
+    /**
+     * Get the key version last used by the terminal.
+     *
+     * @param keyType Key type (TPK or TSK)
+     * @return Key version, or null if the terminal has not used a key of this type yet
+     */
+    public Integer getKeyVersion(CryptoKey.KeyType keyType) {
+        return keyVersions.get(keyType);
+    }
+
+    public Map<CryptoKey.KeyType, Integer> getKeyVersions() {
+        return Map.copyOf(keyVersions);
+    }
+
+    /**
+     * @return Time since the current channel was attached, measured with the monotonic clock
+     */
+    public Duration getConnectedFor() {
+        return Duration.ofNanos(System.nanoTime() - connectedNanos);
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Record that a request from this terminal entered processing.
+     */
+    public void requestStarted() {
+        lastSeen = Instant.now();
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Record that a response for this terminal was sent (or the request was dropped).
+     */
+    public void requestCompleted() {
+        inFlight.updateAndGet(n -> n > 0 ? n - 1 : 0);
+    }
+
+    void markSeen() {
+        lastSeen = Instant.now();
+    }
+
+    void setKeyVersion(CryptoKey.KeyType keyType, Integer version) {
+        keyVersions.put(keyType, version);
+    }
+
+    void attach(ISOChannel channel) {
+        this.channelRef = new WeakReference<>(channel);
+        this.channelName = channel.getName();
+        this.connectedAt = Instant.now();
+        this.connectedNanos = System.nanoTime();
+    }
+
+    void setSignedOn(boolean signedOn) {
+        this.signedOn = signedOn;
+    }
+}
@@ -0,0 +1,143 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.entity.CryptoKey;
+import com.artivisi.atm.service.TerminalKeyCache;
+import com.artivisi.atm.util.AesCmacUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous per-terminal warm-up, triggered on sign-on.
+ *
+ * Moves cold-path costs out of the first financial transaction:
+ * - Loads the terminal's ACTIVE and PENDING TPK/TSK keys into TerminalKeyCache (DB fetch)
+ * - Derives TSK operational keys (PBKDF2, 100,000 iterations)
+ * - Runs one MAC over dummy data so the MAC code path and JCE provider are initialized
+ *
+ * TPK operational keys are not derived here: PIN verification is delegated to the HSM,
+ * the server never derives TPK keys locally.
+ *
+ * Runs on at most max-concurrency virtual threads. During a sign-on storm further warm-ups wait
+ * in a bounded queue (queue-capacity) and run as threads free up; only when the queue is full is
+ * a warm-up rejected (counted in jpos.warmup.rejected) and the first transaction pays the cold path.
+ */
+@Service
+@Slf4j
+public class TerminalWarmupService {
+
+    private static final byte[] WARMUP_MAC_DATA = new byte[64];
+
+    private final TerminalKeyCache terminalKeyCache;
+    private final boolean enabled;
+    private final ThreadPoolExecutor executor;
+    private final Counter rejected;
+
+    // Terminals with a warm-up in progress (prevents duplicate work on repeated sign-on)
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    public TerminalWarmupService(TerminalKeyCache terminalKeyCache,
+                                 @Value("${jpos.warmup.enabled:true}") boolean enabled,
+                                 @Value("${jpos.warmup.max-concurrency:8}") int maxConcurrency,
+                                 @Value("${jpos.warmup.queue-capacity:10000}") int queueCapacity,
+                                 MeterRegistry meterRegistry) {
+        this.terminalKeyCache = terminalKeyCache;
+        this.enabled = enabled;
+        int threads = Math.max(1, maxConcurrency);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                Thread.ofVirtual().name("warmup-", 0).factory());
+        this.rejected = Counter.builder("jpos.warmup.rejected")
+                .description("Terminal warm-ups rejected because the warm-up queue was full")
+                .register(meterRegistry);
+        Gauge.builder("jpos.warmup.queued", executor, e -> e.getQueue().size())
+                .description("Terminal warm-ups waiting for a warm-up thread")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Schedule warm-up for a terminal. Returns immediately.
+     *
+     * @param terminalId Terminal identifier
+     * @return true if warm-up was scheduled (possibly queued), false if disabled, already scheduled
+     *         or the queue is full
+     */
+    public boolean warmUp(String terminalId) {
+        if (!enabled || terminalId == null || terminalId.isBlank()) {
+            return false;
+        }
+
+        if (!inProgress.add(terminalId)) {
+            log.debug("Warm-up already scheduled: terminalId={}", terminalId);
+            return false;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    warmUpNow(terminalId);
+                } finally {
+                    inProgress.remove(terminalId);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Queue full, or shutting down
+            inProgress.remove(terminalId);
+            if (!executor.isShutdown()) {
+                rejected.increment();
+                log.warn("Warm-up rejected, queue full: terminalId={}, queued={}",
+                        terminalId, executor.getQueue().size());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Perform warm-up synchronously on the calling thread.
+     */
+    void warmUpNow(String terminalId) {
+        long start = System.nanoTime();
+        try {
+            terminalKeyCache.getValidKeys(terminalId, CryptoKey.KeyType.TPK);
+            List<CryptoKey> tskKeys = terminalKeyCache.getValidKeys(terminalId, CryptoKey.KeyType.TSK);
+
+            byte[] macKey = null;
+            for (CryptoKey tskKey : tskKeys) {
+                byte[] derived = terminalKeyCache.getMacKey(tskKey);
+                if (tskKey.getStatus() == CryptoKey.KeyStatus.ACTIVE) {
+                    macKey = derived;
+                }
+            }
+
+            if (macKey != null) {
+                AesCmacUtil.generateMac(WARMUP_MAC_DATA, macKey);
+                AesCmacUtil.generateHmacSha256Truncated(WARMUP_MAC_DATA, macKey);
+            }
+
+            log.info("Terminal warm-up complete: terminalId={}, tskKeys={}, took={}ms",
+                    terminalId, tskKeys.size(), (System.nanoTime() - start) / 1_000_000);
+
+        } catch (Exception e) {
+            // Best effort - the transaction path loads keys on demand
+            log.warn("Terminal warm-up failed: terminalId={}, error={}", terminalId, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,113 @@
+package com.artivisi.atm.jpos.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of transactions in flight between IsoRequestListener and SendResponseParticipant.
+ *
+ * With TransactionManager sessions on virtual threads, the session count no longer bounds how many
+ * transactions hit the database and HSM at once. The bound moves here: a fixed number of permits,
+ * taken before the context is queued to the TransactionManager and released when the response is
+ * sent (commit or abort). Waiting for a permit parks the calling virtual thread (j.u.c. Semaphore,
+ * no carrier pinning). A request that cannot get a permit within the admission timeout is declined
+ * instead of queued, so latency under overload stays bounded.
+ *
+ * One limiter per TransactionManager lane (see TransactionLaneLimiters).
+ */
+@Slf4j
+public class TransactionConcurrencyLimiter {
+
+    private final String name;
+    private final int maxInFlight;
+    private final long admissionTimeoutMillis;
+    private final Semaphore permits;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    public TransactionConcurrencyLimiter(String name, int maxInFlight, long admissionTimeoutMillis) {
+        this.name = name;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.admissionTimeoutMillis = Math.max(0, admissionTimeoutMillis);
+        this.permits = new Semaphore(this.maxInFlight);
+        log.info("Transaction concurrency limit: lane={}, maxInFlight={}, admissionTimeout={}ms",
+                name, this.maxInFlight, this.admissionTimeoutMillis);
+    }
+
+    /**
+     * Take a permit, waiting up to the admission timeout.
+     *
+     * @return Permit to release when the transaction completes, or null if the limit was not
+     *         freed in time (or the thread was interrupted)
+     */
+    public Permit acquire() {
+        long start = System.nanoTime();
+        try {
+            boolean acquired = permits.tryAcquire(admissionTimeoutMillis, TimeUnit.MILLISECONDS);
+            waitNanos.addAndGet(System.nanoTime() - start);
+            if (!acquired) {
+                rejected.incrementAndGet();
+                log.warn("Transaction limit reached: lane={}, maxInFlight={}, waited={}ms",
+                        name, maxInFlight, admissionTimeoutMillis);
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.incrementAndGet();
+            return null;
+        }
+        admitted.incrementAndGet();
+        return new Permit();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public long getAdmittedCount() {
+        return admitted.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return Average time spent waiting for a permit, in microseconds
+     */
+    public long getAverageWaitMicros() {
+        long total = admitted.get() + rejected.get();
+        return total == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.get() / total);
+    }
+
+    /**
+     * One in-flight transaction. Carried in the Context as TXN_PERMIT; release() is idempotent.
+     */
+    public final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.config.TransactionLaneProperties;
+import com.artivisi.atm.jpos.util.TransactionLane;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * One TransactionConcurrencyLimiter per TransactionManager lane.
+ *
+ * Lanes do not share permits: a burst of key changes after a rotation campaign exhausts
+ * the key lane's permits and waits on its own admission timeout, while withdrawals are
+ * admitted against the financial lane's permits.
+ */
+@Service
+public class TransactionLaneLimiters {
+
+    private final Map<TransactionLane, TransactionConcurrencyLimiter> limiters = new EnumMap<>(TransactionLane.class);
+
+    public TransactionLaneLimiters(TransactionLaneProperties properties) {
+        for (TransactionLane lane : TransactionLane.values()) {
+            TransactionLaneProperties.Lane config = properties.get(lane);
+            limiters.put(lane, new TransactionConcurrencyLimiter(
+                    lane.getId(), config.getMaxInFlight(), config.getAdmissionTimeoutMs()));
+        }
+    }
+
+    public TransactionConcurrencyLimiter get(TransactionLane lane) {
+        return limiters.get(lane);
+    }
+}
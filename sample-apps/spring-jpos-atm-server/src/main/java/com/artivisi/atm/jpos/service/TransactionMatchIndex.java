@@ -0,0 +1,372 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.config.MatchingProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOMsg;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Index of recent financial requests by (institution, terminal, STAN, transmission date-time), for
+ * repeat (0201) and reversal (0400/0420) matching without a query on transactions.
+ *
+ * - Lookup: one ConcurrentHashMap get per message; a reversal storm after a network blip is a
+ *   burst of map lookups, each reversal crediting its withdrawal at most once
+ * - Bounded: entries expire after matching.ttl and the oldest are evicted past matching.max-entries
+ *   (insertion order queue, so eviction never scans the map)
+ * - Journal fallback: a repeat or reversal whose original is no longer in memory (evicted, other
+ *   node, restart) is looked up once in the journal by the same key (transactions.stan and
+ *   transmission_date_time, V10 migration), bounded by matching.journal-lookback so only recent
+ *   partitions are searched. Only withdrawals are journaled; a repeated balance inquiry that missed
+ *   is simply processed again.
+ *
+ * Each entry follows its request: IN_PROGRESS while the original is processed, COMPLETED with the
+ * outcome sent to the terminal, REVERSED once its withdrawal was credited back (or a reversal came
+ * before the original, so the late original is declined).
+ */
+@Service
+@Slf4j
+public class TransactionMatchIndex {
+
+    private static final String JOURNAL_LOOKUP = """
+            SELECT id, transaction_date, reference_number, reversed
+              FROM transactions
+             WHERE terminal_id = ? AND stan = ? AND transmission_date_time = ?
+               AND institution_id IS NOT DISTINCT FROM ?
+               AND transaction_type = 'WITHDRAWAL' AND transaction_date >= ?""";
+
+    /**
+     * Matching key of a request: the terminal's own identification of the message.
+     */
+    public record Key(String institutionId, String terminalId, String stan, String transmissionDateTime) {
+
+        /**
+         * @return Key of the message (fields 42, 41, 11, 7), or null if it cannot be matched
+         */
+        public static Key of(ISOMsg msg) {
+            String terminalId = trim(msg.getString(41));
+            String stan = msg.getString(11);
+            String transmissionDateTime = msg.getString(7);
+            if (terminalId == null || terminalId.isEmpty() || stan == null || transmissionDateTime == null) {
+                return null;
+            }
+            return new Key(trim(msg.getString(42)), terminalId, stan, transmissionDateTime);
+        }
+
+        /**
+         * Key of the original of a reversal: STAN and transmission date-time from field 90
+         * (original MTI n4, STAN n6, transmission date-time n10, ...), or fields 11 and 7 of the
+         * reversal when field 90 is absent. The terminal is the reversal's own.
+         *
+         * @return Key of the original, or null if it cannot be matched
+         */
+        public static Key original(ISOMsg msg) {
+            Key key = of(msg);
+            String originalData = msg.getString(90);
+            if (key == null || originalData == null || originalData.length() < 20) {
+                return key;
+            }
+            return new Key(key.institutionId(), key.terminalId(),
+                    originalData.substring(4, 10), originalData.substring(10, 20));
+        }
+
+        private static String trim(String value) {
+            return value != null ? value.trim() : null;
+        }
+    }
+
+    public enum State {
+        IN_PROGRESS,
+        COMPLETED,
+        /** Credit in progress */
+        REVERSING,
+        REVERSED
+    }
+
+    /**
+     * What a reversal has to do with its original.
+     */
+    public enum ReversalAction {
+        /** Credit the withdrawal back (the entry is now REVERSING) */
+        REVERSE,
+        /** Original still in progress: reversed once it completes */
+        PENDING,
+        /** Nothing to credit: already reversed, declined, or not a debit */
+        NONE
+    }
+
+    /**
+     * Withdrawal found in the journal.
+     */
+    record JournalMatch(long journalId, LocalDateTime transactionDate, String referenceNumber, boolean reversed) {
+    }
+
+    /**
+     * @param duplicate true if the key was already known (in memory or in the journal)
+     */
+    public record Match(Entry entry, boolean duplicate) {
+    }
+
+    /**
+     * A request and its outcome. State changes are synchronized on the entry; there is no
+     * contention outside of repeats and reversals of that one request.
+     */
+    public static final class Entry {
+
+        private final Key key;
+        private final long createdMillis;
+        private State state;
+        private String responseCode;
+        private String referenceNumber;
+        private BigDecimal balance;
+        private String miniStatement;
+        private Long journalId;
+        private LocalDateTime transactionDate;
+        private Key pendingReversal;
+
+        Entry(Key key, long createdMillis, State state) {
+            this.key = key;
+            this.createdMillis = createdMillis;
+            this.state = state;
+        }
+
+        /**
+         * Record the outcome sent to the terminal.
+         *
+         * @param journalId Withdrawal row, or null if nothing was debited
+         * @return Key of a reversal received while in progress, to be applied now; or null
+         */
+        public synchronized Key complete(String responseCode, String referenceNumber, BigDecimal balance,
+                                         String miniStatement, Long journalId, LocalDateTime transactionDate) {
+            this.responseCode = responseCode;
+            this.referenceNumber = referenceNumber;
+            this.balance = balance;
+            this.miniStatement = miniStatement;
+            this.journalId = journalId;
+            this.transactionDate = transactionDate;
+            if (state == State.IN_PROGRESS) {
+                state = State.COMPLETED;
+            }
+            Key reversal = pendingReversal;
+            pendingReversal = null;
+            return reversal;
+        }
+
+        /**
+         * @param reversalKey Key of the reversal message, kept if the original is still in progress
+         */
+        public synchronized ReversalAction requestReversal(Key reversalKey) {
+            switch (state) {
+                case IN_PROGRESS -> {
+                    pendingReversal = reversalKey;
+                    return ReversalAction.PENDING;
+                }
+                case COMPLETED -> {
+                    if ("00".equals(responseCode) && journalId != null) {
+                        state = State.REVERSING;
+                        return ReversalAction.REVERSE;
+                    }
+                    state = State.REVERSED;
+                    return ReversalAction.NONE;
+                }
+                default -> {
+                    return ReversalAction.NONE;
+                }
+            }
+        }
+
+        /** The credit of a REVERSE action committed (or was already in the journal) */
+        public synchronized void reversed() {
+            state = State.REVERSED;
+        }
+
+        /** The credit of a REVERSE action failed: a repeated reversal tries again */
+        public synchronized void reversalFailed() {
+            if (state == State.REVERSING) {
+                state = State.COMPLETED;
+            }
+        }
+
+        public Key getKey() {
+            return key;
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        public synchronized String getResponseCode() {
+            return responseCode;
+        }
+
+        public synchronized String getReferenceNumber() {
+            return referenceNumber;
+        }
+
+        public synchronized BigDecimal getBalance() {
+            return balance;
+        }
+
+        public synchronized String getMiniStatement() {
+            return miniStatement;
+        }
+
+        public synchronized Long getJournalId() {
+            return journalId;
+        }
+
+        public synchronized LocalDateTime getTransactionDate() {
+            return transactionDate;
+        }
+    }
+
+    private final MatchingProperties properties;
+    private final BiFunction<Key, LocalDateTime, JournalMatch> journal;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    public TransactionMatchIndex(MatchingProperties properties, JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry) {
+        this(properties, (key, since) -> jdbcTemplate.query(JOURNAL_LOOKUP,
+                        (rs, rowNum) -> new JournalMatch(rs.getLong(1), rs.getTimestamp(2).toLocalDateTime(),
+                                rs.getString(3), rs.getBoolean(4)),
+                        key.terminalId(), key.stan(), key.transmissionDateTime(), key.institutionId(),
+                        Timestamp.valueOf(since))
+                .stream().findFirst().orElse(null),
+                meterRegistry, System::currentTimeMillis);
+    }
+
+    TransactionMatchIndex(MatchingProperties properties, BiFunction<Key, LocalDateTime, JournalMatch> journal,
+                          MeterRegistry meterRegistry, LongSupplier clock) {
+        this.properties = properties;
+        this.journal = journal;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * Register a financial request (0200/0201), or find the request it repeats.
+     *
+     * @param repeat true for a repeat (0201): the journal is searched when it is not in memory
+     * @return New IN_PROGRESS entry to complete, or the existing entry of a duplicate
+     */
+    public Match register(Key key, boolean repeat) {
+        long now = clock.getAsLong();
+        Entry existing = find(key, now);
+        if (existing == null && repeat) {
+            existing = loadFromJournal(key, now);
+        }
+        if (existing != null) {
+            meterRegistry.counter("matching.duplicates", "state", existing.getState().name().toLowerCase()).increment();
+            return new Match(existing, true);
+        }
+        Entry created = new Entry(key, now, State.IN_PROGRESS);
+        Entry registered = insert(created, now);
+        return new Match(registered, registered != created);
+    }
+
+    /**
+     * Find the original of a reversal, in memory or in the journal.
+     *
+     * @return Entry of the original, or null if unknown
+     */
+    public Entry lookup(Key key) {
+        long now = clock.getAsLong();
+        Entry entry = find(key, now);
+        return entry != null ? entry : loadFromJournal(key, now);
+    }
+
+    /**
+     * Record a reversal whose original is unknown, so the original is declined if it arrives late.
+     *
+     * @return The REVERSED entry, or the original's entry if it was registered meanwhile
+     */
+    public Entry tombstone(Key key) {
+        long now = clock.getAsLong();
+        return insert(new Entry(key, now, State.REVERSED), now);
+    }
+
+    @Scheduled(fixedDelayString = "${matching.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        evict(clock.getAsLong());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry find(Key key, long now) {
+        Entry entry = entries.get(key);
+        return entry != null && !expired(entry, now) ? entry : null;
+    }
+
+    private Entry loadFromJournal(Key key, long now) {
+        LocalDateTime since = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(now - properties.getJournalLookback().toMillis()), ZoneId.systemDefault());
+        JournalMatch match = journal.apply(key, since);
+        meterRegistry.counter("matching.journal.lookups", "result", match != null ? "hit" : "miss").increment();
+        if (match == null) {
+            return null;
+        }
+        Entry entry = new Entry(key, now, match.reversed() ? State.REVERSED : State.COMPLETED);
+        entry.complete("00", match.referenceNumber(), null, null, match.journalId(), match.transactionDate());
+        return insert(entry, now);
+    }
+
+    /**
+     * @return entry if it was inserted, otherwise the live entry already under its key
+     */
+    private Entry insert(Entry entry, long now) {
+        while (true) {
+            Entry existing = entries.putIfAbsent(entry.getKey(), entry);
+            if (existing == null) {
+                insertionOrder.add(entry);
+                evict(now);
+                return entry;
+            }
+            if (!expired(existing, now)) {
+                return existing;
+            }
+            entries.remove(entry.getKey(), existing);
+        }
+    }
+
+    /**
+     * Remove expired entries and the oldest beyond max-entries, from the head of the insertion order.
+     */
+    private void evict(long now) {
+        while (true) {
+            Entry oldest = insertionOrder.peek();
+            if (oldest == null || (!expired(oldest, now) && entries.size() <= properties.getMaxEntries())) {
+                return;
+            }
+            if (insertionOrder.remove(oldest)) {
+                // No-op if the key was already replaced by a newer entry
+                entries.remove(oldest.getKey(), oldest);
+            }
+        }
+    }
+
+    private boolean expired(Entry entry, long now) {
+        return now - entry.createdMillis >= properties.getTtl().toMillis();
+    }
+}
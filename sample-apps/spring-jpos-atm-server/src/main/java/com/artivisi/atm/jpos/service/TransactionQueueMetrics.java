@@ -0,0 +1,92 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.jpos.util.TransactionLane;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.space.LocalSpace;
+import org.jpos.space.Space;
+import org.jpos.space.SpaceFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Queue depth of each TransactionManager lane and shard: contexts queued by IsoRequestListener
+ * and not yet picked up by a TransactionManager session.
+ *
+ * Registered as gauge "jpos.txnmgr.queue.depth" (tags "lane" and "shard") on the application
+ * MeterRegistry (exposed at /actuator/prometheus). A growing depth on one shard with others near zero indicates a hot
+ * terminal or a shard with too few sessions; a growing key lane after a key rotation campaign
+ * is expected and does not affect the financial lane.
+ */
+@Component
+@Slf4j
+public class TransactionQueueMetrics {
+
+    // Queue name as configured in 10_qserver.xml (IsoRequestListener) and 20_txnmgr.xml
+    static final String QUEUE = "txnmgr";
+
+    private final String space;
+    private final int shards;
+
+    public TransactionQueueMetrics(@Value("${jpos.txnmgr.space:tspace:default}") String space,
+                                   @Value("${jpos.txnmgr.shards:1}") int shards,
+                                   MeterRegistry registry) {
+        this.space = space;
+        this.shards = Math.max(1, shards);
+        for (TransactionLane lane : TransactionLane.values()) {
+            for (int shard = 0; shard < getShards(lane); shard++) {
+                int s = shard;
+                Gauge.builder("jpos.txnmgr.queue.depth", () -> getDepth(lane, s))
+                        .description("Contexts waiting for a TransactionManager session")
+                        .tag("lane", lane.getId())
+                        .tag("shard", String.valueOf(shard))
+                        .register(registry);
+            }
+        }
+        log.info("Transaction queue metrics registered for {} lanes, {} financial shard(s)",
+                TransactionLane.values().length, this.shards);
+    }
+
+    /**
+     * @return Number of shards of the lane (only the financial lane is sharded)
+     */
+    public int getShards(TransactionLane lane) {
+        return lane == TransactionLane.FINANCIAL ? shards : 1;
+    }
+
+    /**
+     * @return Number of contexts queued on the lane shard, or 0 if the space is not a LocalSpace
+     */
+    @SuppressWarnings("rawtypes")
+    public int getDepth(TransactionLane lane, int shard) {
+        int laneShards = getShards(lane);
+        Space sp = SpaceFactory.getSpace(lane.spaceName(space, shard, laneShards));
+        if (sp instanceof LocalSpace localSpace) {
+            return localSpace.size(lane.queueName(QUEUE, shard, laneShards));
+        }
+        return 0;
+    }
+
+    /**
+     * @return Number of queued contexts across all shards of the lane
+     */
+    public int getDepth(TransactionLane lane) {
+        int total = 0;
+        for (int shard = 0; shard < getShards(lane); shard++) {
+            total += getDepth(lane, shard);
+        }
+        return total;
+    }
+
+    /**
+     * @return Total number of queued contexts across all lanes
+     */
+    public int getTotalDepth() {
+        int total = 0;
+        for (TransactionLane lane : TransactionLane.values()) {
+            total += getDepth(lane);
+        }
+        return total;
+    }
+}
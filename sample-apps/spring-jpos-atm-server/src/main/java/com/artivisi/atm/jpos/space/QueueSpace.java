@@ -0,0 +1,425 @@
+package com.artivisi.atm.jpos.space;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.space.LocalSpace;
+import org.jpos.space.Space;
+import org.jpos.space.SpaceFactory;
+import org.jpos.space.SpaceListener;
+import org.jpos.util.NameRegistrar;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * LocalSpace for hot hand-off queues (IsoRequestListener to TransactionManager).
+ *
+ * TSpace guards every operation with the space monitor and sweeps expired entries. Here each
+ * key is a lock-free MPMC queue (LinkedTransferQueue): out() never blocks, and in() with a
+ * timeout parks the caller in the queue itself until a producer hands an entry over. No monitor
+ * is shared between keys or between producers and consumers.
+ *
+ * Semantics are those of TSpace for what the TransactionManager uses (out, in, inp, rdp, push,
+ * put, size, listeners). Differences:
+ * - Entries written with a timeout are dropped lazily when reached or counted, not swept
+ * - push() entries go to a front deque read before the FIFO queue; a consumer blocked in in()
+ *   is woken by a marker entry
+ * - Blocking rd(), nrd() and existAny() poll (1 ms); they are not used on hot queues
+ * - size() walks the queue (O(n)); it is meant for monitoring, not per-message use
+ *
+ * Selected by space URI in the deploy descriptors (qspace:name). SpaceFactory only creates its
+ * built-in schemes, so qspace instances are registered with register() before Q2 starts
+ * (see JposConfig).
+ */
+@Slf4j
+public class QueueSpace<K, V> implements LocalSpace<K, V> {
+
+    public static final String SCHEME = "qspace";
+
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Map<K, Slot<V>> slots = new ConcurrentHashMap<>();
+    private final Map<K, List<ListenerEntry<K, V>>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * Register a QueueSpace under the given URI so that SpaceFactory.getSpace(uri) returns it.
+     *
+     * @param uri Space URI, e.g. "qspace:default"
+     * @return Registered space (existing one if already registered)
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Space<K, V> register(String uri) {
+        if (!uri.startsWith(SCHEME + ":")) {
+            throw new IllegalArgumentException("Not a " + SCHEME + " URI: " + uri);
+        }
+        // Same lock SpaceFactory.getSpace() holds while looking up and creating spaces
+        synchronized (SpaceFactory.class) {
+            try {
+                return (Space<K, V>) NameRegistrar.get(uri);
+            } catch (NameRegistrar.NotFoundException e) {
+                QueueSpace<K, V> space = new QueueSpace<>();
+                NameRegistrar.register(uri, space);
+                log.info("Registered queue space: {}", uri);
+                return space;
+            }
+        }
+    }
+
+    @Override
+    public void out(K key, V value) {
+        out(key, value, 0);
+    }
+
+    @Override
+    public void out(K key, V value, long timeout) {
+        requireValue(key, value);
+        slot(key).offer(new Entry<>(value, expiry(timeout)));
+        notifyListeners(key, value);
+    }
+
+    @Override
+    public void push(K key, V value) {
+        push(key, value, 0);
+    }
+
+    @Override
+    public void push(K key, V value, long timeout) {
+        requireValue(key, value);
+        slot(key).pushFront(new Entry<>(value, expiry(timeout)));
+        notifyListeners(key, value);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        put(key, value, 0);
+    }
+
+    @Override
+    public void put(K key, V value, long timeout) {
+        requireValue(key, value);
+        Slot<V> slot = slot(key);
+        slot.clear();
+        slot.offer(new Entry<>(value, expiry(timeout)));
+        notifyListeners(key, value);
+    }
+
+    @Override
+    public V in(K key) {
+        V value;
+        while ((value = in(key, Long.MAX_VALUE)) == null) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public V in(K key, long timeout) {
+        return slot(key).take(timeout);
+    }
+
+    @Override
+    public V inp(K key) {
+        Slot<V> slot = slots.get(key);
+        return slot != null ? slot.poll() : null;
+    }
+
+    @Override
+    public V rd(K key) {
+        V value;
+        while ((value = rd(key, Long.MAX_VALUE)) == null) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public V rd(K key, long timeout) {
+        long deadline = deadline(timeout);
+        V value;
+        while ((value = rdp(key)) == null && !pause(deadline)) {
+            // poll until an entry is available or the timeout expires
+        }
+        return value;
+    }
+
+    @Override
+    public V rdp(K key) {
+        Slot<V> slot = slots.get(key);
+        return slot != null ? slot.peek() : null;
+    }
+
+    @Override
+    public void nrd(K key) {
+        while (nrd(key, Long.MAX_VALUE) != null) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public V nrd(K key, long timeout) {
+        long deadline = deadline(timeout);
+        V value;
+        while ((value = rdp(key)) != null && !pause(deadline)) {
+            // poll until the key is empty or the timeout expires
+        }
+        return value;
+    }
+
+    @Override
+    public boolean existAny(K[] keys) {
+        for (K key : keys) {
+            if (rdp(key) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean existAny(K[] keys, long timeout) {
+        long deadline = deadline(timeout);
+        boolean exists;
+        while (!(exists = existAny(keys)) && !pause(deadline)) {
+            // poll until any key has an entry or the timeout expires
+        }
+        return exists;
+    }
+
+    @Override
+    public int size(K key) {
+        Slot<V> slot = slots.get(key);
+        return slot != null ? slot.size() : 0;
+    }
+
+    @Override
+    public Set<K> getKeySet() {
+        return slots.entrySet().stream()
+                .filter(e -> e.getValue().size() > 0)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public void addListener(K key, SpaceListener<K, V> listener) {
+        addListener(key, listener, 0);
+    }
+
+    @Override
+    public void addListener(K key, SpaceListener<K, V> listener, long timeout) {
+        listeners.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>())
+                .add(new ListenerEntry<>(listener, expiry(timeout)));
+    }
+
+    @Override
+    public void removeListener(K key, SpaceListener<K, V> listener) {
+        List<ListenerEntry<K, V>> entries = listeners.get(key);
+        if (entries != null) {
+            entries.removeIf(e -> e.listener == listener);
+        }
+    }
+
+    private Slot<V> slot(K key) {
+        // get() first: computeIfAbsent may lock the bin even when the key is present
+        Slot<V> slot = slots.get(key);
+        return slot != null ? slot : slots.computeIfAbsent(key, k -> new Slot<>());
+    }
+
+    private void notifyListeners(K key, V value) {
+        List<ListenerEntry<K, V>> entries = listeners.get(key);
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (ListenerEntry<K, V> entry : entries) {
+            if (entry.isExpired(now)) {
+                entries.remove(entry);
+            } else {
+                entry.listener.notify(key, value);
+            }
+        }
+    }
+
+    private static void requireValue(Object key, Object value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key=" + key + ", value=" + value);
+        }
+    }
+
+    private static long expiry(long timeout) {
+        return timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+    }
+
+    private static long deadline(long timeout) {
+        long now = System.nanoTime();
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        return nanos >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + nanos;
+    }
+
+    /**
+     * Sleep one poll interval.
+     *
+     * @return true if the deadline has passed (or the thread was interrupted)
+     */
+    private static boolean pause(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        LockSupport.parkNanos(Math.min(remaining, POLL_NANOS));
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + slots.keySet();
+    }
+
+    /**
+     * Entries of one key: FIFO queue plus a front deque for push().
+     */
+    private static final class Slot<V> {
+
+        private final LinkedTransferQueue<Entry<V>> queue = new LinkedTransferQueue<>();
+        private final ConcurrentLinkedDeque<Entry<V>> front = new ConcurrentLinkedDeque<>();
+
+        void offer(Entry<V> entry) {
+            queue.offer(entry);
+        }
+
+        void pushFront(Entry<V> entry) {
+            front.addFirst(entry);
+            // Wake a consumer blocked on the FIFO queue; it then reads the front deque
+            queue.offer(Entry.wakeUp());
+        }
+
+        V poll() {
+            V value = pollFront();
+            if (value != null) {
+                return value;
+            }
+            Entry<V> entry;
+            long now = System.currentTimeMillis();
+            while ((entry = queue.poll()) != null) {
+                if (entry.isLive(now)) {
+                    return entry.value;
+                }
+            }
+            return null;
+        }
+
+        V take(long timeout) {
+            long deadline = deadline(timeout);
+            while (true) {
+                V value = poll();
+                if (value != null) {
+                    return value;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                Entry<V> entry;
+                try {
+                    entry = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                if (entry == null) {
+                    return pollFront();
+                }
+                if (entry.isLive(System.currentTimeMillis())) {
+                    return entry.value;
+                }
+                // wake-up marker or expired entry: check the front deque and wait again
+            }
+        }
+
+        V peek() {
+            long now = System.currentTimeMillis();
+            for (Entry<V> entry : front) {
+                if (entry.isLive(now)) {
+                    return entry.value;
+                }
+            }
+            for (Entry<V> entry : queue) {
+                if (entry.isLive(now)) {
+                    return entry.value;
+                }
+            }
+            return null;
+        }
+
+        int size() {
+            long now = System.currentTimeMillis();
+            int size = countLive(front.iterator(), now);
+            size += countLive(queue.iterator(), now);
+            return size;
+        }
+
+        void clear() {
+            front.clear();
+            queue.clear();
+        }
+
+        private V pollFront() {
+            Entry<V> entry;
+            long now = System.currentTimeMillis();
+            while ((entry = front.pollFirst()) != null) {
+                if (entry.isLive(now)) {
+                    return entry.value;
+                }
+            }
+            return null;
+        }
+
+        private static <V> int countLive(Iterator<Entry<V>> it, long now) {
+            int count = 0;
+            while (it.hasNext()) {
+                Entry<V> entry = it.next();
+                if (entry.isLive(now)) {
+                    count++;
+                } else if (entry.value != null) {
+                    // expired entries are removed while counting
+                    it.remove();
+                }
+            }
+            return count;
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+
+        private static final Entry<?> WAKE_UP = new Entry<>(null, 0);
+
+        @SuppressWarnings("unchecked")
+        static <V> Entry<V> wakeUp() {
+            return (Entry<V>) WAKE_UP;
+        }
+
+        boolean isLive(long now) {
+            return value != null && (expiresAt == 0 || expiresAt > now);
+        }
+    }
+
+    private record ListenerEntry<K, V>(SpaceListener<K, V> listener, long expiresAt) {
+
+        boolean isExpired(long now) {
+            return expiresAt != 0 && expiresAt <= now;
+        }
+    }
+}
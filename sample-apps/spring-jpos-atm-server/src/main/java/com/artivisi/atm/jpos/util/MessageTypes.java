@@ -0,0 +1,42 @@
+package com.artivisi.atm.jpos.util;
+
+/**
+ * ISO-8583 (1987) message types of the financial path.
+ *
+ * The last MTI digit is the message origin; an odd origin is a repeat, sent again by a terminal
+ * that got no response to the first transmission (0201, 0401, 0421).
+ */
+public final class MessageTypes {
+
+    public static final String FINANCIAL_REQUEST = "0200";
+    public static final String FINANCIAL_REQUEST_REPEAT = "0201";
+    public static final String REVERSAL_REQUEST = "0400";
+    public static final String REVERSAL_REQUEST_REPEAT = "0401";
+    public static final String REVERSAL_ADVICE = "0420";
+    public static final String REVERSAL_ADVICE_REPEAT = "0421";
+
+    private MessageTypes() {
+    }
+
+    /**
+     * @return true for 0200 and its repeat 0201
+     */
+    public static boolean isFinancialRequest(String mti) {
+        return FINANCIAL_REQUEST.equals(mti) || FINANCIAL_REQUEST_REPEAT.equals(mti);
+    }
+
+    /**
+     * @return true for reversal requests and advices (0400/0420) and their repeats
+     */
+    public static boolean isReversal(String mti) {
+        return REVERSAL_REQUEST.equals(mti) || REVERSAL_REQUEST_REPEAT.equals(mti)
+                || REVERSAL_ADVICE.equals(mti) || REVERSAL_ADVICE_REPEAT.equals(mti);
+    }
+
+    /**
+     * @return true if the origin digit marks a repeat
+     */
+    public static boolean isRepeat(String mti) {
+        return mti != null && mti.length() == 4 && (mti.charAt(3) - '0') % 2 == 1;
+    }
+}
@@ -0,0 +1,52 @@
+package com.artivisi.atm.jpos.util;
+
+import com.artivisi.atm.dto.StatementEntry;
+
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Field 48 (additional data - private) of a mini-statement response (processing code 380000).
+ *
+ * Fixed width, so terminals print it without parsing delimiters:
+ * - 2 digits: number of entries
+ * - 20 characters per entry, most recent first:
+ *   MMdd (4) + type (3: WDL, DEP, TRI, TRO, BAL) + D/C (1) + amount in cents (12, zero padded)
+ */
+public final class MiniStatementFormat {
+
+    public static final int ENTRY_LENGTH = 20;
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("MMdd");
+
+    private MiniStatementFormat() {
+    }
+
+    /**
+     * @param entries Entries, most recent first (at most 99)
+     * @return Field 48 value
+     */
+    public static String format(List<StatementEntry> entries) {
+        int count = Math.min(entries.size(), 99);
+        StringBuilder field = new StringBuilder(2 + count * ENTRY_LENGTH);
+        field.append(String.format("%02d", count));
+        for (StatementEntry entry : entries.subList(0, count)) {
+            field.append(entry.getTransactionDate().format(DATE))
+                    .append(typeCode(entry))
+                    .append(entry.isDebit() ? 'D' : 'C')
+                    .append(String.format("%012d", entry.getAmount().movePointRight(2).longValue()));
+        }
+        return field.toString();
+    }
+
+    private static String typeCode(StatementEntry entry) {
+        return switch (entry.getTransactionType()) {
+            case WITHDRAWAL -> "WDL";
+            case DEPOSIT -> "DEP";
+            case TRANSFER_IN -> "TRI";
+            case TRANSFER_OUT -> "TRO";
+            case BALANCE_INQUIRY -> "BAL";
+            case REVERSAL -> "REV";
+        };
+    }
+}
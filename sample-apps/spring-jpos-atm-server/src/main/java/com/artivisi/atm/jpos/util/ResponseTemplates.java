@@ -0,0 +1,109 @@
+package com.artivisi.atm.jpos.util;
+
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOHeader;
+import org.jpos.iso.ISOMsg;
+
+import java.util.Map;
+
+/**
+ * Per-MTI response templates for ISO-8583 responses.
+ *
+ * Responses are built from a fresh ISOMsg that copies only the echo-back fields of the
+ * request, instead of cloning the whole request. Sensitive and request-only fields are
+ * never sent back to the terminal:
+ * - Field 52/123: PIN block
+ * - Field 64: Request MAC (response MAC is generated over the response)
+ * - Field 102: Account number
+ *
+ * Response-specific fields (39, 37, 48, 54, 123 for key change) are set by the caller.
+ */
+public final class ResponseTemplates {
+
+    /** Financial transaction (0200): PAN, processing code, amount, date/time, STAN, RRN, terminal, currency */
+    static final int[] FINANCIAL_ECHO_FIELDS = {2, 3, 4, 7, 11, 12, 13, 37, 41, 42, 49};
+
+    /** Reversal and advice (0400/0420 and repeats): financial fields plus original data elements */
+    static final int[] REVERSAL_ECHO_FIELDS = {2, 3, 4, 7, 11, 12, 13, 37, 41, 42, 49, 90};
+
+    /** Network management (0800): date/time, STAN, terminal, security control, network management code */
+    static final int[] NETWORK_ECHO_FIELDS = {3, 7, 11, 12, 13, 41, 42, 53, 70};
+
+    /** Fallback for other MTIs: routing and matching fields only */
+    static final int[] DEFAULT_ECHO_FIELDS = {3, 7, 11, 12, 13, 41, 42};
+
+    private static final Map<String, int[]> ECHO_FIELDS = Map.of(
+            "0200", FINANCIAL_ECHO_FIELDS,
+            "0201", FINANCIAL_ECHO_FIELDS,
+            "0400", REVERSAL_ECHO_FIELDS,
+            "0401", REVERSAL_ECHO_FIELDS,
+            "0420", REVERSAL_ECHO_FIELDS,
+            "0421", REVERSAL_ECHO_FIELDS,
+            "0800", NETWORK_ECHO_FIELDS
+    );
+
+    private ResponseTemplates() {
+    }
+
+    /**
+     * Get the fields echoed from a request of the given MTI.
+     *
+     * @param requestMti Request MTI (e.g., "0200")
+     * @return Field numbers copied into the response
+     */
+    public static int[] echoFields(String requestMti) {
+        return ECHO_FIELDS.getOrDefault(requestMti, DEFAULT_ECHO_FIELDS);
+    }
+
+    /**
+     * Get the response MTI for a request MTI (0200 -> 0210, 0420 -> 0430, 0800 -> 0810).
+     * A repeat is answered like the original (0201 -> 0210, 0421 -> 0430).
+     *
+     * @param requestMti Request MTI
+     * @return Response MTI
+     */
+    public static String responseMti(String requestMti) {
+        char function = requestMti.charAt(2);
+        char origin = requestMti.charAt(3);
+        if (MessageTypes.isRepeat(requestMti)) {
+            origin--;
+        }
+        return requestMti.substring(0, 2) + (char) (function + 1) + origin;
+    }
+
+    /**
+     * Create a response for a request: response MTI, echo-back fields and field 39.
+     * Uses the request's packager and header so the response is sent with the same wire format.
+     *
+     * @param request Request message
+     * @param responseCode Field 39 response code
+     * @return New outgoing response message
+     * @throws ISOException if the request MTI cannot be read
+     */
+    public static ISOMsg createResponse(ISOMsg request, String responseCode) throws ISOException {
+        String requestMti = request.getMTI();
+
+        ISOMsg response = new ISOMsg();
+        response.setPackager(request.getPackager());
+        ISOHeader header = request.getISOHeader();
+        if (header != null) {
+            response.setHeader((ISOHeader) header.clone());
+        }
+        response.setDirection(ISOMsg.OUTGOING);
+        response.setMTI(responseMti(requestMti));
+
+        for (int field : echoFields(requestMti)) {
+            ISOComponent component = request.getComponent(field);
+            if (component != null) {
+                // Field components are value holders; sharing them avoids copying field data
+                response.set(component);
+            }
+        }
+
+        if (responseCode != null) {
+            response.set(39, responseCode);
+        }
+        return response;
+    }
+}
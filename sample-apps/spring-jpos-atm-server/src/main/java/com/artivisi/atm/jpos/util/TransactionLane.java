@@ -0,0 +1,69 @@
+package com.artivisi.atm.jpos.util;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+
+/**
+ * TransactionManager lanes: traffic classes with their own TransactionManager, queue, space,
+ * sessions and concurrency limit, so slow key management work cannot delay withdrawals.
+ *
+ * Classification follows the MTISelector routing rules, applied by IsoRequestListener before
+ * the context is queued:
+ * - 0200/0201 → FINANCIAL (FinancialTransaction or Duplicate group)
+ * - 0400/0420 and repeats → FINANCIAL (Reversal group): sharded by terminal like the original,
+ *   so a reversal is queued behind the request it reverses
+ * - 0800 + field 70 → NETWORK (NetworkManagement group)
+ * - 0800 + field 53 → KEY_MANAGEMENT (KeyChange group)
+ * - anything else → NETWORK (MTISelector declines it; keeps malformed traffic off the financial lane)
+ *
+ * Names per lane (base names tspace:default / txnmgr / transactionManager):
+ * - space: tspace:default-financial, queue: txnmgr.financial, manager: transactionManager-financial
+ * - with shards (financial lane only, see TransactionShards): tspace:default-financial-0, txnmgr.financial.0, ...
+ */
+public enum TransactionLane {
+
+    FINANCIAL("financial"),
+    NETWORK("network"),
+    KEY_MANAGEMENT("key");
+
+    private final String id;
+
+    TransactionLane(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @param msg Request message
+     * @return Lane for the message (NETWORK if it cannot be classified)
+     */
+    public static TransactionLane of(ISOMsg msg) {
+        try {
+            String mti = msg.getMTI();
+            if (MessageTypes.isFinancialRequest(mti) || MessageTypes.isReversal(mti)) {
+                return FINANCIAL;
+            }
+            if ("0800".equals(mti) && !msg.hasField(70) && msg.hasField(53)) {
+                return KEY_MANAGEMENT;
+            }
+        } catch (ISOException e) {
+            // no MTI: handled (and declined) on the network lane
+        }
+        return NETWORK;
+    }
+
+    public String spaceName(String space, int shard, int shards) {
+        return TransactionShards.spaceName(space + "-" + id, shard, shards);
+    }
+
+    public String queueName(String queue, int shard, int shards) {
+        return TransactionShards.queueName(queue + "." + id, shard, shards);
+    }
+
+    public String managerName(String name, int shard, int shards) {
+        return shards <= 1 ? name + "-" + id : name + "-" + id + "-" + shard;
+    }
+}
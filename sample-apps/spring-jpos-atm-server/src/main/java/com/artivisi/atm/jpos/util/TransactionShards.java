@@ -0,0 +1,46 @@
+package com.artivisi.atm.jpos.util;
+
+/**
+ * Naming and routing for sharded TransactionManager queues.
+ *
+ * With N shards there are N TransactionManagers (see JposConfig), each reading its own queue
+ * from its own space. Space and queue names are derived from the configured base names:
+ * - 1 shard: space and queue unchanged (e.g., tspace:default / txnmgr)
+ * - N shards: tspace:default-0 / txnmgr.0 ... tspace:default-(N-1) / txnmgr.(N-1)
+ *
+ * Every shard has its own TSpace because TSpace synchronizes all operations on the space
+ * instance; separate keys in one space would still contend on the same monitor.
+ *
+ * A terminal always maps to the same shard, so its requests are queued in arrival order
+ * on one queue.
+ */
+public final class TransactionShards {
+
+    private TransactionShards() {
+    }
+
+    /**
+     * @param terminalId Terminal ID (null routes to shard 0)
+     * @param shards Number of shards
+     * @return Shard index in [0, shards)
+     */
+    public static int shardOf(String terminalId, int shards) {
+        if (shards <= 1 || terminalId == null) {
+            return 0;
+        }
+        // Spread String.hashCode (similar IDs like ATM-001, ATM-002 differ only in low bits)
+        int h = terminalId.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return Math.floorMod(h, shards);
+    }
+
+    public static String spaceName(String space, int shard, int shards) {
+        return shards <= 1 ? space : space + "-" + shard;
+    }
+
+    public static String queueName(String queue, int shard, int shards) {
+        return shards <= 1 ? queue : queue + "." + shard;
+    }
+}
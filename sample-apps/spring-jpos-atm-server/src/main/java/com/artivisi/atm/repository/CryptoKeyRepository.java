@@ -58,4 +58,23 @@ public interface CryptoKeyRepository extends JpaRepository<CryptoKey, UUID> {
            "AND k.status IN ('ACTIVE', 'PENDING') " +
            "ORDER BY k.keyType, k.keyVersion DESC")
     List<CryptoKey> findAllValidKeysForTerminal(@Param("terminalId") String terminalId);
+
+    /**
+     * Find terminals that have an active key of the given type.
+     * Used to select terminals for fleet-wide key rotation campaigns.
+     */
+    @Query("SELECT DISTINCT k.terminalId FROM CryptoKey k " +
+           "WHERE k.keyType = :keyType AND k.status = 'ACTIVE' " +
+           "ORDER BY k.terminalId")
+    List<String> findTerminalIdsWithActiveKey(@Param("keyType") CryptoKey.KeyType keyType);
+
+    /**
+     * Find terminals of an institution (terminal ID prefix) that have an active key of the given type.
+     */
+    @Query("SELECT DISTINCT k.terminalId FROM CryptoKey k " +
+           "WHERE k.keyType = :keyType AND k.status = 'ACTIVE' " +
+           "AND k.terminalId LIKE CONCAT(:institution, '-%') " +
+           "ORDER BY k.terminalId")
+    List<String> findTerminalIdsWithActiveKeyByInstitution(@Param("keyType") CryptoKey.KeyType keyType,
+                                                           @Param("institution") String institution);
 }
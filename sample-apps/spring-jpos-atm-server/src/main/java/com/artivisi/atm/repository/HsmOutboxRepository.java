@@ -0,0 +1,182 @@
+package com.artivisi.atm.repository;
+
+import com.artivisi.atm.entity.CryptoKey;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Plain JDBC access to hsm_outbox (V11 migration): key rotation notifications to the HSM.
+ *
+ * enqueue joins the caller's transaction, so a notification is stored if and only if the key change
+ * it reports commits. The dispatcher claims due messages in batches with FOR UPDATE SKIP LOCKED and
+ * moves their next_attempt_at ahead by a lease: other nodes skip them, and a message claimed by a
+ * node that died becomes due again when the lease expires. No transaction is held during delivery.
+ */
+@Repository
+public class HsmOutboxRepository {
+
+    public enum EventType {
+        /** Terminal installed the new key (KeyRotationConfirmation) */
+        CONFIRMATION,
+        /** Terminal failed to install the new key (KeyRotationFailure) */
+        FAILURE
+    }
+
+    public enum Status {
+        PENDING,
+        DELIVERED,
+        DEAD
+    }
+
+    private static final String ENQUEUE = """
+            INSERT INTO hsm_outbox (event_type, rotation_id, terminal_id, key_type, detail)
+            VALUES (:eventType, :rotationId, :terminalId, :keyType, :detail)
+            ON CONFLICT (rotation_id, event_type) DO NOTHING""";
+
+    private static final String CLAIM = """
+            UPDATE hsm_outbox
+               SET next_attempt_at = :leaseUntil
+             WHERE id IN (SELECT id FROM hsm_outbox
+                           WHERE status = 'PENDING' AND next_attempt_at <= :now
+                           ORDER BY next_attempt_at
+                           LIMIT :limit
+                             FOR UPDATE SKIP LOCKED)
+            RETURNING id, event_type, rotation_id, terminal_id, key_type, detail, attempts""";
+
+    private static final String DELIVERED = """
+            UPDATE hsm_outbox
+               SET status = 'DELIVERED', attempts = attempts + 1, delivered_at = :now, last_error = NULL
+             WHERE id IN (:ids)""";
+
+    private static final String RETRY = """
+            UPDATE hsm_outbox
+               SET attempts = attempts + 1, next_attempt_at = :nextAttemptAt, last_error = :error
+             WHERE id = :id""";
+
+    private static final String DEAD = """
+            UPDATE hsm_outbox
+               SET status = 'DEAD', attempts = attempts + 1, last_error = :error
+             WHERE id = :id""";
+
+    private static final String COUNT_BY_STATUS = """
+            SELECT status, COUNT(*) AS messages FROM hsm_outbox
+             WHERE status <> 'DELIVERED'
+             GROUP BY status""";
+
+    private static final String PURGE = """
+            DELETE FROM hsm_outbox WHERE status = 'DELIVERED' AND delivered_at < :before""";
+
+    private static final RowMapper<Message> MESSAGE_MAPPER = (rs, rowNum) -> new Message(
+            rs.getLong("id"),
+            EventType.valueOf(rs.getString("event_type")),
+            rs.getString("rotation_id"),
+            rs.getString("terminal_id"),
+            CryptoKey.KeyType.valueOf(rs.getString("key_type")),
+            rs.getString("detail"),
+            rs.getInt("attempts"));
+
+    private final JdbcClient jdbcClient;
+
+    public HsmOutboxRepository(JdbcClient jdbcClient) {
+        this.jdbcClient = jdbcClient;
+    }
+
+    /**
+     * Store a notification, in the caller's transaction.
+     *
+     * @param rotationId Idempotency key: a second notification of the same type for a rotation is ignored
+     * @param detail Confirmed by (CONFIRMATION) or failure reason (FAILURE)
+     * @return true if stored, false if the rotation already had one
+     */
+    public boolean enqueue(EventType eventType, String rotationId, String terminalId, CryptoKey.KeyType keyType,
+                           String detail) {
+        return jdbcClient.sql(ENQUEUE)
+                .param("eventType", eventType.name())
+                .param("rotationId", rotationId)
+                .param("terminalId", terminalId)
+                .param("keyType", keyType.name())
+                .param("detail", truncate(detail))
+                .update() == 1;
+    }
+
+    /**
+     * Claim due messages, oldest first, until leaseUntil.
+     */
+    public List<Message> claim(int limit, LocalDateTime now, LocalDateTime leaseUntil) {
+        return jdbcClient.sql(CLAIM)
+                .param("limit", limit)
+                .param("now", now)
+                .param("leaseUntil", leaseUntil)
+                .query(MESSAGE_MAPPER)
+                .list();
+    }
+
+    public void markDelivered(List<Long> ids, LocalDateTime now) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcClient.sql(DELIVERED)
+                .param("ids", ids)
+                .param("now", now)
+                .update();
+    }
+
+    public void retry(long id, LocalDateTime nextAttemptAt, String error) {
+        jdbcClient.sql(RETRY)
+                .param("id", id)
+                .param("nextAttemptAt", nextAttemptAt)
+                .param("error", truncate(error))
+                .update();
+    }
+
+    public void markDead(long id, String error) {
+        jdbcClient.sql(DEAD)
+                .param("id", id)
+                .param("error", truncate(error))
+                .update();
+    }
+
+    /**
+     * @return Number of PENDING and DEAD messages (DELIVERED is not counted)
+     */
+    public Map<Status, Long> countByStatus() {
+        return jdbcClient.sql(COUNT_BY_STATUS)
+                .query((rs, rowNum) -> Map.entry(Status.valueOf(rs.getString("status")), rs.getLong("messages")))
+                .list()
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    /**
+     * @return Number of delivered messages deleted
+     */
+    public int purgeDelivered(LocalDateTime before) {
+        return jdbcClient.sql(PURGE)
+                .param("before", before)
+                .update();
+    }
+
+    private static String truncate(String value) {
+        return value != null && value.length() > 255 ? value.substring(0, 255) : value;
+    }
+
+    /**
+     * A claimed notification.
+     *
+     * @param attempts Failed delivery attempts so far
+     */
+    public record Message(long id, EventType eventType, String rotationId, String terminalId,
+                          CryptoKey.KeyType keyType, String detail, int attempts) {
+
+        /** Idempotency-Key header of the delivery */
+        public String idempotencyKey() {
+            return eventType.name().toLowerCase() + ":" + rotationId;
+        }
+    }
+}
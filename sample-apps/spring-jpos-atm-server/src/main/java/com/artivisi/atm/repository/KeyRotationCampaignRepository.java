@@ -0,0 +1,19 @@
+package com.artivisi.atm.repository;
+
+import com.artivisi.atm.entity.KeyRotationCampaign;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface KeyRotationCampaignRepository extends JpaRepository<KeyRotationCampaign, UUID> {
+
+    List<KeyRotationCampaign> findByStatus(KeyRotationCampaign.CampaignStatus status);
+
+    List<KeyRotationCampaign> findByStatusIn(Collection<KeyRotationCampaign.CampaignStatus> statuses);
+
+    List<KeyRotationCampaign> findAllByOrderByCreatedAtDesc();
+}
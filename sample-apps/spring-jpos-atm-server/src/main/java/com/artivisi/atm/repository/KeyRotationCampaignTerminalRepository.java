@@ -0,0 +1,98 @@
+package com.artivisi.atm.repository;
+
+import com.artivisi.atm.entity.CryptoKey;
+import com.artivisi.atm.entity.KeyRotationCampaignTerminal;
+import com.artivisi.atm.entity.KeyRotationCampaignTerminal.TerminalStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface KeyRotationCampaignTerminalRepository extends JpaRepository<KeyRotationCampaignTerminal, Long> {
+
+    List<KeyRotationCampaignTerminal> findByCampaignIdAndStatusOrderById(UUID campaignId, TerminalStatus status);
+
+    long countByCampaignIdAndStatusIn(UUID campaignId, Collection<TerminalStatus> statuses);
+
+    /**
+     * Count terminals per status for a campaign.
+     * Each row is [TerminalStatus, Long].
+     */
+    @Query("SELECT t.status, COUNT(t) FROM KeyRotationCampaignTerminal t " +
+           "WHERE t.campaignId = :campaignId GROUP BY t.status")
+    List<Object[]> countByStatus(@Param("campaignId") UUID campaignId);
+
+    /**
+     * Find a terminal's entry in campaigns that are still in progress for a key type.
+     * Used to track terminal-driven key change steps (request, confirmation, failure).
+     */
+    @Query("SELECT t FROM KeyRotationCampaignTerminal t, KeyRotationCampaign c " +
+           "WHERE c.id = t.campaignId " +
+           "AND t.terminalId = :terminalId " +
+           "AND c.keyType = :keyType " +
+           "AND c.status IN ('RUNNING', 'DISPATCHED') " +
+           "AND t.status IN :statuses")
+    List<KeyRotationCampaignTerminal> findInProgress(@Param("terminalId") String terminalId,
+                                                     @Param("keyType") CryptoKey.KeyType keyType,
+                                                     @Param("statuses") Collection<TerminalStatus> statuses);
+
+    /**
+     * Claim a PENDING entry for sending its notification: PENDING -> NOTIFIED.
+     * Conditional, so an entry is notified once even when several dispatchers (or nodes) see it PENDING.
+     *
+     * @return 1 if claimed, 0 if the entry is no longer PENDING
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE KeyRotationCampaignTerminal t SET t.status = 'NOTIFIED', t.attempts = t.attempts + 1, " +
+           "t.notifiedAt = :now, t.lastError = NULL, t.updatedAt = :now " +
+           "WHERE t.id = :id AND t.status = 'PENDING'")
+    int markNotified(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    /**
+     * Move an entry to a new status, only if it is still in one of the expected statuses.
+     * A late or concurrent transition (e.g., a timeout racing the terminal's confirmation) is a no-op.
+     *
+     * @return 1 if moved, 0 if the entry was not in fromStatuses
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE KeyRotationCampaignTerminal t SET t.status = :toStatus, t.lastError = :error, " +
+           "t.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE t.id = :id AND t.status IN :fromStatuses")
+    int transition(@Param("id") Long id,
+                   @Param("fromStatuses") Collection<TerminalStatus> fromStatuses,
+                   @Param("toStatus") TerminalStatus toStatus,
+                   @Param("error") String error);
+
+    /**
+     * Fail the entries of a campaign that have stayed in one of the given statuses since before the cutoff
+     * (terminal never answered its notification, or never connected).
+     *
+     * @return Number of entries failed
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE KeyRotationCampaignTerminal t SET t.status = 'FAILED', t.lastError = :error, " +
+           "t.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE t.campaignId = :campaignId AND t.status IN :statuses AND t.updatedAt < :cutoff")
+    int failStale(@Param("campaignId") UUID campaignId,
+                  @Param("statuses") Collection<TerminalStatus> statuses,
+                  @Param("cutoff") LocalDateTime cutoff,
+                  @Param("error") String error);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE KeyRotationCampaignTerminal t SET t.status = 'PENDING', t.lastError = NULL, " +
+           "t.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE t.campaignId = :campaignId AND t.status = 'FAILED'")
+    int resetFailed(@Param("campaignId") UUID campaignId);
+}
@@ -0,0 +1,208 @@
+package com.artivisi.atm.repository;
+
+import com.artivisi.atm.dto.AccountSnapshot;
+import com.artivisi.atm.entity.Account;
+import com.artivisi.atm.entity.PinVerificationType;
+import com.artivisi.atm.entity.Transaction;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Plain JDBC access to accounts and the transaction journal for the jPOS transaction path.
+ *
+ * No entity hydration, dirty checking or persistence context: each method is one SQL statement
+ * that maps straight to an AccountSnapshot. JPA repositories remain for the REST and admin side.
+ *
+ * The statements are static, so the PostgreSQL driver prepares them once per pooled connection
+ * and reuses the server-side plan (see prepareThreshold in application.yml).
+ */
+@Repository
+public class LedgerRepository {
+
+    private static final String ACCOUNT_COLUMNS = """
+            id, account_number, account_holder_name, balance, currency, account_type, status,
+            pin_verification_type, encrypted_pin_block, pvv, version""";
+
+    private static final String FIND_ACCOUNT = "SELECT " + ACCOUNT_COLUMNS
+            + " FROM accounts WHERE account_number = :accountNumber";
+
+    /*
+     * Conditional debit and journal insert in one statement, hence one implicit transaction:
+     * the UPDATE only matches an active account with enough balance (re-checked under the row lock),
+     * and the journal row is inserted only if the UPDATE matched. version is incremented like
+     * Hibernate's @Version, so JPA writers still detect the change.
+     */
+    private static final String DEBIT = """
+            WITH debited AS (
+                UPDATE accounts
+                   SET balance = balance - :amount, version = version + 1, updated_at = CURRENT_TIMESTAMP
+                 WHERE account_number = :accountNumber AND status = 'ACTIVE' AND balance >= :amount
+                RETURNING %s
+            ), journal AS (
+                INSERT INTO transactions (account_id, transaction_type, amount, balance_before, balance_after,
+                                          description, reference_number, transaction_date, created_at,
+                                          institution_id, terminal_id, card_hash, stan, transmission_date_time)
+                SELECT id, :transactionType, :amount, balance + :amount, balance,
+                       :description, :referenceNumber, :transactionDate, CURRENT_TIMESTAMP,
+                       :institutionId, :terminalId, :cardHash, :stan, :transmissionDateTime
+                  FROM debited
+                RETURNING id
+            )
+            SELECT debited.*, journal.id AS journal_id FROM debited CROSS JOIN journal
+            """.formatted(ACCOUNT_COLUMNS);
+
+    /*
+     * Reversal of a withdrawal in one statement: the original is marked reversed only if it was not
+     * already (the transaction_date condition prunes to its partition), the account is credited only
+     * if it was marked, and the REVERSAL row is journaled only if the account was credited. Concurrent
+     * reversals of the same withdrawal serialize on the original row; the second one matches nothing.
+     * The credit applies whatever the account status: the money left the account, it goes back.
+     */
+    private static final String REVERSE = """
+            WITH original AS (
+                UPDATE transactions
+                   SET reversed = TRUE
+                 WHERE id = :journalId AND transaction_date = :originalDate
+                   AND transaction_type = 'WITHDRAWAL' AND NOT reversed
+                RETURNING account_id, amount, card_hash
+            ), credited AS (
+                UPDATE accounts
+                   SET balance = balance + original.amount, version = version + 1, updated_at = CURRENT_TIMESTAMP
+                  FROM original
+                 WHERE accounts.id = original.account_id
+                RETURNING %s, original.amount AS reversed_amount, original.card_hash
+            ), journal AS (
+                INSERT INTO transactions (account_id, transaction_type, amount, balance_before, balance_after,
+                                          description, reference_number, transaction_date, created_at,
+                                          institution_id, terminal_id, stan, transmission_date_time)
+                SELECT id, 'REVERSAL', reversed_amount, balance - reversed_amount, balance,
+                       :description, :referenceNumber, :transactionDate, CURRENT_TIMESTAMP,
+                       :institutionId, :terminalId, :stan, :transmissionDateTime
+                  FROM credited
+                RETURNING id
+            )
+            SELECT credited.*, journal.id AS journal_id FROM credited CROSS JOIN journal
+            """.formatted(ACCOUNT_COLUMNS);
+
+    private static final RowMapper<AccountSnapshot> ACCOUNT_MAPPER = (rs, rowNum) -> AccountSnapshot.builder()
+            .id(rs.getLong("id"))
+            .accountNumber(rs.getString("account_number"))
+            .accountHolderName(rs.getString("account_holder_name"))
+            .balance(rs.getBigDecimal("balance"))
+            .currency(rs.getString("currency"))
+            .accountType(Account.AccountType.valueOf(rs.getString("account_type")))
+            .status(Account.AccountStatus.valueOf(rs.getString("status")))
+            .pinVerificationType(PinVerificationType.valueOf(rs.getString("pin_verification_type")))
+            .encryptedPinBlock(rs.getString("encrypted_pin_block"))
+            .pvv(rs.getString("pvv"))
+            .version(rs.getLong("version"))
+            .build();
+
+    private final JdbcClient jdbcClient;
+
+    public LedgerRepository(JdbcClient jdbcClient) {
+        this.jdbcClient = jdbcClient;
+    }
+
+    /**
+     * Runs on the primary, not the read pool: AccountReadModel caches the row until the next
+     * account_changed notification, so a row read from a lagging replica could stay cached
+     * (e.g., a blocked account still ACTIVE) after the notification that should have replaced it.
+     */
+    public Optional<AccountSnapshot> findAccount(String accountNumber) {
+        return jdbcClient.sql(FIND_ACCOUNT)
+                .param("accountNumber", accountNumber)
+                .query(ACCOUNT_MAPPER)
+                .optional();
+    }
+
+    /**
+     * Debit an active account with sufficient balance and journal the debit, atomically.
+     *
+     * @param institutionId Field 42 of the request (null outside ISO-8583)
+     * @param terminalId Field 41 of the request (null outside ISO-8583)
+     * @param cardHash HMAC of field 2 for velocity limits (null outside ISO-8583)
+     * @param stan Field 11 of the request, for repeat and reversal matching (null outside ISO-8583)
+     * @param transmissionDateTime Field 7 of the request (null outside ISO-8583)
+     * @return Committed debit, or empty if the account is missing, not active or short of funds
+     *         (nothing was written; look the account up to tell which)
+     */
+    public Optional<Debit> debit(String accountNumber, BigDecimal amount, Transaction.TransactionType type,
+                                 String description, String referenceNumber, LocalDateTime transactionDate,
+                                 String institutionId, String terminalId, String cardHash,
+                                 String stan, String transmissionDateTime) {
+        return jdbcClient.sql(DEBIT)
+                .param("accountNumber", accountNumber)
+                .param("amount", amount)
+                .param("transactionType", type.name())
+                .param("description", description)
+                .param("referenceNumber", referenceNumber)
+                .param("transactionDate", transactionDate)
+                .param("institutionId", institutionId)
+                .param("terminalId", terminalId)
+                .param("cardHash", cardHash)
+                .param("stan", stan)
+                .param("transmissionDateTime", transmissionDateTime)
+                .query((rs, rowNum) -> new Debit(
+                        ACCOUNT_MAPPER.mapRow(rs, rowNum),
+                        amount,
+                        rs.getBigDecimal("balance").add(amount),
+                        rs.getLong("journal_id")))
+                .optional();
+    }
+
+    /**
+     * Reverse a withdrawal: credit its amount back and journal a REVERSAL row, atomically.
+     *
+     * @param journalId Id of the withdrawal row
+     * @param originalDate transaction_date of the withdrawal row (partition key)
+     * @param institutionId Field 42 of the reversal
+     * @param terminalId Field 41 of the reversal
+     * @param stan Field 11 of the reversal
+     * @param transmissionDateTime Field 7 of the reversal
+     * @return Committed reversal, or empty if the withdrawal does not exist or was already reversed
+     *         (nothing was written)
+     */
+    public Optional<Reversal> reverse(long journalId, LocalDateTime originalDate, String description,
+                                      String referenceNumber, LocalDateTime transactionDate,
+                                      String institutionId, String terminalId, String stan,
+                                      String transmissionDateTime) {
+        return jdbcClient.sql(REVERSE)
+                .param("journalId", journalId)
+                .param("originalDate", originalDate)
+                .param("description", description)
+                .param("referenceNumber", referenceNumber)
+                .param("transactionDate", transactionDate)
+                .param("institutionId", institutionId)
+                .param("terminalId", terminalId)
+                .param("stan", stan)
+                .param("transmissionDateTime", transmissionDateTime)
+                .query((rs, rowNum) -> new Reversal(
+                        ACCOUNT_MAPPER.mapRow(rs, rowNum),
+                        rs.getBigDecimal("reversed_amount"),
+                        rs.getString("card_hash"),
+                        rs.getLong("journal_id")))
+                .optional();
+    }
+
+    /**
+     * @param account Account state after the debit (balance and version)
+     * @param journalId Id of the transactions row
+     */
+    public record Debit(AccountSnapshot account, BigDecimal amount, BigDecimal balanceBefore, long journalId) {
+    }
+
+    /**
+     * @param account Account state after the credit (balance and version)
+     * @param amount Amount of the reversed withdrawal
+     * @param cardHash Card of the reversed withdrawal (null if it had none)
+     * @param journalId Id of the REVERSAL row
+     */
+    public record Reversal(AccountSnapshot account, BigDecimal amount, String cardHash, long journalId) {
+    }
+}
@@ -0,0 +1,164 @@
+package com.artivisi.atm.repository;
+
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Plain JDBC access to cluster_nodes and terminal_sessions (V12 migration).
+ *
+ * All times are taken from the database clock, so clock skew between nodes does not matter.
+ * Liveness is decided with heartbeat_at and claimed_at. Ownership of a terminal goes to its most
+ * recent connection: connected_at is the database time minus the age of the connection on its node
+ * (measured with the node's monotonic clock), so a claim published late, or a late write of an
+ * older connection, keeps its place in the order.
+ */
+@Repository
+public class TerminalDirectoryRepository {
+
+    private static final String HEARTBEAT = """
+            INSERT INTO cluster_nodes (node_id, url)
+            VALUES (:nodeId, :url)
+            ON CONFLICT (node_id) DO UPDATE
+               SET url = EXCLUDED.url, heartbeat_at = CURRENT_TIMESTAMP""";
+
+    private static final String CLAIM = """
+            INSERT INTO terminal_sessions (terminal_id, node_id, channel_name, signed_on, connected_at)
+            VALUES (:terminalId, :nodeId, :channelName, :signedOn,
+                    CURRENT_TIMESTAMP - make_interval(secs => :connectedFor))
+            ON CONFLICT (terminal_id) DO UPDATE
+               SET node_id = EXCLUDED.node_id, channel_name = EXCLUDED.channel_name,
+                   signed_on = EXCLUDED.signed_on, connected_at = EXCLUDED.connected_at,
+                   claimed_at = CURRENT_TIMESTAMP
+             WHERE terminal_sessions.node_id = EXCLUDED.node_id
+                OR terminal_sessions.connected_at <= EXCLUDED.connected_at""";
+
+    private static final String RELEASE = """
+            DELETE FROM terminal_sessions WHERE terminal_id = :terminalId AND node_id = :nodeId""";
+
+    private static final String RELEASE_NODE = """
+            DELETE FROM terminal_sessions WHERE node_id = :nodeId""";
+
+    private static final String REMOVE_NODE = """
+            DELETE FROM cluster_nodes WHERE node_id = :nodeId""";
+
+    private static final String LIVE_SESSIONS = """
+            SELECT s.terminal_id, s.node_id, n.url, s.signed_on
+              FROM terminal_sessions s
+              JOIN cluster_nodes n ON n.node_id = s.node_id
+             WHERE n.heartbeat_at >= CURRENT_TIMESTAMP - make_interval(secs => :nodeTimeout)""";
+
+    private static final String CLAIMED_ELSEWHERE = """
+            SELECT terminal_id, EXTRACT(EPOCH FROM CURRENT_TIMESTAMP - connected_at) AS connected_for
+              FROM terminal_sessions
+             WHERE node_id <> :nodeId
+               AND claimed_at >= CURRENT_TIMESTAMP - make_interval(secs => :within)""";
+
+    private final JdbcClient jdbcClient;
+
+    public TerminalDirectoryRepository(JdbcClient jdbcClient) {
+        this.jdbcClient = jdbcClient;
+    }
+
+    /**
+     * Register a node, or record that it is alive.
+     */
+    public void heartbeat(String nodeId, String url) {
+        jdbcClient.sql(HEARTBEAT)
+                .param("nodeId", nodeId)
+                .param("url", url)
+                .update();
+    }
+
+    /**
+     * Record that a terminal is connected to a node.
+     *
+     * @param connectedFor Age of the connection on the node
+     * @return false if another node holds a more recent connection of the terminal
+     */
+    public boolean claim(String terminalId, String nodeId, String channelName, boolean signedOn,
+                         Duration connectedFor) {
+        return jdbcClient.sql(CLAIM)
+                .param("terminalId", terminalId)
+                .param("nodeId", nodeId)
+                .param("channelName", channelName)
+                .param("signedOn", signedOn)
+                .param("connectedFor", connectedFor.toMillis() / 1000.0)
+                .update() == 1;
+    }
+
+    /**
+     * Remove a terminal's session, unless it has moved to another node meanwhile.
+     */
+    public void release(String terminalId, String nodeId) {
+        jdbcClient.sql(RELEASE)
+                .param("terminalId", terminalId)
+                .param("nodeId", nodeId)
+                .update();
+    }
+
+    /**
+     * Remove all sessions of a node (node starting or stopping).
+     */
+    public void releaseAll(String nodeId) {
+        jdbcClient.sql(RELEASE_NODE)
+                .param("nodeId", nodeId)
+                .update();
+    }
+
+    public void removeNode(String nodeId) {
+        releaseAll(nodeId);
+        jdbcClient.sql(REMOVE_NODE)
+                .param("nodeId", nodeId)
+                .update();
+    }
+
+    /**
+     * Find the session of a terminal on a live node.
+     */
+    public Optional<Session> find(String terminalId, Duration nodeTimeout) {
+        return jdbcClient.sql(LIVE_SESSIONS + " AND s.terminal_id = :terminalId")
+                .param("nodeTimeout", nodeTimeout.toSeconds())
+                .param("terminalId", terminalId)
+                .query(Session.class)
+                .optional();
+    }
+
+    /**
+     * @return Sessions of all live nodes
+     */
+    public List<Session> findAll(Duration nodeTimeout) {
+        return jdbcClient.sql(LIVE_SESSIONS + " ORDER BY s.terminal_id")
+                .param("nodeTimeout", nodeTimeout.toSeconds())
+                .query(Session.class)
+                .list();
+    }
+
+    /**
+     * Terminals another node claimed recently: a session of this node for them is stale if older.
+     *
+     * @return Terminal ID -> age of the claiming node's connection
+     */
+    public Map<String, Duration> claimedElsewhere(String nodeId, Duration within) {
+        Map<String, Duration> claims = new HashMap<>();
+        jdbcClient.sql(CLAIMED_ELSEWHERE)
+                .param("nodeId", nodeId)
+                .param("within", within.toSeconds())
+                .query(rs -> {
+                    claims.put(rs.getString("terminal_id"),
+                            Duration.ofMillis(Math.round(rs.getDouble("connected_for") * 1000)));
+                });
+        return claims;
+    }
+
+    /**
+     * A terminal connected to a node.
+     */
+    public record Session(String terminalId, String nodeId, String url, boolean signedOn) {
+    }
+}
@@ -11,6 +11,14 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * transactions is partitioned by month of transaction_date (V7__partition_transactions.sql).
+ * Queries with a transaction_date range only read the partitions of that range; queries without
+ * one probe an index of every attached partition, at most the retention period.
+ * The mini-statement page (findByAccountIdOrderByTransactionDateDesc with a Pageable) has no
+ * natural date bound: it reads the newest rows of each partition's (account_id, transaction_date DESC)
+ * index in a merge and stops at the page size.
+ */
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
 
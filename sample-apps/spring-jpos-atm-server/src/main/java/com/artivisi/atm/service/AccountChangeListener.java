@@ -0,0 +1,53 @@
+package com.artivisi.atm.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evicts AccountReadModel entries changed by other nodes.
+ *
+ * Listens on the PostgreSQL channel account_changed, fed by the accounts trigger
+ * (payload "accountNumber:version"). The whole read model is cleared on (re)connect.
+ */
+@Component
+public class AccountChangeListener extends PostgresNotificationListener {
+
+    static final String CHANNEL = "account_changed";
+
+    private final AccountReadModel accountReadModel;
+
+    public AccountChangeListener(AccountReadModel accountReadModel,
+                                 @Value("${account.read-model.notifications.enabled:true}") boolean enabled,
+                                 @Value("${spring.datasource.url}") String url,
+                                 @Value("${spring.datasource.username}") String username,
+                                 @Value("${spring.datasource.password}") String password,
+                                 @Value("${account.read-model.notifications.reconnect-delay-ms:5000}") long reconnectDelayMillis) {
+        super(CHANNEL, enabled, url, username, password, reconnectDelayMillis);
+        this.accountReadModel = accountReadModel;
+    }
+
+    @Override
+    protected void onConnected() {
+        accountReadModel.clear();
+    }
+
+    /**
+     * @param payload "accountNumber:version" as sent by the accounts trigger
+     */
+    @Override
+    void onNotification(String payload) {
+        int separator = payload.lastIndexOf(':');
+        if (separator < 0) {
+            accountReadModel.invalidate(payload, -1);
+            return;
+        }
+        String accountNumber = payload.substring(0, separator);
+        long version;
+        try {
+            version = Long.parseLong(payload.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            version = -1;
+        }
+        accountReadModel.invalidate(accountNumber, version);
+    }
+}
@@ -0,0 +1,237 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.dto.AccountSnapshot;
+import com.artivisi.atm.entity.Account;
+import com.artivisi.atm.repository.LedgerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * In-memory read model of accounts for balance inquiries, account validation and PIN verification.
+ *
+ * - Read-through: an account is loaded from the database on first use
+ * - Write-through: the debit path stores the committed balance (see LedgerService and BankService.withdraw)
+ * - Bounded: least recently used accounts are evicted above max-size. Lookups are lock-free;
+ *   once the map exceeds max-size by 1/16, one writer sweeps it back down to max-size while
+ *   the others carry on (approximate LRU, the bound may be exceeded briefly)
+ * - Invalidated across nodes: a trigger on accounts sends NOTIFY account_changed on every
+ *   change, and AccountChangeListener evicts the entry (see V6__notify_account_changes.sql).
+ *   Every update bumps the row version, also a direct UPDATE that does not set it
+ *   (V13__bump_account_version.sql), so the notified version is always newer than a cached one
+ *
+ * Entries carry the row version (@Version). An older version never replaces a newer one, so a
+ * slow load cannot overwrite a write-through. A load that overlaps an invalidation is returned
+ * but not cached, because it may have read the row before the other node's commit.
+ */
+@Service
+@Slf4j
+public class AccountReadModel {
+
+    private final Function<String, Optional<AccountSnapshot>> loader;
+    private final int maxSize;
+
+    private final int evictionSlack;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Logical clock stamped on an entry at every access, for LRU eviction
+    private final AtomicLong accessClock = new AtomicLong();
+
+    // Held by the single writer sweeping the map back to max-size
+    private final ReentrantLock evicting = new ReentrantLock();
+
+    // Incremented on every invalidation, to detect loads that raced with one
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public AccountReadModel(LedgerRepository ledgerRepository, DependencyHealth dependencyHealth,
+                            @Value("${account.read-model.max-size:100000}") int maxSize) {
+        // Loads fail fast while the database circuit is open
+        this(accountNumber -> dependencyHealth.callDatabase(() -> ledgerRepository.findAccount(accountNumber)), maxSize);
+    }
+
+    AccountReadModel(Function<String, Optional<AccountSnapshot>> loader, int maxSize) {
+        this.loader = loader;
+        this.maxSize = Math.max(1, maxSize);
+        this.evictionSlack = this.maxSize / 16;
+        log.info("Account read model: max size {}", this.maxSize);
+    }
+
+    /**
+     * Get an account, loading it from the database on a miss.
+     *
+     * @param accountNumber Account number
+     * @return Account snapshot, or empty if the account does not exist
+     */
+    public Optional<AccountSnapshot> get(String accountNumber) {
+        Entry entry = entries.get(accountNumber);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return Optional.of(touch(entry).snapshot);
+        }
+
+        misses.incrementAndGet();
+        long loadGeneration = generation.get();
+        Optional<AccountSnapshot> loaded = loader.apply(accountNumber);
+        if (loaded.isEmpty()) {
+            return loaded;
+        }
+        if (generation.get() != loadGeneration) {
+            log.debug("Account {} invalidated while loading, not cached", accountNumber);
+            return loaded;
+        }
+        return Optional.of(putIfNewer(loaded.get()));
+    }
+
+    /**
+     * Get an account only if it is in memory, without a database round trip (stand-in processing).
+     *
+     * @param accountNumber Account number
+     * @return Account snapshot, or empty if not loaded
+     */
+    public Optional<AccountSnapshot> peek(String accountNumber) {
+        Entry entry = entries.get(accountNumber);
+        return entry == null ? Optional.empty() : Optional.of(touch(entry).snapshot);
+    }
+
+    /**
+     * Store the state of an account written by this node.
+     * Inside a transaction the update is deferred until after commit, so a rolled back debit
+     * never becomes visible.
+     *
+     * @param account Account entity that was saved
+     */
+    public void update(Account account) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    // @Version has been incremented by the flush at commit
+                    putIfNewer(AccountSnapshot.from(account));
+                }
+            });
+        } else {
+            putIfNewer(AccountSnapshot.from(account));
+        }
+    }
+
+    /**
+     * Store the committed state of an account written by this node without JPA.
+     *
+     * @param snapshot Account state returned by the committed statement
+     */
+    public void update(AccountSnapshot snapshot) {
+        putIfNewer(snapshot);
+    }
+
+    /**
+     * Evict an account changed elsewhere (another node, or a direct database update).
+     *
+     * @param accountNumber Account number
+     * @param version Committed row version, or -1 if unknown (always evicts)
+     */
+    public void invalidate(String accountNumber, long version) {
+        generation.incrementAndGet();
+        entries.computeIfPresent(accountNumber, (key, cached) -> {
+            if (version >= 0 && cached.snapshot.getVersion() >= version) {
+                return cached;
+            }
+            log.debug("Invalidated account {} (cached version {}, changed version {})",
+                    accountNumber, cached.snapshot.getVersion(), version);
+            return null;
+        });
+    }
+
+    /**
+     * Evict everything, e.g. after notifications may have been missed.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private AccountSnapshot putIfNewer(AccountSnapshot snapshot) {
+        Entry stored = entries.compute(snapshot.getAccountNumber(), (key, cached) ->
+                cached != null && cached.snapshot.getVersion() >= snapshot.getVersion()
+                        ? touch(cached)
+                        : new Entry(snapshot, accessClock.incrementAndGet()));
+        evictIfOversized();
+        return stored.snapshot;
+    }
+
+    private Entry touch(Entry entry) {
+        entry.lastAccess = accessClock.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Remove the least recently used entries above max-size. Only one thread sweeps at a time;
+     * an entry replaced or touched during the sweep may still be removed and is simply reloaded.
+     */
+    private void evictIfOversized() {
+        if (entries.size() <= maxSize + evictionSlack || !evicting.tryLock()) {
+            return;
+        }
+        try {
+            int excess = entries.size() - maxSize;
+            if (excess <= 0) {
+                return;
+            }
+            // Access times are copied first, so concurrent touches do not reorder the sort
+            entries.values().stream()
+                    .map(entry -> Map.entry(entry, entry.lastAccess))
+                    .sorted(Map.Entry.comparingByValue())
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(entry -> {
+                        if (entries.remove(entry.snapshot.getAccountNumber(), entry)) {
+                            evictions.incrementAndGet();
+                        }
+                    });
+        } finally {
+            evicting.unlock();
+        }
+    }
+
+    private static final class Entry {
+        private final AccountSnapshot snapshot;
+        private volatile long lastAccess;
+
+        private Entry(AccountSnapshot snapshot, long lastAccess) {
+            this.snapshot = snapshot;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
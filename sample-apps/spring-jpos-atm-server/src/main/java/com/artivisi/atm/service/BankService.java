@@ -1,7 +1,10 @@
 package com.artivisi.atm.service;
 
 import com.artivisi.atm.dto.BalanceInquiryRequest;
+import com.artivisi.atm.dto.AccountSnapshot;
 import com.artivisi.atm.dto.BalanceInquiryResponse;
+import com.artivisi.atm.dto.MiniStatementResponse;
+import com.artivisi.atm.dto.StatementEntry;
 import com.artivisi.atm.dto.WithdrawalRequest;
 import com.artivisi.atm.dto.WithdrawalResponse;
 import com.artivisi.atm.entity.Account;
@@ -15,9 +18,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 @Service
@@ -28,16 +34,23 @@ public class BankService {
     private final AccountRepository accountRepository;
     private final TransactionRepository transactionRepository;
     private final HsmService hsmService;
+    private final AccountReadModel accountReadModel;
+    private final RecentTransactions recentTransactions;
+    private final VelocityService velocityService;
+    private final StandInService standInService;
 
-    @Transactional(readOnly = true)
+    /**
+     * Served from the account read model: no database round trip once the account is loaded.
+     * The balance excludes the stand-in withdrawals not yet posted (see StandInService).
+     */
     public BalanceInquiryResponse balanceInquiry(BalanceInquiryRequest request) {
         log.info("Processing balance inquiry for account: {}", request.getAccountNumber());
 
-        Account account = accountRepository.findByAccountNumber(request.getAccountNumber())
+        AccountSnapshot account = accountReadModel.get(request.getAccountNumber())
                 .orElseThrow(() -> new AccountNotFoundException(
                         "Account not found: " + request.getAccountNumber()));
 
-        if (account.getStatus() != Account.AccountStatus.ACTIVE) {
+        if (!account.isActive()) {
             throw new AccountNotActiveException(
                     "Account is not active: " + request.getAccountNumber());
         }
@@ -51,7 +64,7 @@ public class BankService {
         return BalanceInquiryResponse.builder()
                 .accountNumber(account.getAccountNumber())
                 .accountHolderName(account.getAccountHolderName())
-                .balance(account.getBalance())
+                .balance(standInService.availableBalance(account))
                 .currency(account.getCurrency())
                 .accountType(account.getAccountType().name())
                 .timestamp(timestamp)
@@ -59,6 +72,39 @@ public class BankService {
                 .build();
     }
 
+    /**
+     * Latest journal entries with the current balance, from the account read model and the
+     * recent transactions ring: the journal is only queried when the ring is missing or stale.
+     */
+    public MiniStatementResponse miniStatement(String accountNumber) {
+        log.info("Processing mini-statement for account: {}", accountNumber);
+
+        AccountSnapshot account = accountReadModel.get(accountNumber)
+                .orElseThrow(() -> new AccountNotFoundException(
+                        "Account not found: " + accountNumber));
+
+        if (!account.isActive()) {
+            throw new AccountNotActiveException(
+                    "Account is not active: " + accountNumber);
+        }
+
+        List<StatementEntry> entries = recentTransactions.get(account);
+        String referenceNumber = generateReferenceNumber();
+
+        log.info("Mini-statement completed for account: {} with {} entries, reference: {}",
+                accountNumber, entries.size(), referenceNumber);
+
+        return MiniStatementResponse.builder()
+                .accountNumber(account.getAccountNumber())
+                .accountHolderName(account.getAccountHolderName())
+                .balance(account.getBalance())
+                .currency(account.getCurrency())
+                .entries(entries)
+                .timestamp(LocalDateTime.now())
+                .referenceNumber(referenceNumber)
+                .build();
+    }
+
     @Transactional
     public WithdrawalResponse withdraw(WithdrawalRequest request) {
         log.info("Processing withdrawal for account: {} amount: {}",
@@ -79,11 +125,15 @@ public class BankService {
                     ", requested: " + request.getAmount());
         }
 
+        reserveVelocity(request);
+
         BigDecimal balanceBefore = account.getBalance();
         BigDecimal balanceAfter = balanceBefore.subtract(request.getAmount());
 
         account.setBalance(balanceAfter);
         accountRepository.save(account);
+        // Balance inquiries read the new balance from the read model once this commits
+        accountReadModel.update(account);
 
         String referenceNumber = generateReferenceNumber();
         LocalDateTime timestamp = LocalDateTime.now();
@@ -95,11 +145,15 @@ public class BankService {
                 .balanceBefore(balanceBefore)
                 .balanceAfter(balanceAfter)
                 .description("Cash withdrawal")
+                .institutionId(request.getInstitutionId())
+                .terminalId(request.getTerminalId())
+                .cardHash(request.getCardHash())
                 .referenceNumber(referenceNumber)
                 .transactionDate(timestamp)
                 .build();
 
         transactionRepository.save(transaction);
+        recentTransactions.record(account, transaction);
 
         log.info("Withdrawal completed for account: {} with reference: {}",
                 request.getAccountNumber(), referenceNumber);
@@ -116,6 +170,22 @@ public class BankService {
                 .build();
     }
 
+    /**
+     * Reserve the withdrawal on the velocity counters, released if the transaction rolls back.
+     */
+    private void reserveVelocity(WithdrawalRequest request) {
+        VelocityService.Reservation reservation = velocityService.reserve(
+                request.getCardHash(), request.getAccountNumber(), request.getAmount());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    velocityService.release(reservation);
+                }
+            }
+        });
+    }
+
     /**
      * Validate that an account exists and is active.
      * This is a lightweight check that should be done before PIN verification.
@@ -124,15 +194,14 @@ public class BankService {
      * @throws AccountNotFoundException if account does not exist
      * @throws AccountNotActiveException if account is not active
      */
-    @Transactional(readOnly = true)
     public void validateAccount(String accountNumber) {
         log.debug("Validating account: {}", accountNumber);
 
-        Account account = accountRepository.findByAccountNumber(accountNumber)
+        AccountSnapshot account = accountReadModel.get(accountNumber)
                 .orElseThrow(() -> new AccountNotFoundException(
                         "Account not found: " + accountNumber));
 
-        if (account.getStatus() != Account.AccountStatus.ACTIVE) {
+        if (!account.isActive()) {
             throw new AccountNotActiveException(
                     "Account is not active: " + accountNumber);
         }
@@ -159,7 +228,9 @@ public class BankService {
             throw new RuntimeException("PIN block is required");
         }
 
-        Account account = accountRepository.findByAccountNumber(accountNumber)
+        // Stored PIN block / PVV from the read model
+        Account account = accountReadModel.get(accountNumber)
+                .map(AccountSnapshot::toAccount)
                 .orElseThrow(() -> new AccountNotFoundException(
                         "Account not found: " + accountNumber));
 
@@ -173,7 +244,7 @@ public class BankService {
         log.info("PIN verified successfully for account: {}", accountNumber);
     }
 
-    private String generateReferenceNumber() {
+    static String generateReferenceNumber() {
         return UUID.randomUUID().toString().replace("-", "").substring(0, 16).toUpperCase();
     }
 }
@@ -0,0 +1,43 @@
+package com.artivisi.atm.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evicts TerminalKeyCache entries of terminals whose keys changed on any node.
+ *
+ * A key rotation can run on a node other than the one holding the terminal's connection. Without
+ * this, that node would keep verifying MACs with the retired key and never load the new one.
+ * Listens on the PostgreSQL channel crypto_key_changed, fed by the crypto_keys trigger
+ * (payload: terminal ID). The whole cache is cleared on (re)connect.
+ */
+@Component
+public class CryptoKeyChangeListener extends PostgresNotificationListener {
+
+    static final String CHANNEL = "crypto_key_changed";
+
+    private final TerminalKeyCache terminalKeyCache;
+
+    public CryptoKeyChangeListener(TerminalKeyCache terminalKeyCache,
+                                   @Value("${terminal-keys.notifications.enabled:true}") boolean enabled,
+                                   @Value("${spring.datasource.url}") String url,
+                                   @Value("${spring.datasource.username}") String username,
+                                   @Value("${spring.datasource.password}") String password,
+                                   @Value("${terminal-keys.notifications.reconnect-delay-ms:5000}") long reconnectDelayMillis) {
+        super(CHANNEL, enabled, url, username, password, reconnectDelayMillis);
+        this.terminalKeyCache = terminalKeyCache;
+    }
+
+    @Override
+    protected void onConnected() {
+        terminalKeyCache.clear();
+    }
+
+    /**
+     * @param payload Terminal ID as sent by the crypto_keys trigger
+     */
+    @Override
+    void onNotification(String payload) {
+        terminalKeyCache.evictNow(payload);
+    }
+}
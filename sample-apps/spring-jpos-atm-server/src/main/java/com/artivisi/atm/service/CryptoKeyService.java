@@ -2,6 +2,7 @@ package com.artivisi.atm.service;
 
 import com.artivisi.atm.entity.CryptoKey;
 import com.artivisi.atm.repository.CryptoKeyRepository;
+import com.artivisi.atm.repository.HsmOutboxRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -13,6 +14,9 @@ import java.util.List;
 /**
  * Service for managing cryptographic keys with rotation support.
  * Handles key lifecycle: ACTIVE → PENDING → EXPIRED.
+ *
+ * Lookups are not read-only transactions: they run on the primary (write pool), because key
+ * distribution and activation act on the key state just written, which a replica may not have yet.
  */
 @Service
 @RequiredArgsConstructor
@@ -20,6 +24,8 @@ import java.util.List;
 public class CryptoKeyService {
 
     private final CryptoKeyRepository cryptoKeyRepository;
+    private final TerminalKeyCache terminalKeyCache;
+    private final HsmOutboxRepository hsmOutboxRepository;
 
     /**
      * Get the currently active key for a terminal and key type.
@@ -30,7 +36,7 @@ public class CryptoKeyService {
      * @return Active key
      * @throws RuntimeException if no active key found
      */
-    @Transactional(readOnly = true)
+    @Transactional
     public CryptoKey getActiveKey(String terminalId, CryptoKey.KeyType keyType) {
         log.debug("Fetching active {} key for terminal: {}", keyType, terminalId);
 
@@ -47,7 +53,7 @@ public class CryptoKeyService {
      * @param keyType Key type (TPK or TSK)
      * @return List of valid keys, ordered by version (newest first)
      */
-    @Transactional(readOnly = true)
+    @Transactional
     public List<CryptoKey> getValidKeys(String terminalId, CryptoKey.KeyType keyType) {
         log.debug("Fetching valid {} keys for terminal: {}", keyType, terminalId);
         return cryptoKeyRepository.findValidKeysForTerminal(terminalId, keyType);
@@ -62,7 +68,7 @@ public class CryptoKeyService {
      * @param version Key version number
      * @return Key if found
      */
-    @Transactional(readOnly = true)
+    @Transactional
     public CryptoKey getKeyByVersion(String terminalId, CryptoKey.KeyType keyType, Integer version) {
         return cryptoKeyRepository.findByTerminalIdAndKeyTypeAndKeyVersion(terminalId, keyType, version)
                 .orElseThrow(() -> new RuntimeException(
@@ -102,6 +108,7 @@ public class CryptoKeyService {
         newKey.setEffectiveFrom(LocalDateTime.now());
 
         CryptoKey savedKey = cryptoKeyRepository.save(newKey);
+        terminalKeyCache.evict(terminalId);
         log.info("Created PENDING {} key version {} for terminal: {}, rotationId: {}",
                 keyType, nextVersion, terminalId, rotationId);
 
@@ -115,9 +122,10 @@ public class CryptoKeyService {
      * @param terminalId Terminal identifier
      * @param keyType Key type
      * @param newVersion Version number to activate
+     * @return The activated key
      */
     @Transactional
-    public void activateKey(String terminalId, CryptoKey.KeyType keyType, Integer newVersion) {
+    public CryptoKey activateKey(String terminalId, CryptoKey.KeyType keyType, Integer newVersion) {
         log.info("Activating {} key version {} for terminal: {}",
                 keyType, newVersion, terminalId);
 
@@ -147,9 +155,29 @@ public class CryptoKeyService {
         pendingKey.setStatus(CryptoKey.KeyStatus.ACTIVE);
         pendingKey.setEffectiveFrom(LocalDateTime.now());
         cryptoKeyRepository.save(pendingKey);
+        terminalKeyCache.evict(terminalId);
 
         log.info("Successfully activated {} key version {} for terminal: {}",
                 keyType, newVersion, terminalId);
+        return pendingKey;
+    }
+
+    /**
+     * Activate a PENDING key and store the confirmation to the HSM in the same transaction.
+     * The confirmation is delivered by HsmOutboxDispatcher, after the commit.
+     *
+     * @param confirmedBy Application confirming the rotation, for the HSM audit trail
+     */
+    @Transactional
+    public void activateKey(String terminalId, CryptoKey.KeyType keyType, Integer newVersion, String confirmedBy) {
+        CryptoKey activated = activateKey(terminalId, keyType, newVersion);
+        if (activated.getRotationId() == null || activated.getRotationId().isBlank()) {
+            log.warn("No rotation ID to confirm to HSM: terminal={}, keyType={}, version={}",
+                    terminalId, keyType, newVersion);
+            return;
+        }
+        hsmOutboxRepository.enqueue(HsmOutboxRepository.EventType.CONFIRMATION, activated.getRotationId(),
+                terminalId, keyType, confirmedBy);
     }
 
     /**
@@ -158,20 +186,40 @@ public class CryptoKeyService {
      *
      * @param terminalId Terminal identifier
      * @param keyType Key type
+     * @return The removed key, or null if there was none
      */
     @Transactional
-    public void removePendingKey(String terminalId, CryptoKey.KeyType keyType) {
+    public CryptoKey removePendingKey(String terminalId, CryptoKey.KeyType keyType) {
         log.info("Removing PENDING {} key for terminal: {}", keyType, terminalId);
 
         // Find the PENDING key
         CryptoKey pendingKey = getPendingKey(terminalId, keyType);
         if (pendingKey != null) {
             cryptoKeyRepository.delete(pendingKey);
+            terminalKeyCache.evict(terminalId);
             log.info("Removed PENDING {} key version {} for terminal: {}",
                     keyType, pendingKey.getKeyVersion(), terminalId);
         } else {
             log.warn("No PENDING {} key found to remove for terminal: {}", keyType, terminalId);
         }
+        return pendingKey;
+    }
+
+    /**
+     * Remove a PENDING key after installation failure and store the failure notification to the HSM
+     * in the same transaction. The notification is delivered by HsmOutboxDispatcher, after the commit.
+     *
+     * @param failureReason Failure reason reported by the terminal
+     */
+    @Transactional
+    public void removePendingKey(String terminalId, CryptoKey.KeyType keyType, String failureReason) {
+        CryptoKey removed = removePendingKey(terminalId, keyType);
+        if (removed == null || removed.getRotationId() == null || removed.getRotationId().isBlank()) {
+            log.warn("No rotation ID to report failure to HSM: terminal={}, keyType={}", terminalId, keyType);
+            return;
+        }
+        hsmOutboxRepository.enqueue(HsmOutboxRepository.EventType.FAILURE, removed.getRotationId(),
+                terminalId, keyType, failureReason);
     }
 
     /**
@@ -181,7 +229,7 @@ public class CryptoKeyService {
      * @param keyType Key type
      * @return PENDING key if found, null otherwise
      */
-    @Transactional(readOnly = true)
+    @Transactional
     public CryptoKey getPendingKey(String terminalId, CryptoKey.KeyType keyType) {
         List<CryptoKey> validKeys = getValidKeys(terminalId, keyType);
         return validKeys.stream()
@@ -220,7 +268,7 @@ public class CryptoKeyService {
      * Get all valid keys for a terminal (all types).
      * Useful for diagnostics and monitoring.
      */
-    @Transactional(readOnly = true)
+    @Transactional
     public List<CryptoKey> getAllValidKeysForTerminal(String terminalId) {
         return cryptoKeyRepository.findAllValidKeysForTerminal(terminalId);
     }
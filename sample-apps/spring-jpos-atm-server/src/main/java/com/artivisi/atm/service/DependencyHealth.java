@@ -0,0 +1,95 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.CircuitBreakerProperties;
+import com.artivisi.atm.exception.DependencyUnavailableException;
+import com.artivisi.atm.util.CircuitBreaker;
+import com.artivisi.atm.util.Deadline;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.stereotype.Service;
+
+import java.util.function.Supplier;
+
+/**
+ * Circuit breakers of the dependencies of the transaction path.
+ *
+ * - HSM: every HsmClient call, through the RestClient interceptor (see HsmConfig)
+ * - Database: account loads of the read model and debits of the ledger path (see callDatabase)
+ *
+ * An open circuit fails calls fast with DependencyUnavailableException, and is the health condition
+ * for stand-in processing (see StandInService). State is exported as the circuit.state gauge
+ * (0 closed, 1 open, 2 half-open).
+ */
+@Service
+@Slf4j
+public class DependencyHealth {
+
+    private final CircuitBreaker hsm;
+    private final CircuitBreaker database;
+
+    public DependencyHealth(CircuitBreakerProperties properties, MeterRegistry meterRegistry) {
+        this.hsm = breaker("hsm", properties.getHsm(), meterRegistry);
+        this.database = breaker("database", properties.getDatabase(), meterRegistry);
+    }
+
+    public CircuitBreaker hsm() {
+        return hsm;
+    }
+
+    public CircuitBreaker database() {
+        return database;
+    }
+
+    /**
+     * Run a database call through the database circuit breaker.
+     * Connection failures and timeouts are failures; any other answer, even an exception, is a success.
+     * A call cut short by the transaction deadline says nothing about the database and is not recorded.
+     *
+     * @throws DependencyUnavailableException if the circuit is open, or the call failed
+     */
+    public <T> T callDatabase(Supplier<T> call) {
+        if (!database.tryAcquire()) {
+            throw new DependencyUnavailableException("Database circuit open");
+        }
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            database.onSuccess(System.nanoTime() - start);
+            return result;
+        } catch (DataAccessResourceFailureException | TransientDataAccessException e) {
+            Deadline deadline = Deadline.current();
+            if (deadline == null || !deadline.isExpired()) {
+                database.onFailure();
+            }
+            throw new DependencyUnavailableException("Database unavailable: " + e.getMessage(), e,
+                    !(e instanceof CannotGetJdbcConnectionException));
+        } catch (RuntimeException e) {
+            database.onSuccess(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if a dependency of the transaction path failed recently
+     */
+    public boolean isDegraded() {
+        return hsm.isDegraded() || database.isDegraded();
+    }
+
+    private static CircuitBreaker breaker(String name, CircuitBreakerProperties.Breaker properties,
+                                          MeterRegistry meterRegistry) {
+        CircuitBreaker breaker = new CircuitBreaker(name, properties.getFailureThreshold(),
+                properties.getSlowCallThreshold(), properties.getOpenDuration());
+        Gauge.builder("circuit.state", breaker, b -> b.getState().ordinal())
+                .description("Circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .tag("dependency", name)
+                .register(meterRegistry);
+        log.info("Circuit breaker {}: open after {} failures (slow above {}), for {}", name,
+                properties.getFailureThreshold(), properties.getSlowCallThreshold(), properties.getOpenDuration());
+        return breaker;
+    }
+}
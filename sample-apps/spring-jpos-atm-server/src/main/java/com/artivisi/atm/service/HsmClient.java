@@ -5,20 +5,26 @@ import com.artivisi.atm.dto.hsm.PinBlockVerificationResponse;
 import com.artivisi.atm.dto.hsm.PvvVerificationRequest;
 import com.artivisi.atm.dto.hsm.PvvVerificationResponse;
 import com.artivisi.atm.dto.rotation.KeyRotationConfirmation;
+import com.artivisi.atm.dto.rotation.KeyRotationFailure;
 import com.artivisi.atm.dto.rotation.KeyRotationRequest;
 import com.artivisi.atm.dto.rotation.KeyRotationResponse;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.service.annotation.HttpExchange;
 import org.springframework.web.service.annotation.PostExchange;
 
 /**
  * HTTP client interface for HSM operations.
  * Uses Spring's HTTP Interface with RestClient backing.
+ * Rotation notifications are sent by HsmOutboxDispatcher, possibly more than once: they carry an
+ * idempotency key derived from the rotation ID.
  */
 @HttpExchange
 public interface HsmClient {
 
+    String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     /**
      * Verify PIN using encrypted PIN block translation method.
      * Compares TPK-encrypted PIN from terminal with LMK-encrypted PIN from database.
@@ -57,5 +63,17 @@ public interface HsmClient {
      */
     @PostExchange("/api/hsm/terminal/{terminalId}/confirm-key-update")
     void confirmKeyRotation(@PathVariable String terminalId,
+                           @RequestHeader(IDEMPOTENCY_KEY) String idempotencyKey,
                            @RequestBody KeyRotationConfirmation confirmation);
+
+    /**
+     * Notify HSM that a terminal failed to install the new key.
+     * HSM can cancel the rotation and keep the current key.
+     *
+     * Endpoint: /api/hsm/terminal/{terminalId}/key-update-failed
+     */
+    @PostExchange("/api/hsm/terminal/{terminalId}/key-update-failed")
+    void notifyRotationFailure(@PathVariable String terminalId,
+                               @RequestHeader(IDEMPOTENCY_KEY) String idempotencyKey,
+                               @RequestBody KeyRotationFailure failure);
 }
@@ -0,0 +1,216 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.HsmProperties;
+import com.artivisi.atm.dto.rotation.KeyRotationConfirmation;
+import com.artivisi.atm.dto.rotation.KeyRotationFailure;
+import com.artivisi.atm.exception.DependencyUnavailableException;
+import com.artivisi.atm.repository.HsmOutboxRepository;
+import com.artivisi.atm.repository.HsmOutboxRepository.Message;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Delivers key rotation notifications stored in hsm_outbox (see CryptoKeyService.activateKey and
+ * removePendingKey) to the HSM, off the transaction manager and outside database transactions.
+ *
+ * - Batches: due messages are claimed batch-size at a time; the delivered ones are marked in one
+ *   statement per batch
+ * - Retry: a failed delivery is retried with exponential backoff (initial-backoff doubled per attempt,
+ *   up to max-backoff, with jitter) and given up (DEAD) after max-attempts. A 4xx other than
+ *   409 Conflict is not retried
+ * - Idempotent: each delivery carries the Idempotency-Key header (event type and rotation ID); 409
+ *   means the HSM already applied it. A message is delivered at least once
+ * - HSM circuit open: the batch stops, and its messages wait for their lease
+ *
+ * Metrics: hsm.outbox.depth (pending and dead messages), hsm.outbox.deliveries (by result).
+ */
+@Service
+@Slf4j
+public class HsmOutboxDispatcher {
+
+    private static final String REPORTED_BY = "ATM_SERVER";
+
+    private final HsmOutboxRepository repository;
+    private final HsmClient hsmClient;
+    private final HsmProperties.Outbox properties;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+
+    private final Map<HsmOutboxRepository.Status, AtomicLong> depth = new EnumMap<>(HsmOutboxRepository.Status.class);
+
+    @Autowired
+    public HsmOutboxDispatcher(HsmOutboxRepository repository, HsmClient hsmClient, HsmProperties hsmProperties,
+                               MeterRegistry meterRegistry) {
+        this(repository, hsmClient, hsmProperties.getOutbox(), meterRegistry, System::currentTimeMillis);
+    }
+
+    HsmOutboxDispatcher(HsmOutboxRepository repository, HsmClient hsmClient, HsmProperties.Outbox properties,
+                        MeterRegistry meterRegistry, LongSupplier clock) {
+        this.repository = repository;
+        this.hsmClient = hsmClient;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        for (HsmOutboxRepository.Status status : List.of(HsmOutboxRepository.Status.PENDING,
+                HsmOutboxRepository.Status.DEAD)) {
+            AtomicLong messages = new AtomicLong();
+            depth.put(status, messages);
+            Gauge.builder("hsm.outbox.depth", messages, AtomicLong::get)
+                    .description("HSM notifications waiting for delivery (pending) or given up (dead)")
+                    .tag("status", status.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Deliver the due messages, batch after batch, until none is left or the HSM is unavailable.
+     */
+    @Scheduled(fixedDelayString = "${hsm.outbox.poll-interval-ms:1000}")
+    public void dispatch() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            int batchSize = Math.max(1, properties.getBatchSize());
+            List<Message> batch;
+            do {
+                LocalDateTime now = now();
+                batch = repository.claim(batchSize, now, now.plus(properties.getLease()));
+            } while (!batch.isEmpty() && deliver(batch) && batch.size() == batchSize);
+            refreshDepth();
+        } catch (DataAccessException e) {
+            log.warn("HSM outbox unavailable: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${hsm.outbox.purge-cron:0 45 0 * * *}")
+    public void purge() {
+        int purged = repository.purgeDelivered(now().minus(properties.getRetention()));
+        log.info("HSM outbox: purged {} delivered messages older than {}", purged, properties.getRetention());
+    }
+
+    public long pendingCount() {
+        return depth.get(HsmOutboxRepository.Status.PENDING).get();
+    }
+
+    public long deadCount() {
+        return depth.get(HsmOutboxRepository.Status.DEAD).get();
+    }
+
+    /**
+     * @return false if the HSM is unavailable and the rest of the batch was left for a later run
+     */
+    private boolean deliver(List<Message> batch) {
+        List<Long> delivered = new ArrayList<>(batch.size());
+        try {
+            for (Message message : batch) {
+                try {
+                    send(message);
+                    delivered.add(message.id());
+                    count("delivered");
+                } catch (DependencyUnavailableException e) {
+                    log.info("HSM unavailable, {} outbox messages wait: {}",
+                            batch.size() - delivered.size(), e.getMessage());
+                    return false;
+                } catch (HttpClientErrorException e) {
+                    if (e.getStatusCode().isSameCodeAs(HttpStatus.CONFLICT)) {
+                        // Applied by an earlier delivery whose response was lost
+                        delivered.add(message.id());
+                        count("delivered");
+                    } else {
+                        dead(message, e.getStatusCode() + " " + e.getStatusText());
+                    }
+                } catch (RuntimeException e) {
+                    failed(message, e);
+                }
+            }
+            return true;
+        } finally {
+            repository.markDelivered(delivered, now());
+        }
+    }
+
+    private void send(Message message) {
+        switch (message.eventType()) {
+            case CONFIRMATION -> hsmClient.confirmKeyRotation(message.terminalId(), message.idempotencyKey(),
+                    KeyRotationConfirmation.builder()
+                            .rotationId(message.rotationId())
+                            .confirmedBy(message.detail())
+                            .build());
+            case FAILURE -> hsmClient.notifyRotationFailure(message.terminalId(), message.idempotencyKey(),
+                    KeyRotationFailure.builder()
+                            .rotationId(message.rotationId())
+                            .keyType(message.keyType().name())
+                            .failureReason(message.detail())
+                            .reportedBy(REPORTED_BY)
+                            .build());
+        }
+        log.info("Delivered {} of rotation {} to HSM: terminal={}, keyType={}",
+                message.eventType(), message.rotationId(), message.terminalId(), message.keyType());
+    }
+
+    private void failed(Message message, RuntimeException e) {
+        int attempts = message.attempts() + 1;
+        if (attempts >= properties.getMaxAttempts()) {
+            dead(message, e.getMessage());
+            return;
+        }
+        Duration delay = backoff(attempts, properties.getInitialBackoff(), properties.getMaxBackoff(),
+                ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+        log.warn("Delivery of {} of rotation {} failed (attempt {}), retry in {}: {}",
+                message.eventType(), message.rotationId(), attempts, delay, e.getMessage());
+        repository.retry(message.id(), now().plus(delay), e.getMessage());
+        count("retry");
+    }
+
+    private void dead(Message message, String error) {
+        log.error("Giving up {} of rotation {} to HSM after {} attempts: terminal={}, error={}",
+                message.eventType(), message.rotationId(), message.attempts() + 1, message.terminalId(), error);
+        repository.markDead(message.id(), error);
+        count("dead");
+    }
+
+    private void refreshDepth() {
+        Map<HsmOutboxRepository.Status, Long> counts = repository.countByStatus();
+        depth.forEach((status, messages) -> messages.set(counts.getOrDefault(status, 0L)));
+    }
+
+    /**
+     * @param failedAttempts Failed attempts so far (at least 1)
+     * @param jitter Factor applied to the delay, to spread retries of messages that failed together
+     */
+    static Duration backoff(int failedAttempts, Duration initial, Duration max, double jitter) {
+        long delay = initial.toMillis() << Math.min(failedAttempts - 1, 30);
+        if (delay <= 0 || delay > max.toMillis()) {
+            delay = max.toMillis();
+        }
+        return Duration.ofMillis((long) (delay * jitter));
+    }
+
+    private LocalDateTime now() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(clock.getAsLong()), ZoneId.systemDefault());
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("hsm.outbox.deliveries", "result", result).increment();
+    }
+}
@@ -0,0 +1,523 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.KeyRotationCampaignProperties;
+import com.artivisi.atm.dto.rotation.KeyRotationCampaignProgress;
+import com.artivisi.atm.dto.rotation.KeyRotationCampaignRequest;
+import com.artivisi.atm.entity.CryptoKey;
+import com.artivisi.atm.entity.KeyRotationCampaign;
+import com.artivisi.atm.entity.KeyRotationCampaign.CampaignStatus;
+import com.artivisi.atm.entity.KeyRotationCampaignTerminal;
+import com.artivisi.atm.entity.KeyRotationCampaignTerminal.TerminalStatus;
+import com.artivisi.atm.repository.CryptoKeyRepository;
+import com.artivisi.atm.repository.KeyRotationCampaignRepository;
+import com.artivisi.atm.repository.KeyRotationCampaignTerminalRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fleet-wide key rotation campaigns.
+ *
+ * A campaign selects terminals (all, by institution, or an explicit list) and sends each
+ * one a server-initiated key change notification (0800, field 53 operation 07). The terminal
+ * then runs the standard key change flow, which KeyChangeParticipant and KeyActivationParticipant
+ * report back here so per-terminal progress is tracked:
+ * PENDING -> NOTIFIED -> REQUESTED -> CONFIRMED (or FAILED).
+ *
+ * Fan-out runs on virtual threads, paced to a configurable rate and capped by a semaphore,
+ * so a large fleet does not flood the HSM with key requests. Progress is persisted per terminal;
+ * RUNNING campaigns are resumed on startup and only PENDING terminals are notified again.
+ *
+ * Terminals that are not connected stay PENDING, and the campaign RUNNING: a periodic sweep
+ * dispatches them again once they have reconnected, and fails them after unreachable-timeout.
+ * The sweep also fails NOTIFIED and REQUESTED terminals that make no progress for response-timeout.
+ * Every status change is a conditional update on the expected current status, so a late
+ * confirmation, a timeout and a second dispatcher (e.g., on another node) cannot overwrite each other.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class KeyRotationCampaignService {
+
+    private static final Set<TerminalStatus> OPEN_STATUSES =
+            EnumSet.of(TerminalStatus.PENDING, TerminalStatus.NOTIFIED, TerminalStatus.REQUESTED);
+
+    private static final Set<TerminalStatus> AWAITING_TERMINAL =
+            EnumSet.of(TerminalStatus.NOTIFIED, TerminalStatus.REQUESTED);
+
+    private final KeyRotationCampaignRepository campaignRepository;
+    private final KeyRotationCampaignTerminalRepository terminalRepository;
+    private final CryptoKeyRepository cryptoKeyRepository;
+    private final ServerInitiatedKeyRotationService serverInitiatedKeyRotationService;
+    private final KeyRotationCampaignProperties properties;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Map: campaignId -> dispatcher task (one dispatcher per campaign)
+    private final Map<UUID, Future<?>> dispatchers = new ConcurrentHashMap<>();
+
+    /**
+     * Create a campaign and start notifying terminals once the transaction commits.
+     *
+     * @param request Campaign parameters
+     * @return Created campaign
+     * @throws IllegalArgumentException if key type or selection is invalid, or no terminal matches
+     */
+    @Transactional
+    public KeyRotationCampaign createCampaign(KeyRotationCampaignRequest request) {
+        CryptoKey.KeyType keyType = parseKeyType(request.getKeyType());
+        KeyRotationCampaign.SelectionType selection = parseSelection(request.getSelection());
+        List<String> terminalIds = selectTerminals(keyType, selection, request);
+
+        if (terminalIds.isEmpty()) {
+            throw new IllegalArgumentException("No terminals match the campaign selection");
+        }
+
+        KeyRotationCampaign campaign = new KeyRotationCampaign();
+        campaign.setKeyType(keyType);
+        campaign.setSelectionType(selection);
+        campaign.setSelectionValue(selection == KeyRotationCampaign.SelectionType.INSTITUTION
+                ? request.getInstitution() : null);
+        campaign.setStatus(CampaignStatus.RUNNING);
+        campaign.setRatePerSecond(bounded(request.getRatePerSecond(),
+                properties.getRatePerSecond(), properties.getMaxRatePerSecond()));
+        campaign.setMaxConcurrency(bounded(request.getMaxConcurrency(),
+                properties.getMaxConcurrency(), properties.getMaxConcurrencyLimit()));
+        campaign.setTotalTerminals(terminalIds.size());
+        campaign.setDescription(request.getDescription());
+        KeyRotationCampaign saved = campaignRepository.save(campaign);
+
+        List<KeyRotationCampaignTerminal> entries = new ArrayList<>(terminalIds.size());
+        for (String terminalId : terminalIds) {
+            KeyRotationCampaignTerminal entry = new KeyRotationCampaignTerminal();
+            entry.setCampaignId(saved.getId());
+            entry.setTerminalId(terminalId);
+            entry.setStatus(TerminalStatus.PENDING);
+            entry.setAttempts(0);
+            entries.add(entry);
+        }
+        terminalRepository.saveAll(entries);
+
+        log.info("Created key rotation campaign: id={}, keyType={}, selection={}, terminals={}, rate={}/s, concurrency={}",
+                saved.getId(), keyType, selection, terminalIds.size(),
+                saved.getRatePerSecond(), saved.getMaxConcurrency());
+
+        startAfterCommit(saved.getId());
+        return saved;
+    }
+
+    /**
+     * Cancel a campaign. Notifications not yet sent are skipped;
+     * terminals already notified may still complete their key change.
+     *
+     * @return true if the campaign was cancelled, false if it was already finished
+     */
+    @Transactional
+    public boolean cancelCampaign(UUID campaignId) {
+        KeyRotationCampaign campaign = getCampaign(campaignId);
+        if (campaign.getStatus() == CampaignStatus.COMPLETED || campaign.getStatus() == CampaignStatus.CANCELLED) {
+            return false;
+        }
+
+        campaign.setStatus(CampaignStatus.CANCELLED);
+        campaign.setCompletedAt(LocalDateTime.now());
+        campaignRepository.save(campaign);
+
+        Future<?> dispatcher = dispatchers.remove(campaignId);
+        if (dispatcher != null) {
+            dispatcher.cancel(true);
+        }
+        log.info("Cancelled key rotation campaign: {}", campaignId);
+        return true;
+    }
+
+    /**
+     * Reset FAILED terminals to PENDING and dispatch them again
+     * (e.g., after offline terminals have reconnected).
+     *
+     * @return Number of terminals queued for retry
+     */
+    @Transactional
+    public int retryFailed(UUID campaignId) {
+        KeyRotationCampaign campaign = getCampaign(campaignId);
+        if (campaign.getStatus() == CampaignStatus.CANCELLED) {
+            throw new IllegalStateException("Campaign is cancelled: " + campaignId);
+        }
+
+        int reset = terminalRepository.resetFailed(campaignId);
+        if (reset > 0) {
+            campaign.setStatus(CampaignStatus.RUNNING);
+            campaign.setCompletedAt(null);
+            campaignRepository.save(campaign);
+            startAfterCommit(campaignId);
+        }
+        log.info("Retrying {} failed terminals for campaign: {}", reset, campaignId);
+        return reset;
+    }
+
+    /**
+     * Get campaign progress with terminal counts per status.
+     */
+    @Transactional(readOnly = true)
+    public KeyRotationCampaignProgress getProgress(UUID campaignId) {
+        return toProgress(getCampaign(campaignId));
+    }
+
+    /**
+     * Get progress of all campaigns, newest first.
+     */
+    @Transactional(readOnly = true)
+    public List<KeyRotationCampaignProgress> getAllProgress() {
+        return campaignRepository.findAllByOrderByCreatedAtDesc().stream()
+                .map(this::toProgress)
+                .toList();
+    }
+
+    /**
+     * Record that a terminal requested its new key (operation 01/02).
+     * Called from KeyChangeParticipant.
+     */
+    public void onKeyRequested(String terminalId, CryptoKey.KeyType keyType) {
+        updateInProgress(terminalId, keyType, EnumSet.of(TerminalStatus.NOTIFIED),
+                TerminalStatus.REQUESTED, null);
+    }
+
+    /**
+     * Record that a terminal confirmed key installation (operation 03/04).
+     * Called from KeyActivationParticipant after the PENDING key is activated.
+     */
+    public void onKeyConfirmed(String terminalId, CryptoKey.KeyType keyType) {
+        updateInProgress(terminalId, keyType, EnumSet.of(TerminalStatus.NOTIFIED, TerminalStatus.REQUESTED),
+                TerminalStatus.CONFIRMED, null);
+    }
+
+    /**
+     * Record that a terminal reported key installation failure (operation 05/06).
+     * Called from KeyActivationParticipant.
+     */
+    public void onKeyFailed(String terminalId, CryptoKey.KeyType keyType, String reason) {
+        updateInProgress(terminalId, keyType, EnumSet.of(TerminalStatus.NOTIFIED, TerminalStatus.REQUESTED),
+                TerminalStatus.FAILED, reason != null ? reason : "Key installation failed");
+    }
+
+    /**
+     * Resume campaigns that were still sending notifications when the application stopped.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeCampaigns() {
+        if (!properties.isResumeOnStartup()) {
+            return;
+        }
+
+        for (KeyRotationCampaign campaign : campaignRepository.findByStatus(CampaignStatus.RUNNING)) {
+            log.info("Resuming key rotation campaign: id={}, keyType={}", campaign.getId(), campaign.getKeyType());
+            startDispatch(campaign.getId());
+        }
+    }
+
+    /**
+     * Dispatch PENDING terminals of RUNNING campaigns again (they may have reconnected since),
+     * and fail terminals that stayed unreachable or unresponsive past their timeout.
+     */
+    @Scheduled(fixedDelayString = "${key-rotation.campaign.sweep-interval-ms:30000}")
+    public void sweep() {
+        LocalDateTime now = LocalDateTime.now();
+        for (KeyRotationCampaign campaign : campaignRepository.findByStatusIn(
+                EnumSet.of(CampaignStatus.RUNNING, CampaignStatus.DISPATCHED))) {
+            UUID campaignId = campaign.getId();
+            try {
+                int unanswered = terminalRepository.failStale(campaignId, AWAITING_TERMINAL,
+                        now.minus(properties.getResponseTimeout()),
+                        "No response from terminal within " + properties.getResponseTimeout());
+                int unreachable = terminalRepository.failStale(campaignId, EnumSet.of(TerminalStatus.PENDING),
+                        now.minus(properties.getUnreachableTimeout()),
+                        "Terminal not connected within " + properties.getUnreachableTimeout());
+                if (unanswered > 0 || unreachable > 0) {
+                    log.info("Campaign {}: {} terminals timed out waiting for the key change, {} never connected",
+                            campaignId, unanswered, unreachable);
+                }
+
+                if (campaign.getStatus() == CampaignStatus.RUNNING) {
+                    startDispatch(campaignId);
+                } else {
+                    checkCompletion(campaignId);
+                }
+            } catch (Exception e) {
+                log.warn("Key rotation campaign sweep failed: id={}, error={}", campaignId, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void startAfterCommit(UUID campaignId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    startDispatch(campaignId);
+                }
+            });
+        } else {
+            startDispatch(campaignId);
+        }
+    }
+
+    private void startDispatch(UUID campaignId) {
+        dispatchers.computeIfAbsent(campaignId, id -> executor.submit(() -> dispatch(id)));
+    }
+
+    /**
+     * Send notifications to all PENDING terminals of a campaign.
+     * Paced to the campaign rate; at most maxConcurrency notifications in flight.
+     * The campaign is DISPATCHED once no terminal is left PENDING.
+     */
+    void dispatch(UUID campaignId) {
+        try {
+            KeyRotationCampaign campaign = getCampaign(campaignId);
+            List<KeyRotationCampaignTerminal> pending =
+                    terminalRepository.findByCampaignIdAndStatusOrderById(campaignId, TerminalStatus.PENDING);
+
+            log.info("Dispatching key rotation campaign: id={}, pending={}", campaignId, pending.size());
+
+            int concurrency = campaign.getMaxConcurrency();
+            Semaphore permits = new Semaphore(concurrency);
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / campaign.getRatePerSecond();
+            long nextSlot = System.nanoTime();
+
+            for (KeyRotationCampaignTerminal entry : pending) {
+                long wait = nextSlot - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                nextSlot = Math.max(nextSlot, System.nanoTime()) + intervalNanos;
+
+                permits.acquire();
+                executor.submit(() -> {
+                    try {
+                        notifyTerminal(campaign, entry);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+
+            // Wait for in-flight notifications before marking the campaign dispatched
+            permits.acquire(concurrency);
+            long unreachable = terminalRepository.countByCampaignIdAndStatusIn(
+                    campaignId, EnumSet.of(TerminalStatus.PENDING));
+            if (unreachable == 0) {
+                markDispatched(campaignId);
+            } else {
+                log.info("Key rotation campaign {}: {} terminals not connected, retried on the next sweep",
+                        campaignId, unreachable);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Key rotation campaign dispatch interrupted: {}", campaignId);
+        } catch (Exception e) {
+            log.error("Key rotation campaign dispatch failed: id={}, error={}", campaignId, e.getMessage(), e);
+        } finally {
+            dispatchers.remove(campaignId);
+        }
+    }
+
+    private void notifyTerminal(KeyRotationCampaign campaign, KeyRotationCampaignTerminal entry) {
+        String terminalId = entry.getTerminalId();
+
+        if (!serverInitiatedKeyRotationService.isTerminalConnected(terminalId)) {
+            // Stays PENDING until it reconnects (or unreachable-timeout)
+            log.debug("Campaign {} terminal {}: not connected", campaign.getId(), terminalId);
+            return;
+        }
+
+        // Persist NOTIFIED before sending: the terminal may answer with its key request
+        // before this thread gets to save, and that transition must find the entry NOTIFIED
+        if (terminalRepository.markNotified(entry.getId(), LocalDateTime.now()) == 0) {
+            log.debug("Campaign {} terminal {}: no longer PENDING, skipped", campaign.getId(), terminalId);
+            return;
+        }
+
+        try {
+            if (!serverInitiatedKeyRotationService.initiateKeyRotation(terminalId, campaign.getKeyType())) {
+                markFailed(entry, "Failed to send key rotation notification");
+                return;
+            }
+        } catch (Exception e) {
+            markFailed(entry, e.getMessage());
+            return;
+        }
+        log.debug("Campaign {} terminal {}: NOTIFIED", campaign.getId(), terminalId);
+    }
+
+    private void markFailed(KeyRotationCampaignTerminal entry, String error) {
+        if (terminalRepository.transition(entry.getId(), EnumSet.of(TerminalStatus.NOTIFIED),
+                TerminalStatus.FAILED, truncate(error)) == 0) {
+            return;
+        }
+        log.debug("Campaign {} terminal {}: FAILED ({})", entry.getCampaignId(), entry.getTerminalId(), error);
+    }
+
+    private void markDispatched(UUID campaignId) {
+        KeyRotationCampaign campaign = getCampaign(campaignId);
+        if (campaign.getStatus() != CampaignStatus.RUNNING) {
+            return;
+        }
+        campaign.setStatus(CampaignStatus.DISPATCHED);
+        campaignRepository.save(campaign);
+        log.info("Key rotation campaign dispatched: {}", campaignId);
+        checkCompletion(campaignId);
+    }
+
+    private void updateInProgress(String terminalId, CryptoKey.KeyType keyType,
+                                  Set<TerminalStatus> fromStatuses, TerminalStatus toStatus, String error) {
+        try {
+            for (KeyRotationCampaignTerminal entry : terminalRepository.findInProgress(terminalId, keyType, fromStatuses)) {
+                if (terminalRepository.transition(entry.getId(), fromStatuses, toStatus, truncate(error)) == 0) {
+                    continue;
+                }
+                log.info("Campaign {} terminal {}: {}", entry.getCampaignId(), terminalId, toStatus);
+
+                if (toStatus == TerminalStatus.CONFIRMED || toStatus == TerminalStatus.FAILED) {
+                    checkCompletion(entry.getCampaignId());
+                }
+            }
+        } catch (Exception e) {
+            // Campaign tracking must never affect the key change itself
+            log.warn("Failed to update campaign progress: terminal={}, keyType={}, error={}",
+                    terminalId, keyType, e.getMessage());
+        }
+    }
+
+    private void checkCompletion(UUID campaignId) {
+        KeyRotationCampaign campaign = getCampaign(campaignId);
+        if (campaign.getStatus() != CampaignStatus.DISPATCHED) {
+            return;
+        }
+        if (terminalRepository.countByCampaignIdAndStatusIn(campaignId, OPEN_STATUSES) == 0) {
+            campaign.setStatus(CampaignStatus.COMPLETED);
+            campaign.setCompletedAt(LocalDateTime.now());
+            campaignRepository.save(campaign);
+            log.info("Key rotation campaign completed: {}", campaignId);
+        }
+    }
+
+    private KeyRotationCampaignProgress toProgress(KeyRotationCampaign campaign) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (TerminalStatus status : TerminalStatus.values()) {
+            counts.put(status.name(), 0L);
+        }
+        for (Object[] row : terminalRepository.countByStatus(campaign.getId())) {
+            counts.put(((TerminalStatus) row[0]).name(), (Long) row[1]);
+        }
+
+        String selection = campaign.getSelectionValue() != null
+                ? campaign.getSelectionType() + ":" + campaign.getSelectionValue()
+                : campaign.getSelectionType().name();
+
+        return KeyRotationCampaignProgress.builder()
+                .campaignId(campaign.getId())
+                .keyType(campaign.getKeyType().name())
+                .status(campaign.getStatus().name())
+                .selection(selection)
+                .ratePerSecond(campaign.getRatePerSecond())
+                .maxConcurrency(campaign.getMaxConcurrency())
+                .totalTerminals(campaign.getTotalTerminals())
+                .terminals(counts)
+                .createdAt(campaign.getCreatedAt())
+                .completedAt(campaign.getCompletedAt())
+                .build();
+    }
+
+    private List<String> selectTerminals(CryptoKey.KeyType keyType, KeyRotationCampaign.SelectionType selection,
+                                         KeyRotationCampaignRequest request) {
+        return switch (selection) {
+            case ALL -> cryptoKeyRepository.findTerminalIdsWithActiveKey(keyType);
+            case INSTITUTION -> {
+                if (request.getInstitution() == null || request.getInstitution().isBlank()) {
+                    throw new IllegalArgumentException("Institution is required for INSTITUTION selection");
+                }
+                yield cryptoKeyRepository.findTerminalIdsWithActiveKeyByInstitution(
+                        keyType, request.getInstitution().trim());
+            }
+            case LIST -> {
+                if (request.getTerminalIds() == null || request.getTerminalIds().isEmpty()) {
+                    throw new IllegalArgumentException("Terminal IDs are required for LIST selection");
+                }
+                Set<String> unique = new LinkedHashSet<>();
+                for (String terminalId : request.getTerminalIds()) {
+                    if (terminalId != null && !terminalId.isBlank()) {
+                        unique.add(terminalId.trim());
+                    }
+                }
+                yield List.copyOf(unique);
+            }
+        };
+    }
+
+    private KeyRotationCampaign getCampaign(UUID campaignId) {
+        return campaignRepository.findById(campaignId)
+                .orElseThrow(() -> new IllegalArgumentException("Campaign not found: " + campaignId));
+    }
+
+    private static CryptoKey.KeyType parseKeyType(String keyType) {
+        if (keyType == null) {
+            throw new IllegalArgumentException("Key type is required. Must be TPK or TSK");
+        }
+        try {
+            return CryptoKey.KeyType.valueOf(keyType.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid key type. Must be TPK or TSK");
+        }
+    }
+
+    private static KeyRotationCampaign.SelectionType parseSelection(String selection) {
+        if (selection == null) {
+            return KeyRotationCampaign.SelectionType.ALL;
+        }
+        try {
+            return KeyRotationCampaign.SelectionType.valueOf(selection.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid selection. Must be ALL, INSTITUTION or LIST");
+        }
+    }
+
+    private static int bounded(Integer requested, int defaultValue, int max) {
+        int value = requested != null && requested > 0 ? requested : defaultValue;
+        return Math.min(Math.max(value, 1), max);
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 255 ? message.substring(0, 255) : message;
+    }
+}
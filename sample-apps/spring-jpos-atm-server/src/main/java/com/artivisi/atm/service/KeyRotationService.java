@@ -1,6 +1,5 @@
 package com.artivisi.atm.service;
 
-import com.artivisi.atm.dto.rotation.KeyRotationConfirmation;
 import com.artivisi.atm.dto.rotation.KeyRotationRequest;
 import com.artivisi.atm.dto.rotation.KeyRotationResponse;
 import com.artivisi.atm.entity.CryptoKey;
@@ -8,7 +7,6 @@ import com.artivisi.atm.util.CryptoUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Service for terminal-initiated key rotation.
@@ -17,20 +15,23 @@ import org.springframework.transaction.annotation.Transactional;
  * 2. Decrypt and verify new key
  * 3. Install new key as PENDING
  * 4. Test new key (optional)
- * 5. Confirm to HSM
- * 6. Activate new key
+ * 5. Activate new key, and queue the confirmation to HSM (hsm_outbox, see HsmOutboxDispatcher)
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class KeyRotationService {
 
+    private static final String CONFIRMED_BY = "ATM_SERVER_v1.0";
+
     private final CryptoKeyService cryptoKeyService;
     private final HsmClient hsmClient;
 
     /**
      * Initiate key rotation for a terminal.
      * This is a terminal-initiated (SCHEDULED) rotation.
+     * Not transactional: the HSM call must not hold a database connection. Each write runs in its
+     * own transaction in CryptoKeyService; the confirmation is stored with the activation.
      *
      * @param terminalId Terminal identifier
      * @param keyType Key type to rotate (TPK or TSK)
@@ -38,7 +39,6 @@ public class KeyRotationService {
      * @param description Optional description for audit
      * @return Rotation ID for tracking
      */
-    @Transactional
     public String initiateKeyRotation(String terminalId, CryptoKey.KeyType keyType,
                                      Integer gracePeriodHours, String description) {
         log.info("Initiating {} key rotation for terminal: {}", keyType, terminalId);
@@ -81,14 +81,12 @@ public class KeyRotationService {
 
         if (!testPassed) {
             log.error("New key test failed! Keeping old key active.");
+            cryptoKeyService.removePendingKey(terminalId, keyType, "New key test failed");
             throw new RuntimeException("New key test failed - rotation aborted");
         }
 
-        // Step 7: Confirm to HSM
-        confirmRotationToHsm(terminalId, rotationResponse.getRotationId());
-
-        // Step 8: Activate new key in database
-        cryptoKeyService.activateKey(terminalId, keyType, pendingKey.getKeyVersion());
+        // Step 7: Activate new key in database; the confirmation to HSM is delivered after the commit
+        cryptoKeyService.activateKey(terminalId, keyType, pendingKey.getKeyVersion(), CONFIRMED_BY);
 
         log.info("Successfully completed key rotation: rotationId={}, newVersion={}",
                 rotationResponse.getRotationId(), pendingKey.getKeyVersion());
@@ -122,26 +120,6 @@ public class KeyRotationService {
         }
     }
 
-    /**
-     * Confirm successful key installation to HSM.
-     */
-    private void confirmRotationToHsm(String terminalId, String rotationId) {
-        KeyRotationConfirmation confirmation = KeyRotationConfirmation.builder()
-                .rotationId(rotationId)
-                .confirmedBy("ATM_SERVER_v1.0")
-                .build();
-
-        log.debug("Confirming rotation to HSM: terminalId={}, rotationId={}", terminalId, rotationId);
-
-        try {
-            hsmClient.confirmKeyRotation(terminalId, confirmation);
-            log.info("Successfully confirmed rotation to HSM: {}", rotationId);
-        } catch (Exception e) {
-            log.error("Failed to confirm rotation to HSM: {}", e.getMessage(), e);
-            throw new RuntimeException("HSM confirmation failed", e);
-        }
-    }
-
     /**
      * Request key distribution for ISO-8583 terminal-initiated key change.
      * This method requests a new key from HSM but does NOT decrypt or activate it.
@@ -154,11 +132,13 @@ public class KeyRotationService {
      * 4. Terminal will decrypt, test, and start using new key
      * 5. Server activates key after detecting successful use
      *
+     * Not transactional: the HSM call must not hold a database connection. The only write
+     * (storing the PENDING key) runs in its own transaction in CryptoKeyService.
+     *
      * @param terminalId Terminal identifier
      * @param keyType Key type to distribute (TPK or TSK)
      * @return Rotation response containing encrypted new key and metadata
      */
-    @Transactional
     public KeyRotationResponse requestKeyDistribution(String terminalId, CryptoKey.KeyType keyType) {
         log.info("Requesting {} key distribution for terminal: {} via ISO-8583", keyType, terminalId);
 
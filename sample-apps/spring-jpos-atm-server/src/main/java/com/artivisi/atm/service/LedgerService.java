@@ -0,0 +1,154 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.dto.AccountSnapshot;
+import com.artivisi.atm.dto.ReversalRequest;
+import com.artivisi.atm.dto.ReversalResponse;
+import com.artivisi.atm.dto.StatementEntry;
+import com.artivisi.atm.dto.WithdrawalRequest;
+import com.artivisi.atm.dto.WithdrawalResponse;
+import com.artivisi.atm.entity.Transaction;
+import com.artivisi.atm.exception.AccountNotActiveException;
+import com.artivisi.atm.exception.AccountNotFoundException;
+import com.artivisi.atm.exception.DependencyUnavailableException;
+import com.artivisi.atm.exception.InsufficientBalanceException;
+import com.artivisi.atm.repository.LedgerRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Optional;
+
+/**
+ * Debits and reversals for the jPOS transaction path, without JPA (see LedgerRepository).
+ *
+ * Same contract as BankService.withdraw, which remains for the REST API: same exceptions, same
+ * response. The debit and its journal row are one statement, so there is no @Transactional proxy,
+ * no row read before the update and no flush. The database still serializes debits on the row lock.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LedgerService {
+
+    private final LedgerRepository ledgerRepository;
+    private final AccountReadModel accountReadModel;
+    private final RecentTransactions recentTransactions;
+    private final VelocityService velocityService;
+    private final DependencyHealth dependencyHealth;
+
+    /**
+     * @throws DependencyUnavailableException if the database circuit is open or the debit failed
+     *         (isCallMade tells whether the debit may have been executed)
+     */
+    public WithdrawalResponse withdraw(WithdrawalRequest request) {
+        return withdraw(request, BankService.generateReferenceNumber(), LocalDateTime.now());
+    }
+
+    /**
+     * Debit with a given reference number and transaction date, e.g. a stand-in approval posted
+     * later (see StandInService). Posting the same reference and date twice fails on the unique
+     * constraint of transactions with a DuplicateKeyException, and debits nothing.
+     */
+    public WithdrawalResponse withdraw(WithdrawalRequest request, String referenceNumber, LocalDateTime timestamp) {
+        log.info("Processing withdrawal for account: {} amount: {}",
+                request.getAccountNumber(), request.getAmount());
+
+        LedgerRepository.Debit debit = dependencyHealth.callDatabase(() -> ledgerRepository.debit(
+                        request.getAccountNumber(), request.getAmount(),
+                        Transaction.TransactionType.WITHDRAWAL, "Cash withdrawal", referenceNumber, timestamp,
+                        request.getInstitutionId(), request.getTerminalId(), request.getCardHash(),
+                        request.getStan(), request.getTransmissionDateTime()))
+                .orElseThrow(() -> declined(request));
+
+        AccountSnapshot account = debit.account();
+        // Already committed
+        accountReadModel.update(account);
+        recentTransactions.record(account, StatementEntry.builder()
+                .journalId(debit.journalId())
+                .transactionDate(timestamp)
+                .transactionType(Transaction.TransactionType.WITHDRAWAL)
+                .amount(debit.amount())
+                .balanceAfter(account.getBalance())
+                .build());
+
+        log.info("Withdrawal completed for account: {} with reference: {}",
+                request.getAccountNumber(), referenceNumber);
+
+        return WithdrawalResponse.builder()
+                .accountNumber(account.getAccountNumber())
+                .accountHolderName(account.getAccountHolderName())
+                .withdrawalAmount(debit.amount())
+                .balanceBefore(debit.balanceBefore())
+                .balanceAfter(account.getBalance())
+                .currency(account.getCurrency())
+                .timestamp(timestamp)
+                .referenceNumber(referenceNumber)
+                .journalId(debit.journalId())
+                .build();
+    }
+
+    /**
+     * Credit a withdrawal back and journal the reversal, atomically. Idempotent: a withdrawal is
+     * reversed at most once, whatever the number of reversal messages and nodes.
+     *
+     * @return Committed reversal, or empty if the withdrawal was already reversed (or is no longer
+     *         in the journal)
+     */
+    public Optional<ReversalResponse> reverse(ReversalRequest request) {
+        String referenceNumber = BankService.generateReferenceNumber();
+        LocalDateTime timestamp = LocalDateTime.now();
+
+        Optional<LedgerRepository.Reversal> committed = dependencyHealth.callDatabase(() -> ledgerRepository.reverse(
+                request.getJournalId(), request.getOriginalDate(), "Reversal of withdrawal", referenceNumber,
+                timestamp, request.getInstitutionId(), request.getTerminalId(), request.getStan(),
+                request.getTransmissionDateTime()));
+        if (committed.isEmpty()) {
+            log.info("Withdrawal {} already reversed", request.getJournalId());
+            return Optional.empty();
+        }
+
+        LedgerRepository.Reversal reversal = committed.get();
+        AccountSnapshot account = reversal.account();
+        accountReadModel.update(account);
+        recentTransactions.record(account, StatementEntry.builder()
+                .journalId(reversal.journalId())
+                .transactionDate(timestamp)
+                .transactionType(Transaction.TransactionType.REVERSAL)
+                .amount(reversal.amount())
+                .balanceAfter(account.getBalance())
+                .build());
+        // The reversed withdrawal no longer counts against the limits
+        velocityService.refund(reversal.cardHash(), account.getAccountNumber(), reversal.amount(),
+                request.getOriginalDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+
+        log.info("Withdrawal {} reversed for account: {} amount: {} with reference: {}",
+                request.getJournalId(), account.getAccountNumber(), reversal.amount(), referenceNumber);
+
+        return Optional.of(ReversalResponse.builder()
+                .accountNumber(account.getAccountNumber())
+                .reversedAmount(reversal.amount())
+                .balanceAfter(account.getBalance())
+                .timestamp(timestamp)
+                .referenceNumber(referenceNumber)
+                .journalId(reversal.journalId())
+                .build());
+    }
+
+    /**
+     * The debit matched no row: find out why. Only on the decline path.
+     */
+    private RuntimeException declined(WithdrawalRequest request) {
+        AccountSnapshot account = ledgerRepository.findAccount(request.getAccountNumber()).orElse(null);
+        if (account == null) {
+            return new AccountNotFoundException("Account not found: " + request.getAccountNumber());
+        }
+        if (!account.isActive()) {
+            return new AccountNotActiveException("Account is not active: " + request.getAccountNumber());
+        }
+        return new InsufficientBalanceException(
+                "Insufficient balance. Current balance: " + account.getBalance() +
+                ", requested: " + request.getAmount());
+    }
+}
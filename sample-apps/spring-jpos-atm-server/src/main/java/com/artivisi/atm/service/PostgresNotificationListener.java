@@ -0,0 +1,108 @@
+package com.artivisi.atm.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * LISTEN loop on one PostgreSQL channel, for in-memory state that other nodes can change.
+ *
+ * Uses its own connection outside the pool, so listening never takes a connection away from
+ * transactions. After a connection loss notifications may have been missed: onConnected() is
+ * called on every (re)connect, once LISTEN is in place, to drop everything cached.
+ */
+@Slf4j
+abstract class PostgresNotificationListener {
+
+    private final String channel;
+    private final boolean enabled;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final long reconnectDelayMillis;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    protected PostgresNotificationListener(String channel, boolean enabled, String url, String username,
+                                           String password, long reconnectDelayMillis) {
+        this.channel = channel;
+        this.enabled = enabled;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.reconnectDelayMillis = reconnectDelayMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.warn("Notifications on {} disabled: changes made by other nodes are not seen", channel);
+            return;
+        }
+        running = true;
+        thread = Thread.ofPlatform().daemon().name(channel + "-listener").start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                // Changes during the outage were not seen
+                onConnected();
+                log.info("Listening for changes on channel {}", channel);
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(1000);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        onNotification(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    break;
+                }
+                log.warn("Listener connection on {} lost, reconnecting in {} ms: {}",
+                        channel, reconnectDelayMillis, e.getMessage());
+                try {
+                    Thread.sleep(reconnectDelayMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        log.info("Listener on {} stopped", channel);
+    }
+
+    /**
+     * Called once listening, before any notification: drop what may have changed unseen.
+     */
+    protected abstract void onConnected();
+
+    /**
+     * @param payload Notification payload, as sent by the trigger
+     */
+    abstract void onNotification(String payload);
+}
@@ -0,0 +1,172 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.dto.AccountSnapshot;
+import com.artivisi.atm.dto.StatementEntry;
+import com.artivisi.atm.entity.Account;
+import com.artivisi.atm.entity.Transaction;
+import com.artivisi.atm.repository.TransactionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Last journal entries per account, in memory, for mini-statements.
+ *
+ * - Bounded ring per account: the newest account.mini-statement.entries entries, newest first
+ * - Fed by the debit path (LedgerService and BankService.withdraw) after commit
+ * - Read-through: a missing ring is loaded with one indexed page of findByAccountIdOrderByTransactionDateDesc
+ * - Bounded: least recently used accounts are evicted above account.mini-statement.max-accounts
+ *
+ * A ring is tagged with the account version (@Version) it reflects. A debit by this node appends
+ * to a ring that is exactly one version behind; any other gap (a debit by another node, an admin
+ * update) drops the ring. A ring older than the account in AccountReadModel is reloaded, so the
+ * statement is as fresh as the balance printed with it.
+ */
+@Service
+@Slf4j
+public class RecentTransactions {
+
+    private final BiFunction<Long, Integer, List<StatementEntry>> loader;
+    private final int entriesPerAccount;
+    private final int maxAccounts;
+
+    // Access-ordered for LRU eviction, keyed by account id; guarded by itself
+    private final LinkedHashMap<Long, Ring> rings;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static final class Ring {
+        final ArrayDeque<StatementEntry> entries = new ArrayDeque<>();
+        long version;
+    }
+
+    @Autowired
+    public RecentTransactions(TransactionRepository transactionRepository,
+                              @Value("${account.mini-statement.entries:10}") int entriesPerAccount,
+                              @Value("${account.mini-statement.max-accounts:10000}") int maxAccounts) {
+        this((accountId, limit) -> transactionRepository
+                        .findByAccountIdOrderByTransactionDateDesc(accountId, PageRequest.of(0, limit))
+                        .map(StatementEntry::from)
+                        .getContent(),
+                entriesPerAccount, maxAccounts);
+    }
+
+    RecentTransactions(BiFunction<Long, Integer, List<StatementEntry>> loader, int entriesPerAccount, int maxAccounts) {
+        this.loader = loader;
+        this.entriesPerAccount = Math.max(1, entriesPerAccount);
+        this.maxAccounts = Math.max(1, maxAccounts);
+        this.rings = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Ring> eldest) {
+                return size() > RecentTransactions.this.maxAccounts;
+            }
+        };
+        log.info("Recent transactions: {} entries for up to {} accounts", this.entriesPerAccount, this.maxAccounts);
+    }
+
+    /**
+     * Get the latest entries of an account, loading them from the journal on a miss.
+     *
+     * @param account Current state of the account (from AccountReadModel)
+     * @return Entries, most recent first
+     */
+    public List<StatementEntry> get(AccountSnapshot account) {
+        synchronized (rings) {
+            Ring ring = rings.get(account.getId());
+            if (ring != null && ring.version >= account.getVersion()) {
+                hits.incrementAndGet();
+                return List.copyOf(ring.entries);
+            }
+        }
+
+        misses.incrementAndGet();
+        List<StatementEntry> loaded = loader.apply(account.getId(), entriesPerAccount);
+        synchronized (rings) {
+            Ring ring = rings.get(account.getId());
+            if (ring == null || ring.version < account.getVersion()) {
+                ring = new Ring();
+                ring.version = account.getVersion();
+                ring.entries.addAll(loaded.subList(0, Math.min(loaded.size(), entriesPerAccount)));
+                rings.put(account.getId(), ring);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Add the committed journal entry of a debit by this node.
+     *
+     * @param account Account state after the debit
+     * @param entry Journal entry of the debit
+     */
+    public void record(AccountSnapshot account, StatementEntry entry) {
+        synchronized (rings) {
+            Ring ring = rings.get(account.getId());
+            if (ring == null) {
+                // Loaded with this entry on the next mini-statement
+                return;
+            }
+            StatementEntry newest = ring.entries.peekFirst();
+            if (newest != null && newest.getJournalId() >= entry.getJournalId()) {
+                // The ring was loaded after the debit committed
+                ring.version = Math.max(ring.version, account.getVersion());
+            } else if (ring.version == account.getVersion() - 1) {
+                ring.entries.addFirst(entry);
+                if (ring.entries.size() > entriesPerAccount) {
+                    ring.entries.removeLast();
+                }
+                ring.version = account.getVersion();
+            } else if (ring.version < account.getVersion()) {
+                log.debug("Account {} changed elsewhere (ring version {}, debit version {}), dropping its entries",
+                        account.getAccountNumber(), ring.version, account.getVersion());
+                rings.remove(account.getId());
+            }
+        }
+    }
+
+    /**
+     * Add the journal entry of a debit written through JPA, once the transaction commits.
+     *
+     * @param account Account entity that was saved
+     * @param transaction Journal entity that was saved
+     */
+    public void record(Account account, Transaction transaction) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    // @Version has been incremented by the flush at commit
+                    record(AccountSnapshot.from(account), StatementEntry.from(transaction));
+                }
+            });
+        } else {
+            record(AccountSnapshot.from(account), StatementEntry.from(transaction));
+        }
+    }
+
+    public int size() {
+        synchronized (rings) {
+            return rings.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+}
@@ -1,25 +1,24 @@
 package com.artivisi.atm.service;
 
 import com.artivisi.atm.entity.CryptoKey;
-import com.artivisi.atm.jpos.service.ChannelRegistry;
+import com.artivisi.atm.jpos.service.TerminalMessageRouter;
 import com.artivisi.atm.jpos.util.TerminalIdUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jpos.iso.ISOChannel;
-import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
 import org.springframework.stereotype.Service;
 
 /**
  * Service for server-initiated key rotation.
  * Sends 0800 network management messages to terminals to trigger key change.
+ * In a cluster, the message is forwarded to the node the terminal is connected to.
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ServerInitiatedKeyRotationService {
 
-    private final ChannelRegistry channelRegistry;
+    private final TerminalMessageRouter messageRouter;
 
     /**
      * Initiate key rotation for a specific terminal.
@@ -32,9 +31,7 @@ public class ServerInitiatedKeyRotationService {
     public boolean initiateKeyRotation(String terminalId, CryptoKey.KeyType keyType) {
         log.info("Initiating server-side key rotation: terminalId={}, keyType={}", terminalId, keyType);
 
-        // Get channel for terminal
-        ISOChannel channel = channelRegistry.getChannel(terminalId);
-        if (channel == null) {
+        if (!messageRouter.isReachable(terminalId)) {
             log.error("Cannot initiate key rotation: terminal not connected: {}", terminalId);
             return false;
         }
@@ -43,10 +40,13 @@ public class ServerInitiatedKeyRotationService {
             // Build 0800 notification message
             ISOMsg notification = buildKeyRotationNotification(terminalId, keyType);
 
-            // Send notification to terminal
+            // Send notification to terminal, on this node or the node it is connected to
             log.info("Sending key rotation notification to terminal: terminalId={}, keyType={}",
                     terminalId, keyType);
-            channel.send(notification);
+            if (!messageRouter.send(terminalId, notification)) {
+                log.error("Cannot initiate key rotation: terminal not reachable: {}", terminalId);
+                return false;
+            }
 
             log.info("Key rotation notification sent successfully: terminalId={}, keyType={}",
                     terminalId, keyType);
@@ -99,9 +99,9 @@ public class ServerInitiatedKeyRotationService {
      * Check if a terminal is currently connected.
      *
      * @param terminalId Terminal identifier
-     * @return true if terminal has active connection
+     * @return true if terminal has active connection, to this node or another node of the cluster
      */
     public boolean isTerminalConnected(String terminalId) {
-        return channelRegistry.isConnected(terminalId);
+        return messageRouter.isReachable(terminalId);
     }
 }
@@ -0,0 +1,403 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.SettlementProperties;
+import com.artivisi.atm.dto.SettlementSummary;
+import com.artivisi.atm.exception.SettlementInProgressException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * End-of-day settlement and reconciliation of the transactions journal.
+ *
+ * The business day is split into time windows (settlement.window-minutes). Windows are streamed in
+ * parallel (settlement.parallelism), each through a server-side cursor (fetch size rows per round
+ * trip) on the batch pool, and aggregated per institution, terminal and type (SettlementTotals).
+ * Memory is bounded by the number of terminals, whatever the number of rows.
+ *
+ * Each window's totals and its checkpoint row are written in one transaction. A run that fails or
+ * is interrupted resumes with the windows that have no checkpoint. When all windows are done, the
+ * totals of the day are written to settlement_totals and to the settlement file.
+ *
+ * A day is settled by one node at a time: the run holds a PostgreSQL advisory lock for the business
+ * date on a batch pool connection, released when the run ends or the connection is lost. A node
+ * that does not get the lock skips the day.
+ *
+ * A node runs one settlement at a time (runGate), whatever the date, because the batch pool is sized
+ * for one run (parallelism + 1). The scheduled run waits for an admin run to finish; an admin run
+ * while another is in progress on the node is refused.
+ *
+ * Rows posted to a day after it completed (stand-in approvals replayed with their approval time,
+ * transactions still in flight when a window was read) are found by comparing the journal row count
+ * of the day with the rows settled. Such a day is reopened and recomputed, and its settlement file
+ * rewritten. The scheduled run checks the last settlement.recheck-days settled days.
+ *
+ * Online traffic is not disturbed: rows are read on the primary through the batch pool, which
+ * online work never uses, and the journal is never locked. Only a few summary rows per window are
+ * written.
+ */
+@Service
+@Slf4j
+public class SettlementService {
+
+    private static final String WINDOW_ROWS = """
+            SELECT institution_id, terminal_id, transaction_type, amount, balance_before, balance_after
+              FROM transactions
+             WHERE transaction_date >= ? AND transaction_date < ?""";
+
+    private static final String DAY_ROW_COUNT = """
+            SELECT COUNT(*)
+              FROM transactions
+             WHERE transaction_date >= ? AND transaction_date < ?""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource batchDataSource;
+    private final TransactionTemplate transactionTemplate;
+    private final SettlementProperties properties;
+
+    // Held for the duration of a run on this node, before the advisory lock is taken
+    private final ReentrantLock runGate = new ReentrantLock();
+
+    public SettlementService(JdbcTemplate jdbcTemplate,
+                             @Qualifier("batchDataSource") DataSource batchDataSource,
+                             PlatformTransactionManager transactionManager,
+                             SettlementProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchDataSource = batchDataSource;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+    }
+
+    @Scheduled(cron = "${settlement.cron:0 15 0 * * *}")
+    public void settlePreviousDay() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        LocalDate previousDay = LocalDate.now().minusDays(1);
+        runGate.lock();
+        try {
+            settleScheduled(previousDay);
+
+            // Days settled before may have received late postings since
+            List<LocalDate> settledDays = jdbcTemplate.queryForList("""
+                            SELECT business_date FROM settlement_runs
+                             WHERE business_date >= ? AND business_date < ?
+                             ORDER BY business_date""",
+                    LocalDate.class, previousDay.minusDays(properties.getRecheckDays()), previousDay);
+            settledDays.forEach(this::settleScheduled);
+        } finally {
+            runGate.unlock();
+        }
+    }
+
+    private void settleScheduled(LocalDate businessDate) {
+        try {
+            settle(businessDate);
+        } catch (SettlementInProgressException e) {
+            log.info("{}, skipped on this node", e.getMessage());
+        } catch (Exception e) {
+            log.error("Settlement of {} failed, it resumes on the next run: ", businessDate, e);
+        }
+    }
+
+    /**
+     * Settle a business day, resuming from its checkpoints if it was started before.
+     * A completed day is recomputed only if rows were posted to it since; otherwise only its
+     * settlement file is rewritten if missing.
+     *
+     * @throws SettlementInProgressException Another run is in progress on this node, or the day is
+     *                                         being settled elsewhere
+     */
+    public SettlementSummary settle(LocalDate businessDate) throws IOException {
+        // Reentrant: the scheduled run already holds it
+        if (!runGate.tryLock()) {
+            throw new SettlementInProgressException("A settlement run is already in progress on this node");
+        }
+        try {
+            return settleOnNode(businessDate);
+        } finally {
+            runGate.unlock();
+        }
+    }
+
+    private SettlementSummary settleOnNode(LocalDate businessDate) throws IOException {
+        try (Connection lockConnection = batchDataSource.getConnection()) {
+            if (!tryLock(lockConnection, businessDate)) {
+                throw new SettlementInProgressException("Settlement of " + businessDate + " is running on another node");
+            }
+            try {
+                return settleLocked(lockConnection, businessDate);
+            } finally {
+                unlock(lockConnection, businessDate);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Settlement of " + businessDate + " failed", e);
+        }
+    }
+
+    private SettlementSummary settleLocked(Connection connection, LocalDate businessDate) throws IOException, SQLException {
+        long start = System.nanoTime();
+        int windowCount = startRun(businessDate);
+
+        if (isCompleted(businessDate)) {
+            reopenIfLatePostings(connection, businessDate);
+        }
+        if (!isCompleted(businessDate)) {
+            Set<Integer> done = new HashSet<>(jdbcTemplate.queryForList(
+                    "SELECT window_index FROM settlement_windows WHERE business_date = ?", Integer.class, businessDate));
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < windowCount; i++) {
+                if (!done.contains(i)) {
+                    pending.add(i);
+                }
+            }
+            log.info("Settling {}: {} of {} windows to stream, {} in parallel",
+                    businessDate, pending.size(), windowCount, properties.getParallelism());
+            settleWindows(businessDate, windowCount, pending);
+            completeRun(businessDate);
+        }
+
+        SettlementSummary summary = writeSettlementFile(businessDate);
+        log.info("Settlement of {} completed in {} ms: {} transactions, amount {}, {} reconciliation exceptions, file {}",
+                businessDate, (System.nanoTime() - start) / 1_000_000, summary.getTransactionCount(),
+                summary.getTotalAmount(), summary.getExceptionCount(), summary.getSettlementFile());
+        return summary;
+    }
+
+    /**
+     * @return Number of windows of the run, as fixed when the run was first started
+     */
+    private int startRun(LocalDate businessDate) {
+        int windowMinutes = Math.max(1, Math.min(properties.getWindowMinutes(), 24 * 60));
+        int windowCount = (24 * 60 + windowMinutes - 1) / windowMinutes;
+        jdbcTemplate.update("INSERT INTO settlement_runs (business_date, window_count) VALUES (?, ?) ON CONFLICT DO NOTHING",
+                businessDate, windowCount);
+        return jdbcTemplate.queryForObject("SELECT window_count FROM settlement_runs WHERE business_date = ?",
+                Integer.class, businessDate);
+    }
+
+    private boolean isCompleted(LocalDate businessDate) {
+        return "COMPLETED".equals(jdbcTemplate.queryForObject(
+                "SELECT status FROM settlement_runs WHERE business_date = ?", String.class, businessDate));
+    }
+
+    /**
+     * Session-level lock, held across the window transactions of the run; one lock per business date.
+     */
+    private static boolean tryLock(Connection connection, LocalDate businessDate) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT pg_try_advisory_lock(hashtext('settlement'), ?)")) {
+            statement.setInt(1, (int) businessDate.toEpochDay());
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static void unlock(Connection connection, LocalDate businessDate) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT pg_advisory_unlock(hashtext('settlement'), ?)")) {
+            statement.setInt(1, (int) businessDate.toEpochDay());
+            statement.execute();
+        }
+    }
+
+    /**
+     * Reopen a completed day when the journal has a different number of rows for it than were settled.
+     * All its windows are streamed again, since the window totals were dropped on completion.
+     */
+    private void reopenIfLatePostings(Connection connection, LocalDate businessDate) throws SQLException {
+        long journalRows;
+        try (PreparedStatement statement = connection.prepareStatement(DAY_ROW_COUNT)) {
+            statement.setObject(1, businessDate.atStartOfDay());
+            statement.setObject(2, businessDate.plusDays(1).atStartOfDay());
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                journalRows = rs.getLong(1);
+            }
+        }
+        long settledRows = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(row_count), 0) FROM settlement_windows WHERE business_date = ?",
+                Long.class, businessDate);
+        if (journalRows == settledRows) {
+            return;
+        }
+
+        log.warn("Settlement of {} reopened: {} journal rows, {} settled", businessDate, journalRows, settledRows);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM settlement_windows WHERE business_date = ?", businessDate);
+            jdbcTemplate.update("""
+                    UPDATE settlement_runs
+                       SET status = 'RUNNING', completed_at = NULL, settlement_file = NULL
+                     WHERE business_date = ?""", businessDate);
+        });
+    }
+
+    private void settleWindows(LocalDate businessDate, int windowCount, List<Integer> pending) {
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, properties.getParallelism()))) {
+            for (int window : pending) {
+                futures.add(executor.submit(() -> {
+                    settleWindow(businessDate, windowCount, window);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // The other windows keep their checkpoints; the run resumes without them
+                    futures.forEach(f -> f.cancel(true));
+                    throw new IllegalStateException("Settlement window of " + businessDate + " failed", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    futures.forEach(f -> f.cancel(true));
+                    throw new IllegalStateException("Settlement of " + businessDate + " interrupted", e);
+                }
+            }
+        }
+    }
+
+    private void settleWindow(LocalDate businessDate, int windowCount, int window) throws SQLException {
+        LocalDateTime dayStart = businessDate.atStartOfDay();
+        LocalDateTime dayEnd = dayStart.plusDays(1);
+        long windowMinutes = (24 * 60 + windowCount - 1) / windowCount;
+        LocalDateTime from = dayStart.plusMinutes(window * windowMinutes);
+        LocalDateTime to = from.plusMinutes(windowMinutes).isAfter(dayEnd) ? dayEnd : from.plusMinutes(windowMinutes);
+
+        long start = System.nanoTime();
+        SettlementTotals totals = new SettlementTotals();
+        try (Connection connection = batchDataSource.getConnection()) {
+            // PostgreSQL only uses a cursor (fetch size) inside a transaction
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(WINDOW_ROWS)) {
+                statement.setFetchSize(properties.getFetchSize());
+                statement.setObject(1, from);
+                statement.setObject(2, to);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        if (!totals.add(rs.getString(1), rs.getString(2), rs.getString(3),
+                                rs.getBigDecimal(4), rs.getBigDecimal(5), rs.getBigDecimal(6))) {
+                            log.warn("Reconciliation exception in window {} of {}: {} {} before {} after {}",
+                                    window, businessDate, rs.getString(3), rs.getBigDecimal(4),
+                                    rs.getBigDecimal(5), rs.getBigDecimal(6));
+                        }
+                    }
+                }
+            } finally {
+                connection.rollback();
+            }
+        }
+
+        List<SettlementTotals.Total> windowTotals = totals.totals();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("""
+                            INSERT INTO settlement_windows (business_date, window_index, row_count, exception_count)
+                            VALUES (?, ?, ?, ?)""",
+                    businessDate, window, totals.getRows(), totals.getExceptions());
+            jdbcTemplate.batchUpdate("""
+                            INSERT INTO settlement_window_totals (business_date, window_index, institution_id,
+                                                                  terminal_id, transaction_type, transaction_count, total_amount)
+                            VALUES (?, ?, ?, ?, ?, ?, ?)""",
+                    windowTotals, 500, (ps, total) -> {
+                        ps.setObject(1, businessDate);
+                        ps.setInt(2, window);
+                        ps.setString(3, total.key().institutionId());
+                        ps.setString(4, total.key().terminalId());
+                        ps.setString(5, total.key().transactionType());
+                        ps.setLong(6, total.count());
+                        ps.setBigDecimal(7, total.amount());
+                    });
+        });
+        log.debug("Settlement window {} of {} ({} - {}): {} rows in {} ms", window, businessDate, from, to,
+                totals.getRows(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void completeRun(LocalDate businessDate) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM settlement_totals WHERE business_date = ?", businessDate);
+            jdbcTemplate.update("""
+                    INSERT INTO settlement_totals (business_date, institution_id, terminal_id, transaction_type,
+                                                   transaction_count, total_amount)
+                    SELECT business_date, institution_id, terminal_id, transaction_type,
+                           SUM(transaction_count), SUM(total_amount)
+                      FROM settlement_window_totals
+                     WHERE business_date = ?
+                     GROUP BY business_date, institution_id, terminal_id, transaction_type""", businessDate);
+            jdbcTemplate.update("""
+                    UPDATE settlement_runs r
+                       SET status = 'COMPLETED', completed_at = CURRENT_TIMESTAMP,
+                           transaction_count = COALESCE((SELECT SUM(transaction_count) FROM settlement_totals t
+                                                          WHERE t.business_date = r.business_date), 0),
+                           total_amount = COALESCE((SELECT SUM(total_amount) FROM settlement_totals t
+                                                     WHERE t.business_date = r.business_date), 0),
+                           exception_count = COALESCE((SELECT SUM(exception_count) FROM settlement_windows w
+                                                        WHERE w.business_date = r.business_date), 0)
+                     WHERE business_date = ?""", businessDate);
+            // Window totals are only needed to resume
+            jdbcTemplate.update("DELETE FROM settlement_window_totals WHERE business_date = ?", businessDate);
+        });
+    }
+
+    private SettlementSummary writeSettlementFile(LocalDate businessDate) throws IOException {
+        Path directory = Path.of(properties.getOutputDirectory());
+        Files.createDirectories(directory);
+        Path file = directory.resolve("settlement-" + businessDate.format(DateTimeFormatter.BASIC_ISO_DATE) + ".csv");
+
+        // A reopened day has no settlement file recorded: the previous file is replaced
+        String recordedFile = jdbcTemplate.queryForObject(
+                "SELECT settlement_file FROM settlement_runs WHERE business_date = ?", String.class, businessDate);
+        if (recordedFile == null || !Files.exists(file)) {
+            List<SettlementTotals.Total> totals = jdbcTemplate.query("""
+                            SELECT institution_id, terminal_id, transaction_type, transaction_count, total_amount
+                              FROM settlement_totals
+                             WHERE business_date = ?
+                             ORDER BY institution_id, terminal_id, transaction_type""",
+                    (rs, rowNum) -> new SettlementTotals.Total(
+                            new SettlementTotals.Key(rs.getString(1), rs.getString(2), rs.getString(3)),
+                            rs.getLong(4), rs.getBigDecimal(5)),
+                    businessDate);
+            SettlementTotals.writeFile(file, businessDate, totals);
+            jdbcTemplate.update("UPDATE settlement_runs SET settlement_file = ? WHERE business_date = ?",
+                    file.toString(), businessDate);
+        }
+
+        return jdbcTemplate.queryForObject("""
+                        SELECT transaction_count, total_amount, exception_count, settlement_file
+                          FROM settlement_runs WHERE business_date = ?""",
+                (rs, rowNum) -> SettlementSummary.builder()
+                        .businessDate(businessDate)
+                        .transactionCount(rs.getLong(1))
+                        .totalAmount(rs.getBigDecimal(2) != null ? rs.getBigDecimal(2) : BigDecimal.ZERO)
+                        .exceptionCount(rs.getLong(3))
+                        .settlementFile(rs.getString(4))
+                        .build(),
+                businessDate);
+    }
+}
@@ -0,0 +1,159 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.entity.Transaction;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Running totals per institution, terminal and transaction type, with the reconciliation check
+ * of each journal row. Memory depends on the number of terminals, not on the number of rows.
+ *
+ * Not thread-safe: each settlement window aggregates into its own instance.
+ */
+class SettlementTotals {
+
+    static final String NO_TERMINAL = "-";
+
+    private static final Comparator<Key> ORDER = Comparator.comparing(Key::institutionId)
+            .thenComparing(Key::terminalId)
+            .thenComparing(Key::transactionType);
+
+    record Key(String institutionId, String terminalId, String transactionType) {
+    }
+
+    record Total(Key key, long count, BigDecimal amount) {
+    }
+
+    private static final class Sum {
+        long count;
+        BigDecimal amount = BigDecimal.ZERO;
+    }
+
+    private final Map<Key, Sum> sums = new HashMap<>();
+    private long rows;
+    private long exceptions;
+
+    /**
+     * Add one journal row.
+     *
+     * @return false if the row does not reconcile (balance_after is not balance_before +/- amount)
+     */
+    boolean add(String institutionId, String terminalId, String transactionType,
+                BigDecimal amount, BigDecimal balanceBefore, BigDecimal balanceAfter) {
+        Key key = new Key(institutionId != null ? institutionId : NO_TERMINAL,
+                terminalId != null ? terminalId : NO_TERMINAL, transactionType);
+        Sum sum = sums.computeIfAbsent(key, k -> new Sum());
+        sum.count++;
+        sum.amount = sum.amount.add(amount);
+        rows++;
+
+        boolean reconciled = reconciles(transactionType, amount, balanceBefore, balanceAfter);
+        if (!reconciled) {
+            exceptions++;
+        }
+        return reconciled;
+    }
+
+    static boolean reconciles(String transactionType, BigDecimal amount, BigDecimal balanceBefore, BigDecimal balanceAfter) {
+        BigDecimal expected = switch (Transaction.TransactionType.valueOf(transactionType)) {
+            case WITHDRAWAL, TRANSFER_OUT -> balanceBefore.subtract(amount);
+            case DEPOSIT, TRANSFER_IN, REVERSAL -> balanceBefore.add(amount);
+            case BALANCE_INQUIRY -> balanceBefore;
+        };
+        return expected.compareTo(balanceAfter) == 0;
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    long getExceptions() {
+        return exceptions;
+    }
+
+    List<Total> totals() {
+        List<Total> totals = new ArrayList<>(sums.size());
+        sums.forEach((key, sum) -> totals.add(new Total(key, sum.count, sum.amount)));
+        totals.sort(Comparator.comparing(Total::key, ORDER));
+        return totals;
+    }
+
+    /**
+     * Write the settlement file: a header, the detail per terminal and type with a subtotal per
+     * institution, the totals per type and a trailer. Written to a temporary file that only gets
+     * its final name once complete.
+     *
+     * H,businessDate,generatedAt
+     * D,institution,terminal,type,count,amount
+     * I,institution,,,count,amount
+     * T,,,type,count,amount
+     * Z,,,,count,amount
+     *
+     * @param totals Totals of the day, ordered by institution, terminal and type
+     */
+    static void writeFile(Path file, LocalDate businessDate, List<Total> totals) throws IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        Map<String, Sum> byType = new TreeMap<>();
+        Sum all = new Sum();
+
+        try (BufferedWriter out = Files.newBufferedWriter(partial)) {
+            line(out, "H", businessDate.format(DateTimeFormatter.BASIC_ISO_DATE),
+                    LocalDateTime.now().withNano(0).toString());
+
+            String institution = null;
+            Sum institutionSum = null;
+            for (Total total : totals) {
+                Key key = total.key();
+                if (!key.institutionId().equals(institution)) {
+                    if (institutionSum != null) {
+                        line(out, "I", institution, "", "", institutionSum.count, institutionSum.amount);
+                    }
+                    institution = key.institutionId();
+                    institutionSum = new Sum();
+                }
+                line(out, "D", key.institutionId(), key.terminalId(), key.transactionType(), total.count(), total.amount());
+                accumulate(institutionSum, total);
+                accumulate(byType.computeIfAbsent(key.transactionType(), t -> new Sum()), total);
+                accumulate(all, total);
+            }
+            if (institutionSum != null) {
+                line(out, "I", institution, "", "", institutionSum.count, institutionSum.amount);
+            }
+            for (Map.Entry<String, Sum> type : byType.entrySet()) {
+                line(out, "T", "", "", type.getKey(), type.getValue().count, type.getValue().amount);
+            }
+            line(out, "Z", "", "", "", all.count, all.amount);
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void accumulate(Sum sum, Total total) {
+        sum.count += total.count();
+        sum.amount = sum.amount.add(total.amount());
+    }
+
+    private static void line(BufferedWriter out, Object... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            Object field = fields[i];
+            out.write(field instanceof BigDecimal amount ? amount.toPlainString() : String.valueOf(field));
+        }
+        out.newLine();
+    }
+}
@@ -0,0 +1,176 @@
+package com.artivisi.atm.service;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Amount and count of events in a sliding time window, split into buckets.
+ *
+ * Lock-free: the state is immutable and replaced by compare-and-set, so a check against the limits
+ * and the reservation that follows it are one atomic step. Concurrent withdrawals on the same key
+ * can never exceed a limit together; a failed compare-and-set only retries with the new state.
+ *
+ * An idle counter can be retired, after which nothing is added to it: the owner replaces it
+ * without losing a concurrent event.
+ */
+final class SlidingWindowCounter {
+
+    enum Result {
+        ADDED,
+        AMOUNT_EXCEEDED,
+        COUNT_EXCEEDED,
+        /** Retired while idle: add to a new counter instead */
+        RETIRED
+    }
+
+    /**
+     * @param epoch Bucket number of the newest bucket (time / bucket length)
+     * @param amounts Amount per bucket, indexed by epoch modulo the bucket count
+     * @param counts Count per bucket
+     */
+    private record State(long epoch, long[] amounts, int[] counts, long totalAmount, int totalCount) {
+    }
+
+    private static final State RETIRED = new State(Long.MAX_VALUE, new long[0], new int[0], 0, 0);
+
+    private final long bucketMillis;
+    private final int buckets;
+    private final AtomicReference<State> state;
+
+    SlidingWindowCounter(long bucketMillis, int buckets) {
+        this.bucketMillis = Math.max(1, bucketMillis);
+        this.buckets = Math.max(1, buckets);
+        this.state = new AtomicReference<>(new State(0, new long[this.buckets], new int[this.buckets], 0, 0));
+    }
+
+    /**
+     * Add an event if the window stays within the limits.
+     *
+     * @param maxAmount Limit on the total amount, 0 for none
+     * @param maxCount Limit on the number of events, 0 for none
+     * @return ADDED, or why the event was not added
+     */
+    Result tryAdd(long nowMillis, long amount, long maxAmount, int maxCount) {
+        long epoch = nowMillis / bucketMillis;
+        while (true) {
+            State current = state.get();
+            if (current == RETIRED) {
+                return Result.RETIRED;
+            }
+            State advanced = advance(current, epoch);
+            if (maxCount > 0 && advanced.totalCount() + 1 > maxCount) {
+                return Result.COUNT_EXCEEDED;
+            }
+            if (maxAmount > 0 && advanced.totalAmount() + amount > maxAmount) {
+                return Result.AMOUNT_EXCEEDED;
+            }
+            if (state.compareAndSet(current, add(advanced, advanced != current, epoch, amount, 1))) {
+                return Result.ADDED;
+            }
+        }
+    }
+
+    /**
+     * Add an event at any time in the window, without limits (journal replay).
+     */
+    void add(long eventMillis, long amount) {
+        update(eventMillis / bucketMillis, amount, 1);
+    }
+
+    /**
+     * Take back an event added by tryAdd; nothing to do once its bucket has left the window, or if
+     * its bucket does not hold that much (an event this counter never saw).
+     */
+    void remove(long eventMillis, long amount) {
+        update(eventMillis / bucketMillis, -amount, -1);
+    }
+
+    long amount(long nowMillis) {
+        return advance(state.get(), nowMillis / bucketMillis).totalAmount();
+    }
+
+    int count(long nowMillis) {
+        return advance(state.get(), nowMillis / bucketMillis).totalCount();
+    }
+
+    /**
+     * Retire the counter if every event has left the window.
+     *
+     * @return true if retired (now or before)
+     */
+    boolean retireIfIdle(long nowMillis) {
+        long epoch = nowMillis / bucketMillis;
+        while (true) {
+            State current = state.get();
+            if (current == RETIRED) {
+                return true;
+            }
+            if (advance(current, epoch).totalCount() != 0) {
+                return false;
+            }
+            if (state.compareAndSet(current, RETIRED)) {
+                return true;
+            }
+        }
+    }
+
+    private void update(long epoch, long amount, int count) {
+        while (true) {
+            State current = state.get();
+            if (current == RETIRED) {
+                return;
+            }
+            State advanced = advance(current, Math.max(current.epoch(), epoch));
+            if (epoch <= advanced.epoch() - buckets) {
+                return;
+            }
+            int i = index(epoch);
+            if (count < 0 && (advanced.counts()[i] + count < 0 || advanced.amounts()[i] + amount < 0)) {
+                return;
+            }
+            if (state.compareAndSet(current, add(advanced, advanced != current, epoch, amount, count))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Move the window forward to epoch, clearing the buckets that left it.
+     */
+    private State advance(State current, long epoch) {
+        if (epoch <= current.epoch()) {
+            return current;
+        }
+        if (epoch - current.epoch() >= buckets) {
+            return new State(epoch, new long[buckets], new int[buckets], 0, 0);
+        }
+        long[] amounts = current.amounts().clone();
+        int[] counts = current.counts().clone();
+        long totalAmount = current.totalAmount();
+        int totalCount = current.totalCount();
+        for (long e = current.epoch() + 1; e <= epoch; e++) {
+            int i = index(e);
+            totalAmount -= amounts[i];
+            totalCount -= counts[i];
+            amounts[i] = 0;
+            counts[i] = 0;
+        }
+        return new State(epoch, amounts, counts, totalAmount, totalCount);
+    }
+
+    /**
+     * @param owned The arrays of current were copied by advance and are not shared yet
+     */
+    private State add(State current, boolean owned, long epoch, long amount, int count) {
+        long[] amounts = owned ? current.amounts() : current.amounts().clone();
+        int[] counts = owned ? current.counts() : current.counts().clone();
+        int i = index(epoch);
+        amounts[i] += amount;
+        counts[i] += count;
+        return new State(current.epoch(), amounts, counts,
+                current.totalAmount() + amount, current.totalCount() + count);
+    }
+
+    private int index(long epoch) {
+        return (int) Math.floorMod(epoch, (long) buckets);
+    }
+}
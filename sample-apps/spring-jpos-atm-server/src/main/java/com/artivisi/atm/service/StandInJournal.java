@@ -0,0 +1,199 @@
+package com.artivisi.atm.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only file of the stand-in approvals and their outcomes (see StandInService), one record
+ * per line, tab separated. Each append is forced to disk before the approval is answered.
+ *
+ * - A: approval (reference, date, account, amount, card hash, institution, terminal, STAN, date-time)
+ * - P: posted to the ledger (reference, journal id)
+ * - C: cancelled by a reversal before it was posted (reference)
+ * - X: declined by the ledger on posting (reference, reason)
+ *
+ * A record torn by a crash is skipped on load. Compaction rewrites the file with the records still
+ * needed to a temporary file, then moves it over the journal.
+ */
+@Slf4j
+final class StandInJournal {
+
+    private static final String NONE = "-";
+
+    enum Status {
+        PENDING,
+        POSTED,
+        CANCELLED,
+        FAILED
+    }
+
+    record Approval(String referenceNumber, LocalDateTime timestamp, String accountNumber, BigDecimal amount,
+                    String cardHash, String institutionId, String terminalId, String stan,
+                    String transmissionDateTime) {
+    }
+
+    /**
+     * An approval with its latest outcome, as loaded or to be rewritten.
+     *
+     * @param journalId Journal id of the posted withdrawal, or null
+     */
+    record Record(Approval approval, Status status, Long journalId) {
+    }
+
+    private final Path file;
+    private FileChannel channel;
+
+    StandInJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Open the journal, creating it if needed.
+     *
+     * @return Approvals of the journal with their latest outcome, in approval order
+     */
+    synchronized List<Record> open() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Map<String, Record> records = new LinkedHashMap<>();
+        boolean torn = false;
+        if (Files.exists(file)) {
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (in.size() > 0) {
+                    ByteBuffer last = ByteBuffer.allocate(1);
+                    in.read(last, in.size() - 1);
+                    torn = last.get(0) != '\n';
+                }
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        apply(records, line.split("\t", -1));
+                    } catch (RuntimeException e) {
+                        log.warn("Skipping unreadable stand-in record: {}", line);
+                    }
+                }
+            }
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (torn) {
+            // End the torn record, so the next one starts on its own line
+            append("");
+        }
+        return new ArrayList<>(records.values());
+    }
+
+    synchronized void approved(Approval approval) throws IOException {
+        append(approvalLine(approval));
+    }
+
+    synchronized void posted(String referenceNumber, Long journalId) throws IOException {
+        append(String.join("\t", "P", referenceNumber, journalId != null ? journalId.toString() : NONE));
+    }
+
+    synchronized void cancelled(String referenceNumber) throws IOException {
+        append(String.join("\t", "C", referenceNumber));
+    }
+
+    synchronized void failed(String referenceNumber, String reason) throws IOException {
+        append(String.join("\t", "X", referenceNumber, text(reason).replaceAll("[\t\r\n]", " ")));
+    }
+
+    /**
+     * Replace the journal with the given records. Appends wait until the rewrite is done.
+     */
+    synchronized void rewrite(List<Record> records) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        StringBuilder content = new StringBuilder();
+        for (Record record : records) {
+            Approval approval = record.approval();
+            content.append(approvalLine(approval)).append('\n');
+            switch (record.status()) {
+                case POSTED -> content.append(String.join("\t", "P", approval.referenceNumber(),
+                        record.journalId() != null ? record.journalId().toString() : NONE)).append('\n');
+                case CANCELLED -> content.append(String.join("\t", "C", approval.referenceNumber())).append('\n');
+                case FAILED -> content.append(String.join("\t", "X", approval.referenceNumber(), NONE)).append('\n');
+                case PENDING -> {
+                }
+            }
+        }
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(out, content.toString());
+        }
+        channel.close();
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void append(String line) throws IOException {
+        write(channel, line + "\n");
+    }
+
+    private static String approvalLine(Approval approval) {
+        return String.join("\t", "A", approval.referenceNumber(), approval.timestamp().toString(),
+                approval.accountNumber(), approval.amount().toPlainString(), text(approval.cardHash()),
+                text(approval.institutionId()), text(approval.terminalId()), text(approval.stan()),
+                text(approval.transmissionDateTime()));
+    }
+
+    private static void write(FileChannel channel, String content) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    private static void apply(Map<String, Record> records, String[] fields) {
+        String referenceNumber = fields[1];
+        Record record = records.get(referenceNumber);
+        switch (fields[0]) {
+            case "A" -> {
+                if (fields.length != 10) {
+                    throw new IllegalArgumentException("Incomplete approval");
+                }
+                // A compaction may have written the approval before its own append
+                records.putIfAbsent(referenceNumber, new Record(new Approval(referenceNumber,
+                        LocalDateTime.parse(fields[2]), fields[3], new BigDecimal(fields[4]), value(fields[5]),
+                        value(fields[6]), value(fields[7]), value(fields[8]), value(fields[9])),
+                        Status.PENDING, null));
+            }
+            case "P" -> records.put(referenceNumber, new Record(record.approval(), Status.POSTED,
+                    NONE.equals(fields[2]) ? null : Long.valueOf(fields[2])));
+            case "C" -> records.put(referenceNumber, new Record(record.approval(), Status.CANCELLED, null));
+            case "X" -> records.put(referenceNumber, new Record(record.approval(), Status.FAILED, null));
+            default -> throw new IllegalArgumentException("Unknown record type " + fields[0]);
+        }
+    }
+
+    private static String text(String value) {
+        return value != null ? value : NONE;
+    }
+
+    private static String value(String text) {
+        return NONE.equals(text) ? null : text;
+    }
+}
@@ -0,0 +1,483 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.StandInProperties;
+import com.artivisi.atm.dto.AccountSnapshot;
+import com.artivisi.atm.dto.WithdrawalRequest;
+import com.artivisi.atm.dto.WithdrawalResponse;
+import com.artivisi.atm.exception.AccountNotActiveException;
+import com.artivisi.atm.exception.AccountNotFoundException;
+import com.artivisi.atm.exception.DependencyUnavailableException;
+import com.artivisi.atm.exception.InsufficientBalanceException;
+import com.artivisi.atm.exception.VelocityLimitExceededException;
+import com.artivisi.atm.exception.VelocityLimitExceededException.Limit;
+import com.artivisi.atm.util.Deadline;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Stand-in processing (STIP): approves low-risk transactions while the HSM or the database is
+ * unavailable, and posts them to the ledger once the database is back.
+ *
+ * - Health condition: a call that failed fast on an open circuit, or failed to reach its dependency
+ *   (see DependencyHealth); a debit that may have been executed is never stood in for
+ * - Eligible: balance inquiries, and withdrawals up to the floor limit, before the deadline
+ * - Decided from the account read model (cached accounts only): active account, and a balance
+ *   covering the amount after the stand-in approvals not yet posted
+ * - Per-card exposure: amount and number of stand-in withdrawals over the exposure window
+ *   (RC 61 and 65, as the velocity limits)
+ * - Durable: each approval is forced to the local StandInJournal before it is answered
+ * - Replay: pending approvals are posted in order with their own reference number and date, so a
+ *   replay after a crash is rejected by the ledger's unique constraint instead of debiting twice.
+ *   The ledger checks the account status and balance again; an approval it declines is recorded as
+ *   an exception (stand_in.exceptions) for manual recovery.
+ *
+ * The PIN is not verified in stand-in: PIN blocks are neither stored nor re-verified later, which
+ * is the risk the floor limit and the exposure limit bound. Exposure counters and the journal are
+ * local to the node.
+ */
+@Service
+@Slf4j
+public class StandInService {
+
+    private static final String JOURNAL_FILE = "stand-in.journal";
+    private static final int EXPOSURE_BUCKETS = 24;
+
+    /**
+     * Debit of an approval on the ledger (LedgerService.withdraw).
+     */
+    interface Ledger {
+        WithdrawalResponse withdraw(WithdrawalRequest request, String referenceNumber, LocalDateTime timestamp);
+    }
+
+    /**
+     * A stand-in withdrawal already posted to the ledger, to be reversed there.
+     */
+    public record Posted(long journalId, LocalDateTime transactionDate) {
+    }
+
+    private final StandInProperties properties;
+    private final AccountReadModel accountReadModel;
+    private final Ledger ledger;
+    private final StandInJournal journal;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+    private final long bucketMillis;
+
+    // Approvals of the journal by reference number, and by terminal, STAN and date-time for reversals
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Entry> byMessage = new ConcurrentHashMap<>();
+    // Amount approved and not yet posted, per account
+    private final Map<String, BigDecimal> pending = new ConcurrentHashMap<>();
+    private final Map<String, SlidingWindowCounter> cards = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        final StandInJournal.Approval approval;
+        volatile StandInJournal.Status status;
+        volatile Long journalId;
+
+        Entry(StandInJournal.Approval approval, StandInJournal.Status status, Long journalId) {
+            this.approval = approval;
+            this.status = status;
+            this.journalId = journalId;
+        }
+    }
+
+    @Autowired
+    public StandInService(StandInProperties properties, AccountReadModel accountReadModel,
+                          LedgerService ledgerService, MeterRegistry meterRegistry) {
+        this(properties, accountReadModel, ledgerService::withdraw, meterRegistry, System::currentTimeMillis);
+    }
+
+    StandInService(StandInProperties properties, AccountReadModel accountReadModel, Ledger ledger,
+                   MeterRegistry meterRegistry, LongSupplier clock) {
+        this.properties = properties;
+        this.accountReadModel = accountReadModel;
+        this.ledger = ledger;
+        this.journal = new StandInJournal(Path.of(properties.getDirectory(), JOURNAL_FILE));
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.bucketMillis = Math.max(1, properties.getExposureWindow().toMillis() / EXPOSURE_BUCKETS);
+        Gauge.builder("stand_in.pending", this, StandInService::pendingCount)
+                .description("Stand-in approvals not yet posted to the ledger")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Load the journal: pending approvals are posted by the next replay, and every approval within
+     * the window counts against its card's exposure again.
+     */
+    @PostConstruct
+    public void load() throws IOException {
+        List<StandInJournal.Record> records = journal.open();
+        long since = clock.getAsLong() - properties.getExposureWindow().toMillis();
+        for (StandInJournal.Record record : records) {
+            Entry entry = new Entry(record.approval(), record.status(), record.journalId());
+            long time = millis(entry.approval.timestamp());
+            if (entry.status == StandInJournal.Status.PENDING || time >= since) {
+                register(entry);
+            }
+            if (entry.status == StandInJournal.Status.PENDING) {
+                pending.merge(entry.approval.accountNumber(), entry.approval.amount(), BigDecimal::add);
+            }
+            if (entry.status != StandInJournal.Status.CANCELLED && entry.approval.cardHash() != null) {
+                cards.computeIfAbsent(entry.approval.cardHash(), k -> newCounter()).add(time, cents(entry.approval.amount()));
+            }
+        }
+        log.info("Stand-in {} (floor limit {}), journal {}: {} approvals, {} to post",
+                properties.isEnabled() ? "enabled" : "disabled", properties.getFloorLimit(),
+                Path.of(properties.getDirectory(), JOURNAL_FILE).toAbsolutePath(), entries.size(), pendingCount());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    /**
+     * @param processingCode Field 3 of the request
+     * @param amount Amount of a withdrawal, or null
+     * @return true if the request may be approved in stand-in while its dependency is unavailable
+     */
+    public boolean eligible(String processingCode, BigDecimal amount) {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        Deadline deadline = Deadline.current();
+        if (deadline != null && deadline.isExpired()) {
+            return false;
+        }
+        if ("310000".equals(processingCode)) {
+            return properties.isBalanceInquiry();
+        }
+        return "010000".equals(processingCode) && amount != null && amount.signum() > 0
+                && amount.compareTo(properties.getFloorLimit()) <= 0;
+    }
+
+    /**
+     * Approve a withdrawal in stand-in and journal it for posting.
+     *
+     * @throws DependencyUnavailableException if the account is not in the read model or the journal
+     *         cannot be written: the withdrawal cannot be decided
+     * @throws VelocityLimitExceededException if the card exceeds its stand-in exposure
+     */
+    public WithdrawalResponse withdraw(WithdrawalRequest request) {
+        String accountNumber = request.getAccountNumber();
+        AccountSnapshot account = accountReadModel.peek(accountNumber)
+                .orElseThrow(() -> new DependencyUnavailableException(
+                        "Account " + accountNumber + " not in the read model"));
+        if (!account.isActive()) {
+            throw new AccountNotActiveException("Account is not active: " + accountNumber);
+        }
+
+        long now = clock.getAsLong();
+        long cents = cents(request.getAmount());
+        SlidingWindowCounter card = request.getCardHash() != null ? reserveExposure(request.getCardHash(), now, cents) : null;
+
+        BigDecimal[] available = new BigDecimal[1];
+        boolean[] covered = {false};
+        pending.compute(accountNumber, (key, amount) -> {
+            BigDecimal reserved = amount != null ? amount : BigDecimal.ZERO;
+            available[0] = account.getBalance().subtract(reserved);
+            if (available[0].compareTo(request.getAmount()) < 0) {
+                return amount;
+            }
+            covered[0] = true;
+            return reserved.add(request.getAmount());
+        });
+        if (!covered[0]) {
+            releaseExposure(card, now, cents);
+            throw new InsufficientBalanceException("Insufficient balance in stand-in. Available balance: "
+                    + available[0] + ", requested: " + request.getAmount());
+        }
+
+        // Posted with this reference and date: truncated to what the journal column keeps
+        LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(now), ZoneId.systemDefault())
+                .truncatedTo(ChronoUnit.MILLIS);
+        StandInJournal.Approval approval = new StandInJournal.Approval(BankService.generateReferenceNumber(),
+                timestamp, accountNumber, request.getAmount(), request.getCardHash(), request.getInstitutionId(),
+                request.getTerminalId(), request.getStan(), request.getTransmissionDateTime());
+        // Registered before the append, so a concurrent compaction keeps it
+        Entry entry = new Entry(approval, StandInJournal.Status.PENDING, null);
+        register(entry);
+        try {
+            journal.approved(approval);
+        } catch (IOException e) {
+            unregister(entry);
+            releasePending(approval);
+            releaseExposure(card, now, cents);
+            throw new DependencyUnavailableException("Stand-in journal unavailable: " + e.getMessage(), e, false);
+        }
+
+        meterRegistry.counter("stand_in.approvals", "type", "withdrawal").increment();
+        log.warn("Withdrawal approved in stand-in for account: {} amount: {} with reference: {}",
+                accountNumber, request.getAmount(), approval.referenceNumber());
+
+        return WithdrawalResponse.builder()
+                .accountNumber(accountNumber)
+                .accountHolderName(account.getAccountHolderName())
+                .withdrawalAmount(request.getAmount())
+                .balanceBefore(available[0])
+                .balanceAfter(available[0].subtract(request.getAmount()))
+                .currency(account.getCurrency())
+                .timestamp(timestamp)
+                .referenceNumber(approval.referenceNumber())
+                .build();
+    }
+
+    /**
+     * @return Balance of the account less its stand-in withdrawals not yet posted
+     */
+    public BigDecimal availableBalance(AccountSnapshot account) {
+        BigDecimal reserved = pending.get(account.getAccountNumber());
+        return reserved != null ? account.getBalance().subtract(reserved) : account.getBalance();
+    }
+
+    /**
+     * Cancel the stand-in withdrawal of a reversed request.
+     *
+     * @return The posted withdrawal if it is already on the ledger (to be reversed there), or empty
+     *         if it was cancelled before posting, or is not a stand-in withdrawal
+     */
+    public Optional<Posted> cancel(String institutionId, String terminalId, String stan, String transmissionDateTime) {
+        Entry entry = byMessage.get(messageKey(institutionId, terminalId, stan, transmissionDateTime));
+        if (entry == null) {
+            return Optional.empty();
+        }
+        synchronized (entry) {
+            switch (entry.status) {
+                case PENDING -> {
+                    try {
+                        journal.cancelled(entry.approval.referenceNumber());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    entry.status = StandInJournal.Status.CANCELLED;
+                    releasePending(entry.approval);
+                    SlidingWindowCounter card = entry.approval.cardHash() != null ? cards.get(entry.approval.cardHash()) : null;
+                    releaseExposure(card, millis(entry.approval.timestamp()), cents(entry.approval.amount()));
+                    log.info("Stand-in withdrawal {} cancelled before posting", entry.approval.referenceNumber());
+                    return Optional.empty();
+                }
+                case POSTED -> {
+                    if (entry.journalId == null) {
+                        log.warn("Stand-in withdrawal {} posted with an unknown journal id: reverse it manually",
+                                entry.approval.referenceNumber());
+                        return Optional.empty();
+                    }
+                    return Optional.of(new Posted(entry.journalId, entry.approval.timestamp()));
+                }
+                default -> {
+                    return Optional.empty();
+                }
+            }
+        }
+    }
+
+    /**
+     * Post pending approvals to the ledger, oldest first. Stops at the first approval the database
+     * cannot take (circuit still open), for the next run to resume.
+     */
+    @Scheduled(fixedDelayString = "${stand-in.replay-interval-ms:10000}")
+    public void replay() {
+        List<Entry> toPost = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.status == StandInJournal.Status.PENDING) {
+                toPost.add(entry);
+            }
+        }
+        toPost.sort(Comparator.comparing(entry -> entry.approval.timestamp()));
+
+        int posted = 0;
+        try {
+            for (Entry entry : toPost) {
+                if (post(entry)) {
+                    posted++;
+                }
+            }
+        } catch (DependencyUnavailableException e) {
+            log.info("Stand-in replay paused, {} approvals to post: {}", pendingCount(), e.getMessage());
+        }
+        if (posted > 0) {
+            log.info("Stand-in replay posted {} approvals, {} to post", posted, pendingCount());
+        }
+        compact();
+    }
+
+    public long pendingCount() {
+        return entries.values().stream().filter(entry -> entry.status == StandInJournal.Status.PENDING).count();
+    }
+
+    private boolean post(Entry entry) {
+        synchronized (entry) {
+            if (entry.status != StandInJournal.Status.PENDING) {
+                return false;
+            }
+            StandInJournal.Approval approval = entry.approval;
+            StandInJournal.Status status;
+            Long journalId = null;
+            String reason = null;
+            try {
+                journalId = ledger.withdraw(request(approval), approval.referenceNumber(), approval.timestamp())
+                        .getJournalId();
+                status = StandInJournal.Status.POSTED;
+            } catch (DuplicateKeyException e) {
+                // Posted before a crash lost its P record
+                log.info("Stand-in withdrawal {} already posted", approval.referenceNumber());
+                status = StandInJournal.Status.POSTED;
+            } catch (AccountNotFoundException | AccountNotActiveException | InsufficientBalanceException e) {
+                status = StandInJournal.Status.FAILED;
+                reason = e.getMessage();
+            }
+
+            try {
+                if (status == StandInJournal.Status.POSTED) {
+                    journal.posted(approval.referenceNumber(), journalId);
+                } else {
+                    journal.failed(approval.referenceNumber(), reason);
+                }
+            } catch (IOException e) {
+                // The next replay posts it again and gets a DuplicateKeyException
+                log.error("Cannot journal the outcome of stand-in withdrawal {}: ", approval.referenceNumber(), e);
+            }
+            entry.status = status;
+            entry.journalId = journalId;
+            releasePending(approval);
+
+            if (status == StandInJournal.Status.FAILED) {
+                meterRegistry.counter("stand_in.exceptions").increment();
+                log.error("Stand-in withdrawal {} of {} from account {} declined on posting: {}",
+                        approval.referenceNumber(), approval.amount(), approval.accountNumber(), reason);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Drop the finished approvals older than the exposure window, and rewrite the journal without them.
+     */
+    private void compact() {
+        long since = clock.getAsLong() - properties.getExposureWindow().toMillis();
+        boolean expired = entries.values().removeIf(entry -> entry.status != StandInJournal.Status.PENDING
+                && millis(entry.approval.timestamp()) < since);
+        byMessage.values().removeIf(entry -> !entries.containsKey(entry.approval.referenceNumber()));
+        cards.values().removeIf(counter -> counter.retireIfIdle(clock.getAsLong()));
+        if (!expired) {
+            return;
+        }
+        List<StandInJournal.Record> records = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                records.add(new StandInJournal.Record(entry.approval, entry.status, entry.journalId));
+            }
+        }
+        records.sort(Comparator.comparing(record -> record.approval().timestamp()));
+        try {
+            journal.rewrite(records);
+        } catch (IOException e) {
+            log.error("Cannot compact the stand-in journal: ", e);
+        }
+    }
+
+    private SlidingWindowCounter reserveExposure(String cardHash, long now, long cents) {
+        StandInProperties.Exposure limits = properties.getCard();
+        while (true) {
+            SlidingWindowCounter counter = cards.computeIfAbsent(cardHash, k -> newCounter());
+            SlidingWindowCounter.Result result = counter.tryAdd(now, cents, cents(limits.getMaxAmount()),
+                    limits.getMaxCount());
+            if (result == SlidingWindowCounter.Result.ADDED) {
+                return counter;
+            }
+            if (result == SlidingWindowCounter.Result.RETIRED) {
+                cards.remove(cardHash, counter);
+                continue;
+            }
+            Limit exceeded = result == SlidingWindowCounter.Result.COUNT_EXCEEDED ? Limit.COUNT : Limit.AMOUNT;
+            meterRegistry.counter("stand_in.declines", "limit", exceeded.name().toLowerCase()).increment();
+            throw new VelocityLimitExceededException(exceeded, "Card exceeds its stand-in "
+                    + exceeded.name().toLowerCase() + " exposure of the last " + properties.getExposureWindow());
+        }
+    }
+
+    private static void releaseExposure(SlidingWindowCounter card, long timeMillis, long cents) {
+        if (card != null) {
+            card.remove(timeMillis, cents);
+        }
+    }
+
+    private void releasePending(StandInJournal.Approval approval) {
+        pending.computeIfPresent(approval.accountNumber(), (key, amount) -> {
+            BigDecimal remaining = amount.subtract(approval.amount());
+            return remaining.signum() > 0 ? remaining : null;
+        });
+    }
+
+    private void register(Entry entry) {
+        entries.put(entry.approval.referenceNumber(), entry);
+        if (entry.approval.stan() != null && entry.approval.transmissionDateTime() != null) {
+            byMessage.put(messageKey(entry.approval), entry);
+        }
+    }
+
+    private void unregister(Entry entry) {
+        entries.remove(entry.approval.referenceNumber(), entry);
+        if (entry.approval.stan() != null && entry.approval.transmissionDateTime() != null) {
+            byMessage.remove(messageKey(entry.approval), entry);
+        }
+    }
+
+    private SlidingWindowCounter newCounter() {
+        return new SlidingWindowCounter(bucketMillis, EXPOSURE_BUCKETS);
+    }
+
+    private static WithdrawalRequest request(StandInJournal.Approval approval) {
+        return WithdrawalRequest.builder()
+                .accountNumber(approval.accountNumber())
+                .amount(approval.amount())
+                .cardHash(approval.cardHash())
+                .institutionId(approval.institutionId())
+                .terminalId(approval.terminalId())
+                .stan(approval.stan())
+                .transmissionDateTime(approval.transmissionDateTime())
+                .build();
+    }
+
+    private static String messageKey(StandInJournal.Approval approval) {
+        return messageKey(approval.institutionId(), approval.terminalId(), approval.stan(),
+                approval.transmissionDateTime());
+    }
+
+    private static String messageKey(String institutionId, String terminalId, String stan, String transmissionDateTime) {
+        return institutionId + '|' + terminalId + '|' + stan + '|' + transmissionDateTime;
+    }
+
+    private static long millis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static long cents(BigDecimal amount) {
+        return amount.movePointRight(2).longValue();
+    }
+}
@@ -0,0 +1,137 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.entity.CryptoKey;
+import com.artivisi.atm.repository.CryptoKeyRepository;
+import com.artivisi.atm.util.CryptoUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory cache of terminal keys and their derived operational keys.
+ *
+ * Valid keys (ACTIVE + PENDING) are loaded from the database on first use and kept
+ * until a key lifecycle change for the terminal evicts them, on this node directly and on
+ * the other nodes through CryptoKeyChangeListener (crypto_key_changed). Derived operational keys
+ * (PBKDF2, 100,000 iterations) are cached per key ID so the derivation cost is paid once
+ * per key version instead of once per message.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TerminalKeyCache {
+
+    private final CryptoKeyRepository cryptoKeyRepository;
+
+    // Map: "terminalId:keyType" -> valid keys, ordered by version (newest first)
+    private final Map<String, List<CryptoKey>> validKeys = new ConcurrentHashMap<>();
+
+    // Map: key ID -> derived TSK operational key for MAC operations
+    private final Map<UUID, byte[]> macKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Get valid keys (ACTIVE + PENDING) for a terminal and key type.
+     *
+     * @param terminalId Terminal identifier
+     * @param keyType Key type (TPK or TSK)
+     * @return Cached list of valid keys, ordered by version (newest first)
+     */
+    public List<CryptoKey> getValidKeys(String terminalId, CryptoKey.KeyType keyType) {
+        return validKeys.computeIfAbsent(cacheKey(terminalId, keyType), k -> {
+            log.debug("Loading valid {} keys for terminal: {}", keyType, terminalId);
+            return List.copyOf(cryptoKeyRepository.findValidKeysForTerminal(terminalId, keyType));
+        });
+    }
+
+    /**
+     * Get the ACTIVE key for a terminal and key type from the cache.
+     *
+     * @return Active key, or null if the terminal has no active key
+     */
+    public CryptoKey getActiveKey(String terminalId, CryptoKey.KeyType keyType) {
+        for (CryptoKey key : getValidKeys(terminalId, keyType)) {
+            if (key.getStatus() == CryptoKey.KeyStatus.ACTIVE) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a specific key version from the cache.
+     *
+     * @return Key with the given version, or null if it is not ACTIVE or PENDING
+     */
+    public CryptoKey getKeyByVersion(String terminalId, CryptoKey.KeyType keyType, Integer version) {
+        for (CryptoKey key : getValidKeys(terminalId, keyType)) {
+            if (key.getKeyVersion().equals(version)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the derived TSK operational key used for MAC generation and verification.
+     * Derivation context: "TSK:{bankUuid}:MAC", 128-bit output.
+     *
+     * @param tskKey TSK master key entity
+     * @return 16-byte operational key
+     */
+    public byte[] getMacKey(CryptoKey tskKey) {
+        return macKeys.computeIfAbsent(tskKey.getId(), id -> {
+            log.debug("Deriving TSK operational key: terminal={}, version={}",
+                    tskKey.getTerminalId(), tskKey.getKeyVersion());
+            byte[] masterKeyBytes = CryptoUtil.hexToBytes(tskKey.getKeyValue());
+            return CryptoUtil.deriveKeyFromParent(masterKeyBytes, "TSK:" + tskKey.getBankUuid() + ":MAC", 128);
+        });
+    }
+
+    /**
+     * Evict all cached keys for a terminal.
+     * When called inside a transaction, eviction is deferred until after commit so
+     * concurrent readers cannot repopulate the cache with uncommitted state.
+     *
+     * @param terminalId Terminal identifier
+     */
+    public void evict(String terminalId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictNow(terminalId);
+                }
+            });
+        }
+        evictNow(terminalId);
+    }
+
+    /**
+     * Clear the whole cache (for testing).
+     */
+    public void clear() {
+        validKeys.clear();
+        macKeys.clear();
+    }
+
+    void evictNow(String terminalId) {
+        for (CryptoKey.KeyType keyType : CryptoKey.KeyType.values()) {
+            List<CryptoKey> removed = validKeys.remove(cacheKey(terminalId, keyType));
+            if (removed != null) {
+                removed.forEach(key -> macKeys.remove(key.getId()));
+            }
+        }
+        log.debug("Evicted cached keys for terminal: {}", terminalId);
+    }
+
+    private static String cacheKey(String terminalId, CryptoKey.KeyType keyType) {
+        return terminalId + ":" + keyType;
+    }
+}
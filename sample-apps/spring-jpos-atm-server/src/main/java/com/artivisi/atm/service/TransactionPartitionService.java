@@ -0,0 +1,218 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.TransactionPartitionProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Maintenance of the monthly partitions of transactions (see V7__partition_transactions.sql).
+ *
+ * Runs on startup and daily:
+ * 1. Creates the partitions of the coming months, so inserts never hit a missing range
+ * 2. Detaches partitions older than the retention period (DETACH ... CONCURRENTLY: inserts and
+ *    queries on the other partitions are not blocked)
+ * 3. Exports each detached partition with COPY to a gzip-compressed CSV file, then drops it
+ *
+ * Every step can be repeated: a partition left detached or half-detached by an interrupted run is
+ * finished by the next one, and a partition is only dropped after its archive file is complete.
+ *
+ * Every node schedules it, but one run at a time holds a PostgreSQL advisory lock; the others skip
+ * (like SettlementService), so two nodes never detach or export the same partition.
+ */
+@Service
+@Slf4j
+public class TransactionPartitionService {
+
+    static final String PARENT = "transactions";
+    private static final Pattern PARTITION_NAME = Pattern.compile("transactions_p(\\d{6})");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcClient jdbcClient;
+    private final DataSource writeDataSource;
+    private final TransactionPartitionProperties properties;
+
+    public TransactionPartitionService(JdbcClient jdbcClient,
+                                       @Qualifier("writeDataSource") DataSource writeDataSource,
+                                       TransactionPartitionProperties properties) {
+        this.jdbcClient = jdbcClient;
+        this.writeDataSource = writeDataSource;
+        this.properties = properties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${transactions.partitioning.cron:0 30 1 * * *}")
+    public void maintain() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        // Session-level lock, held on its own connection across the statements of the run
+        try (Connection lockConnection = writeDataSource.getConnection()) {
+            if (!advisoryLock(lockConnection, "pg_try_advisory_lock")) {
+                log.info("Transaction partition maintenance is running on another node, skipped on this node");
+                return;
+            }
+            try {
+                YearMonth current = YearMonth.now();
+                createPartitions(current);
+                archivePartitions(current);
+            } finally {
+                advisoryLock(lockConnection, "pg_advisory_unlock");
+            }
+        } catch (Exception e) {
+            log.error("Transaction partition maintenance failed: ", e);
+        }
+    }
+
+    private static boolean advisoryLock(Connection connection, String function) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + function + "(hashtext('transaction_partitions'))");
+             ResultSet rs = statement.executeQuery()) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    /**
+     * Create the partitions from the current month to months-ahead, if missing.
+     */
+    public void createPartitions(YearMonth current) {
+        for (YearMonth month : monthsToCreate(current, properties.getMonthsAhead())) {
+            String name = jdbcClient.sql("SELECT create_transactions_partition(:monthStart)")
+                    .param("monthStart", month.atDay(1))
+                    .query(String.class)
+                    .single();
+            log.debug("Partition {} present", name);
+        }
+    }
+
+    /**
+     * Detach, export and drop the partitions older than the retention period.
+     *
+     * @return Archive files written
+     */
+    public List<Path> archivePartitions(YearMonth current) throws IOException, SQLException {
+        List<Path> archives = new ArrayList<>();
+
+        // Finish detaches interrupted by a crash, then detach the expired partitions
+        for (PartitionInfo partition : attachedPartitions()) {
+            if (partition.detachPending()) {
+                log.info("Finishing interrupted detach of partition {}", partition.name());
+                jdbcClient.sql("ALTER TABLE " + PARENT + " DETACH PARTITION " + partition.name() + " FINALIZE").update();
+            } else if (isExpired(partition.name(), current, properties.getRetentionMonths())) {
+                log.info("Detaching partition {} (retention {} months)", partition.name(), properties.getRetentionMonths());
+                // Not allowed inside a transaction block: JdbcClient runs it in auto-commit
+                jdbcClient.sql("ALTER TABLE " + PARENT + " DETACH PARTITION " + partition.name() + " CONCURRENTLY").update();
+            }
+        }
+
+        for (String name : detachedPartitions()) {
+            if (!isExpired(name, current, properties.getRetentionMonths())) {
+                log.warn("Partition {} is detached but within retention, leaving it alone", name);
+                continue;
+            }
+            Path archive = export(name);
+            jdbcClient.sql("DROP TABLE " + name).update();
+            log.info("Archived partition {} to {}", name, archive);
+            archives.add(archive);
+        }
+        return archives;
+    }
+
+    /**
+     * COPY the table into archiveDirectory/name.csv.gz. The file only gets its final name once complete.
+     */
+    private Path export(String table) throws IOException, SQLException {
+        Path directory = Path.of(properties.getArchiveDirectory());
+        Files.createDirectories(directory);
+        Path archive = directory.resolve(table + ".csv.gz");
+        Path partial = directory.resolve(table + ".csv.gz.part");
+
+        long rows;
+        try (Connection connection = writeDataSource.getConnection();
+             OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(partial)))) {
+            rows = connection.unwrap(PGConnection.class).getCopyAPI()
+                    .copyOut("COPY " + table + " TO STDOUT WITH (FORMAT csv, HEADER)", out);
+        }
+        Files.move(partial, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Exported {} rows of {} ({} bytes compressed)", rows, table, Files.size(archive));
+        return archive;
+    }
+
+    private List<PartitionInfo> attachedPartitions() {
+        return jdbcClient.sql("""
+                        SELECT c.relname, i.inhdetachpending
+                          FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                         WHERE i.inhparent = CAST(:parent AS regclass)
+                         ORDER BY c.relname""")
+                .param("parent", PARENT)
+                .query((rs, rowNum) -> new PartitionInfo(rs.getString(1), rs.getBoolean(2)))
+                .list();
+    }
+
+    private List<String> detachedPartitions() {
+        return jdbcClient.sql("""
+                        SELECT c.relname
+                          FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+                         WHERE n.nspname = current_schema() AND c.relkind = 'r' AND NOT c.relispartition
+                           AND c.relname ~ '^transactions_p[0-9]{6}$'
+                         ORDER BY c.relname""")
+                .query(String.class)
+                .list();
+    }
+
+    /**
+     * @return Month of a partition named transactions_pYYYYMM, or null for other tables
+     */
+    static YearMonth monthOf(String partitionName) {
+        Matcher matcher = PARTITION_NAME.matcher(partitionName);
+        return matcher.matches() ? YearMonth.parse(matcher.group(1), SUFFIX) : null;
+    }
+
+    static List<YearMonth> monthsToCreate(YearMonth current, int monthsAhead) {
+        List<YearMonth> months = new ArrayList<>();
+        for (int i = 0; i <= Math.max(0, monthsAhead); i++) {
+            months.add(current.plusMonths(i));
+        }
+        return months;
+    }
+
+    /**
+     * A partition expires once it is more than retentionMonths before the current month.
+     * The current month is never expired, whatever the retention.
+     */
+    static boolean isExpired(String partitionName, YearMonth current, int retentionMonths) {
+        YearMonth month = monthOf(partitionName);
+        return month != null && month.isBefore(current.minusMonths(Math.max(0, retentionMonths)));
+    }
+
+    private record PartitionInfo(String name, boolean detachPending) {
+    }
+}
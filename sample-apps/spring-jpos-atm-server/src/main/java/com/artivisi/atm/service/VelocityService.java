@@ -0,0 +1,250 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.ClusterProperties;
+import com.artivisi.atm.config.VelocityProperties;
+import com.artivisi.atm.exception.VelocityLimitExceededException;
+import com.artivisi.atm.exception.VelocityLimitExceededException.Limit;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.sql.Timestamp;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Withdrawal velocity limits (amount and count in a sliding window) per card and per account,
+ * enforced in memory instead of with an aggregate query over the journal on every debit.
+ *
+ * - Counters: one SlidingWindowCounter per card hash and per account, in ConcurrentHashMaps
+ *   (striped: a lock is only taken to insert or remove a key, in that key's bin; checks and
+ *   reservations are a compare-and-set on the counter)
+ * - Reserve before the debit: VelocityParticipant reserves the amount on both counters, or declines
+ *   with RC 61 (amount) or 65 (count); the reservation is released if the debit does not commit
+ *   and refunded if the withdrawal is reversed
+ * - Rebuilt on startup from the withdrawals of the journal within the window (card_hash, V9 migration)
+ * - Idle counters are retired and removed by a periodic sweep, so memory follows the active cards
+ *   and accounts
+ *
+ * Single node only: counters only see the withdrawals of this node after startup, so with N nodes
+ * a card could withdraw N times its limit. Rather than run a fraud control that silently does not
+ * hold, the application refuses to start with both velocity.enabled and cluster.enabled: a cluster
+ * must turn the limits off explicitly (velocity.enabled=false).
+ */
+@Service
+@Slf4j
+public class VelocityService {
+
+    private static final String WINDOW_WITHDRAWALS = """
+            SELECT t.card_hash, a.account_number, t.amount, t.transaction_date
+              FROM transactions t
+              JOIN accounts a ON a.id = t.account_id
+             WHERE t.transaction_type = 'WITHDRAWAL' AND NOT t.reversed AND t.transaction_date >= ?""";
+
+    private final VelocityProperties properties;
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+    private final boolean enforced;
+    private final long bucketMillis;
+    private final SecretKeySpec panHashKey;
+
+    private final Map<String, SlidingWindowCounter> cards = new ConcurrentHashMap<>();
+    private final Map<String, SlidingWindowCounter> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * Amount reserved on the counters of a card and an account, at a given time.
+     *
+     * @param card Counter of the card, or null for withdrawals without a card (REST API)
+     */
+    public record Reservation(SlidingWindowCounter card, SlidingWindowCounter account, long timeMillis, long amount) {
+    }
+
+    @Autowired
+    public VelocityService(VelocityProperties properties, ClusterProperties clusterProperties,
+                           JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this(properties, clusterProperties, jdbcTemplate, meterRegistry, System::currentTimeMillis);
+    }
+
+    VelocityService(VelocityProperties properties, ClusterProperties clusterProperties, JdbcTemplate jdbcTemplate,
+                    MeterRegistry meterRegistry, LongSupplier clock) {
+        this.properties = properties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        if (properties.isEnabled() && clusterProperties.isEnabled()) {
+            throw new IllegalStateException("Velocity limits are per node and cannot be enforced across a cluster: "
+                    + "set velocity.enabled=false to run with cluster.enabled");
+        }
+        this.enforced = properties.isEnabled();
+        int buckets = Math.max(1, properties.getBuckets());
+        this.bucketMillis = Math.max(1, properties.getWindow().toMillis() / buckets);
+        this.panHashKey = new SecretKeySpec(properties.getPanHashKey().getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    /**
+     * Replay the withdrawals of the window before the first debit is checked.
+     */
+    @PostConstruct
+    public void rebuild() {
+        long start = System.nanoTime();
+        long now = clock.getAsLong();
+        long[] rows = {0};
+        jdbcTemplate.query(WINDOW_WITHDRAWALS, rs -> {
+            long time = rs.getTimestamp(4).getTime();
+            long amount = cents(rs.getBigDecimal(3));
+            String cardHash = rs.getString(1);
+            if (cardHash != null) {
+                counter(cards, cardHash).add(time, amount);
+            }
+            counter(accounts, rs.getString(2)).add(time, amount);
+            rows[0]++;
+        }, new Timestamp(now - properties.getWindow().toMillis()));
+        log.info("Velocity counters rebuilt from {} withdrawals in {} ms: {} cards, {} accounts (limits {})",
+                rows[0], (System.nanoTime() - start) / 1_000_000, cards.size(), accounts.size(),
+                enforced ? "enforced" : "not enforced");
+    }
+
+    /**
+     * Reserve a withdrawal on the counters of its card and account.
+     *
+     * @param cardHash Card hash (see hashPan), or null for withdrawals without a card
+     * @return Reservation to release if the debit does not commit
+     * @throws VelocityLimitExceededException if the withdrawal would exceed a limit; nothing is reserved
+     */
+    public Reservation reserve(String cardHash, String accountNumber, BigDecimal amount) {
+        long now = clock.getAsLong();
+        long cents = cents(amount);
+
+        SlidingWindowCounter card = null;
+        if (cardHash != null) {
+            card = reserveOn(cards, cardHash, now, cents, enforced ? properties.getCard() : null, "Card");
+        }
+        try {
+            SlidingWindowCounter account = reserveOn(accounts, accountNumber, now, cents,
+                    enforced ? properties.getAccount() : null, "Account " + accountNumber);
+            return new Reservation(card, account, now, cents);
+        } catch (VelocityLimitExceededException e) {
+            if (card != null) {
+                card.remove(now, cents);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Take back a reservation whose debit was declined, rolled back or aborted.
+     */
+    public void release(Reservation reservation) {
+        if (reservation.card() != null) {
+            reservation.card().remove(reservation.timeMillis(), reservation.amount());
+        }
+        reservation.account().remove(reservation.timeMillis(), reservation.amount());
+    }
+
+    /**
+     * Take back a committed withdrawal that was reversed. Counters only hold the withdrawals of
+     * this node: a withdrawal debited by another node (or already out of the window) is not in
+     * them, and a bucket is never taken below what it holds.
+     *
+     * @param cardHash Card hash of the withdrawal, or null
+     * @param eventMillis Time of the withdrawal
+     */
+    public void refund(String cardHash, String accountNumber, BigDecimal amount, long eventMillis) {
+        long cents = cents(amount);
+        if (cardHash != null) {
+            SlidingWindowCounter card = cards.get(cardHash);
+            if (card != null) {
+                card.remove(eventMillis, cents);
+            }
+        }
+        SlidingWindowCounter account = accounts.get(accountNumber);
+        if (account != null) {
+            account.remove(eventMillis, cents);
+        }
+    }
+
+    /**
+     * @return HMAC-SHA256 of the PAN, hex encoded, as stored in transactions.card_hash
+     */
+    public String hashPan(String pan) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(panHashKey);
+            return HexFormat.of().formatHex(mac.doFinal(pan.getBytes(StandardCharsets.US_ASCII)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${velocity.sweep-interval-ms:300000}")
+    public void removeIdleCounters() {
+        long now = clock.getAsLong();
+        int before = cards.size() + accounts.size();
+        cards.values().removeIf(counter -> counter.retireIfIdle(now));
+        accounts.values().removeIf(counter -> counter.retireIfIdle(now));
+        log.debug("Velocity counters: removed {} idle, {} cards and {} accounts active",
+                before - cards.size() - accounts.size(), cards.size(), accounts.size());
+    }
+
+    public int cardCount() {
+        return cards.size();
+    }
+
+    public int accountCount() {
+        return accounts.size();
+    }
+
+    long cardAmount(String cardHash) {
+        SlidingWindowCounter counter = cards.get(cardHash);
+        return counter != null ? counter.amount(clock.getAsLong()) : 0;
+    }
+
+    long accountAmount(String accountNumber) {
+        SlidingWindowCounter counter = accounts.get(accountNumber);
+        return counter != null ? counter.amount(clock.getAsLong()) : 0;
+    }
+
+    private SlidingWindowCounter reserveOn(Map<String, SlidingWindowCounter> counters, String key, long now,
+                                           long cents, VelocityProperties.Limits limits, String owner) {
+        while (true) {
+            SlidingWindowCounter counter = counter(counters, key);
+            SlidingWindowCounter.Result result = counter.tryAdd(now, cents,
+                    limits != null ? cents(limits.getMaxAmount()) : 0,
+                    limits != null ? limits.getMaxCount() : 0);
+            if (result == SlidingWindowCounter.Result.ADDED) {
+                return counter;
+            }
+            if (result == SlidingWindowCounter.Result.RETIRED) {
+                // Retired by the sweep: replace it
+                counters.remove(key, counter);
+                continue;
+            }
+            Limit exceeded = result == SlidingWindowCounter.Result.COUNT_EXCEEDED ? Limit.COUNT : Limit.AMOUNT;
+            meterRegistry.counter("velocity.declines", "limit", exceeded.name().toLowerCase(),
+                    "key", counters == cards ? "card" : "account").increment();
+            throw new VelocityLimitExceededException(exceeded,
+                    owner + " exceeds its " + exceeded.name().toLowerCase() + " limit of the last "
+                            + properties.getWindow());
+        }
+    }
+
+    private SlidingWindowCounter counter(Map<String, SlidingWindowCounter> counters, String key) {
+        return counters.computeIfAbsent(key, k -> new SlidingWindowCounter(bucketMillis, properties.getBuckets()));
+    }
+
+    private static long cents(BigDecimal amount) {
+        return amount.movePointRight(2).longValue();
+    }
+}
@@ -0,0 +1,133 @@
+package com.artivisi.atm.util;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker for a dependency (HSM, database): after failureThreshold consecutive failed or slow
+ * calls the circuit opens and calls fail fast for openDuration, instead of each one waiting for its
+ * timeout. Then one trial call is let through (half-open): success closes the circuit, failure opens it
+ * again.
+ *
+ * A closed circuit costs one volatile read per call and one per result; state changes are synchronized.
+ * A trial call that never reports its result is replaced by another after openDuration.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile State state = State.CLOSED;
+    // Time the circuit opened, or the trial call started when half-open
+    private long since;
+
+    /**
+     * @param failureThreshold Consecutive failures that open the circuit; 0 never opens it
+     * @param slowCallThreshold Calls slower than this count as failures
+     * @param openDuration Time calls fail fast before a trial call
+     */
+    public CircuitBreaker(String name, int failureThreshold, Duration slowCallThreshold, Duration openDuration) {
+        this(name, failureThreshold, slowCallThreshold, openDuration, System::nanoTime);
+    }
+
+    public CircuitBreaker(String name, int failureThreshold, Duration slowCallThreshold, Duration openDuration,
+                          LongSupplier nanoClock) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.slowCallNanos = slowCallThreshold.toNanos();
+        this.openNanos = openDuration.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return true if the call may be made (closed, or the trial call); false to fail fast
+     */
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            long now = nanoClock.getAsLong();
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (now - since < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            since = now;
+            return true;
+        }
+    }
+
+    /**
+     * Record a call that got an answer from the dependency.
+     *
+     * @param elapsedNanos Duration of the call; a slow call counts as a failure
+     */
+    public void onSuccess(long elapsedNanos) {
+        if (elapsedNanos > slowCallNanos) {
+            onFailure();
+            return;
+        }
+        if (state == State.CLOSED) {
+            if (consecutiveFailures.get() != 0) {
+                consecutiveFailures.set(0);
+            }
+            return;
+        }
+        synchronized (this) {
+            consecutiveFailures.set(0);
+            state = State.CLOSED;
+        }
+    }
+
+    /**
+     * Record a call that failed (I/O error, timeout, server error).
+     */
+    public void onFailure() {
+        int failures = consecutiveFailures.incrementAndGet();
+        if (failureThreshold <= 0 || (state == State.CLOSED && failures < failureThreshold)) {
+            return;
+        }
+        synchronized (this) {
+            if (state != State.OPEN) {
+                state = State.OPEN;
+                since = nanoClock.getAsLong();
+            }
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return true unless closed: the dependency failed recently and may still be down
+     */
+    public boolean isDegraded() {
+        return state != State.CLOSED;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name + " circuit " + state + " (" + consecutiveFailures.get() + " consecutive failures, open "
+                + TimeUnit.NANOSECONDS.toMillis(openNanos) + " ms)";
+    }
+}
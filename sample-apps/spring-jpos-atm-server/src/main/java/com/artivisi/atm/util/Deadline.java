@@ -0,0 +1,97 @@
+package com.artivisi.atm.util;
+
+import com.artivisi.atm.exception.DeadlineExceededException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time after which the terminal no longer waits for the response.
+ *
+ * Created by IsoRequestListener when the request is received and carried in the Context as DEADLINE.
+ * DeadlineParticipant binds it to the TransactionManager session thread, so that outbound calls made
+ * on that thread (HSM client, JPA transactions) can bound their timeouts by the remaining budget
+ * without passing it through every service method.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long budgetMillis;
+    private final long expiresAtNanos;
+
+    private Deadline(long budgetMillis, long startNanos) {
+        this.budgetMillis = budgetMillis;
+        this.expiresAtNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    /**
+     * @param budgetMillis Time the terminal waits for the response, from now
+     */
+    public static Deadline after(long budgetMillis) {
+        return new Deadline(Math.max(0, budgetMillis), System.nanoTime());
+    }
+
+    /**
+     * @return Deadline bound to the current thread, or null outside a transaction
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind a deadline to the current thread (null unbinds).
+     */
+    public static void bind(Deadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * @return Milliseconds left, 0 once expired
+     */
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @param operation Work about to start, for the exception message
+     * @throws DeadlineExceededException if the budget is used up
+     */
+    public void check(String operation) {
+        if (isExpired()) {
+            throw new DeadlineExceededException("Deadline exceeded before " + operation
+                    + " (budget " + budgetMillis + " ms)");
+        }
+    }
+
+    /**
+     * Bound a timeout by the remaining budget.
+     *
+     * @param timeoutMillis Configured timeout (0 or less: none)
+     * @return Smaller of the configured timeout and the remaining budget, at least 1 ms
+     */
+    public int cap(int timeoutMillis) {
+        long remaining = Math.max(1, remainingMillis());
+        return (int) (timeoutMillis > 0 ? Math.min(timeoutMillis, remaining) : Math.min(Integer.MAX_VALUE, remaining));
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline[budget=" + budgetMillis + "ms, remaining=" + remainingMillis() + "ms]";
+    }
+}
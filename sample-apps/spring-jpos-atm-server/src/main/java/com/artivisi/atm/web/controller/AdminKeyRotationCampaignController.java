@@ -0,0 +1,133 @@
+package com.artivisi.atm.web.controller;
+
+import com.artivisi.atm.dto.rotation.KeyRotationCampaignProgress;
+import com.artivisi.atm.dto.rotation.KeyRotationCampaignRequest;
+import com.artivisi.atm.entity.KeyRotationCampaign;
+import com.artivisi.atm.service.KeyRotationCampaignService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * REST API for fleet-wide key rotation campaigns.
+ * Notifies many terminals to rotate keys, rate-limited, with progress tracking.
+ *
+ * Example request:
+ * POST /api/admin/keys/campaigns
+ * {
+ *   "keyType": "TSK",
+ *   "selection": "INSTITUTION",
+ *   "institution": "TRM-ISS001",
+ *   "ratePerSecond": 20,
+ *   "maxConcurrency": 50
+ * }
+ */
+@RestController
+@RequestMapping("/api/admin/keys/campaigns")
+@RequiredArgsConstructor
+@Slf4j
+public class AdminKeyRotationCampaignController {
+
+    private final KeyRotationCampaignService campaignService;
+
+    /**
+     * Create a campaign and start notifying terminals.
+     *
+     * @param request Campaign parameters (key type, terminal selection, rate, concurrency)
+     * @return Campaign progress
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> createCampaign(@RequestBody KeyRotationCampaignRequest request) {
+        log.info("Admin key rotation campaign request: keyType={}, selection={}",
+                request.getKeyType(), request.getSelection());
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            KeyRotationCampaign campaign = campaignService.createCampaign(request);
+            response.put("success", true);
+            response.put("campaignId", campaign.getId());
+            response.put("totalTerminals", campaign.getTotalTerminals());
+            response.put("ratePerSecond", campaign.getRatePerSecond());
+            response.put("maxConcurrency", campaign.getMaxConcurrency());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid campaign request: {}", e.getMessage());
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * List all campaigns with progress, newest first.
+     */
+    @GetMapping
+    public ResponseEntity<List<KeyRotationCampaignProgress>> listCampaigns() {
+        return ResponseEntity.ok(campaignService.getAllProgress());
+    }
+
+    /**
+     * Get campaign progress (terminal counts per status).
+     *
+     * @param campaignId Campaign ID
+     */
+    @GetMapping("/{campaignId}")
+    public ResponseEntity<KeyRotationCampaignProgress> getProgress(@PathVariable UUID campaignId) {
+        try {
+            return ResponseEntity.ok(campaignService.getProgress(campaignId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Cancel a campaign. Terminals not yet notified are skipped.
+     *
+     * @param campaignId Campaign ID
+     */
+    @PostMapping("/{campaignId}/cancel")
+    public ResponseEntity<Map<String, Object>> cancelCampaign(@PathVariable UUID campaignId) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            boolean cancelled = campaignService.cancelCampaign(campaignId);
+            response.put("success", cancelled);
+            response.put("campaignId", campaignId);
+            if (!cancelled) {
+                response.put("error", "Campaign already finished");
+                return ResponseEntity.badRequest().body(response);
+            }
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Retry FAILED terminals (e.g., terminals that were offline when notified).
+     *
+     * @param campaignId Campaign ID
+     */
+    @PostMapping("/{campaignId}/retry-failed")
+    public ResponseEntity<Map<String, Object>> retryFailed(@PathVariable UUID campaignId) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            int retried = campaignService.retryFailed(campaignId);
+            response.put("success", true);
+            response.put("campaignId", campaignId);
+            response.put("retried", retried);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+}
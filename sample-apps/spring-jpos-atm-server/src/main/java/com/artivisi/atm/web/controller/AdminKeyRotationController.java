@@ -2,6 +2,9 @@ package com.artivisi.atm.web.controller;
 
 import com.artivisi.atm.entity.CryptoKey;
 import com.artivisi.atm.jpos.service.ChannelRegistry;
+import com.artivisi.atm.jpos.service.TerminalDirectory;
+import com.artivisi.atm.jpos.service.TerminalSession;
+import com.artivisi.atm.repository.TerminalDirectoryRepository;
 import com.artivisi.atm.service.ServerInitiatedKeyRotationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,8 +12,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 /**
  * REST API for administrative key rotation operations.
@@ -24,6 +31,7 @@ public class AdminKeyRotationController {
 
     private final ServerInitiatedKeyRotationService keyRotationService;
     private final ChannelRegistry channelRegistry;
+    private final TerminalDirectory terminalDirectory;
 
     /**
      * Initiate key rotation for a specific terminal.
@@ -81,6 +89,7 @@ public class AdminKeyRotationController {
 
     /**
      * Get list of currently connected terminals.
+     * In a cluster, also lists the terminals of every live node.
      *
      * @return List of terminal IDs with active connections
      */
@@ -91,8 +100,18 @@ public class AdminKeyRotationController {
         Map<String, Object> response = new HashMap<>();
         response.put("success", true);
         response.put("count", connectedTerminals.size());
+        response.put("signedOnCount", channelRegistry.getSignedOnCount());
         response.put("terminals", connectedTerminals);
 
+        if (terminalDirectory.isEnabled()) {
+            List<TerminalDirectoryRepository.Session> sessions = terminalDirectory.sessions();
+            response.put("node", terminalDirectory.getNodeId());
+            response.put("clusterCount", sessions.size());
+            response.put("clusterTerminals", sessions.stream()
+                    .collect(Collectors.groupingBy(TerminalDirectoryRepository.Session::nodeId, TreeMap::new,
+                            Collectors.mapping(TerminalDirectoryRepository.Session::terminalId, Collectors.toList()))));
+        }
+
         return ResponseEntity.ok(response);
     }
 
@@ -104,12 +123,30 @@ public class AdminKeyRotationController {
      */
     @GetMapping("/status/{terminalId}")
     public ResponseEntity<Map<String, Object>> getTerminalStatus(@PathVariable String terminalId) {
-        boolean connected = channelRegistry.isConnected(terminalId);
+        TerminalSession session = channelRegistry.getSession(terminalId);
 
         Map<String, Object> response = new HashMap<>();
         response.put("success", true);
         response.put("terminalId", terminalId);
-        response.put("connected", connected);
+        response.put("connected", session != null && session.hasChannel());
+
+        if (session != null) {
+            response.put("signedOn", session.isSignedOn());
+            response.put("lastSeen", session.getLastSeen());
+            response.put("inFlight", session.getInFlight());
+            response.put("keyVersions", session.getKeyVersions());
+        }
+
+        if (terminalDirectory.isEnabled()) {
+            response.put("node", terminalDirectory.getNodeId());
+            Optional<TerminalDirectoryRepository.Session> remote = session != null && session.hasChannel()
+                    ? Optional.empty() : terminalDirectory.remoteOwner(terminalId);
+            remote.ifPresent(owner -> {
+                response.put("connected", true);
+                response.put("signedOn", owner.signedOn());
+                response.put("node", owner.nodeId());
+            });
+        }
 
         return ResponseEntity.ok(response);
     }
@@ -0,0 +1,42 @@
+package com.artivisi.atm.web.controller;
+
+import com.artivisi.atm.dto.SettlementSummary;
+import com.artivisi.atm.service.SettlementService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * REST API to run or resume the end-of-day settlement of a business day.
+ * The previous day is settled on schedule (settlement.cron); this endpoint is for reruns.
+ *
+ * Example request:
+ * POST /api/admin/settlement/2026-10-18
+ */
+@RestController
+@RequestMapping("/api/admin/settlement")
+@RequiredArgsConstructor
+@Slf4j
+public class AdminSettlementController {
+
+    private final SettlementService settlementService;
+
+    /**
+     * Settle a business day. Resumes from checkpoints; a completed day returns its summary, after
+     * recomputing it if rows were posted to it since. HTTP 409 while another node settles the day.
+     *
+     * @param businessDate Day to settle (yyyy-MM-dd)
+     * @return Settlement summary
+     */
+    @PostMapping("/{businessDate}")
+    public ResponseEntity<SettlementSummary> settle(
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate businessDate) throws IOException {
+        log.info("Admin settlement request for {}", businessDate);
+        return ResponseEntity.ok(settlementService.settle(businessDate));
+    }
+}
@@ -0,0 +1,68 @@
+package com.artivisi.atm.web.controller;
+
+import com.artivisi.atm.dto.cluster.ForwardedMessage;
+import com.artivisi.atm.jpos.service.TerminalMessageRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOMsg;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Node-to-node API of a cluster deployment.
+ * Receives server-initiated messages forwarded by the node that handled the admin request
+ * (see TerminalMessageRouter), for terminals connected to this node.
+ *
+ * Requires the shared cluster token in the X-Cluster-Token header.
+ */
+@RestController
+@RequestMapping("/api/internal/cluster")
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterController {
+
+    private final TerminalMessageRouter messageRouter;
+
+    /**
+     * Send a forwarded message to a terminal connected to this node.
+     *
+     * @return 200 if sent, 404 if the terminal is not connected to this node, 502 if sending failed
+     */
+    @PostMapping("/terminals/{terminalId}/messages")
+    public ResponseEntity<Map<String, Object>> sendToTerminal(
+            @PathVariable String terminalId,
+            @RequestHeader(name = TerminalMessageRouter.TOKEN_HEADER, required = false) String token,
+            @RequestBody ForwardedMessage forwarded) {
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("terminalId", terminalId);
+
+        if (!messageRouter.isTrusted(token)) {
+            log.warn("Rejected forwarded message without a valid cluster token: terminalId={}", terminalId);
+            response.put("success", false);
+            response.put("error", "Invalid cluster token");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+        }
+
+        try {
+            ISOMsg message = TerminalMessageRouter.toIsoMsg(forwarded);
+            if (!messageRouter.sendLocal(terminalId, message)) {
+                response.put("success", false);
+                response.put("error", "Terminal not connected");
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+            log.info("Forwarded {} sent to terminal: {}", message.getMTI(), terminalId);
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Failed to send forwarded message: terminalId={}, error={}", terminalId, e.getMessage(), e);
+            response.put("success", false);
+            response.put("error", "Failed to send message to terminal");
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(response);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+-- Matching data of each journal row, for repeat (0201) and reversal (0400/0420) handling
+-- (see TransactionMatchIndex). The index is served from memory; these columns are its fallback
+-- once an entry has been evicted or after a restart.
+--
+-- stan: field 11, transmission_date_time: field 7 (MMddHHmmss) of the request.
+-- reversed: set once by the reversal of a withdrawal, in the same statement as its credit,
+-- so a withdrawal is never reversed twice.
+ALTER TABLE transactions ADD COLUMN stan VARCHAR(6);
+ALTER TABLE transactions ADD COLUMN transmission_date_time VARCHAR(10);
+ALTER TABLE transactions ADD COLUMN reversed BOOLEAN NOT NULL DEFAULT FALSE;
+
+-- Journal fallback: WHERE terminal_id = ? AND stan = ? AND transmission_date_time = ? AND transaction_date >= ?
+CREATE INDEX idx_transactions_terminal_stan ON transactions(terminal_id, stan, transmission_date_time);
+
+COMMENT ON COLUMN transactions.reversed IS 'TRUE once the withdrawal has been reversed (REVERSAL row journaled)';
@@ -0,0 +1,30 @@
+-- Outbox of key rotation notifications to the HSM (confirmations and installation failures).
+-- Written in the transaction that activates or removes the key; delivered by HsmOutboxDispatcher.
+
+CREATE TABLE hsm_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    event_type VARCHAR(20) NOT NULL,
+    rotation_id VARCHAR(100) NOT NULL,
+    terminal_id VARCHAR(50) NOT NULL,
+    key_type VARCHAR(10) NOT NULL,
+    detail VARCHAR(255),
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    last_error VARCHAR(255),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    delivered_at TIMESTAMP,
+    CONSTRAINT chk_hsm_outbox_event_type CHECK (event_type IN ('CONFIRMATION', 'FAILURE')),
+    CONSTRAINT chk_hsm_outbox_key_type CHECK (key_type IN ('TPK', 'TSK')),
+    CONSTRAINT chk_hsm_outbox_status CHECK (status IN ('PENDING', 'DELIVERED', 'DEAD')),
+    CONSTRAINT uq_hsm_outbox_rotation UNIQUE (rotation_id, event_type)
+);
+
+-- Only the messages to deliver are indexed
+CREATE INDEX idx_hsm_outbox_due ON hsm_outbox(next_attempt_at) WHERE status = 'PENDING';
+
+COMMENT ON TABLE hsm_outbox IS 'Key rotation notifications to the HSM, delivered asynchronously with retry';
+COMMENT ON COLUMN hsm_outbox.rotation_id IS 'HSM rotation ID: idempotency key of the notification (one per event type)';
+COMMENT ON COLUMN hsm_outbox.detail IS 'CONFIRMATION: confirmed by, FAILURE: failure reason reported by the terminal';
+COMMENT ON COLUMN hsm_outbox.status IS 'PENDING: to deliver, DELIVERED: accepted by the HSM, DEAD: rejected or out of attempts';
+COMMENT ON COLUMN hsm_outbox.next_attempt_at IS 'Due time of the next attempt; moved ahead while a dispatcher holds the message';
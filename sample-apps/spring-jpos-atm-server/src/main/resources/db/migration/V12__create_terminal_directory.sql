@@ -0,0 +1,28 @@
+-- Cluster-wide terminal session directory: which server node holds each terminal's connection.
+-- Published by TerminalDirectory on every node; used to forward server-initiated messages
+-- (key rotation notifications) to the node the terminal is connected to.
+
+CREATE TABLE cluster_nodes (
+    node_id VARCHAR(100) PRIMARY KEY,
+    url VARCHAR(255) NOT NULL,
+    started_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    heartbeat_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE terminal_sessions (
+    terminal_id VARCHAR(50) PRIMARY KEY,
+    node_id VARCHAR(100) NOT NULL,
+    channel_name VARCHAR(255) NOT NULL,
+    signed_on BOOLEAN NOT NULL DEFAULT FALSE,
+    connected_at TIMESTAMP NOT NULL,
+    claimed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_terminal_sessions_node ON terminal_sessions(node_id);
+CREATE INDEX idx_terminal_sessions_claimed ON terminal_sessions(claimed_at);
+
+COMMENT ON TABLE cluster_nodes IS 'Server nodes of the cluster; a node is live while its heartbeat is recent';
+COMMENT ON COLUMN cluster_nodes.url IS 'Base URL other nodes use to forward messages to this node';
+COMMENT ON TABLE terminal_sessions IS 'Owner node of each connected terminal (one connection per terminal cluster-wide)';
+COMMENT ON COLUMN terminal_sessions.connected_at IS 'Time the terminal connected to its node: the most recent connection owns the terminal';
+COMMENT ON COLUMN terminal_sessions.claimed_at IS 'Database time of the last change of the row, to find terminals that moved to another node';
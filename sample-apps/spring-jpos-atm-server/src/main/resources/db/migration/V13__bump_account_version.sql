@@ -0,0 +1,18 @@
+-- Bump accounts.version on every update, also on direct updates that do not set it.
+-- The account_changed notification carries NEW.version, and a node only evicts an account it
+-- cached at an older version: an update that left version unchanged would never be evicted.
+-- Writers that increment version themselves (Hibernate @Version, LedgerRepository) are unaffected.
+
+CREATE OR REPLACE FUNCTION bump_account_version() RETURNS TRIGGER AS $$
+BEGIN
+    IF NEW.version <= OLD.version THEN
+        NEW.version := OLD.version + 1;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- BEFORE triggers run before the AFTER trigger of V6, which then notifies the bumped version
+CREATE TRIGGER trg_accounts_bump_version
+    BEFORE UPDATE ON accounts
+    FOR EACH ROW EXECUTE FUNCTION bump_account_version();
@@ -0,0 +1,22 @@
+-- Notify key changes so that every node evicts the terminal from its in-memory key cache
+-- (TerminalKeyCache). A rotation can run on any node, not only on the one the terminal is connected to.
+-- Payload: terminal_id.
+
+CREATE OR REPLACE FUNCTION notify_crypto_key_changed() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('crypto_key_changed', OLD.terminal_id);
+        RETURN OLD;
+    END IF;
+    PERFORM pg_notify('crypto_key_changed', NEW.terminal_id);
+    IF TG_OP = 'UPDATE' AND NEW.terminal_id <> OLD.terminal_id THEN
+        PERFORM pg_notify('crypto_key_changed', OLD.terminal_id);
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Notifications are delivered on commit only, and not at all on rollback
+CREATE TRIGGER trg_crypto_keys_notify_changed
+    AFTER INSERT OR UPDATE OR DELETE ON crypto_keys
+    FOR EACH ROW EXECUTE FUNCTION notify_crypto_key_changed();
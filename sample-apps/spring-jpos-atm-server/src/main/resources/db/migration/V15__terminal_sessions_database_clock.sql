@@ -0,0 +1,4 @@
+-- terminal_sessions.connected_at is stamped with the database clock (TerminalDirectoryRepository),
+-- so that the most recent connection of a terminal does not depend on clock skew between nodes.
+
+COMMENT ON COLUMN terminal_sessions.connected_at IS 'Database time the terminal connected to its node (database time at publication minus the connection age): the most recent connection owns the terminal';
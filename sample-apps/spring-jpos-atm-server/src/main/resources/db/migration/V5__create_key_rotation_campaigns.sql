@@ -0,0 +1,44 @@
+-- Key rotation campaigns: fleet-wide server-initiated key rotation with persisted progress
+
+CREATE TABLE key_rotation_campaigns (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    key_type VARCHAR(10) NOT NULL,
+    selection_type VARCHAR(20) NOT NULL,
+    selection_value VARCHAR(100),
+    status VARCHAR(20) NOT NULL DEFAULT 'RUNNING',
+    rate_per_second INTEGER NOT NULL,
+    max_concurrency INTEGER NOT NULL,
+    total_terminals INTEGER NOT NULL DEFAULT 0,
+    description VARCHAR(500),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    completed_at TIMESTAMP,
+    CONSTRAINT chk_campaigns_key_type CHECK (key_type IN ('TPK', 'TSK')),
+    CONSTRAINT chk_campaigns_selection CHECK (selection_type IN ('ALL', 'INSTITUTION', 'LIST')),
+    CONSTRAINT chk_campaigns_status CHECK (status IN ('RUNNING', 'DISPATCHED', 'COMPLETED', 'CANCELLED'))
+);
+
+CREATE INDEX idx_campaigns_status ON key_rotation_campaigns(status);
+
+CREATE TABLE key_rotation_campaign_terminals (
+    id BIGSERIAL PRIMARY KEY,
+    campaign_id UUID NOT NULL,
+    terminal_id VARCHAR(50) NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error VARCHAR(255),
+    notified_at TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT fk_campaign_terminals_campaign FOREIGN KEY (campaign_id) REFERENCES key_rotation_campaigns(id) ON DELETE CASCADE,
+    CONSTRAINT chk_campaign_terminals_status CHECK (status IN ('PENDING', 'NOTIFIED', 'REQUESTED', 'CONFIRMED', 'FAILED')),
+    CONSTRAINT uq_campaign_terminals UNIQUE (campaign_id, terminal_id)
+);
+
+CREATE INDEX idx_campaign_terminals_campaign_status ON key_rotation_campaign_terminals(campaign_id, status);
+CREATE INDEX idx_campaign_terminals_terminal ON key_rotation_campaign_terminals(terminal_id, status);
+
+COMMENT ON TABLE key_rotation_campaigns IS 'Fleet-wide key rotation campaigns (server-initiated, rate-limited fan-out)';
+COMMENT ON TABLE key_rotation_campaign_terminals IS 'Per-terminal progress of a key rotation campaign';
+COMMENT ON COLUMN key_rotation_campaigns.selection_type IS 'ALL: every terminal with an active key, INSTITUTION: terminals of one institution, LIST: explicit terminal IDs';
+COMMENT ON COLUMN key_rotation_campaigns.status IS 'RUNNING: notifications being sent, DISPATCHED: all notifications sent, COMPLETED: all terminals confirmed or failed, CANCELLED: stopped by operator';
+COMMENT ON COLUMN key_rotation_campaign_terminals.status IS 'PENDING: not yet notified, NOTIFIED: 0800 sent, REQUESTED: terminal requested new key, CONFIRMED: key installed, FAILED: notification or installation failed';
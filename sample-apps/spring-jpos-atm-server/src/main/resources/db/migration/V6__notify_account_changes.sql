@@ -0,0 +1,21 @@
+-- Notify account changes so that every node can evict its in-memory account read model.
+-- Payload: "account_number:version" (version after the change; -1 for deletes).
+
+CREATE OR REPLACE FUNCTION notify_account_changed() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('account_changed', OLD.account_number || ':-1');
+        RETURN OLD;
+    END IF;
+    PERFORM pg_notify('account_changed', NEW.account_number || ':' || NEW.version);
+    IF TG_OP = 'UPDATE' AND NEW.account_number <> OLD.account_number THEN
+        PERFORM pg_notify('account_changed', OLD.account_number || ':-1');
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Notifications are delivered on commit only, and not at all on rollback
+CREATE TRIGGER trg_accounts_notify_changed
+    AFTER UPDATE OR DELETE ON accounts
+    FOR EACH ROW EXECUTE FUNCTION notify_account_changed();
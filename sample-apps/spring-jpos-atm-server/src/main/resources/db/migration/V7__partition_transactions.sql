@@ -0,0 +1,85 @@
+-- Range-partition transactions by transaction_date, one partition per month.
+-- Each month's rows and indexes live in their own table (transactions_pYYYYMM), so inserts only
+-- touch the current month's indexes and old months can be detached and archived as a whole
+-- (see TransactionPartitionService).
+--
+-- On a partitioned table every unique constraint must include the partition key:
+-- the primary key becomes (id, transaction_date) and reference_number is unique per transaction_date.
+-- id stays unique in practice because it comes from a single sequence.
+
+ALTER TABLE transactions RENAME TO transactions_unpartitioned;
+ALTER TABLE transactions_unpartitioned RENAME CONSTRAINT fk_transactions_account TO fk_transactions_unpartitioned_account;
+ALTER INDEX transactions_pkey RENAME TO transactions_unpartitioned_pkey;
+ALTER INDEX transactions_reference_number_key RENAME TO transactions_unpartitioned_reference_number_key;
+DROP INDEX idx_transactions_account_id;
+DROP INDEX idx_transactions_transaction_date;
+DROP INDEX idx_transactions_reference_number;
+DROP INDEX idx_transactions_type;
+
+-- Keep the id sequence when the old table is dropped
+ALTER SEQUENCE transactions_id_seq OWNED BY NONE;
+
+CREATE TABLE transactions (
+    id BIGINT NOT NULL DEFAULT nextval('transactions_id_seq'),
+    account_id BIGINT NOT NULL,
+    transaction_type VARCHAR(20) NOT NULL,
+    amount DECIMAL(19, 2) NOT NULL,
+    balance_before DECIMAL(19, 2) NOT NULL,
+    balance_after DECIMAL(19, 2) NOT NULL,
+    description VARCHAR(500),
+    reference_number VARCHAR(50),
+    transaction_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT transactions_pkey PRIMARY KEY (id, transaction_date),
+    CONSTRAINT uq_transactions_reference_number UNIQUE (reference_number, transaction_date),
+    CONSTRAINT fk_transactions_account FOREIGN KEY (account_id) REFERENCES accounts(id) ON DELETE CASCADE
+) PARTITION BY RANGE (transaction_date);
+
+ALTER SEQUENCE transactions_id_seq OWNED BY transactions.id;
+
+-- Statement history and paging: WHERE account_id = ? AND transaction_date BETWEEN ? AND ? ORDER BY transaction_date DESC
+CREATE INDEX idx_transactions_account_date ON transactions(account_id, transaction_date DESC);
+CREATE INDEX idx_transactions_account_type ON transactions(account_id, transaction_type);
+-- Rows arrive in transaction_date order: a BRIN index stays a few pages per partition
+CREATE INDEX idx_transactions_transaction_date ON transactions USING BRIN (transaction_date);
+
+-- Create the partition of the month containing month_start, if missing. Returns its name.
+CREATE OR REPLACE FUNCTION create_transactions_partition(month_start DATE) RETURNS TEXT AS $$
+DECLARE
+    start_date DATE := date_trunc('month', month_start)::DATE;
+    partition_name TEXT := 'transactions_p' || to_char(start_date, 'YYYYMM');
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF transactions FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, start_date, (start_date + INTERVAL '1 month')::DATE);
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Partitions for existing history up to at least three months ahead
+DO $$
+DECLARE
+    month_start DATE;
+    last_month DATE;
+BEGIN
+    SELECT date_trunc('month', LEAST(COALESCE(MIN(transaction_date), CURRENT_TIMESTAMP), CURRENT_TIMESTAMP))::DATE,
+           date_trunc('month', GREATEST(COALESCE(MAX(transaction_date), CURRENT_TIMESTAMP),
+                                        CURRENT_TIMESTAMP + INTERVAL '3 months'))::DATE
+      INTO month_start, last_month
+      FROM transactions_unpartitioned;
+    WHILE month_start <= last_month LOOP
+        PERFORM create_transactions_partition(month_start);
+        month_start := (month_start + INTERVAL '1 month')::DATE;
+    END LOOP;
+END;
+$$;
+
+INSERT INTO transactions (id, account_id, transaction_type, amount, balance_before, balance_after,
+                          description, reference_number, transaction_date, created_at)
+SELECT id, account_id, transaction_type, amount, balance_before, balance_after,
+       description, reference_number, transaction_date, created_at
+  FROM transactions_unpartitioned;
+
+DROP TABLE transactions_unpartitioned;
+
+COMMENT ON TABLE transactions IS 'Transaction history for accounts, range-partitioned by month of transaction_date';
+COMMENT ON COLUMN transactions.transaction_type IS 'BALANCE_INQUIRY, WITHDRAWAL, DEPOSIT, etc';
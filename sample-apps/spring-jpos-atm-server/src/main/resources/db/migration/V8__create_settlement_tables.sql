@@ -0,0 +1,60 @@
+-- End-of-day settlement: acquiring terminal on the journal, settlement runs with checkpoints and totals
+
+-- Field 42 (card acceptor / institution) and field 41 (terminal) of the ISO-8583 request.
+-- NULL for transactions not made at a terminal (REST API, history before this migration).
+ALTER TABLE transactions ADD COLUMN institution_id VARCHAR(20);
+ALTER TABLE transactions ADD COLUMN terminal_id VARCHAR(16);
+
+CREATE TABLE settlement_runs (
+    business_date DATE PRIMARY KEY,
+    status VARCHAR(20) NOT NULL DEFAULT 'RUNNING',
+    window_count INTEGER NOT NULL,
+    transaction_count BIGINT NOT NULL DEFAULT 0,
+    total_amount DECIMAL(21, 2) NOT NULL DEFAULT 0,
+    exception_count BIGINT NOT NULL DEFAULT 0,
+    settlement_file VARCHAR(500),
+    started_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    completed_at TIMESTAMP,
+    CONSTRAINT chk_settlement_runs_status CHECK (status IN ('RUNNING', 'COMPLETED'))
+);
+
+-- Checkpoint: one row per time window of the day that has been streamed and aggregated
+CREATE TABLE settlement_windows (
+    business_date DATE NOT NULL,
+    window_index INTEGER NOT NULL,
+    row_count BIGINT NOT NULL,
+    exception_count BIGINT NOT NULL,
+    completed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT pk_settlement_windows PRIMARY KEY (business_date, window_index),
+    CONSTRAINT fk_settlement_windows_run FOREIGN KEY (business_date) REFERENCES settlement_runs(business_date) ON DELETE CASCADE
+);
+
+-- Totals of one window, written in the same transaction as its checkpoint
+CREATE TABLE settlement_window_totals (
+    business_date DATE NOT NULL,
+    window_index INTEGER NOT NULL,
+    institution_id VARCHAR(20) NOT NULL,
+    terminal_id VARCHAR(16) NOT NULL,
+    transaction_type VARCHAR(20) NOT NULL,
+    transaction_count BIGINT NOT NULL,
+    total_amount DECIMAL(21, 2) NOT NULL,
+    CONSTRAINT pk_settlement_window_totals PRIMARY KEY (business_date, window_index, institution_id, terminal_id, transaction_type),
+    CONSTRAINT fk_settlement_window_totals_window FOREIGN KEY (business_date, window_index)
+        REFERENCES settlement_windows(business_date, window_index) ON DELETE CASCADE
+);
+
+-- Settled totals of the day per institution, terminal and type
+CREATE TABLE settlement_totals (
+    business_date DATE NOT NULL,
+    institution_id VARCHAR(20) NOT NULL,
+    terminal_id VARCHAR(16) NOT NULL,
+    transaction_type VARCHAR(20) NOT NULL,
+    transaction_count BIGINT NOT NULL,
+    total_amount DECIMAL(21, 2) NOT NULL,
+    CONSTRAINT pk_settlement_totals PRIMARY KEY (business_date, institution_id, terminal_id, transaction_type),
+    CONSTRAINT fk_settlement_totals_run FOREIGN KEY (business_date) REFERENCES settlement_runs(business_date) ON DELETE CASCADE
+);
+
+COMMENT ON TABLE settlement_runs IS 'End-of-day settlement per business date (SettlementService)';
+COMMENT ON COLUMN settlement_runs.exception_count IS 'Journal rows whose balance_before/balance_after do not reconcile with amount';
+COMMENT ON COLUMN settlement_totals.terminal_id IS 'Field 41, or - for transactions without terminal';
@@ -0,0 +1,4 @@
+-- Card of each withdrawal, for the in-memory velocity limits (VelocityService).
+-- HMAC-SHA256 of the PAN (velocity.pan-hash-key), never the PAN itself.
+-- NULL for transactions not made with a card (REST API, history before this migration).
+ALTER TABLE transactions ADD COLUMN card_hash VARCHAR(64);
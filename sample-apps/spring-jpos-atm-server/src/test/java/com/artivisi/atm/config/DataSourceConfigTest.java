@@ -0,0 +1,129 @@
+package com.artivisi.atm.config;
+
+import com.artivisi.atm.service.CryptoKeyService;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for read/write routing of DataSourceConfig, with in-memory stand-ins for the two pools
+ * that record which pool served each statement.
+ */
+class DataSourceConfigTest {
+
+    private final List<String> statements = new CopyOnWriteArrayList<>();
+
+    /**
+     * DataSource whose connections accept any statement and return an empty result.
+     */
+    private class StubPool extends AbstractDataSource {
+
+        private final String name;
+        private int connections;
+
+        StubPool(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Connection getConnection() {
+            connections++;
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "prepareStatement" -> {
+                            statements.add(name + ":" + args[0]);
+                            yield statement(false);
+                        }
+                        case "createStatement" -> statement(true);
+                        case "getAutoCommit", "isReadOnly", "isClosed" -> method.getName().equals("getAutoCommit");
+                        case "getTransactionIsolation" -> Connection.TRANSACTION_READ_COMMITTED;
+                        case "isWrapperFor" -> false;
+                        case "toString" -> name;
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        default -> null;
+                    });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) {
+            return getConnection();
+        }
+
+        private PreparedStatement statement(boolean recordOnExecute) {
+            ResultSet resultSet = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> method.getName().equals("next") ? false : null);
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        if (recordOnExecute && method.getName().startsWith("execute")) {
+                            statements.add(name + ":" + args[0]);
+                        }
+                        return switch (method.getName()) {
+                            case "executeQuery" -> resultSet;
+                            case "executeUpdate" -> 1;
+                            case "getWarnings", "getResultSet" -> null;
+                            case "getQueryTimeout", "getUpdateCount" -> 0;
+                            default -> null;
+                        };
+                    });
+        }
+    }
+
+    @Test
+    void testReadOnlyTransactionsUseReadPool() {
+        StubPool write = new StubPool("write");
+        StubPool read = new StubPool("read");
+        var dataSource = DataSourceConfig.routingDataSource(write, read);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        TransactionTemplate readOnly = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnly.setReadOnly(true);
+        TransactionTemplate readWrite = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        readOnly.executeWithoutResult(status -> jdbcTemplate.queryForList("SELECT key"));
+        readWrite.executeWithoutResult(status -> jdbcTemplate.update("UPDATE accounts"));
+        jdbcTemplate.update("UPDATE outside transaction");
+
+        assertEquals(List.of("read:SELECT key", "write:UPDATE accounts", "write:UPDATE outside transaction"), statements);
+    }
+
+    @Test
+    void testTransactionWithoutStatementTakesNoConnection() {
+        StubPool write = new StubPool("write");
+        StubPool read = new StubPool("read");
+        var dataSource = DataSourceConfig.routingDataSource(write, read);
+        TransactionTemplate readOnly = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnly.setReadOnly(true);
+        // Default connection properties come from the write pool once
+        new JdbcTemplate(dataSource).update("SET x");
+        int writeConnections = write.connections;
+
+        readOnly.executeWithoutResult(status -> { });
+
+        assertEquals(0, read.connections);
+        assertEquals(writeConnections, write.connections);
+    }
+
+    @Test
+    void testKeyLookupsUseWritePool() {
+        // A replica may not have the key state a rotation just wrote
+        for (Method method : CryptoKeyService.class.getDeclaredMethods()) {
+            Transactional transactional = method.getAnnotation(Transactional.class);
+            if (transactional != null) {
+                assertFalse(transactional.readOnly(), method.getName() + " would read keys on the replica");
+            }
+        }
+    }
+}
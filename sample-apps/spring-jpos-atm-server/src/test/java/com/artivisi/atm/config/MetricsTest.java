@@ -0,0 +1,82 @@
+package com.artivisi.atm.config;
+
+import com.artivisi.atm.jpos.service.TransactionQueueMetrics;
+import com.artivisi.atm.service.DependencyHealth;
+import com.artivisi.atm.service.HsmOutboxDispatcher;
+import com.artivisi.atm.service.LedgerService;
+import com.artivisi.atm.service.StandInService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.micrometer.metrics.autoconfigure.CompositeMeterRegistryAutoConfiguration;
+import org.springframework.boot.micrometer.metrics.autoconfigure.MetricsAutoConfiguration;
+import org.springframework.boot.micrometer.metrics.autoconfigure.export.prometheus.PrometheusMetricsExportAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test that application meters are registered on the auto-configured registry,
+ * and so are scraped from /actuator/prometheus.
+ */
+class MetricsTest {
+
+    @TempDir
+    static Path directory;
+
+    @Test
+    void testMetersInPrometheusRegistry() {
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(MetricsAutoConfiguration.class,
+                        CompositeMeterRegistryAutoConfiguration.class,
+                        PrometheusMetricsExportAutoConfiguration.class))
+                .withUserConfiguration(Meters.class)
+                .run(context -> {
+                    assertNull(context.getStartupFailure());
+                    PrometheusMeterRegistry registry = context.getBean(PrometheusMeterRegistry.class);
+                    assertSame(registry, context.getBean(MeterRegistry.class));
+
+                    assertNotNull(registry.find("circuit.state").tag("dependency", "hsm").gauge());
+                    assertNotNull(registry.find("circuit.state").tag("dependency", "database").gauge());
+                    assertNotNull(registry.find("jpos.txnmgr.queue.depth").tag("lane", "financial").gauge());
+                    assertNotNull(registry.find("stand_in.pending").gauge());
+                    assertNotNull(registry.find("hsm.outbox.depth").tag("status", "dead").gauge());
+
+                    String scrape = registry.scrape();
+                    assertTrue(scrape.contains("circuit_state{dependency=\"hsm\"}"), scrape);
+                    assertTrue(scrape.contains("jpos_txnmgr_queue_depth{lane=\"financial\",shard=\"0\"}"), scrape);
+                });
+    }
+
+    @Configuration
+    static class Meters {
+
+        @Bean
+        DependencyHealth dependencyHealth(MeterRegistry meterRegistry) {
+            return new DependencyHealth(new CircuitBreakerProperties(), meterRegistry);
+        }
+
+        @Bean
+        TransactionQueueMetrics transactionQueueMetrics(MeterRegistry meterRegistry) {
+            return new TransactionQueueMetrics("tspace:default", 1, meterRegistry);
+        }
+
+        @Bean
+        StandInService standInService(MeterRegistry meterRegistry) {
+            StandInProperties properties = new StandInProperties();
+            properties.setDirectory(directory.toString());
+            return new StandInService(properties, null, new LedgerService(null, null, null, null, null), meterRegistry);
+        }
+
+        @Bean
+        HsmOutboxDispatcher hsmOutboxDispatcher(MeterRegistry meterRegistry) {
+            return new HsmOutboxDispatcher(null, null, new HsmProperties(), meterRegistry);
+        }
+    }
+}
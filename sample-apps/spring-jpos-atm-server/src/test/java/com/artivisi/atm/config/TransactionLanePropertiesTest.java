@@ -0,0 +1,67 @@
+package com.artivisi.atm.config;
+
+import com.artivisi.atm.jpos.service.TransactionConcurrencyLimiter;
+import com.artivisi.atm.jpos.service.TransactionLaneLimiters;
+import com.artivisi.atm.jpos.util.TransactionLane;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test that the financial lane limit follows the write pool, so overload is declined at the lane
+ * (RC 96) rather than queued for a database connection.
+ */
+class TransactionLanePropertiesTest {
+
+    @Test
+    void testDerivedFromWritePool() {
+        assertEquals(20, TransactionLaneProperties.financialLimit(0, 10, 2));
+        assertEquals(12, TransactionLaneProperties.financialLimit(12, 10, 2));
+    }
+
+    @Test
+    void testLimitAboveWritePoolRefused() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> TransactionLaneProperties.financialLimit(448, 10, 2));
+        assertTrue(e.getMessage().contains("maximum-pool-size"), e.getMessage());
+    }
+
+    @Test
+    void testApplicationYamlIsWithinWritePool() {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new ClassPathResource("application.yml"));
+        Properties properties = yaml.getObject();
+
+        int writePoolSize = Integer.parseInt(properties.getProperty("spring.datasource.hikari.maximum-pool-size"));
+        int perConnection = Integer.parseInt(properties.getProperty("jpos.txnmgr.lanes.in-flight-per-connection"));
+        int configured = Integer.parseInt(properties.getProperty("jpos.txnmgr.lanes.financial.max-in-flight", "0"));
+
+        int limit = TransactionLaneProperties.financialLimit(configured, writePoolSize, perConnection);
+        assertTrue(limit <= writePoolSize * perConnection);
+    }
+
+    @Test
+    void testOverloadDeclinedAtTheLane() {
+        TransactionLaneProperties properties = new TransactionLaneProperties();
+        properties.setFinancial(new TransactionLaneProperties.Lane(
+                TransactionLaneProperties.financialLimit(0, 3, 2), 50));
+        TransactionConcurrencyLimiter financial = new TransactionLaneLimiters(properties).get(TransactionLane.FINANCIAL);
+
+        List<TransactionConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            permits.add(financial.acquire());
+        }
+        assertTrue(permits.stream().allMatch(permit -> permit != null));
+
+        // Seventh transaction: the pool would make it wait for a connection, the lane declines it
+        assertNull(financial.acquire());
+        assertEquals(1, financial.getRejectedCount());
+        permits.forEach(TransactionConcurrencyLimiter.Permit::release);
+    }
+}
@@ -7,6 +7,8 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import org.jpos.core.Configurable;
+import org.jpos.core.SimpleConfiguration;
 import org.jpos.iso.BaseChannel;
 import org.jpos.iso.ISOMsg;
 import org.jpos.iso.ISOPackager;
@@ -51,6 +53,9 @@ class JposServerIntegrationTest {
     @Value("${jpos.server.packager}")
     private String packagerClass;
 
+    @Value("${jpos.server.packager-config:jar:packager/atm-binary.xml}")
+    private String packagerConfig;
+
     @Value("${test.tpk.key}")
     private String tpkKey;
 
@@ -84,6 +89,11 @@ class JposServerIntegrationTest {
         packager = (ISOPackager) Class.forName(packagerClass)
                 .getDeclaredConstructor()
                 .newInstance();
+        if (packager instanceof Configurable configurable) {
+            SimpleConfiguration cfg = new SimpleConfiguration();
+            cfg.put("packager-config", packagerConfig);
+            configurable.setConfiguration(cfg);
+        }
 
         // Instantiate channel from configuration
         channel = (BaseChannel) Class.forName(channelClass)
@@ -0,0 +1,165 @@
+package com.artivisi.atm.jpos.listener;
+
+import com.artivisi.atm.entity.CryptoKey;
+import com.artivisi.atm.jpos.SpringBeanFactory;
+import com.artivisi.atm.jpos.service.ChannelRegistry;
+import com.artivisi.atm.jpos.service.TerminalMacService;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOSource;
+import org.jpos.iso.channel.ASCIIChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for inline echo handling: only an echo with a verified MAC is answered with 00 and keeps
+ * the terminal's session alive.
+ */
+class NetworkManagementListenerTest {
+
+    private static final String TERMINAL_ID = "TRM-ISS001-ATM-001";
+    private static final byte[] GENUINE_MAC = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+    private static final byte[] RESPONSE_MAC = {16, 15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
+
+    private final GenericApplicationContext context = new GenericApplicationContext();
+    private final ChannelRegistry channelRegistry = new ChannelRegistry();
+    private final List<ISOMsg> sent = new ArrayList<>();
+    private boolean verifyEnabled = true;
+
+    private final ISOSource source = new ISOSource() {
+        @Override
+        public void send(ISOMsg m) {
+            sent.add(m);
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        TerminalMacService macService = new TerminalMacService(null, null) {
+            @Override
+            public boolean isVerifyEnabled() {
+                return verifyEnabled;
+            }
+
+            @Override
+            public boolean isGenerateEnabled() {
+                return true;
+            }
+
+            @Override
+            public byte[] buildMacData(ISOMsg msg) {
+                return new byte[0];
+            }
+
+            @Override
+            public Integer verify(String terminalId, byte[] data, byte[] receivedMac) {
+                return TERMINAL_ID.equals(terminalId) && Arrays.equals(GENUINE_MAC, receivedMac) ? 2 : null;
+            }
+
+            @Override
+            public byte[] generate(String terminalId, byte[] data, Integer keyVersion) {
+                return RESPONSE_MAC;
+            }
+        };
+        context.registerBean(TerminalMacService.class, () -> macService);
+        context.registerBean(ChannelRegistry.class, () -> channelRegistry);
+        context.refresh();
+        new SpringBeanFactory().setApplicationContext(context);
+
+        ASCIIChannel channel = new ASCIIChannel();
+        channel.setName("ch-1");
+        channelRegistry.register(TERMINAL_ID, channel);
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    private static ISOMsg echo(byte[] mac) throws Exception {
+        ISOMsg request = new ISOMsg();
+        request.setMTI("0800");
+        request.set(7, "1019103000");
+        request.set(11, "000321");
+        request.set(41, "ATM-001");
+        request.set(42, "TRM-ISS001");
+        request.set(70, "301");
+        if (mac != null) {
+            request.set(64, mac);
+        }
+        return request;
+    }
+
+    /**
+     * @return Response sent for the echo, after checking whether the session was marked seen
+     */
+    private ISOMsg process(ISOMsg request, boolean expectSeen) throws Exception {
+        Instant before = channelRegistry.getLastSeen(TERMINAL_ID);
+        Thread.sleep(5);
+
+        assertTrue(new NetworkManagementListener().process(source, request));
+
+        Instant after = channelRegistry.getLastSeen(TERMINAL_ID);
+        assertEquals(expectSeen, after.isAfter(before), "session marked seen");
+        assertEquals(1, sent.size());
+        return sent.getFirst();
+    }
+
+    @Test
+    void testVerifiedEchoAnswered() throws Exception {
+        ISOMsg response = process(echo(GENUINE_MAC), true);
+
+        assertEquals("0810", response.getMTI());
+        assertEquals("00", response.getString(39));
+        assertArrayEquals(RESPONSE_MAC, response.getBytes(64));
+        assertEquals(2, channelRegistry.getSession(TERMINAL_ID).getKeyVersion(CryptoKey.KeyType.TSK));
+    }
+
+    @Test
+    void testForgedEchoDoesNotKeepSessionAlive() throws Exception {
+        ISOMsg response = process(echo(new byte[16]), false);
+
+        assertEquals("96", response.getString(39));
+        assertFalse(response.hasField(64));
+        assertNull(channelRegistry.getSession(TERMINAL_ID).getKeyVersion(CryptoKey.KeyType.TSK));
+    }
+
+    @Test
+    void testEchoWithoutMacRejectedWhenVerifyEnabled() throws Exception {
+        ISOMsg response = process(echo(null), false);
+
+        assertEquals("96", response.getString(39));
+        assertFalse(response.hasField(64));
+    }
+
+    @Test
+    void testEchoWithoutMacAcceptedWhenVerifyDisabled() throws Exception {
+        verifyEnabled = false;
+        ISOMsg response = process(echo(null), true);
+
+        assertEquals("00", response.getString(39));
+        assertFalse(response.hasField(64));
+    }
+
+    @Test
+    void testOtherNetworkMessagesPassedOn() throws Exception {
+        ISOMsg signOn = echo(GENUINE_MAC);
+        signOn.set(70, "001");
+
+        assertFalse(new NetworkManagementListener().process(source, signOn));
+        assertTrue(sent.isEmpty());
+    }
+}
@@ -0,0 +1,255 @@
+package com.artivisi.atm.jpos.packager;
+
+import com.artivisi.atm.jpos.util.ResponseTemplates;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.core.SimpleConfiguration;
+import org.jpos.iso.ISOBasePackager;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.jpos.iso.packager.BASE24Packager;
+import org.jpos.iso.packager.GenericPackager;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for lazy field decoding against eager unpacking with the same delegate.
+ */
+@Slf4j
+class LazyUnpackPackagerTest {
+
+    private static final byte[] PIN_BLOCK = new byte[32];
+    private static final byte[] MAC = new byte[16];
+
+    // Fields read by the transaction participants for a financial request
+    private static final int[] ACCESSED_FIELDS = {2, 3, 4, 11, 41, 42, 64, 102, 123};
+
+    static {
+        for (int i = 0; i < PIN_BLOCK.length; i++) {
+            PIN_BLOCK[i] = (byte) (i * 11 + 5);
+        }
+        for (int i = 0; i < MAC.length; i++) {
+            MAC[i] = (byte) (0xA0 + i);
+        }
+    }
+
+    private static ISOMsg withdrawalRequest(ISOPackager packager) throws Exception {
+        ISOMsg msg = new ISOMsg();
+        msg.setPackager(packager);
+        msg.setMTI("0200");
+        msg.set(2, "4111111111111111");
+        msg.set(3, "010000");
+        msg.set(4, "000000050000");
+        msg.set(7, "1018123045");
+        msg.set(11, "123456");
+        msg.set(12, "123045");
+        msg.set(13, "1018");
+        msg.set(37, "000000123456");
+        msg.set(41, "ATM-001        ");
+        msg.set(42, "TRM-ISS001     ");
+        msg.set(49, "360");
+        msg.set(102, "1234567890");
+        msg.set(123, PIN_BLOCK);
+        msg.set(64, MAC);
+        return msg;
+    }
+
+    /**
+     * Withdrawal plus optional fields a terminal or acquirer may add (high field count).
+     */
+    private static ISOMsg largeRequest(ISOPackager packager) throws Exception {
+        ISOMsg msg = withdrawalRequest(packager);
+        msg.set(14, "2812");
+        msg.set(15, "1018");
+        msg.set(18, "6011");
+        msg.set(22, "051");
+        msg.set(25, "00");
+        msg.set(32, "123456");
+        msg.set(33, "654321");
+        msg.set(35, "4111111111111111=28121010000000000000");
+        msg.set(43, "ARTIVISI ATM 001 JAKARTA               ");
+        msg.set(48, "ADDITIONAL DATA PRIVATE USE FIELD");
+        msg.set(60, "ATM TERMINAL DATA");
+        msg.set(61, "CARD ISSUER DATA");
+        msg.set(100, "99887766");
+        msg.set(103, "0987654321");
+        return msg;
+    }
+
+    private static ISOMsg unpack(ISOPackager packager, byte[] frame) throws Exception {
+        ISOMsg msg = new ISOMsg();
+        msg.setPackager(packager);
+        msg.unpack(frame);
+        return msg;
+    }
+
+    private static void assertSameFields(ISOMsg expected, ISOMsg actual) throws Exception {
+        assertEquals(expected.getMTI(), actual.getMTI());
+        for (int i = 2; i <= 128; i++) {
+            assertEquals(expected.hasField(i), actual.hasField(i), "hasField(" + i + ")");
+            assertEquals(expected.getString(i), actual.getString(i), "getString(" + i + ")");
+            assertArrayEquals(expected.getBytes(i), actual.getBytes(i), "getBytes(" + i + ")");
+        }
+    }
+
+    private static void assertSameSemantics(ISOBasePackager eager) throws Exception {
+        LazyUnpackPackager lazy = new LazyUnpackPackager(eager);
+        byte[] frame = largeRequest(eager).pack();
+
+        assertSameFields(unpack(eager, frame), unpack(lazy, frame));
+    }
+
+    @Test
+    void testSameSemanticsAsBase24() throws Exception {
+        assertSameSemantics(new BASE24Packager());
+    }
+
+    @Test
+    void testSameSemanticsAsBinaryProfile() throws Exception {
+        assertSameSemantics(new GenericPackager("jar:packager/atm-binary.xml"));
+    }
+
+    @Test
+    void testFieldsDecodedOnFirstAccess() throws Exception {
+        LazyUnpackPackager lazy = new LazyUnpackPackager(new BASE24Packager());
+        ISOMsg msg = unpack(lazy, withdrawalRequest(lazy).pack());
+
+        assertTrue(msg.hasField(102));
+        assertFalse(((LazyField) msg.getComponent(102)).isDecoded());
+        assertFalse(((LazyField) msg.getComponent(2)).isDecoded());
+
+        assertEquals("1234567890", msg.getString(102));
+        assertTrue(((LazyField) msg.getComponent(102)).isDecoded());
+        assertFalse(((LazyField) msg.getComponent(2)).isDecoded());
+    }
+
+    @Test
+    void testRepackWithoutDecoding() throws Exception {
+        BASE24Packager eager = new BASE24Packager();
+        LazyUnpackPackager lazy = new LazyUnpackPackager(eager);
+        byte[] frame = withdrawalRequest(eager).pack();
+
+        ISOMsg msg = unpack(lazy, frame);
+        assertArrayEquals(frame, msg.pack());
+
+        // MAC data: request without field 64, same bytes as the eager path
+        ISOMsg lazyMacData = (ISOMsg) msg.clone();
+        lazyMacData.unset(64);
+        ISOMsg eagerMacData = unpack(eager, frame);
+        eagerMacData.unset(64);
+        assertArrayEquals(eagerMacData.pack(), lazyMacData.pack());
+
+        assertFalse(((LazyField) msg.getComponent(2)).isDecoded());
+        assertFalse(((LazyField) msg.getComponent(123)).isDecoded());
+    }
+
+    @Test
+    void testResponseFromLazyRequest() throws Exception {
+        BASE24Packager eager = new BASE24Packager();
+        LazyUnpackPackager lazy = new LazyUnpackPackager(eager);
+        byte[] frame = withdrawalRequest(eager).pack();
+
+        ISOMsg lazyResponse = ResponseTemplates.createResponse(unpack(lazy, frame), "00");
+        lazyResponse.set(54, "001360C000005000000");
+        ISOMsg eagerResponse = ResponseTemplates.createResponse(unpack(eager, frame), "00");
+        eagerResponse.set(54, "001360C000005000000");
+
+        assertArrayEquals(eagerResponse.pack(), lazyResponse.pack());
+    }
+
+    @Test
+    void testModifiedFieldIsRepacked() throws Exception {
+        BASE24Packager eager = new BASE24Packager();
+        LazyUnpackPackager lazy = new LazyUnpackPackager(eager);
+
+        ISOMsg msg = unpack(lazy, withdrawalRequest(eager).pack());
+        msg.getComponent(4).setValue("000000070000");
+
+        assertEquals("000000070000", unpack(eager, msg.pack()).getString(4));
+    }
+
+    @Test
+    void testTruncatedMessageRejected() throws Exception {
+        LazyUnpackPackager lazy = new LazyUnpackPackager(new BASE24Packager());
+        byte[] frame = withdrawalRequest(lazy).pack();
+        byte[] truncated = java.util.Arrays.copyOf(frame, frame.length - 20);
+
+        assertThrows(Exception.class, () -> unpack(lazy, truncated));
+    }
+
+    @Test
+    void testLengthAboveMaximumRejected() throws Exception {
+        LazyUnpackPackager lazy = new LazyUnpackPackager(new BASE24Packager());
+        String frame = new String(withdrawalRequest(lazy).pack(), StandardCharsets.ISO_8859_1);
+
+        // Field 2 (LLVAR, max 19) announcing 25 digits
+        int pan = frame.indexOf("164111111111111111");
+        byte[] tooLong = (frame.substring(0, pan) + "25" + frame.substring(pan + 2)).getBytes(StandardCharsets.ISO_8859_1);
+
+        ISOException e = assertThrows(ISOException.class, () -> unpack(lazy, tooLong));
+        assertTrue(e.getMessage().contains("field 2"), e.getMessage());
+    }
+
+    @Test
+    void testConfiguredFromChannelProperties() throws Exception {
+        SimpleConfiguration cfg = new SimpleConfiguration();
+        cfg.put("delegate-packager", GenericPackager.class.getName());
+        cfg.put("packager-config", "jar:packager/atm-binary.xml");
+
+        LazyUnpackPackager lazy = new LazyUnpackPackager();
+        lazy.setConfiguration(cfg);
+
+        GenericPackager eager = new GenericPackager("jar:packager/atm-binary.xml");
+        byte[] frame = withdrawalRequest(eager).pack();
+        assertSameFields(unpack(eager, frame), unpack(lazy, frame));
+    }
+
+    @Test
+    void benchmarkUnpackAndAccess() throws Exception {
+        BASE24Packager eager = new BASE24Packager();
+        LazyUnpackPackager lazy = new LazyUnpackPackager(eager);
+        byte[] frame = largeRequest(eager).pack();
+
+        measure(eager, frame, 20_000);
+        measure(lazy, frame, 20_000);
+        long[] eagerResult = measure(eager, frame, 50_000);
+        long[] lazyResult = measure(lazy, frame, 50_000);
+
+        log.info("Unpack + read {} fields of a {}-byte, 29-field message:", ACCESSED_FIELDS.length, frame.length);
+        log.info("  eager (BASE24Packager):     {} ns/msg, {} bytes allocated/msg", eagerResult[0], eagerResult[1]);
+        log.info("  lazy  (LazyUnpackPackager): {} ns/msg, {} bytes allocated/msg", lazyResult[0], lazyResult[1]);
+
+        assertTrue(eagerResult[0] > 0 && lazyResult[0] > 0);
+    }
+
+    /**
+     * @return {ns per message, bytes allocated per message (-1 if not supported)}
+     */
+    private static long[] measure(ISOPackager packager, byte[] frame, int iterations) throws Exception {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            ISOMsg msg = unpack(packager, frame);
+            for (int field : ACCESSED_FIELDS) {
+                sink += msg.getBytes(field).length;
+            }
+        }
+        long nanos = (System.nanoTime() - start) / iterations;
+        long allocated = allocatedBefore < 0 ? -1 : (allocatedBytes() - allocatedBefore) / iterations;
+        assertTrue(sink > 0);
+        return new long[]{nanos, allocated};
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadBean
+                && threadBean.isThreadAllocatedMemorySupported()) {
+            return threadBean.getThreadAllocatedBytes(Thread.currentThread().threadId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,188 @@
+package com.artivisi.atm.jpos.packager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.jpos.iso.packager.BASE24Packager;
+import org.jpos.iso.packager.GenericPackager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the ASCII wire profile (ASCIIChannel + BASE24Packager) with the
+ * binary wire profile (PostChannel + GenericPackager with packager/atm-binary.xml).
+ *
+ * Reports bytes per message and pack/unpack time per message. Timings are logged only,
+ * they are not asserted (the build machine is not a benchmark machine).
+ */
+@Slf4j
+class WireProfileBenchmarkTest {
+
+    private static final String BINARY_PACKAGER_CONFIG = "jar:packager/atm-binary.xml";
+
+    // Length header: ASCIIChannel sends 4 ASCII digits, PostChannel sends 2 binary bytes
+    private static final int ASCII_CHANNEL_HEADER = 4;
+    private static final int POST_CHANNEL_HEADER = 2;
+
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURE_ITERATIONS = 50_000;
+
+    private static final byte[] PIN_BLOCK = new byte[32];
+    private static final byte[] MAC = new byte[16];
+
+    private static ISOPackager base24;
+    private static ISOPackager binary;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        base24 = new BASE24Packager();
+        binary = new GenericPackager(BINARY_PACKAGER_CONFIG);
+        for (int i = 0; i < PIN_BLOCK.length; i++) {
+            PIN_BLOCK[i] = (byte) (i * 7 + 3);
+        }
+        for (int i = 0; i < MAC.length; i++) {
+            MAC[i] = (byte) (0xF0 - i);
+        }
+    }
+
+    private static ISOMsg withdrawalRequest(ISOPackager packager) throws Exception {
+        ISOMsg msg = new ISOMsg();
+        msg.setPackager(packager);
+        msg.setMTI("0200");
+        msg.set(2, "4111111111111111");
+        msg.set(3, "010000");
+        msg.set(4, "000000050000");
+        msg.set(7, "1018123045");
+        msg.set(11, "123456");
+        msg.set(12, "123045");
+        msg.set(13, "1018");
+        msg.set(41, "ATM-001        ");
+        msg.set(42, "TRM-ISS001     ");
+        msg.set(49, "360");
+        msg.set(102, "1234567890");
+        msg.set(123, PIN_BLOCK);
+        msg.set(64, MAC);
+        return msg;
+    }
+
+    private static ISOMsg keyChangeRequest(ISOPackager packager) throws Exception {
+        ISOMsg msg = new ISOMsg();
+        msg.setPackager(packager);
+        msg.setMTI("0800");
+        msg.set(11, "000042");
+        msg.set(41, "ATM-001        ");
+        msg.set(42, "TRM-ISS001     ");
+        msg.set(53, "0702000000000000");
+        msg.set(70, "301");
+        msg.set(64, MAC);
+        return msg;
+    }
+
+    @Test
+    void testBinaryProfileRoundTrip() throws Exception {
+        byte[] packed = withdrawalRequest(binary).pack();
+
+        ISOMsg unpacked = new ISOMsg();
+        unpacked.setPackager(binary);
+        unpacked.unpack(packed);
+
+        assertEquals("0200", unpacked.getMTI());
+        assertEquals("4111111111111111", unpacked.getString(2));
+        assertEquals("010000", unpacked.getString(3));
+        assertEquals("000000050000", unpacked.getString(4));
+        assertEquals("1018123045", unpacked.getString(7));
+        assertEquals("ATM-001         ", unpacked.getString(41));
+        assertEquals("1234567890", unpacked.getString(102));
+        assertArrayEquals(PIN_BLOCK, unpacked.getBytes(123));
+        assertArrayEquals(MAC, unpacked.getBytes(64));
+    }
+
+    @Test
+    void testBinaryProfileKeyChangeFields() throws Exception {
+        // Key change response: the server sets field 123 as hex text; the binary profile
+        // sends it as raw bytes (half the size) and getString() returns the same hex text
+        ISOMsg response = keyChangeRequest(binary);
+        response.setMTI("0810");
+        response.set(39, "00");
+        response.set(48, "0123456789ABCDEF");
+        response.set(123, "00112233445566778899AABBCCDDEEFF");
+
+        ISOMsg unpacked = new ISOMsg();
+        unpacked.setPackager(binary);
+        unpacked.unpack(response.pack());
+
+        assertEquals("0702000000000000", unpacked.getString(53));
+        assertEquals("301", unpacked.getString(70));
+        assertEquals("0123456789ABCDEF", unpacked.getString(48));
+        assertEquals("00112233445566778899AABBCCDDEEFF", unpacked.getString(123));
+        assertEquals(16, unpacked.getBytes(123).length);
+    }
+
+    @Test
+    void testBinaryProfileIsSmaller() throws Exception {
+        int asciiWithdrawal = withdrawalRequest(base24).pack().length + ASCII_CHANNEL_HEADER;
+        int binaryWithdrawal = withdrawalRequest(binary).pack().length + POST_CHANNEL_HEADER;
+        int asciiKeyChange = keyChangeRequest(base24).pack().length + ASCII_CHANNEL_HEADER;
+        int binaryKeyChange = keyChangeRequest(binary).pack().length + POST_CHANNEL_HEADER;
+
+        log.info("Bytes per message (including length header):");
+        log.info("  0200 withdrawal: ASCII={} binary={} ({}% smaller)",
+                asciiWithdrawal, binaryWithdrawal, percentSaved(asciiWithdrawal, binaryWithdrawal));
+        log.info("  0800 key change: ASCII={} binary={} ({}% smaller)",
+                asciiKeyChange, binaryKeyChange, percentSaved(asciiKeyChange, binaryKeyChange));
+
+        assertTrue(binaryWithdrawal < asciiWithdrawal);
+        assertTrue(binaryKeyChange < asciiKeyChange);
+    }
+
+    @Test
+    void benchmarkPackUnpack() throws Exception {
+        ProfileTiming ascii = measure(base24);
+        ProfileTiming bin = measure(binary);
+
+        log.info("Pack/unpack per 0200 message ({} iterations):", MEASURE_ITERATIONS);
+        log.info("  ASCII  (BASE24Packager):  pack={} ns, unpack={} ns", ascii.packNanos, ascii.unpackNanos);
+        log.info("  binary (GenericPackager): pack={} ns, unpack={} ns", bin.packNanos, bin.unpackNanos);
+
+        assertTrue(ascii.packNanos > 0 && bin.packNanos > 0);
+    }
+
+    private static ProfileTiming measure(ISOPackager packager) throws Exception {
+        ISOMsg msg = withdrawalRequest(packager);
+        byte[] packed = msg.pack();
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += msg.pack().length;
+            ISOMsg m = new ISOMsg();
+            m.setPackager(packager);
+            sink += m.unpack(packed);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            sink += msg.pack().length;
+        }
+        long packNanos = (System.nanoTime() - start) / MEASURE_ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            ISOMsg m = new ISOMsg();
+            m.setPackager(packager);
+            sink += m.unpack(packed);
+        }
+        long unpackNanos = (System.nanoTime() - start) / MEASURE_ITERATIONS;
+
+        assertTrue(sink > 0);
+        return new ProfileTiming(packNanos, unpackNanos);
+    }
+
+    private static long percentSaved(int before, int after) {
+        return Math.round(100.0 * (before - after) / before);
+    }
+
+    private record ProfileTiming(long packNanos, long unpackNanos) {
+    }
+}
@@ -0,0 +1,116 @@
+package com.artivisi.atm.jpos.participant;
+
+import com.artivisi.atm.config.CircuitBreakerProperties;
+import com.artivisi.atm.config.HsmConfig;
+import com.artivisi.atm.config.HsmProperties;
+import com.artivisi.atm.exception.DeadlineExceededException;
+import com.artivisi.atm.service.DependencyHealth;
+import com.artivisi.atm.util.Deadline;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jpos.transaction.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for deadline enforcement: RC 68 in the TransactionManager and budget-capped HSM calls.
+ */
+class DeadlineParticipantTest {
+
+    @AfterEach
+    void unbind() {
+        Deadline.clear();
+    }
+
+    @Test
+    void testWithinBudgetBindsDeadline() {
+        Context ctx = new Context();
+        Deadline deadline = Deadline.after(10_000);
+        ctx.put("DEADLINE", deadline);
+
+        new DeadlineParticipant().prepare(1, ctx);
+
+        assertNull(ctx.get("RESPONSE_CODE"));
+        assertSame(deadline, Deadline.current());
+        assertEquals("96", DeadlineParticipant.failureResponseCode(ctx, "96"));
+    }
+
+    @Test
+    void testExpiredDeadlineDeclinesWithRc68() {
+        Context ctx = new Context();
+        ctx.put("DEADLINE", Deadline.after(0));
+
+        new DeadlineParticipant().prepare(1, ctx);
+
+        assertEquals("68", ctx.get("RESPONSE_CODE"));
+        assertEquals("68", DeadlineParticipant.failureResponseCode(ctx, "55"));
+        assertThrows(DeadlineExceededException.class, () -> Deadline.current().check("debit"));
+    }
+
+    @Test
+    void testExpiredDeadlineKeepsEarlierDecline() {
+        Context ctx = new Context();
+        ctx.put("DEADLINE", Deadline.after(0));
+        ctx.put("RESPONSE_CODE", "51");
+
+        new DeadlineParticipant().prepare(1, ctx);
+
+        assertEquals("51", ctx.get("RESPONSE_CODE"));
+    }
+
+    @Test
+    void testHsmCallBoundedByRemainingBudget() throws Exception {
+        HttpServer hsm = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        hsm.createContext("/api/hsm/pin/verify-with-translation", exchange -> {
+            try {
+                Thread.sleep(3000);
+                exchange.sendResponseHeaders(200, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        hsm.start();
+        try {
+            RestClient client = new HsmConfig(hsmProperties("http://127.0.0.1:" + hsm.getAddress().getPort()))
+                    .hsmRestClient(new ObjectMapper(), new DependencyHealth(new CircuitBreakerProperties(), new SimpleMeterRegistry()));
+
+            Deadline.bind(Deadline.after(300));
+            long start = System.nanoTime();
+            assertThrows(ResourceAccessException.class, () -> client.post()
+                    .uri("/api/hsm/pin/verify-with-translation").retrieve().toBodilessEntity());
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // Configured read timeout is 10 s; the call gives up with the budget
+            assertTrue(elapsedMillis < 2000, "HSM call took " + elapsedMillis + " ms");
+
+            // No budget left: the call is not sent at all
+            assertThrows(DeadlineExceededException.class, () -> client.post()
+                    .uri("/api/hsm/pin/verify-with-translation").retrieve().toBodilessEntity());
+        } finally {
+            hsm.stop(0);
+        }
+    }
+
+    private static HsmProperties hsmProperties(String url) {
+        HsmProperties properties = new HsmProperties();
+        properties.setUrl(url);
+        HsmProperties.Pin pin = new HsmProperties.Pin();
+        pin.setEncryptedPinBlock(new HsmProperties.Pin.EncryptedPinBlock());
+        pin.setPvv(new HsmProperties.Pin.Pvv());
+        properties.setPin(pin);
+        HsmProperties.Connection connection = new HsmProperties.Connection();
+        connection.setTimeout(5000);
+        connection.setReadTimeout(10_000);
+        properties.setConnection(connection);
+        return properties;
+    }
+}
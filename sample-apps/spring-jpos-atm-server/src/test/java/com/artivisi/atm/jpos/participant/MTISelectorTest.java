@@ -0,0 +1,107 @@
+package com.artivisi.atm.jpos.participant;
+
+import com.artivisi.atm.config.MatchingProperties;
+import com.artivisi.atm.jpos.SpringBeanFactory;
+import com.artivisi.atm.jpos.service.ChannelRegistry;
+import com.artivisi.atm.jpos.service.TerminalMacService;
+import com.artivisi.atm.jpos.service.TransactionMatchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jpos.iso.ISOMsg;
+import org.jpos.transaction.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for MTISelector matching after MAC verification: a forged request (bad MAC) must not
+ * claim the (terminal, STAN, DE7) key of the genuine request.
+ */
+class MTISelectorTest {
+
+    private static final byte[] GENUINE_MAC = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+
+    private final GenericApplicationContext context = new GenericApplicationContext();
+    // New requests (0200) are registered in memory only; the journal is not read
+    private final TransactionMatchIndex matchIndex = new TransactionMatchIndex(new MatchingProperties(),
+            null, new SimpleMeterRegistry());
+
+    @BeforeEach
+    void setUp() {
+        TerminalMacService macService = new TerminalMacService(null, null) {
+            @Override
+            public boolean isVerifyEnabled() {
+                return true;
+            }
+
+            @Override
+            public byte[] buildMacData(ISOMsg msg) {
+                return new byte[0];
+            }
+
+            @Override
+            public Integer verify(String terminalId, byte[] data, byte[] receivedMac) {
+                return Arrays.equals(GENUINE_MAC, receivedMac) ? 1 : null;
+            }
+        };
+        context.registerBean(TerminalMacService.class, () -> macService);
+        context.registerBean(ChannelRegistry.class, ChannelRegistry::new);
+        context.registerBean(TransactionMatchIndex.class, () -> matchIndex);
+        context.refresh();
+        new SpringBeanFactory().setApplicationContext(context);
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    private static ISOMsg withdrawal(byte[] mac) throws Exception {
+        ISOMsg request = new ISOMsg();
+        request.setMTI("0200");
+        request.set(3, "010000");
+        request.set(4, "000010000000");
+        request.set(7, "1019103000");
+        request.set(11, "000123");
+        request.set(41, "ATM-001");
+        request.set(42, "TRM-ISS001");
+        request.set(64, mac);
+        return request;
+    }
+
+    /**
+     * MAC verification then group selection, as deployed in 20_txnmgr.xml.
+     */
+    private static String route(Context ctx, ISOMsg request) {
+        ctx.put("REQUEST", request);
+        new MacVerificationParticipant().prepare(1, ctx);
+        return new MTISelector().select(1, ctx);
+    }
+
+    @Test
+    void testForgedMacDoesNotClaimMatchKey() throws Exception {
+        Context forged = new Context();
+        assertNull(route(forged, withdrawal(new byte[16])));
+        assertEquals("96", forged.get("RESPONSE_CODE"));
+        assertNull(forged.get("MATCH_ENTRY"));
+
+        // The genuine request with the same terminal, STAN and DE7 is processed, not a duplicate
+        Context genuine = new Context();
+        assertEquals("FinancialTransaction", route(genuine, withdrawal(GENUINE_MAC)));
+        assertNull(genuine.get("RESPONSE_CODE"));
+        assertNotNull(genuine.get("MATCH_ENTRY"));
+    }
+
+    @Test
+    void testGenuineRepeatInProgressIsDuplicate() throws Exception {
+        assertEquals("FinancialTransaction", route(new Context(), withdrawal(GENUINE_MAC)));
+
+        Context repeat = new Context();
+        assertNull(route(repeat, withdrawal(GENUINE_MAC)));
+        assertEquals("94", repeat.get("RESPONSE_CODE"));
+    }
+}
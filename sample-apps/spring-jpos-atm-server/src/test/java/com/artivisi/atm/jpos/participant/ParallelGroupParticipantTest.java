@@ -0,0 +1,217 @@
+package com.artivisi.atm.jpos.participant;
+
+import com.artivisi.atm.util.Deadline;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.transaction.Context;
+import org.jpos.transaction.TransactionParticipant;
+import org.junit.jupiter.api.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.jpos.transaction.TransactionConstants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for ParallelGroupParticipant: concurrent stages, ordered merge, fail-fast cancellation,
+ * with a latency comparison against sequential stages.
+ */
+@Slf4j
+class ParallelGroupParticipantTest {
+
+    /**
+     * Stage that blocks for a while (DB or HSM call), then writes an output or a response code.
+     */
+    private static class Stage implements TransactionParticipant {
+
+        private final String key;
+        private final long millis;
+        private final String responseCode;
+        private final int action;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final List<String> calls;
+
+        Stage(String key, long millis, String responseCode, int action, List<String> calls) {
+            this.key = key;
+            this.millis = millis;
+            this.responseCode = responseCode;
+            this.action = action;
+            this.calls = calls;
+        }
+
+        Stage(String key, long millis, String responseCode) {
+            this(key, millis, responseCode, PREPARED | NO_JOIN | READONLY, new ArrayList<>());
+        }
+
+        @Override
+        public int prepare(long id, Serializable context) {
+            Context ctx = (Context) context;
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                ctx.put("RESPONSE_CODE", "96");
+                return PREPARED | NO_JOIN | READONLY;
+            }
+            finished.set(true);
+            ctx.put(key, Deadline.current() != null ? "deadline" : "done");
+            if (responseCode != null) {
+                ctx.put("RESPONSE_CODE", responseCode);
+            }
+            return action;
+        }
+
+        @Override
+        public void commit(long id, Serializable context) {
+            calls.add("commit:" + key);
+        }
+
+        @Override
+        public void abort(long id, Serializable context) {
+            calls.add("abort:" + key);
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @Test
+    void testStagesRunConcurrentlyAndOutputsAreMerged() {
+        ParallelGroupParticipant group = new ParallelGroupParticipant(List.of(
+                new Stage("MAC_VERIFIED", 100, null),
+                new Stage("ACCOUNT_VALIDATED", 100, null),
+                new Stage("PIN_VERIFIED", 100, null)));
+        Context ctx = new Context();
+        ctx.put("REQUEST", "0200");
+
+        long start = System.nanoTime();
+        int action = group.prepare(1, ctx);
+        long elapsed = elapsedMillis(start);
+
+        assertEquals(PREPARED | NO_JOIN | READONLY, action);
+        assertEquals("done", ctx.get("MAC_VERIFIED"));
+        assertEquals("done", ctx.get("ACCOUNT_VALIDATED"));
+        assertEquals("done", ctx.get("PIN_VERIFIED"));
+        assertEquals("0200", ctx.get("REQUEST"));
+        assertNull(ctx.get("RESPONSE_CODE"));
+        assertTrue(elapsed < 250, "3 x 100 ms stages took " + elapsed + " ms");
+    }
+
+    @Test
+    void testFirstFailureInDeclarationOrderWins() {
+        // Account decline (slower) takes precedence over PIN decline, as when run one after another
+        ParallelGroupParticipant group = new ParallelGroupParticipant(List.of(
+                new Stage("MAC_VERIFIED", 10, null),
+                new Stage("ACCOUNT", 150, "14"),
+                new Stage("PIN", 20, "55")));
+        Context ctx = new Context();
+
+        group.prepare(1, ctx);
+
+        assertEquals("14", ctx.get("RESPONSE_CODE"));
+        assertEquals("done", ctx.get("MAC_VERIFIED"));
+        assertEquals("done", ctx.get("ACCOUNT"));
+        assertNull(ctx.get("PIN"), "output of a stage after the failure is not merged");
+    }
+
+    @Test
+    void testFailureCancelsLaterStages() {
+        Stage pin = new Stage("PIN", 5000, null);
+        ParallelGroupParticipant group = new ParallelGroupParticipant(List.of(
+                new Stage("ACCOUNT", 20, "14"),
+                pin));
+        Context ctx = new Context();
+
+        long start = System.nanoTime();
+        group.prepare(1, ctx);
+        long elapsed = elapsedMillis(start);
+
+        assertEquals("14", ctx.get("RESPONSE_CODE"));
+        // Interrupted while blocked, or never started
+        assertFalse(pin.finished.get());
+        assertTrue(elapsed < 1000, "cancelled stage held the group for " + elapsed + " ms");
+    }
+
+    @Test
+    void testJoinedStagesGetCommitInOrderAndAbortedStageAbortsGroup() {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        ParallelGroupParticipant group = new ParallelGroupParticipant(List.of(
+                new Stage("MAC", 30, null, PREPARED | READONLY, calls),
+                new Stage("PIN", 10, null, PREPARED | NO_JOIN | READONLY, calls),
+                new Stage("HOLD", 10, null, PREPARED, calls)));
+        Context ctx = new Context();
+
+        int action = group.prepare(1, ctx);
+        assertEquals(PREPARED, action);
+        group.commit(1, ctx);
+        assertEquals(List.of("commit:MAC", "commit:HOLD"), calls);
+
+        ParallelGroupParticipant aborting = new ParallelGroupParticipant(List.of(
+                new Stage("MAC", 10, null, PREPARED | READONLY, calls),
+                new Stage("FAIL", 10, null, ABORTED | READONLY, calls)));
+        calls.clear();
+        action = aborting.prepare(2, new Context());
+        assertEquals(ABORTED, action & PREPARED);
+        aborting.abort(2, ctx);
+        assertEquals(List.of("abort:MAC", "abort:FAIL"), calls);
+    }
+
+    @Test
+    void testDeadlineBoundOnStageThreads() {
+        ParallelGroupParticipant group = new ParallelGroupParticipant(List.of(new Stage("PIN", 0, null)));
+        Context ctx = new Context();
+
+        Deadline.bind(Deadline.after(10_000));
+        try {
+            group.prepare(1, ctx);
+        } finally {
+            Deadline.clear();
+        }
+
+        assertEquals("deadline", ctx.get("PIN"));
+    }
+
+    @Test
+    void benchmarkParallelVsSequentialStages() {
+        // Account lookup (DB) 15 ms, PIN verification (HSM) 40 ms; MAC verification runs before the group
+        long[] stageMillis = {15, 40};
+        int transactions = 20;
+
+        List<TransactionParticipant> stages = new ArrayList<>();
+        for (int i = 0; i < stageMillis.length; i++) {
+            stages.add(new Stage("STAGE_" + i, stageMillis[i], null));
+        }
+        ParallelGroupParticipant group = new ParallelGroupParticipant(stages);
+
+        long[] sequential = new long[transactions];
+        long[] parallel = new long[transactions];
+        for (int t = 0; t < transactions; t++) {
+            long start = System.nanoTime();
+            Context ctx = new Context();
+            for (TransactionParticipant stage : stages) {
+                stage.prepare(t, ctx);
+            }
+            sequential[t] = elapsedMillis(start);
+
+            start = System.nanoTime();
+            group.prepare(t, new Context());
+            parallel[t] = elapsedMillis(start);
+        }
+        Arrays.sort(sequential);
+        Arrays.sort(parallel);
+        long sequentialMedian = sequential[transactions / 2];
+        long parallelMedian = parallel[transactions / 2];
+
+        log.info("Validation stages {} ms, median of {} transactions:", Arrays.toString(stageMillis), transactions);
+        log.info("  Sequential: {} ms", sequentialMedian);
+        log.info("  Parallel:   {} ms", parallelMedian);
+
+        // Sum of stages vs slowest stage
+        assertTrue(sequentialMedian >= 55);
+        assertTrue(parallelMedian < sequentialMedian, "parallel " + parallelMedian + " ms, sequential " + sequentialMedian + " ms");
+    }
+}
@@ -0,0 +1,114 @@
+package com.artivisi.atm.jpos.participant;
+
+import com.artivisi.atm.config.HsmProperties;
+import com.artivisi.atm.config.StandInProperties;
+import com.artivisi.atm.exception.DependencyUnavailableException;
+import com.artivisi.atm.jpos.SpringBeanFactory;
+import com.artivisi.atm.service.BankService;
+import com.artivisi.atm.service.LedgerService;
+import com.artivisi.atm.service.StandInService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jpos.iso.ISOMsg;
+import org.jpos.transaction.Context;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for PinVerificationParticipant: the PIN is only skipped in stand-in once the HSM circuit is open.
+ */
+class PinVerificationParticipantTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Run the participant on an eligible withdrawal, with the HSM call failing with the given exception.
+     */
+    private Context verify(RuntimeException hsmFailure) throws Exception {
+        BankService bankService = new BankService(null, null, null, null, null, null, null) {
+            @Override
+            public void verifyPin(String accountNumber, String pinBlock, String pan, String terminalId) {
+                if (hsmFailure != null) {
+                    throw hsmFailure;
+                }
+            }
+        };
+        StandInProperties standInProperties = new StandInProperties();
+        standInProperties.setEnabled(true);
+        standInProperties.setFloorLimit(new BigDecimal("500000"));
+        standInProperties.setDirectory(directory.toString());
+        StandInService standInService = new StandInService(standInProperties, null,
+                new LedgerService(null, null, null, null, null), new SimpleMeterRegistry());
+
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBean(BankService.class, () -> bankService);
+        HsmProperties hsmProperties = new HsmProperties();
+        hsmProperties.setPin(new HsmProperties.Pin());
+        context.registerBean(HsmProperties.class, () -> hsmProperties);
+        context.registerBean(StandInService.class, () -> standInService);
+        context.refresh();
+        new SpringBeanFactory().setApplicationContext(context);
+
+        ISOMsg request = new ISOMsg();
+        request.setMTI("0200");
+        request.set(2, "4111111111111111");
+        request.set(3, "010000");
+        request.set(4, "000010000000");
+        request.set(41, "ATM-001");
+        request.set(42, "TRM-ISS001");
+        request.set(102, "1234567890");
+        request.set(123, new byte[32]);
+
+        Context ctx = new Context();
+        ctx.put("REQUEST", request);
+        new PinVerificationParticipant().prepare(1, ctx);
+        context.close();
+        return ctx;
+    }
+
+    @Test
+    void testVerifiedPin() throws Exception {
+        Context ctx = verify(null);
+        assertEquals(Boolean.TRUE, ctx.get("PIN_VERIFIED"));
+        assertNull(ctx.get("RESPONSE_CODE"));
+    }
+
+    @Test
+    void testServerErrorWithClosedCircuitDeclines() throws Exception {
+        Context ctx = verify(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+        assertEquals("96", ctx.get("RESPONSE_CODE"));
+        assertNull(ctx.get("STAND_IN"));
+        assertNull(ctx.get("PIN_VERIFIED"));
+    }
+
+    @Test
+    void testIoErrorWithClosedCircuitDeclines() throws Exception {
+        Context ctx = verify(new ResourceAccessException("Read timed out"));
+        assertEquals("96", ctx.get("RESPONSE_CODE"));
+        assertNull(ctx.get("STAND_IN"));
+    }
+
+    @Test
+    void testOpenCircuitStandsIn() throws Exception {
+        Context ctx = verify(new DependencyUnavailableException("HSM circuit open"));
+        assertEquals("hsm", ctx.get("STAND_IN"));
+        assertNull(ctx.get("RESPONSE_CODE"));
+        assertNull(ctx.get("PIN_VERIFIED"));
+    }
+
+    @Test
+    void testInvalidPinDeclines() throws Exception {
+        Context ctx = verify(new RuntimeException("Invalid PIN"));
+        assertEquals("55", ctx.get("RESPONSE_CODE"));
+        assertNull(ctx.get("STAND_IN"));
+    }
+}
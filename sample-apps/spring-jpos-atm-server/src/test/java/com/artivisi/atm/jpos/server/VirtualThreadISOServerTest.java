@@ -0,0 +1,208 @@
+package com.artivisi.atm.jpos.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOChannel;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOServerClientDisconnectEvent;
+import org.jpos.iso.ISOSource;
+import org.jpos.iso.channel.ASCIIChannel;
+import org.jpos.iso.packager.BASE24Packager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Test for the virtual-thread-per-connection ISO server.
+ *
+ * The multi-connection tests need Java 24+ (no carrier pinning in synchronized
+ * BaseChannel.receive()) and are skipped on earlier runtimes.
+ */
+@Slf4j
+class VirtualThreadISOServerTest {
+
+    private static final int IDLE_CONNECTIONS = Integer.getInteger("vt.server.connections", 10_000);
+
+    private VirtualThreadISOServer server;
+    private final List<Socket> clients = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        for (Socket socket : clients) {
+            try {
+                socket.close();
+            } catch (Exception ignored) {
+                // already closed
+            }
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private VirtualThreadISOServer startServer(int maxSessions) throws Exception {
+        server = new VirtualThreadISOServer("test-server", 0,
+                new ASCIIChannel(new BASE24Packager()), maxSessions, 50_000);
+        server.start();
+        return server;
+    }
+
+    private static ISOMsg echoRequest() throws Exception {
+        ISOMsg msg = new ISOMsg();
+        msg.setMTI("0800");
+        msg.set(11, "000001");
+        msg.set(70, "301");
+        return msg;
+    }
+
+    private static boolean echo(ISOSource source, ISOMsg m) {
+        try {
+            ISOMsg response = (ISOMsg) m.clone();
+            response.setResponseMTI();
+            response.set(39, "00");
+            source.send(response);
+            return true;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitCount(IntSupplier actual, int expected, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (actual.getAsInt() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, actual.getAsInt());
+    }
+
+    @Test
+    void testListenerChainAndDisconnectEvent() throws Exception {
+        startServer(10);
+        List<String> calls = new CopyOnWriteArrayList<>();
+        List<ISOChannel> disconnected = new CopyOnWriteArrayList<>();
+
+        server.addISORequestListener((source, m) -> {
+            calls.add("first");
+            return false;
+        });
+        server.addISORequestListener((source, m) -> {
+            calls.add("second");
+            return echo(source, m);
+        });
+        server.addISORequestListener((source, m) -> {
+            calls.add("third");
+            return true;
+        });
+        server.addServerEventListener(event -> {
+            if (event instanceof ISOServerClientDisconnectEvent disconnect) {
+                disconnected.add(disconnect.getISOChannel());
+            }
+        });
+
+        ASCIIChannel client = new ASCIIChannel("localhost", server.getLocalPort(), new BASE24Packager());
+        client.connect();
+        client.send(echoRequest());
+        ISOMsg response = client.receive();
+
+        assertEquals("0810", response.getMTI());
+        assertEquals("00", response.getString(39));
+        assertEquals(List.of("first", "second"), calls);
+        assertEquals(1, server.getConnectionCount());
+
+        client.disconnect();
+        awaitCount(disconnected::size, 1, 5000);
+        assertEquals(0, server.getConnectionCount());
+    }
+
+    @Test
+    void testMaxSessionsRejectsExtraConnections() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 24, "Requires Java 24+ (JEP 491)");
+        startServer(5);
+
+        for (int i = 0; i < 8; i++) {
+            clients.add(new Socket("localhost", server.getLocalPort()));
+        }
+
+        awaitCount(() -> (int) (server.getAcceptedCount() + server.getRejectedCount()), 8, 5000);
+        assertEquals(5, server.getConnectionCount());
+        assertEquals(3, server.getRejectedCount());
+    }
+
+    @Test
+    void testAcceptFailuresBackOff() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        server = new VirtualThreadISOServer("test-server", 0, new ASCIIChannel(new BASE24Packager()) {
+            @Override
+            public void accept(ServerSocket s) throws IOException {
+                attempts.incrementAndGet();
+                throw new IOException("Too many open files");
+            }
+        }, 10, 50);
+        server.start();
+
+        Thread.sleep(1000);
+        // 50, 100, 200, 400, 800 ms pauses: a handful of attempts, not a busy loop
+        assertTrue(attempts.get() >= 2 && attempts.get() <= 8, "accept attempts: " + attempts.get());
+
+        server.stop();
+        int afterStop = attempts.get();
+        Thread.sleep(200);
+        assertEquals(afterStop, attempts.get());
+    }
+
+    @Test
+    void testTenThousandIdleConnections() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 24, "Requires Java 24+ (JEP 491)");
+        assumeTrue(maxFileDescriptors() > 2L * IDLE_CONNECTIONS + 1000,
+                "ulimit -n too low for " + IDLE_CONNECTIONS + " connections");
+
+        startServer(IDLE_CONNECTIONS + 1);
+        int platformThreadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < IDLE_CONNECTIONS; i++) {
+            clients.add(new Socket("localhost", server.getLocalPort()));
+        }
+        awaitCount(server::getConnectionCount, IDLE_CONNECTIONS, 60_000);
+        long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // A new terminal is still served while the others sit idle
+        ASCIIChannel client = new ASCIIChannel("localhost", server.getLocalPort(), new BASE24Packager());
+        server.addISORequestListener(VirtualThreadISOServerTest::echo);
+        client.connect();
+        client.send(echoRequest());
+        assertEquals("00", client.receive().getString(39));
+        client.disconnect();
+
+        int platformThreadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+        Runtime runtime = Runtime.getRuntime();
+        log.info("{} idle connections in {} ms: platform threads {} -> {}, heap used {} MB",
+                IDLE_CONNECTIONS, connectMillis, platformThreadsBefore, platformThreadsAfter,
+                (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+
+        // Sessions are virtual threads; only carrier threads are added
+        assertTrue(platformThreadsAfter - platformThreadsBefore < 2 * Runtime.getRuntime().availableProcessors() + 16,
+                "platform threads grew from " + platformThreadsBefore + " to " + platformThreadsAfter);
+    }
+
+    private static long maxFileDescriptors() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean unix) {
+            return unix.getMaxFileDescriptorCount();
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,129 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.entity.CryptoKey;
+import org.jpos.iso.channel.ASCIIChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for ChannelRegistry session tracking and counters.
+ */
+class ChannelRegistryTest {
+
+    private static final String TERMINAL_ID = "TRM-ISS001-ATM-001";
+
+    private ChannelRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new ChannelRegistry();
+    }
+
+    private static ASCIIChannel channel(String name) {
+        ASCIIChannel channel = new ASCIIChannel();
+        channel.setName(name);
+        return channel;
+    }
+
+    @Test
+    void testRegisterAndSignOn_UpdatesCounters() {
+        ASCIIChannel channel = channel("ch-1");
+
+        registry.register(TERMINAL_ID, channel);
+        registry.signOn(TERMINAL_ID);
+        registry.signOn(TERMINAL_ID); // idempotent
+
+        assertEquals(1, registry.getConnectedCount());
+        assertEquals(1, registry.getSignedOnCount());
+        assertTrue(registry.isSignedOn(TERMINAL_ID));
+        assertSame(channel, registry.getChannel(TERMINAL_ID));
+        assertEquals(1, registry.getConnectedTerminals().size());
+    }
+
+    @Test
+    void testSignOff_KeepsConnection() {
+        registry.register(TERMINAL_ID, channel("ch-1"));
+        registry.signOn(TERMINAL_ID);
+
+        registry.signOff(TERMINAL_ID);
+
+        assertFalse(registry.isSignedOn(TERMINAL_ID));
+        assertEquals(0, registry.getSignedOnCount());
+        assertEquals(1, registry.getConnectedCount());
+    }
+
+    @Test
+    void testUnregisterByChannelName_RemovesSession() {
+        registry.register(TERMINAL_ID, channel("ch-1"));
+        registry.signOn(TERMINAL_ID);
+
+        registry.unregisterByChannelName("ch-1");
+
+        assertNull(registry.getSession(TERMINAL_ID));
+        assertNull(registry.getChannel(TERMINAL_ID));
+        assertEquals(0, registry.getConnectedCount());
+        assertEquals(0, registry.getSignedOnCount());
+    }
+
+    @Test
+    void testStaleDisconnect_DoesNotRemoveReconnectedTerminal() {
+        registry.register(TERMINAL_ID, channel("ch-1"));
+        registry.signOn(TERMINAL_ID);
+
+        // Terminal reconnects on a new channel before the old disconnect event arrives
+        ASCIIChannel newChannel = channel("ch-2");
+        registry.register(TERMINAL_ID, newChannel);
+        registry.unregisterByChannelName("ch-1");
+
+        assertSame(newChannel, registry.getChannel(TERMINAL_ID));
+        assertTrue(registry.isSignedOn(TERMINAL_ID));
+        assertEquals(1, registry.getConnectedCount());
+    }
+
+    @Test
+    void testSessionTracksInFlightAndKeyVersions() {
+        registry.register(TERMINAL_ID, channel("ch-1"));
+
+        TerminalSession session = registry.requestStarted(TERMINAL_ID);
+        registry.requestStarted(TERMINAL_ID);
+        registry.recordKeyVersion(TERMINAL_ID, CryptoKey.KeyType.TSK, 3);
+
+        assertNotNull(session);
+        assertEquals(2, session.getInFlight());
+        assertEquals(3, session.getKeyVersion(CryptoKey.KeyType.TSK));
+        assertNotNull(registry.getLastSeen(TERMINAL_ID));
+
+        session.requestCompleted();
+        session.requestCompleted();
+        session.requestCompleted(); // never goes negative
+
+        assertEquals(0, session.getInFlight());
+    }
+
+    @Test
+    void testDrainChanges_OnlyWhenTracked() {
+        registry.register(TERMINAL_ID, channel("ch-1"));
+        assertTrue(registry.drainChanges().isEmpty());
+
+        registry.trackChanges();
+        registry.signOn(TERMINAL_ID);
+        registry.register("TRM-ISS001-ATM-002", channel("ch-2"));
+        registry.requestStarted(TERMINAL_ID); // not a change
+
+        assertEquals(Set.of(TERMINAL_ID, "TRM-ISS001-ATM-002"), registry.drainChanges());
+        assertTrue(registry.drainChanges().isEmpty());
+
+        registry.unregisterByChannelName("ch-1");
+        assertEquals(Set.of(TERMINAL_ID), registry.drainChanges());
+    }
+
+    @Test
+    void testRequestStarted_UnknownTerminal() {
+        assertNull(registry.requestStarted("UNKNOWN"));
+        assertEquals(0, registry.getConnectedCount());
+    }
+}
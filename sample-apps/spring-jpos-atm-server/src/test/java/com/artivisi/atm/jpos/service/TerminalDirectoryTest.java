@@ -0,0 +1,261 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.config.ClusterProperties;
+import com.artivisi.atm.repository.TerminalDirectoryRepository;
+import com.artivisi.atm.repository.TerminalDirectoryRepository.Session;
+import org.jpos.iso.channel.ASCIIChannel;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for TerminalDirectory: two nodes sharing one directory, ownership, owner cache,
+ * a terminal moving between nodes and a directory outage.
+ */
+class TerminalDirectoryTest {
+
+    private static final String TERMINAL_ID = "TRM-ISS001-ATM-001";
+
+    private final AtomicLong now = new AtomicLong(1_800_000_000_000L);
+    private final InMemoryDirectory database = new InMemoryDirectory();
+
+    private final ChannelRegistry registryA = new ChannelRegistry();
+    private final ChannelRegistry registryB = new ChannelRegistry();
+    private final TerminalDirectory nodeA = node("node-a", registryA);
+    private final TerminalDirectory nodeB = node("node-b", registryB);
+
+    private TerminalDirectory node(String nodeId, ChannelRegistry registry) {
+        ClusterProperties properties = new ClusterProperties();
+        properties.setEnabled(true);
+        properties.setNodeId(nodeId);
+        properties.setAdvertisedUrl("http://" + nodeId + ":9090");
+        properties.setToken("secret");
+        properties.setNodeTimeout(Duration.ofSeconds(30));
+        properties.setOwnerCacheTtl(Duration.ofSeconds(5));
+        TerminalDirectory directory = new TerminalDirectory(registry, database, properties, now::get);
+        directory.start();
+        return directory;
+    }
+
+    private static void connect(ChannelRegistry registry, String channelName) {
+        ASCIIChannel channel = new ASCIIChannel();
+        channel.setName(channelName);
+        registry.register(TERMINAL_ID, channel);
+        registry.signOn(TERMINAL_ID);
+    }
+
+    private void advance(Duration duration) {
+        now.addAndGet(duration.toMillis());
+    }
+
+    @Test
+    void testPublishesOwnership() {
+        connect(registryA, "ch-a1");
+        assertTrue(nodeB.remoteOwner(TERMINAL_ID).isEmpty());
+        nodeA.publish();
+
+        // Not published yet when node B looked: cached as not connected
+        assertTrue(nodeB.remoteOwner(TERMINAL_ID).isEmpty());
+        advance(Duration.ofSeconds(6));
+        Optional<Session> owner = nodeB.remoteOwner(TERMINAL_ID);
+        assertTrue(owner.isPresent());
+        assertEquals("node-a", owner.get().nodeId());
+        assertEquals("http://node-a:9090", owner.get().url());
+        assertTrue(owner.get().signedOn());
+
+        // Local terminals are not remote
+        assertTrue(nodeA.remoteOwner(TERMINAL_ID).isEmpty());
+        assertEquals(1, nodeB.sessions().size());
+
+        // Gone from node A: cached on node B until evicted
+        registryA.unregister(TERMINAL_ID);
+        nodeA.publish();
+        assertTrue(nodeB.remoteOwner(TERMINAL_ID).isPresent());
+        nodeB.evict(TERMINAL_ID);
+        assertTrue(nodeB.remoteOwner(TERMINAL_ID).isEmpty());
+    }
+
+    @Test
+    void testTerminalMovesToAnotherNode() throws Exception {
+        connect(registryA, "ch-a1");
+        nodeA.publish();
+
+        // Reconnects to node B, while node A has not seen the disconnect yet
+        Thread.sleep(5);
+        connect(registryB, "ch-b1");
+        nodeB.publish();
+        assertEquals("node-b", database.sessions.get(TERMINAL_ID).nodeId);
+
+        // A late write of node A's older connection does not take the terminal back
+        registryA.signOff(TERMINAL_ID);
+        nodeA.publish();
+        assertEquals("node-b", database.sessions.get(TERMINAL_ID).nodeId);
+
+        // Node A drops its stale session: one signed-on session in the cluster
+        nodeA.heartbeat();
+        assertNull(registryA.getSession(TERMINAL_ID));
+        assertEquals(0, registryA.getConnectedCount());
+        assertEquals("node-b", nodeA.remoteOwner(TERMINAL_ID).orElseThrow().nodeId());
+        assertTrue(registryB.isSignedOn(TERMINAL_ID));
+
+        // Node A's unregister does not remove node B's session
+        nodeA.publish();
+        assertEquals("node-b", database.sessions.get(TERMINAL_ID).nodeId);
+    }
+
+    @Test
+    void testOlderConnectionPublishedLateDoesNotTakeTerminal() throws Exception {
+        connect(registryA, "ch-a1");
+        Thread.sleep(5);
+        connect(registryB, "ch-b1");
+
+        // Node B publishes first, then node A's older connection reaches the directory
+        nodeB.publish();
+        Thread.sleep(20);
+        nodeA.publish();
+        assertEquals("node-b", database.sessions.get(TERMINAL_ID).nodeId);
+
+        nodeA.heartbeat();
+        assertNull(registryA.getSession(TERMINAL_ID));
+        assertTrue(registryB.isSignedOn(TERMINAL_ID));
+    }
+
+    @Test
+    void testDeadNodeIsNotAnOwner() {
+        connect(registryA, "ch-a1");
+        nodeA.publish();
+
+        advance(Duration.ofSeconds(31));
+        nodeB.heartbeat();
+        assertTrue(nodeB.remoteOwner(TERMINAL_ID).isEmpty());
+
+        nodeA.heartbeat();
+        advance(Duration.ofSeconds(6));
+        assertTrue(nodeB.remoteOwner(TERMINAL_ID).isPresent());
+    }
+
+    @Test
+    void testChangesWaitForTheDirectory() {
+        database.down.set(true);
+        connect(registryA, "ch-a1");
+        nodeA.publish();
+        assertTrue(database.sessions.isEmpty());
+        assertTrue(nodeB.remoteOwner(TERMINAL_ID).isEmpty());
+
+        database.down.set(false);
+        nodeA.publish();
+        assertEquals("node-a", database.sessions.get(TERMINAL_ID).nodeId);
+    }
+
+    @Test
+    void testStopRemovesTheNode() {
+        connect(registryA, "ch-a1");
+        nodeA.publish();
+        nodeA.stop();
+
+        assertTrue(database.sessions.isEmpty());
+        assertFalse(database.heartbeats.containsKey("node-a"));
+        assertFalse(nodeA.isEnabled());
+    }
+
+    /**
+     * cluster_nodes and terminal_sessions in memory, with the semantics of the SQL statements
+     * (the test clock stands for the database clock; connected_at is database time minus the age
+     * of the connection).
+     */
+    private class InMemoryDirectory extends TerminalDirectoryRepository {
+
+        private final Map<String, Row> sessions = new HashMap<>();
+        private final Map<String, Long> heartbeats = new HashMap<>();
+        private final Map<String, String> urls = new HashMap<>();
+        private final AtomicBoolean down = new AtomicBoolean();
+
+        InMemoryDirectory() {
+            super(null);
+        }
+
+        private void check() {
+            if (down.get()) {
+                throw new DataAccessResourceFailureException("Connection refused");
+            }
+        }
+
+        @Override
+        public void heartbeat(String nodeId, String url) {
+            check();
+            heartbeats.put(nodeId, now.get());
+            urls.put(nodeId, url);
+        }
+
+        @Override
+        public boolean claim(String terminalId, String nodeId, String channelName, boolean signedOn,
+                             Duration connectedFor) {
+            check();
+            long connectedAt = now.get() - connectedFor.toMillis();
+            Row current = sessions.get(terminalId);
+            if (current != null && !current.nodeId.equals(nodeId) && current.connectedAt > connectedAt) {
+                return false;
+            }
+            sessions.put(terminalId, new Row(nodeId, signedOn, connectedAt, now.get()));
+            return true;
+        }
+
+        @Override
+        public void release(String terminalId, String nodeId) {
+            check();
+            sessions.computeIfPresent(terminalId, (id, row) -> row.nodeId.equals(nodeId) ? null : row);
+        }
+
+        @Override
+        public void releaseAll(String nodeId) {
+            check();
+            sessions.values().removeIf(row -> row.nodeId.equals(nodeId));
+        }
+
+        @Override
+        public void removeNode(String nodeId) {
+            releaseAll(nodeId);
+            heartbeats.remove(nodeId);
+        }
+
+        @Override
+        public Optional<Session> find(String terminalId, Duration nodeTimeout) {
+            return findAll(nodeTimeout).stream().filter(session -> session.terminalId().equals(terminalId)).findFirst();
+        }
+
+        @Override
+        public List<Session> findAll(Duration nodeTimeout) {
+            check();
+            return sessions.entrySet().stream()
+                    .filter(entry -> heartbeats.getOrDefault(entry.getValue().nodeId, Long.MIN_VALUE)
+                            >= now.get() - nodeTimeout.toMillis())
+                    .map(entry -> new Session(entry.getKey(), entry.getValue().nodeId,
+                            urls.get(entry.getValue().nodeId), entry.getValue().signedOn))
+                    .toList();
+        }
+
+        @Override
+        public Map<String, Duration> claimedElsewhere(String nodeId, Duration within) {
+            check();
+            Map<String, Duration> claims = new HashMap<>();
+            sessions.forEach((terminalId, row) -> {
+                if (!row.nodeId.equals(nodeId) && row.claimedAt >= now.get() - within.toMillis()) {
+                    claims.put(terminalId, Duration.ofMillis(now.get() - row.connectedAt));
+                }
+            });
+            return claims;
+        }
+    }
+
+    private record Row(String nodeId, boolean signedOn, long connectedAt, long claimedAt) {
+    }
+}
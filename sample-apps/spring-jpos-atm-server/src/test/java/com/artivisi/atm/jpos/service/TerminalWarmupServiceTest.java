@@ -0,0 +1,97 @@
+package com.artivisi.atm.jpos.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for TerminalWarmupService: sign-ons beyond max-concurrency wait for a warm-up thread
+ * instead of being skipped, and only a full queue rejects.
+ */
+class TerminalWarmupServiceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final Set<String> warmed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private TerminalWarmupService service;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        service.shutdown();
+    }
+
+    private TerminalWarmupService service(int maxConcurrency, int queueCapacity) {
+        service = new TerminalWarmupService(null, true, maxConcurrency, queueCapacity, registry) {
+            @Override
+            void warmUpNow(String terminalId) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+                warmed.add(terminalId);
+            }
+        };
+        return service;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static String terminal(int i) {
+        return "TRM-ISS001-ATM-" + String.format("%03d", i);
+    }
+
+    @Test
+    void testSignOnStormIsQueuedNotDropped() throws Exception {
+        TerminalWarmupService warmup = service(8, 100);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(warmup.warmUp(terminal(i)));
+        }
+        // Repeated sign-on of a terminal still waiting is not queued twice
+        assertFalse(warmup.warmUp(terminal(49)));
+        assertEquals(42.0, registry.get("jpos.warmup.queued").gauge().value());
+        awaitUntil(() -> running.get() == 8);
+
+        release.countDown();
+        awaitUntil(() -> warmed.size() == 50);
+        assertEquals(50, warmed.size());
+        assertEquals(8, maxRunning.get());
+        assertEquals(0.0, registry.get("jpos.warmup.rejected").counter().count());
+    }
+
+    @Test
+    void testFullQueueRejectsAndCounts() throws Exception {
+        TerminalWarmupService warmup = service(2, 3);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(warmup.warmUp(terminal(i)));
+        }
+        assertFalse(warmup.warmUp(terminal(5)));
+        assertFalse(warmup.warmUp(terminal(6)));
+        assertEquals(2.0, registry.get("jpos.warmup.rejected").counter().count());
+
+        // A rejected terminal can be scheduled again once there is room
+        release.countDown();
+        awaitUntil(() -> warmed.size() == 5);
+        assertTrue(warmup.warmUp(terminal(5)));
+    }
+}
@@ -0,0 +1,159 @@
+package com.artivisi.atm.jpos.service;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Test for the transaction concurrency cap on virtual threads.
+ *
+ * Blocking I/O of a participant (JDBC, HSM HTTP call) is simulated with Thread.sleep, which parks
+ * a virtual thread the same way a blocking socket read does.
+ */
+@Slf4j
+class TransactionConcurrencyLimiterTest {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    /**
+     * Run tasks on virtual threads, each holding a permit for the given blocking time.
+     *
+     * @return Elapsed milliseconds
+     */
+    private static long runTransactions(TransactionConcurrencyLimiter limiter, int transactions,
+                                        long blockingMillis, AtomicInteger maxObserved) {
+        AtomicInteger inFlight = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < transactions; i++) {
+                executor.execute(() -> {
+                    TransactionConcurrencyLimiter.Permit permit = limiter.acquire();
+                    assertNotNull(permit);
+                    try {
+                        maxObserved.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        Thread.sleep(blockingMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inFlight.decrementAndGet();
+                        permit.release();
+                    }
+                });
+            }
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @Test
+    void testCapBoundsInFlightTransactions() {
+        TransactionConcurrencyLimiter limiter = new TransactionConcurrencyLimiter("test", 16, 10_000);
+        AtomicInteger maxObserved = new AtomicInteger();
+
+        runTransactions(limiter, 200, 5, maxObserved);
+
+        assertTrue(maxObserved.get() <= 16, "max in flight " + maxObserved.get());
+        assertEquals(200, limiter.getAdmittedCount());
+        assertEquals(0, limiter.getRejectedCount());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testDeclinesWhenSaturated() {
+        TransactionConcurrencyLimiter limiter = new TransactionConcurrencyLimiter("test", 1, 50);
+
+        TransactionConcurrencyLimiter.Permit permit = limiter.acquire();
+        assertNotNull(permit);
+        assertEquals(1, limiter.getInFlight());
+
+        assertNull(limiter.acquire());
+        assertEquals(1, limiter.getRejectedCount());
+
+        // Released on both commit and abort paths: second release must not add a permit
+        permit.release();
+        permit.release();
+        assertEquals(0, limiter.getInFlight());
+        assertNotNull(limiter.acquire());
+        assertNull(limiter.acquire());
+    }
+
+    @Test
+    void testThroughputScalesWithConcurrency() {
+        int transactions = 400;
+        long blockingMillis = 10;
+
+        long narrow = runTransactions(new TransactionConcurrencyLimiter("test", 8, 60_000),
+                transactions, blockingMillis, new AtomicInteger());
+        long wide = runTransactions(new TransactionConcurrencyLimiter("test", 200, 60_000),
+                transactions, blockingMillis, new AtomicInteger());
+
+        log.info("{} transactions x {}ms blocking I/O on {} cores: cap 8 = {} ms ({} TPS), cap 200 = {} ms ({} TPS)",
+                transactions, blockingMillis, Runtime.getRuntime().availableProcessors(),
+                narrow, transactions * 1000 / Math.max(1, narrow),
+                wide, transactions * 1000 / Math.max(1, wide));
+
+        // Bounded by I/O concurrency, not by OS threads
+        assertTrue(narrow > 3 * wide, "cap 8: " + narrow + " ms, cap 200: " + wide + " ms");
+    }
+
+    @Test
+    void testNoCarrierPinningWhileWaitingForPermits() throws Exception {
+        TransactionConcurrencyLimiter limiter = new TransactionConcurrencyLimiter("test", 4, 10_000);
+
+        List<RecordedEvent> pinned = recordPinnedEvents(
+                () -> runTransactions(limiter, 100, 5, new AtomicInteger()));
+
+        assertTrue(pinned.isEmpty(), "virtual threads pinned: " + pinned);
+    }
+
+    @Test
+    void testPinningDetectorReportsSynchronizedBlocking() throws Exception {
+        // synchronized no longer pins from Java 24 (JEP 491)
+        assumeTrue(Runtime.version().feature() < 24, "synchronized does not pin on Java 24+");
+        Object lock = new Object();
+
+        List<RecordedEvent> pinned = recordPinnedEvents(() -> {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                executor.execute(() -> {
+                    synchronized (lock) {
+                        try {
+                            Thread.sleep(30);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        });
+
+        assertFalse(pinned.isEmpty());
+    }
+
+    private static List<RecordedEvent> recordPinnedEvents(Runnable workload) throws Exception {
+        Path file = Files.createTempFile("pinning", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(1)).withStackTrace();
+            recording.start();
+            workload.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().equals(PINNED_EVENT))
+                    .toList();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
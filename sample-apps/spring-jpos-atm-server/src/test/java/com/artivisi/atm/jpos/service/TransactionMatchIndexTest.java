@@ -0,0 +1,224 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.config.MatchingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOMsg;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for TransactionMatchIndex: repeats, reversals, TTL and size eviction, journal fallback.
+ */
+@Slf4j
+class TransactionMatchIndexTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final Map<TransactionMatchIndex.Key, TransactionMatchIndex.JournalMatch> journal = new HashMap<>();
+    private final AtomicInteger journalLookups = new AtomicInteger();
+
+    private TransactionMatchIndex index(int maxEntries) {
+        MatchingProperties properties = new MatchingProperties();
+        properties.setTtl(Duration.ofMinutes(1));
+        properties.setMaxEntries(maxEntries);
+        return new TransactionMatchIndex(properties, (key, since) -> {
+            journalLookups.incrementAndGet();
+            return journal.get(key);
+        }, new SimpleMeterRegistry(), now::get);
+    }
+
+    private static TransactionMatchIndex.Key key(String stan) {
+        return new TransactionMatchIndex.Key("INST01", "ATM-001", stan, "1019103000");
+    }
+
+    private static void approveWithdrawal(TransactionMatchIndex.Entry entry, long journalId) {
+        assertNull(entry.complete("00", "RRN" + journalId, null, null, journalId, LocalDateTime.now()));
+    }
+
+    @Test
+    void testKeysFromMessage() throws Exception {
+        ISOMsg reversal = new ISOMsg("0400");
+        reversal.set(7, "1019103500");
+        reversal.set(11, "000124");
+        reversal.set(41, "ATM-001 ");
+        reversal.set(42, "INST01");
+        reversal.set(90, "0200000123101910300000000000000000000000000");
+
+        assertEquals(new TransactionMatchIndex.Key("INST01", "ATM-001", "000124", "1019103500"),
+                TransactionMatchIndex.Key.of(reversal));
+        assertEquals(key("000123"), TransactionMatchIndex.Key.original(reversal));
+
+        // Without field 90 the reversal carries the original's STAN and date-time
+        reversal.unset(90);
+        assertEquals(TransactionMatchIndex.Key.of(reversal), TransactionMatchIndex.Key.original(reversal));
+        reversal.unset(11);
+        assertNull(TransactionMatchIndex.Key.of(reversal));
+    }
+
+    @Test
+    void testRepeatMatchesOriginal() {
+        TransactionMatchIndex index = index(100);
+
+        TransactionMatchIndex.Match original = index.register(key("000001"), false);
+        assertFalse(original.duplicate());
+        assertEquals(TransactionMatchIndex.State.IN_PROGRESS, original.entry().getState());
+
+        TransactionMatchIndex.Match inProgress = index.register(key("000001"), true);
+        assertTrue(inProgress.duplicate());
+        assertSame(original.entry(), inProgress.entry());
+
+        approveWithdrawal(original.entry(), 42);
+        TransactionMatchIndex.Match repeat = index.register(key("000001"), true);
+        assertEquals(TransactionMatchIndex.State.COMPLETED, repeat.entry().getState());
+        assertEquals("RRN42", repeat.entry().getReferenceNumber());
+
+        assertFalse(index.register(key("000002"), false).duplicate());
+        assertEquals(0, journalLookups.get());
+    }
+
+    @Test
+    void testWithdrawalIsReversedOnce() {
+        TransactionMatchIndex index = index(100);
+        TransactionMatchIndex.Entry entry = index.register(key("000001"), false).entry();
+        approveWithdrawal(entry, 42);
+
+        // Reversal and its repeats
+        assertEquals(TransactionMatchIndex.ReversalAction.REVERSE, index.lookup(key("000001")).requestReversal(key("000002")));
+        assertEquals(TransactionMatchIndex.ReversalAction.NONE, index.lookup(key("000001")).requestReversal(key("000003")));
+        entry.reversed();
+        assertEquals(TransactionMatchIndex.ReversalAction.NONE, index.lookup(key("000001")).requestReversal(key("000004")));
+        assertEquals(TransactionMatchIndex.State.REVERSED, index.register(key("000001"), true).entry().getState());
+
+        // A failed credit can be retried
+        TransactionMatchIndex.Entry other = index.register(key("000010"), false).entry();
+        approveWithdrawal(other, 43);
+        assertEquals(TransactionMatchIndex.ReversalAction.REVERSE, other.requestReversal(key("000011")));
+        other.reversalFailed();
+        assertEquals(TransactionMatchIndex.ReversalAction.REVERSE, other.requestReversal(key("000012")));
+    }
+
+    @Test
+    void testReversalBeforeOutcome() {
+        TransactionMatchIndex index = index(100);
+
+        // Reversal while the withdrawal is in progress: applied when it completes
+        TransactionMatchIndex.Entry inProgress = index.register(key("000001"), false).entry();
+        assertEquals(TransactionMatchIndex.ReversalAction.PENDING, index.lookup(key("000001")).requestReversal(key("000002")));
+        assertEquals(key("000002"), inProgress.complete("00", "RRN42", null, null, 42L, LocalDateTime.now()));
+        assertEquals(TransactionMatchIndex.ReversalAction.REVERSE, inProgress.requestReversal(key("000002")));
+
+        // Declined original: nothing to credit
+        TransactionMatchIndex.Entry declined = index.register(key("000010"), false).entry();
+        declined.complete("51", null, null, null, null, null);
+        assertEquals(TransactionMatchIndex.ReversalAction.NONE, declined.requestReversal(key("000011")));
+
+        // Unknown original: the late original finds the tombstone
+        assertNull(index.lookup(key("000020")));
+        assertEquals(TransactionMatchIndex.State.REVERSED, index.tombstone(key("000020")).getState());
+        TransactionMatchIndex.Match late = index.register(key("000020"), false);
+        assertTrue(late.duplicate());
+        assertEquals(TransactionMatchIndex.State.REVERSED, late.entry().getState());
+    }
+
+    @Test
+    void testEntriesExpireAndAreBounded() {
+        TransactionMatchIndex index = index(3);
+        for (int i = 1; i <= 5; i++) {
+            index.register(key(String.format("%06d", i)), false);
+        }
+        assertEquals(3, index.size());
+        // Oldest evicted first
+        assertFalse(index.register(key("000001"), false).duplicate());
+        assertTrue(index.register(key("000005"), false).duplicate());
+
+        now.addAndGet(Duration.ofMinutes(1).toMillis());
+        assertFalse(index.register(key("000005"), false).duplicate());
+        index.evictExpired();
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void testJournalFallbackOnlyForRepeatsAndReversals() {
+        journal.put(key("000001"), new TransactionMatchIndex.JournalMatch(42, LocalDateTime.now(), "RRN42", false));
+        journal.put(key("000002"), new TransactionMatchIndex.JournalMatch(43, LocalDateTime.now(), "RRN43", true));
+        TransactionMatchIndex index = index(100);
+
+        TransactionMatchIndex.Match repeat = index.register(key("000001"), true);
+        assertTrue(repeat.duplicate());
+        assertEquals("00", repeat.entry().getResponseCode());
+        assertEquals(42L, repeat.entry().getJournalId());
+        assertEquals(TransactionMatchIndex.ReversalAction.REVERSE, index.lookup(key("000001")).requestReversal(key("000003")));
+        assertEquals(TransactionMatchIndex.State.REVERSED, index.lookup(key("000002")).getState());
+        assertEquals(2, journalLookups.get());
+
+        // Served from memory once loaded; an original request never searches the journal
+        index.lookup(key("000001"));
+        assertFalse(index.register(key("000009"), false).duplicate());
+        assertEquals(2, journalLookups.get());
+    }
+
+    @Test
+    void testConcurrentReversalsCreditOnce() throws Exception {
+        TransactionMatchIndex index = index(100);
+        approveWithdrawal(index.register(key("000001"), false).entry(), 42);
+        AtomicInteger credits = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 100; i++) {
+                        if (index.lookup(key("000001")).requestReversal(key("000002"))
+                                == TransactionMatchIndex.ReversalAction.REVERSE) {
+                            credits.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        }
+
+        assertEquals(1, credits.get());
+    }
+
+    @Test
+    void benchmarkReversalStorm() {
+        TransactionMatchIndex index = index(200_000);
+        int originals = 100_000;
+        for (int i = 0; i < originals; i++) {
+            approveWithdrawal(index.register(key(String.format("%06d", i)), false).entry(), i);
+        }
+
+        // Each original reversed, then the reversal repeated twice
+        int reversals = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < originals; i++) {
+                TransactionMatchIndex.Entry entry = index.lookup(key(String.format("%06d", i)));
+                if (entry.requestReversal(null) == TransactionMatchIndex.ReversalAction.REVERSE) {
+                    entry.reversed();
+                    reversals++;
+                }
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        log.info("{} reversal lookups in {} ms ({} ns per lookup), {} credits, {} journal lookups",
+                3 * originals, elapsedNanos / 1_000_000, elapsedNanos / (3 * originals), reversals, journalLookups.get());
+        assertEquals(originals, reversals);
+        assertEquals(0, journalLookups.get());
+    }
+}
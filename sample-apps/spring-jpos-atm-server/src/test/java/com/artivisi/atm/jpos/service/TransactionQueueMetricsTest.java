@@ -0,0 +1,43 @@
+package com.artivisi.atm.jpos.service;
+
+import com.artivisi.atm.jpos.util.TransactionLane;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jpos.space.Space;
+import org.jpos.space.SpaceFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for per-lane, per-shard TransactionManager queue depth gauges.
+ */
+class TransactionQueueMetricsTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testDepthPerLaneAndShard() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TransactionQueueMetrics metrics = new TransactionQueueMetrics("tspace:default", 4, registry);
+
+        Space<String, Object> shard2 = SpaceFactory.getSpace("tspace:default-financial-2");
+        Space<String, Object> key = SpaceFactory.getSpace("tspace:default-key");
+        shard2.out("txnmgr.financial.2", "ctx-1");
+        shard2.out("txnmgr.financial.2", "ctx-2");
+        key.out("txnmgr.key", "ctx-3");
+        try {
+            assertEquals(0, metrics.getDepth(TransactionLane.FINANCIAL, 0));
+            assertEquals(2, metrics.getDepth(TransactionLane.FINANCIAL, 2));
+            assertEquals(1, metrics.getDepth(TransactionLane.KEY_MANAGEMENT, 0));
+            assertEquals(0, metrics.getDepth(TransactionLane.NETWORK));
+            assertEquals(3, metrics.getTotalDepth());
+            assertEquals(2.0, registry.get("jpos.txnmgr.queue.depth")
+                    .tag("lane", "financial").tag("shard", "2").gauge().value());
+            // 4 financial shards + network + key
+            assertEquals(6, registry.find("jpos.txnmgr.queue.depth").gauges().size());
+        } finally {
+            shard2.inp("txnmgr.financial.2");
+            shard2.inp("txnmgr.financial.2");
+            key.inp("txnmgr.key");
+        }
+    }
+}
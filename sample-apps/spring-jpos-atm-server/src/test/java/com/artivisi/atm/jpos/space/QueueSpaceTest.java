@@ -0,0 +1,198 @@
+package com.artivisi.atm.jpos.space;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.space.LocalSpace;
+import org.jpos.space.Space;
+import org.jpos.space.SpaceFactory;
+import org.jpos.space.TSpace;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for QueueSpace: TSpace semantics for the operations used by the TransactionManager,
+ * and a hand-off benchmark against TSpace.
+ */
+@Slf4j
+class QueueSpaceTest {
+
+    private static final String QUEUE = "txnmgr";
+
+    @Test
+    void testFifoAndNonBlockingReads() {
+        QueueSpace<String, String> space = new QueueSpace<>();
+        assertNull(space.inp(QUEUE));
+        assertNull(space.rdp(QUEUE));
+
+        space.out(QUEUE, "a");
+        space.out(QUEUE, "b");
+        space.out(QUEUE, "c");
+
+        assertEquals(3, space.size(QUEUE));
+        assertEquals("a", space.rdp(QUEUE));
+        assertEquals("a", space.inp(QUEUE));
+        assertEquals("b", space.in(QUEUE, 100));
+        assertEquals(1, space.size(QUEUE));
+        assertTrue(space.getKeySet().contains(QUEUE));
+    }
+
+    @Test
+    void testPushGoesToFront() {
+        QueueSpace<String, String> space = new QueueSpace<>();
+        space.out(QUEUE, "a");
+        space.push(QUEUE, "urgent");
+
+        assertEquals(2, space.size(QUEUE));
+        assertEquals("urgent", space.in(QUEUE, 100));
+        assertEquals("a", space.in(QUEUE, 100));
+        assertNull(space.inp(QUEUE));
+    }
+
+    @Test
+    void testPutReplacesEntries() {
+        QueueSpace<String, String> space = new QueueSpace<>();
+        space.out(QUEUE, "a");
+        space.out(QUEUE, "b");
+        space.put(QUEUE, "only");
+
+        assertEquals(1, space.size(QUEUE));
+        assertEquals("only", space.inp(QUEUE));
+    }
+
+    @Test
+    void testExpiredEntriesAreDropped() throws Exception {
+        QueueSpace<String, String> space = new QueueSpace<>();
+        space.out(QUEUE, "expires", 20);
+        space.out(QUEUE, "stays");
+
+        Thread.sleep(50);
+        assertEquals(1, space.size(QUEUE));
+        assertEquals("stays", space.inp(QUEUE));
+    }
+
+    @Test
+    void testInTimesOut() {
+        QueueSpace<String, String> space = new QueueSpace<>();
+        long start = System.nanoTime();
+        assertNull(space.in(QUEUE, 50));
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 40);
+    }
+
+    @Test
+    void testBlockedConsumerWokenByOutAndPush() throws Exception {
+        QueueSpace<String, String> space = new QueueSpace<>();
+        List<String> received = new ArrayList<>();
+
+        Thread consumer = Thread.ofVirtual().start(() -> {
+            received.add(space.in(QUEUE, 5000));
+            received.add(space.in(QUEUE, 5000));
+        });
+
+        Thread.sleep(50);
+        space.out(QUEUE, "out");
+        Thread.sleep(50);
+        space.push(QUEUE, "pushed");
+        consumer.join(5000);
+
+        assertEquals(List.of("out", "pushed"), received);
+    }
+
+    @Test
+    void testListenersNotified() {
+        QueueSpace<String, String> space = new QueueSpace<>();
+        List<String> notified = new ArrayList<>();
+
+        space.addListener(QUEUE, (key, value) -> notified.add(value));
+        space.out(QUEUE, "a");
+        space.push(QUEUE, "b");
+
+        assertEquals(List.of("a", "b"), notified);
+    }
+
+    @Test
+    void testSelectableBySpaceUri() {
+        Space<String, String> registered = QueueSpace.register("qspace:test-uri");
+
+        assertSame(registered, SpaceFactory.getSpace("qspace:test-uri"));
+        assertSame(registered, QueueSpace.register("qspace:test-uri"));
+        assertInstanceOf(LocalSpace.class, registered);
+        assertThrows(IllegalArgumentException.class, () -> QueueSpace.register("tspace:test-uri"));
+    }
+
+    @Test
+    void benchmarkHandOffAgainstTSpace() throws Exception {
+        int producers = 4;
+        int consumers = 16;
+        int messages = 200_000;
+
+        handOff(TSpace::new, producers, consumers, messages / 4);
+        handOff(QueueSpace::new, producers, consumers, messages / 4);
+
+        // Best of 3 alternating runs: scheduling noise dominates single runs on small hosts
+        long tspace = Long.MAX_VALUE;
+        long qspace = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            tspace = Math.min(tspace, handOff(TSpace::new, producers, consumers, messages));
+            qspace = Math.min(qspace, handOff(QueueSpace::new, producers, consumers, messages));
+        }
+
+        log.info("Hand-off of {} messages, {} producers / {} consumers (in with timeout) on {} cores:",
+                messages, producers, consumers, Runtime.getRuntime().availableProcessors());
+        log.info("  TSpace:     {} ns/msg", tspace / messages);
+        log.info("  QueueSpace: {} ns/msg", qspace / messages);
+
+        assertTrue(tspace > 0 && qspace > 0);
+    }
+
+    /**
+     * Producers out() to one key, consumers in(key, timeout) like TransactionManager sessions.
+     *
+     * @return Elapsed nanoseconds
+     */
+    private static long handOff(Supplier<LocalSpace<String, Object>> spaceFactory,
+                                int producers, int consumers, int messages) throws Exception {
+        LocalSpace<String, Object> space = spaceFactory.get();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicLong checksum = new AtomicLong();
+        int perProducer = messages / producers;
+        int total = perProducer * producers;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < consumers; c++) {
+            threads.add(Thread.ofPlatform().unstarted(() -> {
+                while (consumed.get() < total) {
+                    Object value = space.in(QUEUE, 20);
+                    if (value != null) {
+                        checksum.addAndGet((Integer) value);
+                        consumed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (int p = 0; p < producers; p++) {
+            threads.add(Thread.ofPlatform().unstarted(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    space.out(QUEUE, i);
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join(60_000);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(total, consumed.get());
+        assertEquals((long) producers * perProducer * (perProducer - 1) / 2, checksum.get());
+        assertEquals(0, space.size(QUEUE));
+        return elapsed;
+    }
+}
@@ -0,0 +1,127 @@
+package com.artivisi.atm.jpos.util;
+
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.packager.BASE24Packager;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for per-MTI response templates.
+ */
+class ResponseTemplatesTest {
+
+    private static final byte[] PIN_BLOCK = new byte[32];
+    private static final byte[] MAC = new byte[16];
+
+    private static ISOMsg financialRequest() throws Exception {
+        ISOMsg request = new ISOMsg();
+        request.setPackager(new BASE24Packager());
+        request.setMTI("0200");
+        request.set(2, "4111111111111111");
+        request.set(3, "010000");
+        request.set(4, "000000050000");
+        request.set(7, "1018123045");
+        request.set(11, "123456");
+        request.set(12, "123045");
+        request.set(13, "1018");
+        request.set(41, "ATM-001        ");
+        request.set(42, "TRM-ISS001     ");
+        request.set(49, "360");
+        request.set(102, "1234567890");
+        request.set(123, PIN_BLOCK);
+        request.set(64, MAC);
+        return request;
+    }
+
+    @Test
+    void testResponseMti() {
+        assertEquals("0210", ResponseTemplates.responseMti("0200"));
+        assertEquals("0410", ResponseTemplates.responseMti("0400"));
+        assertEquals("0430", ResponseTemplates.responseMti("0420"));
+        assertEquals("0810", ResponseTemplates.responseMti("0800"));
+        // Repeats are answered like the original
+        assertEquals("0210", ResponseTemplates.responseMti("0201"));
+        assertEquals("0410", ResponseTemplates.responseMti("0401"));
+        assertEquals("0430", ResponseTemplates.responseMti("0421"));
+    }
+
+    @Test
+    void testEchoFieldMap() {
+        assertArrayEquals(new int[]{2, 3, 4, 7, 11, 12, 13, 37, 41, 42, 49},
+                ResponseTemplates.echoFields("0200"));
+        assertArrayEquals(new int[]{2, 3, 4, 7, 11, 12, 13, 37, 41, 42, 49, 90},
+                ResponseTemplates.echoFields("0400"));
+        assertArrayEquals(ResponseTemplates.echoFields("0400"), ResponseTemplates.echoFields("0420"));
+        assertArrayEquals(ResponseTemplates.echoFields("0200"), ResponseTemplates.echoFields("0201"));
+        assertArrayEquals(ResponseTemplates.echoFields("0420"), ResponseTemplates.echoFields("0421"));
+        assertArrayEquals(new int[]{3, 7, 11, 12, 13, 41, 42, 53, 70},
+                ResponseTemplates.echoFields("0800"));
+        assertArrayEquals(ResponseTemplates.DEFAULT_ECHO_FIELDS, ResponseTemplates.echoFields("0100"));
+    }
+
+    @Test
+    void testFinancialResponse_CopiesEchoFieldsOnly() throws Exception {
+        ISOMsg request = financialRequest();
+
+        ISOMsg response = ResponseTemplates.createResponse(request, "00");
+
+        assertEquals("0210", response.getMTI());
+        assertEquals("00", response.getString(39));
+        assertTrue(response.isOutgoing());
+        assertSame(request.getPackager(), response.getPackager());
+        for (int field : new int[]{2, 3, 4, 7, 11, 12, 13, 41, 42, 49}) {
+            assertEquals(request.getString(field), response.getString(field), "Field " + field);
+        }
+
+        assertFalse(response.hasField(64), "Request MAC must not be echoed");
+        assertFalse(response.hasField(102), "Account number must not be echoed");
+        assertFalse(response.hasField(123), "PIN block must not be echoed");
+    }
+
+    @Test
+    void testResponse_IsSmallerThanClone() throws Exception {
+        ISOMsg request = financialRequest();
+
+        ISOMsg cloned = (ISOMsg) request.clone();
+        cloned.setMTI("0210");
+        cloned.set(39, "00");
+        ISOMsg response = ResponseTemplates.createResponse(request, "00");
+
+        assertTrue(response.pack().length < cloned.pack().length);
+    }
+
+    @Test
+    void testNetworkManagementResponse() throws Exception {
+        ISOMsg request = new ISOMsg();
+        request.setPackager(new BASE24Packager());
+        request.setMTI("0800");
+        request.set(11, "000001");
+        request.set(41, "ATM-001        ");
+        request.set(42, "TRM-ISS001     ");
+        request.set(53, "0200000000000000");
+        request.set(70, "301");
+        request.set(64, MAC);
+
+        ISOMsg response = ResponseTemplates.createResponse(request, "00");
+
+        assertEquals("0810", response.getMTI());
+        assertEquals("000001", response.getString(11));
+        assertEquals("0200000000000000", response.getString(53));
+        assertEquals("301", response.getString(70));
+        assertFalse(response.hasField(64));
+    }
+
+    @Test
+    void testResponse_DoesNotModifyRequest() throws Exception {
+        ISOMsg request = financialRequest();
+
+        ISOMsg response = ResponseTemplates.createResponse(request, "51");
+        response.set(37, "000000000001");
+
+        assertEquals("0200", request.getMTI());
+        assertFalse(request.hasField(39));
+        assertFalse(request.hasField(37));
+        assertTrue(request.hasField(123));
+    }
+}
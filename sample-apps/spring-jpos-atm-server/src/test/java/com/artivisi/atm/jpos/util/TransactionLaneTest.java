@@ -0,0 +1,79 @@
+package com.artivisi.atm.jpos.util;
+
+import com.artivisi.atm.config.TransactionLaneProperties;
+import com.artivisi.atm.jpos.service.TransactionConcurrencyLimiter;
+import com.artivisi.atm.jpos.service.TransactionLaneLimiters;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for TransactionManager lane classification, naming and isolation.
+ */
+class TransactionLaneTest {
+
+    private static ISOMsg message(String mti, int... fields) throws ISOException {
+        ISOMsg msg = new ISOMsg(mti);
+        for (int field : fields) {
+            msg.set(field, "1");
+        }
+        return msg;
+    }
+
+    @Test
+    void testClassificationFollowsMtiSelector() throws Exception {
+        assertEquals(TransactionLane.FINANCIAL, TransactionLane.of(message("0200", 3, 4)));
+        // Repeats and reversals follow their original onto the financial lane
+        assertEquals(TransactionLane.FINANCIAL, TransactionLane.of(message("0201", 3, 4)));
+        assertEquals(TransactionLane.FINANCIAL, TransactionLane.of(message("0400", 3, 90)));
+        assertEquals(TransactionLane.FINANCIAL, TransactionLane.of(message("0421", 3, 90)));
+        assertEquals(TransactionLane.NETWORK, TransactionLane.of(message("0800", 70)));
+        assertEquals(TransactionLane.KEY_MANAGEMENT, TransactionLane.of(message("0800", 53)));
+        // Unroutable traffic stays off the financial lane
+        assertEquals(TransactionLane.NETWORK, TransactionLane.of(message("0800")));
+        assertEquals(TransactionLane.NETWORK, TransactionLane.of(message("0100", 3)));
+        assertEquals(TransactionLane.NETWORK, TransactionLane.of(new ISOMsg()));
+    }
+
+    @Test
+    void testNames() {
+        assertEquals("tspace:default-key", TransactionLane.KEY_MANAGEMENT.spaceName("tspace:default", 0, 1));
+        assertEquals("txnmgr.key", TransactionLane.KEY_MANAGEMENT.queueName("txnmgr", 0, 1));
+        assertEquals("transactionManager-key", TransactionLane.KEY_MANAGEMENT.managerName("transactionManager", 0, 1));
+
+        assertEquals("qspace:default-financial-2", TransactionLane.FINANCIAL.spaceName("qspace:default", 2, 4));
+        assertEquals("txnmgr.financial.2", TransactionLane.FINANCIAL.queueName("txnmgr", 2, 4));
+        assertEquals("transactionManager-financial-2", TransactionLane.FINANCIAL.managerName("transactionManager", 2, 4));
+    }
+
+    @Test
+    void testSaturatedKeyLaneDoesNotDelayFinancialLane() {
+        TransactionLaneProperties properties = new TransactionLaneProperties();
+        properties.setKey(new TransactionLaneProperties.Lane(2, 200));
+        properties.setFinancial(new TransactionLaneProperties.Lane(4, 200));
+        TransactionLaneLimiters limiters = new TransactionLaneLimiters(properties);
+
+        // Key rotation campaign: every key lane permit held by a slow HSM call
+        List<TransactionConcurrencyLimiter.Permit> keyPermits = new ArrayList<>();
+        keyPermits.add(limiters.get(TransactionLane.KEY_MANAGEMENT).acquire());
+        keyPermits.add(limiters.get(TransactionLane.KEY_MANAGEMENT).acquire());
+        assertNull(limiters.get(TransactionLane.KEY_MANAGEMENT).acquire());
+
+        long start = System.nanoTime();
+        TransactionConcurrencyLimiter.Permit withdrawal = limiters.get(TransactionLane.FINANCIAL).acquire();
+        long waitedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertNotNull(withdrawal);
+        assertTrue(waitedMillis < 100, "withdrawal waited " + waitedMillis + " ms");
+        assertEquals(0, limiters.get(TransactionLane.FINANCIAL).getRejectedCount());
+        assertEquals(1, limiters.get(TransactionLane.KEY_MANAGEMENT).getRejectedCount());
+
+        withdrawal.release();
+        keyPermits.forEach(TransactionConcurrencyLimiter.Permit::release);
+    }
+}
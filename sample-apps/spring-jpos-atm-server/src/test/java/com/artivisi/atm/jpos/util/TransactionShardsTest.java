@@ -0,0 +1,146 @@
+package com.artivisi.atm.jpos.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.space.TSpace;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for TransactionManager shard routing, with a queue throughput benchmark:
+ * one shared TSpace queue vs one TSpace per shard.
+ */
+@Slf4j
+class TransactionShardsTest {
+
+    private static final int TERMINALS = 1000;
+
+    private static String terminalId(int i) {
+        return String.format("TRM-ISS001-ATM-%03d", i);
+    }
+
+    @Test
+    void testSingleShardKeepsConfiguredNames() {
+        assertEquals(0, TransactionShards.shardOf("TRM-ISS001-ATM-001", 1));
+        assertEquals("tspace:default", TransactionShards.spaceName("tspace:default", 0, 1));
+        assertEquals("txnmgr", TransactionShards.queueName("txnmgr", 0, 1));
+    }
+
+    @Test
+    void testShardNames() {
+        assertEquals("tspace:default-3", TransactionShards.spaceName("tspace:default", 3, 8));
+        assertEquals("txnmgr.3", TransactionShards.queueName("txnmgr", 3, 8));
+    }
+
+    @Test
+    void testTerminalAlwaysRoutesToSameShard() {
+        for (int i = 0; i < TERMINALS; i++) {
+            int shard = TransactionShards.shardOf(terminalId(i), 8);
+            assertTrue(shard >= 0 && shard < 8);
+            assertEquals(shard, TransactionShards.shardOf(terminalId(i), 8));
+        }
+        assertEquals(0, TransactionShards.shardOf(null, 8));
+    }
+
+    @Test
+    void testSequentialTerminalIdsSpreadEvenly() {
+        int shards = 8;
+        int[] counts = new int[shards];
+        for (int i = 0; i < TERMINALS; i++) {
+            counts[TransactionShards.shardOf(terminalId(i), shards)]++;
+        }
+
+        int expected = TERMINALS / shards;
+        for (int count : counts) {
+            assertTrue(count > expected / 2 && count < expected * 2, "uneven shards: " + java.util.Arrays.toString(counts));
+        }
+    }
+
+    @Test
+    void benchmarkSharedVsShardedQueues() throws Exception {
+        int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        int messages = 200_000;
+
+        run(1, threads, messages / 4);
+        run(threads, threads, messages / 4);
+        long shared = run(1, threads, messages);
+        long sharded = run(threads, threads, messages);
+
+        log.info("{} messages, {} producers / {} consumers on {} cores:", messages, threads, threads,
+                Runtime.getRuntime().availableProcessors());
+        log.info("  1 shared TSpace queue:  {} ms ({} msg/s)", shared, messages * 1000L / Math.max(1, shared));
+        log.info("  {} sharded TSpace queues: {} ms ({} msg/s)", threads, sharded, messages * 1000L / Math.max(1, sharded));
+
+        assertTrue(shared > 0 && sharded > 0);
+    }
+
+    /**
+     * Producers route messages by terminal to shards; each consumer drains one shard
+     * (or, with one shard, all consumers drain the shared queue).
+     *
+     * @return Elapsed milliseconds
+     */
+    private static long run(int shards, int threads, int messages) throws Exception {
+        List<TSpace<String, int[]>> spaces = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            spaces.add(new TSpace<>());
+        }
+
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+
+        for (int c = 0; c < threads; c++) {
+            int shard = c % shards;
+            String queue = TransactionShards.queueName("txnmgr", shard, shards);
+            TSpace<String, int[]> space = spaces.get(shard);
+            workers.add(Thread.ofPlatform().unstarted(() -> {
+                Map<Integer, Integer> lastSeq = new HashMap<>();
+                while (consumed.get() < messages) {
+                    int[] msg = space.in(queue, 50);
+                    if (msg == null) {
+                        continue;
+                    }
+                    Integer previous = lastSeq.put(msg[0], msg[1]);
+                    if (previous != null && previous > msg[1]) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    consumed.incrementAndGet();
+                }
+            }));
+        }
+
+        int perProducer = messages / threads;
+        for (int p = 0; p < threads; p++) {
+            int producer = p;
+            workers.add(Thread.ofPlatform().unstarted(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    // Each producer owns a disjoint set of terminals, like one server session per terminal
+                    int terminal = producer + threads * (i % (TERMINALS / threads));
+                    int shard = TransactionShards.shardOf(terminalId(terminal), shards);
+                    spaces.get(shard).out(TransactionShards.queueName("txnmgr", shard, shards), new int[]{terminal, i});
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join(60_000);
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(perProducer * threads, consumed.get());
+        if (shards == threads) {
+            // One consumer per shard: each terminal's messages are consumed in order
+            assertEquals(0, outOfOrder.get());
+        }
+        return elapsed;
+    }
+}
@@ -0,0 +1,185 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.dto.AccountSnapshot;
+import com.artivisi.atm.entity.Account;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for AccountReadModel: read-through, LRU bound, version ordering and invalidation.
+ */
+class AccountReadModelTest {
+
+    private final Map<String, AccountSnapshot> database = new ConcurrentHashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private AccountReadModel readModel(int maxSize) {
+        return new AccountReadModel(accountNumber -> {
+            loads.incrementAndGet();
+            return Optional.ofNullable(database.get(accountNumber));
+        }, maxSize);
+    }
+
+    private static AccountSnapshot account(String accountNumber, String balance, long version) {
+        return AccountSnapshot.builder()
+                .accountNumber(accountNumber)
+                .balance(new BigDecimal(balance))
+                .currency("IDR")
+                .status(Account.AccountStatus.ACTIVE)
+                .version(version)
+                .build();
+    }
+
+    @Test
+    void testLoadsOnceThenServesFromMemory() {
+        database.put("1234567890", account("1234567890", "5000000.00", 0));
+        AccountReadModel model = readModel(10);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(new BigDecimal("5000000.00"), model.get("1234567890").orElseThrow().getBalance());
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(4, model.getHitCount());
+        assertEquals(1, model.getMissCount());
+    }
+
+    @Test
+    void testUnknownAccountIsNotCached() {
+        AccountReadModel model = readModel(10);
+
+        assertTrue(model.get("0000000000").isEmpty());
+        assertTrue(model.get("0000000000").isEmpty());
+
+        assertEquals(2, loads.get());
+        assertEquals(0, model.size());
+    }
+
+    @Test
+    void testLeastRecentlyUsedAccountIsEvicted() {
+        database.put("A", account("A", "1.00", 0));
+        database.put("B", account("B", "2.00", 0));
+        database.put("C", account("C", "3.00", 0));
+        AccountReadModel model = readModel(2);
+
+        model.get("A");
+        model.get("B");
+        model.get("A");
+        model.get("C");
+
+        assertEquals(2, model.size());
+        assertEquals(1, model.getEvictionCount());
+        loads.set(0);
+        model.get("A");
+        assertEquals(0, loads.get(), "recently used account was kept");
+        model.get("B");
+        assertEquals(1, loads.get(), "least recently used account was evicted");
+    }
+
+    @Test
+    void testConcurrentLookupsStayBounded() throws Exception {
+        for (int i = 0; i < 2000; i++) {
+            String accountNumber = String.format("%010d", i);
+            database.put(accountNumber, account(accountNumber, "1.00", 0));
+        }
+        AccountReadModel model = readModel(160);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 20000; i++) {
+                        String accountNumber = String.format("%010d", (i * 7 + offset) % 2000);
+                        assertEquals(accountNumber, model.get(accountNumber).orElseThrow().getAccountNumber());
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Max size plus the 1/16 slack, plus inserts that raced with the last sweep
+        assertTrue(model.size() <= 160 + 10 + threads, "size " + model.size());
+        assertTrue(model.getEvictionCount() > 0);
+        assertEquals(8 * 20000, model.getHitCount() + model.getMissCount());
+    }
+
+    @Test
+    void testWriteThroughIsNotOverwrittenByOlderVersion() {
+        AccountReadModel model = readModel(10);
+        Account debited = account("1234567890", "4500000.00", 3).toAccount();
+
+        // No transaction active: stored immediately
+        model.update(debited);
+        model.update(account("1234567890", "5000000.00", 2).toAccount());
+
+        AccountSnapshot cached = model.get("1234567890").orElseThrow();
+        assertEquals(new BigDecimal("4500000.00"), cached.getBalance());
+        assertEquals(3, cached.getVersion());
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void testInvalidateEvictsOnlyOlderVersions() {
+        AccountReadModel model = readModel(10);
+        model.update(account("1234567890", "4500000.00", 3).toAccount());
+
+        // Our own write-through, notified back by the trigger
+        model.invalidate("1234567890", 3);
+        assertEquals(1, model.size());
+
+        // Changed by another node
+        model.invalidate("1234567890", 4);
+        assertEquals(0, model.size());
+
+        model.update(account("1234567890", "4500000.00", 5).toAccount());
+        model.invalidate("1234567890", -1);
+        assertEquals(0, model.size());
+    }
+
+    @Test
+    void testLoadRacingInvalidationIsReturnedButNotCached() {
+        AccountReadModel[] holder = new AccountReadModel[1];
+        holder[0] = new AccountReadModel(accountNumber -> {
+            loads.incrementAndGet();
+            // Another node commits while this row is being read
+            holder[0].invalidate(accountNumber, 1);
+            return Optional.of(account(accountNumber, "100.00", 0));
+        }, 10);
+
+        assertTrue(holder[0].get("1234567890").isPresent());
+        assertEquals(0, holder[0].size());
+    }
+
+    @Test
+    void testNotificationPayloadParsing() {
+        AccountReadModel model = readModel(10);
+        AccountChangeListener listener = new AccountChangeListener(model, false, "jdbc:none", "", "", 0);
+        model.update(account("1234567890", "100.00", 2).toAccount());
+        model.update(account("0987654321", "100.00", 2).toAccount());
+
+        listener.onNotification("1234567890:2");
+        assertEquals(2, model.size());
+        listener.onNotification("1234567890:3");
+        assertEquals(1, model.size());
+        listener.onNotification("0987654321");
+        assertEquals(0, model.size());
+    }
+}
@@ -0,0 +1,155 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.entity.CryptoKey;
+import com.artivisi.atm.repository.CryptoKeyRepository;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test that a key rotated on one node evicts the terminal from the key cache of the other nodes.
+ *
+ * The crypto_keys table is an in-memory repository; every saved key sends the
+ * terminal ID to the listeners of all nodes, as the V14 trigger does on commit. Rows are copied
+ * in and out, so a node only sees a change by reloading it.
+ */
+class CryptoKeyChangeListenerTest {
+
+    private static final String TERMINAL = "TRM-ISS001-ATM-001";
+    private static final String OLD_KEY = "3AC638783EF600FE5E25E8A2EE5B0D222EB810DDF64C3681DD11AFEFAF41614B";
+    private static final String NEW_KEY = "246A31D729B280DD7FCDA3BB7F187ABFA1BB0811D7EF3D68FDCA63579F3748B0";
+
+    private final Map<UUID, CryptoKey> table = new ConcurrentHashMap<>();
+    private final List<CryptoKeyChangeListener> listeners = new ArrayList<>();
+    private final CryptoKeyRepository repository = repository();
+
+    private TerminalKeyCache node() {
+        TerminalKeyCache cache = new TerminalKeyCache(repository);
+        listeners.add(new CryptoKeyChangeListener(cache, false, "jdbc:none", "", "", 0));
+        return cache;
+    }
+
+    private void notifyAll(String terminalId) {
+        listeners.forEach(listener -> listener.onNotification(terminalId));
+    }
+
+    private CryptoKeyRepository repository() {
+        return (CryptoKeyRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CryptoKeyRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findValidKeysForTerminal" -> table.values().stream()
+                            .filter(k -> k.getTerminalId().equals(args[0]) && k.getKeyType() == args[1])
+                            .filter(k -> k.getStatus() != CryptoKey.KeyStatus.EXPIRED)
+                            .sorted(Comparator.comparing(CryptoKey::getKeyVersion).reversed())
+                            .map(CryptoKeyChangeListenerTest::copy)
+                            .toList();
+                    case "findActiveKey" -> table.values().stream()
+                            .filter(k -> k.getTerminalId().equals(args[0]) && k.getKeyType() == args[1])
+                            .filter(k -> k.getStatus() == CryptoKey.KeyStatus.ACTIVE)
+                            .findFirst().map(CryptoKeyChangeListenerTest::copy);
+                    case "findByTerminalIdAndKeyTypeAndKeyVersion" -> table.values().stream()
+                            .filter(k -> k.getTerminalId().equals(args[0]) && k.getKeyType() == args[1])
+                            .filter(k -> k.getKeyVersion().equals(args[2]))
+                            .findFirst().map(CryptoKeyChangeListenerTest::copy);
+                    case "findMaxVersion" -> table.values().stream()
+                            .filter(k -> k.getTerminalId().equals(args[0]) && k.getKeyType() == args[1])
+                            .mapToInt(CryptoKey::getKeyVersion).max().orElse(0);
+                    case "save" -> {
+                        CryptoKey key = (CryptoKey) args[0];
+                        if (key.getId() == null) {
+                            key.setId(UUID.randomUUID());
+                        }
+                        table.put(key.getId(), copy(key));
+                        notifyAll(key.getTerminalId());
+                        yield key;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static CryptoKey copy(CryptoKey key) {
+        CryptoKey copy = new CryptoKey();
+        copy.setId(key.getId());
+        copy.setTerminalId(key.getTerminalId());
+        copy.setBankUuid(key.getBankUuid());
+        copy.setKeyType(key.getKeyType());
+        copy.setKeyValue(key.getKeyValue());
+        copy.setStatus(key.getStatus());
+        copy.setKeyVersion(key.getKeyVersion());
+        copy.setRotationId(key.getRotationId());
+        copy.setEffectiveFrom(key.getEffectiveFrom());
+        copy.setEffectiveUntil(key.getEffectiveUntil());
+        return copy;
+    }
+
+    private void activeKey(String keyValue) {
+        CryptoKey key = new CryptoKey();
+        key.setId(UUID.randomUUID());
+        key.setTerminalId(TERMINAL);
+        key.setBankUuid("48a9e84c-ff57-4483-bf83-b255f34a6466");
+        key.setKeyType(CryptoKey.KeyType.TSK);
+        key.setKeyValue(keyValue);
+        key.setStatus(CryptoKey.KeyStatus.ACTIVE);
+        key.setKeyVersion(1);
+        key.setEffectiveFrom(LocalDateTime.now());
+        table.put(key.getId(), key);
+    }
+
+    @Test
+    void testRotationOnOneNodeEvictsOtherNode() {
+        activeKey(OLD_KEY);
+        TerminalKeyCache adminNode = node();
+        TerminalKeyCache terminalNode = node();
+        CryptoKeyService adminKeys = new CryptoKeyService(repository, adminNode, null);
+
+        // The node holding the terminal connection has the key and its MAC key cached
+        CryptoKey cached = terminalNode.getActiveKey(TERMINAL, CryptoKey.KeyType.TSK);
+        assertEquals(OLD_KEY, cached.getKeyValue());
+        byte[] oldMacKey = terminalNode.getMacKey(cached);
+
+        adminKeys.rotateKey(TERMINAL, cached.getBankUuid(), CryptoKey.KeyType.TSK, NEW_KEY, "rotation-1");
+
+        CryptoKey active = terminalNode.getActiveKey(TERMINAL, CryptoKey.KeyType.TSK);
+        assertEquals(NEW_KEY, active.getKeyValue());
+        assertEquals(2, active.getKeyVersion());
+        // The retired key no longer verifies MACs there
+        assertNull(terminalNode.getKeyByVersion(TERMINAL, CryptoKey.KeyType.TSK, 1));
+        assertEquals(1, terminalNode.getValidKeys(TERMINAL, CryptoKey.KeyType.TSK).size());
+        assertFalse(Arrays.equals(oldMacKey, terminalNode.getMacKey(active)));
+    }
+
+    @Test
+    void testWithoutNotificationOtherNodeKeepsRetiredKey() {
+        activeKey(OLD_KEY);
+        TerminalKeyCache adminNode = node();
+        TerminalKeyCache terminalNode = new TerminalKeyCache(repository);
+        CryptoKeyService adminKeys = new CryptoKeyService(repository, adminNode, null);
+        assertEquals(OLD_KEY, terminalNode.getActiveKey(TERMINAL, CryptoKey.KeyType.TSK).getKeyValue());
+
+        adminKeys.rotateKey(TERMINAL, "48a9e84c-ff57-4483-bf83-b255f34a6466", CryptoKey.KeyType.TSK, NEW_KEY, "rotation-1");
+
+        assertEquals(NEW_KEY, adminNode.getActiveKey(TERMINAL, CryptoKey.KeyType.TSK).getKeyValue());
+        assertEquals(OLD_KEY, terminalNode.getActiveKey(TERMINAL, CryptoKey.KeyType.TSK).getKeyValue());
+    }
+
+    @Test
+    void testReconnectClearsCache() {
+        activeKey(OLD_KEY);
+        TerminalKeyCache terminalNode = node();
+        terminalNode.getValidKeys(TERMINAL, CryptoKey.KeyType.TSK);
+        table.clear();
+
+        listeners.getFirst().onConnected();
+
+        assertTrue(terminalNode.getValidKeys(TERMINAL, CryptoKey.KeyType.TSK).isEmpty());
+    }
+}
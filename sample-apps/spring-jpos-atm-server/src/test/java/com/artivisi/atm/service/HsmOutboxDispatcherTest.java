@@ -0,0 +1,288 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.HsmProperties;
+import com.artivisi.atm.entity.CryptoKey;
+import com.artivisi.atm.exception.DependencyUnavailableException;
+import com.artivisi.atm.repository.HsmOutboxRepository;
+import com.artivisi.atm.repository.HsmOutboxRepository.EventType;
+import com.artivisi.atm.repository.HsmOutboxRepository.Message;
+import com.artivisi.atm.repository.HsmOutboxRepository.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for HsmOutboxDispatcher: batch delivery, retry with backoff, idempotent redelivery, giving up,
+ * and an unavailable HSM.
+ */
+class HsmOutboxDispatcherTest {
+
+    private final AtomicLong now = new AtomicLong(1_800_000_000_000L);
+    private final InMemoryOutbox outbox = new InMemoryOutbox();
+    // Idempotency keys of the deliveries, in order
+    private final List<String> sent = new ArrayList<>();
+    // Errors to throw on the next deliveries of an idempotency key
+    private final Map<String, Deque<RuntimeException>> errors = new HashMap<>();
+
+    private HsmOutboxDispatcher dispatcher(int batchSize, int maxAttempts) {
+        HsmProperties.Outbox properties = new HsmProperties.Outbox();
+        properties.setBatchSize(batchSize);
+        properties.setMaxAttempts(maxAttempts);
+        properties.setInitialBackoff(Duration.ofSeconds(5));
+        properties.setMaxBackoff(Duration.ofMinutes(10));
+        HsmClient hsmClient = (HsmClient) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HsmClient.class}, (proxy, method, args) -> {
+                    String idempotencyKey = (String) args[1];
+                    sent.add(idempotencyKey);
+                    RuntimeException error = errors.getOrDefault(idempotencyKey, new ArrayDeque<>()).poll();
+                    if (error != null) {
+                        throw error;
+                    }
+                    return null;
+                });
+        return new HsmOutboxDispatcher(outbox, hsmClient, properties, new SimpleMeterRegistry(), now::get);
+    }
+
+    private void fail(String idempotencyKey, RuntimeException... failures) {
+        errors.computeIfAbsent(idempotencyKey, key -> new ArrayDeque<>()).addAll(List.of(failures));
+    }
+
+    private void advance(Duration duration) {
+        now.addAndGet(duration.toMillis());
+    }
+
+    @Test
+    void testDeliversInBatches() {
+        for (int i = 1; i <= 5; i++) {
+            outbox.enqueue(EventType.CONFIRMATION, "ROT-" + i, "ATM-001", CryptoKey.KeyType.TPK, "ATM_SERVER_v1.0");
+        }
+        outbox.enqueue(EventType.FAILURE, "ROT-6", "ATM-002", CryptoKey.KeyType.TSK, "Checksum mismatch");
+        // Second notification of a rotation is ignored
+        assertFalse(outbox.enqueue(EventType.CONFIRMATION, "ROT-1", "ATM-001", CryptoKey.KeyType.TPK, "again"));
+
+        HsmOutboxDispatcher dispatcher = dispatcher(2, 20);
+        dispatcher.dispatch();
+
+        assertEquals(List.of("confirmation:ROT-1", "confirmation:ROT-2", "confirmation:ROT-3",
+                "confirmation:ROT-4", "confirmation:ROT-5", "failure:ROT-6"), sent);
+        assertEquals(List.of(2, 2, 2), outbox.deliveredBatches);
+        assertEquals(0, dispatcher.pendingCount());
+
+        dispatcher.dispatch();
+        assertEquals(6, sent.size());
+    }
+
+    @Test
+    void testRetriesWithBackoffThenGivesUp() {
+        outbox.enqueue(EventType.CONFIRMATION, "ROT-1", "ATM-001", CryptoKey.KeyType.TPK, "ATM_SERVER_v1.0");
+        outbox.enqueue(EventType.CONFIRMATION, "ROT-2", "ATM-001", CryptoKey.KeyType.TSK, "ATM_SERVER_v1.0");
+        fail("confirmation:ROT-1", new ResourceAccessException("Read timed out"));
+        fail("confirmation:ROT-2", new ResourceAccessException("Connection refused"),
+                new ResourceAccessException("Connection refused"), new ResourceAccessException("Connection refused"));
+
+        HsmOutboxDispatcher dispatcher = dispatcher(50, 3);
+        dispatcher.dispatch();
+        assertEquals(2, sent.size());
+        assertEquals(2, dispatcher.pendingCount());
+
+        // Not due before the backoff
+        dispatcher.dispatch();
+        assertEquals(2, sent.size());
+
+        advance(Duration.ofSeconds(7));
+        dispatcher.dispatch();
+        assertEquals(4, sent.size());
+        assertEquals(Status.DELIVERED, outbox.status("ROT-1"));
+        assertEquals(1, dispatcher.pendingCount());
+
+        // Second failure of ROT-2 doubled the delay
+        advance(Duration.ofSeconds(7));
+        dispatcher.dispatch();
+        assertEquals(4, sent.size());
+        advance(Duration.ofSeconds(7));
+        dispatcher.dispatch();
+        assertEquals(5, sent.size());
+
+        assertEquals(Status.DEAD, outbox.status("ROT-2"));
+        assertEquals("Connection refused", outbox.row("ROT-2").lastError);
+        assertEquals(0, dispatcher.pendingCount());
+        assertEquals(1, dispatcher.deadCount());
+    }
+
+    @Test
+    void testConflictIsDeliveredAndClientErrorIsNotRetried() {
+        outbox.enqueue(EventType.CONFIRMATION, "ROT-1", "ATM-001", CryptoKey.KeyType.TPK, "ATM_SERVER_v1.0");
+        outbox.enqueue(EventType.FAILURE, "ROT-2", "ATM-001", CryptoKey.KeyType.TSK, "Checksum mismatch");
+        fail("confirmation:ROT-1", new HttpClientErrorException(HttpStatus.CONFLICT));
+        fail("failure:ROT-2", new HttpClientErrorException(HttpStatus.NOT_FOUND));
+
+        HsmOutboxDispatcher dispatcher = dispatcher(50, 20);
+        dispatcher.dispatch();
+
+        assertEquals(Status.DELIVERED, outbox.status("ROT-1"));
+        assertEquals(Status.DEAD, outbox.status("ROT-2"));
+        assertEquals(1, dispatcher.deadCount());
+    }
+
+    @Test
+    void testUnavailableHsmStopsTheBatch() {
+        for (int i = 1; i <= 3; i++) {
+            outbox.enqueue(EventType.CONFIRMATION, "ROT-" + i, "ATM-001", CryptoKey.KeyType.TPK, "ATM_SERVER_v1.0");
+        }
+        fail("confirmation:ROT-2", new DependencyUnavailableException("HSM circuit open"));
+
+        HsmOutboxDispatcher dispatcher = dispatcher(50, 20);
+        dispatcher.dispatch();
+        assertEquals(List.of("confirmation:ROT-1", "confirmation:ROT-2"), sent);
+        assertEquals(Status.DELIVERED, outbox.status("ROT-1"));
+        // Not an attempt: the rest of the batch waits for its lease
+        assertEquals(0, outbox.row("ROT-2").attempts);
+        assertEquals(2, dispatcher.pendingCount());
+
+        dispatcher.dispatch();
+        assertEquals(2, sent.size());
+        advance(Duration.ofMinutes(1));
+        dispatcher.dispatch();
+        assertEquals(4, sent.size());
+        assertEquals(0, dispatcher.pendingCount());
+    }
+
+    @Test
+    void testBackoff() {
+        Duration initial = Duration.ofSeconds(5);
+        Duration max = Duration.ofMinutes(10);
+        assertEquals(Duration.ofSeconds(5), HsmOutboxDispatcher.backoff(1, initial, max, 1.0));
+        assertEquals(Duration.ofSeconds(40), HsmOutboxDispatcher.backoff(4, initial, max, 1.0));
+        assertEquals(Duration.ofMinutes(10), HsmOutboxDispatcher.backoff(10, initial, max, 1.0));
+        assertEquals(Duration.ofMinutes(10), HsmOutboxDispatcher.backoff(100, initial, max, 1.0));
+        assertEquals(Duration.ofSeconds(6), HsmOutboxDispatcher.backoff(1, initial, max, 1.2));
+    }
+
+    /**
+     * hsm_outbox in memory, with the semantics of the SQL statements.
+     */
+    private static class InMemoryOutbox extends HsmOutboxRepository {
+
+        private final List<Row> rows = new ArrayList<>();
+        private final List<Integer> deliveredBatches = new ArrayList<>();
+
+        InMemoryOutbox() {
+            super(null);
+        }
+
+        @Override
+        public boolean enqueue(EventType eventType, String rotationId, String terminalId, CryptoKey.KeyType keyType,
+                               String detail) {
+            if (rows.stream().anyMatch(row -> row.eventType == eventType && row.rotationId.equals(rotationId))) {
+                return false;
+            }
+            Row row = new Row(rows.size() + 1L, eventType, rotationId, terminalId, keyType, detail);
+            row.nextAttemptAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(0), ZoneId.systemDefault());
+            rows.add(row);
+            return true;
+        }
+
+        @Override
+        public List<Message> claim(int limit, LocalDateTime now, LocalDateTime leaseUntil) {
+            List<Row> due = rows.stream()
+                    .filter(row -> row.status == Status.PENDING && !row.nextAttemptAt.isAfter(now))
+                    .sorted(Comparator.comparing((Row row) -> row.nextAttemptAt))
+                    .limit(limit)
+                    .toList();
+            due.forEach(row -> row.nextAttemptAt = leaseUntil);
+            return due.stream().map(Row::message).toList();
+        }
+
+        @Override
+        public void markDelivered(List<Long> ids, LocalDateTime now) {
+            if (ids.isEmpty()) {
+                return;
+            }
+            deliveredBatches.add(ids.size());
+            ids.forEach(id -> {
+                Row row = rows.get((int) (id - 1));
+                row.status = Status.DELIVERED;
+                row.attempts++;
+            });
+        }
+
+        @Override
+        public void retry(long id, LocalDateTime nextAttemptAt, String error) {
+            Row row = rows.get((int) (id - 1));
+            row.attempts++;
+            row.nextAttemptAt = nextAttemptAt;
+            row.lastError = error;
+        }
+
+        @Override
+        public void markDead(long id, String error) {
+            Row row = rows.get((int) (id - 1));
+            row.status = Status.DEAD;
+            row.attempts++;
+            row.lastError = error;
+        }
+
+        @Override
+        public Map<Status, Long> countByStatus() {
+            Map<Status, Long> counts = new EnumMap<>(Status.class);
+            rows.stream()
+                    .filter(row -> row.status != Status.DELIVERED)
+                    .forEach(row -> counts.merge(row.status, 1L, Long::sum));
+            return counts;
+        }
+
+        Row row(String rotationId) {
+            return rows.stream().filter(row -> row.rotationId.equals(rotationId)).findFirst().orElseThrow();
+        }
+
+        Status status(String rotationId) {
+            return row(rotationId).status;
+        }
+    }
+
+    private static class Row {
+        private final long id;
+        private final EventType eventType;
+        private final String rotationId;
+        private final String terminalId;
+        private final CryptoKey.KeyType keyType;
+        private final String detail;
+        private Status status = Status.PENDING;
+        private int attempts;
+        private LocalDateTime nextAttemptAt;
+        private String lastError;
+
+        Row(long id, EventType eventType, String rotationId, String terminalId, CryptoKey.KeyType keyType,
+            String detail) {
+            this.id = id;
+            this.eventType = eventType;
+            this.rotationId = rotationId;
+            this.terminalId = terminalId;
+            this.keyType = keyType;
+            this.detail = detail;
+        }
+
+        Message message() {
+            return new Message(id, eventType, rotationId, terminalId, keyType, detail, attempts);
+        }
+    }
+}
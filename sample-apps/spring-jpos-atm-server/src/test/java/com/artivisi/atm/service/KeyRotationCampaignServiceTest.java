@@ -0,0 +1,309 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.KeyRotationCampaignProperties;
+import com.artivisi.atm.entity.CryptoKey;
+import com.artivisi.atm.entity.KeyRotationCampaign;
+import com.artivisi.atm.entity.KeyRotationCampaign.CampaignStatus;
+import com.artivisi.atm.entity.KeyRotationCampaignTerminal;
+import com.artivisi.atm.entity.KeyRotationCampaignTerminal.TerminalStatus;
+import com.artivisi.atm.repository.KeyRotationCampaignRepository;
+import com.artivisi.atm.repository.KeyRotationCampaignTerminalRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the KeyRotationCampaignService state machine: terminals not connected stay PENDING
+ * until they reconnect, timeouts, and conditional transitions that a late step cannot overwrite.
+ */
+class KeyRotationCampaignServiceTest {
+
+    private static final String ATM_1 = "TRM-ISS001-ATM-001";
+    private static final String ATM_2 = "TRM-ISS001-ATM-002";
+
+    private final Map<UUID, KeyRotationCampaign> campaigns = new ConcurrentHashMap<>();
+    private final Map<Long, KeyRotationCampaignTerminal> entries = new ConcurrentHashMap<>();
+    private final Set<String> connected = ConcurrentHashMap.newKeySet();
+    private final List<String> notified = new ArrayList<>();
+    // Runs once when the next connection check is made (stands in for a concurrent dispatcher)
+    private final AtomicReference<Runnable> beforeConnectionCheck = new AtomicReference<>();
+
+    private final KeyRotationCampaignService service = service();
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private KeyRotationCampaignService service() {
+        KeyRotationCampaignProperties properties = new KeyRotationCampaignProperties();
+        properties.setResponseTimeout(Duration.ofMinutes(10));
+        properties.setUnreachableTimeout(Duration.ofHours(24));
+        ServerInitiatedKeyRotationService notifier = new ServerInitiatedKeyRotationService(null) {
+            @Override
+            public boolean isTerminalConnected(String terminalId) {
+                Runnable concurrent = beforeConnectionCheck.getAndSet(null);
+                if (concurrent != null) {
+                    concurrent.run();
+                }
+                return connected.contains(terminalId);
+            }
+
+            @Override
+            public boolean initiateKeyRotation(String terminalId, CryptoKey.KeyType keyType) {
+                synchronized (notified) {
+                    notified.add(terminalId);
+                }
+                return true;
+            }
+        };
+        return new KeyRotationCampaignService(campaignRepository(), terminalRepository(), null, notifier, properties);
+    }
+
+    private UUID campaign(CampaignStatus status, String... terminalIds) {
+        KeyRotationCampaign campaign = new KeyRotationCampaign();
+        campaign.setId(UUID.randomUUID());
+        campaign.setKeyType(CryptoKey.KeyType.TSK);
+        campaign.setSelectionType(KeyRotationCampaign.SelectionType.LIST);
+        campaign.setStatus(status);
+        campaign.setRatePerSecond(100);
+        campaign.setMaxConcurrency(4);
+        campaign.setTotalTerminals(terminalIds.length);
+        campaigns.put(campaign.getId(), campaign);
+        for (String terminalId : terminalIds) {
+            KeyRotationCampaignTerminal entry = new KeyRotationCampaignTerminal();
+            entry.setId((long) entries.size() + 1);
+            entry.setCampaignId(campaign.getId());
+            entry.setTerminalId(terminalId);
+            entry.setStatus(TerminalStatus.PENDING);
+            entry.setAttempts(0);
+            entry.setUpdatedAt(LocalDateTime.now());
+            entries.put(entry.getId(), entry);
+        }
+        return campaign.getId();
+    }
+
+    private KeyRotationCampaignTerminal entry(String terminalId) {
+        return entries.values().stream().filter(e -> e.getTerminalId().equals(terminalId)).findFirst().orElseThrow();
+    }
+
+    private CampaignStatus status(UUID campaignId) {
+        return campaigns.get(campaignId).getStatus();
+    }
+
+    private void backdate(String terminalId, Duration age) {
+        KeyRotationCampaignTerminal entry = entry(terminalId);
+        entry.setUpdatedAt(entry.getUpdatedAt().minus(age));
+    }
+
+    @Test
+    void testUnreachableTerminalStaysPendingUntilItReconnects() {
+        connected.add(ATM_1);
+        UUID campaignId = campaign(CampaignStatus.RUNNING, ATM_1, ATM_2);
+
+        service.dispatch(campaignId);
+        assertEquals(TerminalStatus.NOTIFIED, entry(ATM_1).getStatus());
+        assertEquals(TerminalStatus.PENDING, entry(ATM_2).getStatus());
+        assertNull(entry(ATM_2).getLastError());
+        assertEquals(CampaignStatus.RUNNING, status(campaignId));
+
+        // Reconnects: notified on the next pass, previously notified terminals are not notified again
+        connected.add(ATM_2);
+        service.dispatch(campaignId);
+        assertEquals(TerminalStatus.NOTIFIED, entry(ATM_2).getStatus());
+        assertEquals(List.of(ATM_1, ATM_2), notified);
+        assertEquals(1, entry(ATM_1).getAttempts());
+        assertEquals(CampaignStatus.DISPATCHED, status(campaignId));
+
+        service.onKeyRequested(ATM_1, CryptoKey.KeyType.TSK);
+        assertEquals(TerminalStatus.REQUESTED, entry(ATM_1).getStatus());
+        service.onKeyConfirmed(ATM_1, CryptoKey.KeyType.TSK);
+        service.onKeyConfirmed(ATM_2, CryptoKey.KeyType.TSK);
+        assertEquals(TerminalStatus.CONFIRMED, entry(ATM_1).getStatus());
+        assertEquals(TerminalStatus.CONFIRMED, entry(ATM_2).getStatus());
+        assertEquals(CampaignStatus.COMPLETED, status(campaignId));
+    }
+
+    @Test
+    void testUnansweredNotificationTimesOut() {
+        connected.add(ATM_1);
+        connected.add(ATM_2);
+        UUID campaignId = campaign(CampaignStatus.RUNNING, ATM_1, ATM_2);
+        service.dispatch(campaignId);
+        service.onKeyRequested(ATM_2, CryptoKey.KeyType.TSK);
+
+        // Not yet timed out
+        service.sweep();
+        assertEquals(TerminalStatus.NOTIFIED, entry(ATM_1).getStatus());
+        assertEquals(CampaignStatus.DISPATCHED, status(campaignId));
+
+        backdate(ATM_1, Duration.ofMinutes(11));
+        backdate(ATM_2, Duration.ofMinutes(11));
+        service.sweep();
+        assertEquals(TerminalStatus.FAILED, entry(ATM_1).getStatus());
+        assertEquals(TerminalStatus.FAILED, entry(ATM_2).getStatus());
+        assertTrue(entry(ATM_1).getLastError().startsWith("No response from terminal"));
+        assertEquals(CampaignStatus.COMPLETED, status(campaignId));
+    }
+
+    @Test
+    void testLateStepDoesNotOverwriteTimeout() {
+        connected.add(ATM_1);
+        connected.add(ATM_2);
+        UUID campaignId = campaign(CampaignStatus.RUNNING, ATM_1, ATM_2);
+        service.dispatch(campaignId);
+
+        backdate(ATM_1, Duration.ofMinutes(11));
+        service.sweep();
+        assertEquals(TerminalStatus.FAILED, entry(ATM_1).getStatus());
+        assertEquals(CampaignStatus.DISPATCHED, status(campaignId));
+
+        // Confirmation of the timed-out terminal arrives afterwards: stays FAILED
+        service.onKeyConfirmed(ATM_1, CryptoKey.KeyType.TSK);
+        assertEquals(TerminalStatus.FAILED, entry(ATM_1).getStatus());
+    }
+
+    @Test
+    void testConcurrentDispatchersNotifyOnce() {
+        connected.add(ATM_1);
+        UUID campaignId = campaign(CampaignStatus.RUNNING, ATM_1);
+
+        // Another dispatcher (e.g., on another node) notifies the terminal after this one read it PENDING
+        beforeConnectionCheck.set(() -> service.dispatch(campaignId));
+        service.dispatch(campaignId);
+        assertEquals(List.of(ATM_1), notified);
+        assertEquals(1, entry(ATM_1).getAttempts());
+        assertEquals(TerminalStatus.NOTIFIED, entry(ATM_1).getStatus());
+    }
+
+    @Test
+    void testTerminalThatNeverConnectsFails() throws Exception {
+        connected.add(ATM_1);
+        UUID campaignId = campaign(CampaignStatus.RUNNING, ATM_1, ATM_2);
+        service.dispatch(campaignId);
+        service.onKeyConfirmed(ATM_1, CryptoKey.KeyType.TSK);
+        assertEquals(CampaignStatus.RUNNING, status(campaignId));
+
+        backdate(ATM_2, Duration.ofHours(25));
+        service.sweep();
+        assertEquals(TerminalStatus.FAILED, entry(ATM_2).getStatus());
+        assertTrue(entry(ATM_2).getLastError().startsWith("Terminal not connected"));
+
+        // The sweep dispatches the RUNNING campaign again, which finds no PENDING terminal left
+        long deadline = System.currentTimeMillis() + 5000;
+        while (status(campaignId) != CampaignStatus.COMPLETED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(CampaignStatus.COMPLETED, status(campaignId));
+    }
+
+    /**
+     * KeyRotationCampaignRepository in memory.
+     */
+    private KeyRotationCampaignRepository campaignRepository() {
+        return (KeyRotationCampaignRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{KeyRotationCampaignRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findById" -> Optional.ofNullable(campaigns.get((UUID) args[0]));
+                    case "save" -> args[0];
+                    case "findByStatusIn" -> campaigns.values().stream()
+                            .filter(c -> ((Collection<?>) args[0]).contains(c.getStatus()))
+                            .toList();
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * KeyRotationCampaignTerminalRepository in memory, with the semantics of the JPQL statements.
+     */
+    private KeyRotationCampaignTerminalRepository terminalRepository() {
+        return (KeyRotationCampaignTerminalRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{KeyRotationCampaignTerminalRepository.class}, (proxy, method, args) -> {
+                    synchronized (entries) {
+                        return switch (method.getName()) {
+                            case "findByCampaignIdAndStatusOrderById" -> entries.values().stream()
+                                    .filter(e -> e.getCampaignId().equals(args[0]) && e.getStatus() == args[1])
+                                    .sorted((a, b) -> Long.compare(a.getId(), b.getId()))
+                                    .map(KeyRotationCampaignServiceTest::copy)
+                                    .toList();
+                            case "countByCampaignIdAndStatusIn" -> entries.values().stream()
+                                    .filter(e -> e.getCampaignId().equals(args[0])
+                                            && ((Collection<?>) args[1]).contains(e.getStatus()))
+                                    .count();
+                            case "findInProgress" -> entries.values().stream()
+                                    .filter(e -> e.getTerminalId().equals(args[0])
+                                            && campaigns.get(e.getCampaignId()).getKeyType() == args[1]
+                                            && Set.of(CampaignStatus.RUNNING, CampaignStatus.DISPATCHED)
+                                                    .contains(campaigns.get(e.getCampaignId()).getStatus())
+                                            && ((Collection<?>) args[2]).contains(e.getStatus()))
+                                    .map(KeyRotationCampaignServiceTest::copy)
+                                    .toList();
+                            case "markNotified" -> {
+                                KeyRotationCampaignTerminal entry = entries.get((Long) args[0]);
+                                if (entry.getStatus() != TerminalStatus.PENDING) {
+                                    yield 0;
+                                }
+                                entry.setStatus(TerminalStatus.NOTIFIED);
+                                entry.setAttempts(entry.getAttempts() + 1);
+                                entry.setNotifiedAt((LocalDateTime) args[1]);
+                                entry.setLastError(null);
+                                entry.setUpdatedAt((LocalDateTime) args[1]);
+                                yield 1;
+                            }
+                            case "transition" -> {
+                                KeyRotationCampaignTerminal entry = entries.get((Long) args[0]);
+                                if (!((Collection<?>) args[1]).contains(entry.getStatus())) {
+                                    yield 0;
+                                }
+                                entry.setStatus((TerminalStatus) args[2]);
+                                entry.setLastError((String) args[3]);
+                                entry.setUpdatedAt(LocalDateTime.now());
+                                yield 1;
+                            }
+                            case "failStale" -> {
+                                int failed = 0;
+                                for (KeyRotationCampaignTerminal entry : entries.values()) {
+                                    if (entry.getCampaignId().equals(args[0])
+                                            && ((Collection<?>) args[1]).contains(entry.getStatus())
+                                            && entry.getUpdatedAt().isBefore((LocalDateTime) args[2])) {
+                                        entry.setStatus(TerminalStatus.FAILED);
+                                        entry.setLastError((String) args[3]);
+                                        entry.setUpdatedAt(LocalDateTime.now());
+                                        failed++;
+                                    }
+                                }
+                                yield failed;
+                            }
+                            default -> throw new UnsupportedOperationException(method.getName());
+                        };
+                    }
+                });
+    }
+
+    // Entities are detached from the store, as JPA returns them outside a transaction
+    private static KeyRotationCampaignTerminal copy(KeyRotationCampaignTerminal entry) {
+        KeyRotationCampaignTerminal copy = new KeyRotationCampaignTerminal();
+        copy.setId(entry.getId());
+        copy.setCampaignId(entry.getCampaignId());
+        copy.setTerminalId(entry.getTerminalId());
+        copy.setStatus(entry.getStatus());
+        copy.setAttempts(entry.getAttempts());
+        copy.setLastError(entry.getLastError());
+        copy.setNotifiedAt(entry.getNotifiedAt());
+        copy.setUpdatedAt(entry.getUpdatedAt());
+        return copy;
+    }
+}
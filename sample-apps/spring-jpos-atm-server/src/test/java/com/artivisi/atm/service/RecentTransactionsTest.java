@@ -0,0 +1,145 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.dto.AccountSnapshot;
+import com.artivisi.atm.dto.StatementEntry;
+import com.artivisi.atm.entity.Account;
+import com.artivisi.atm.entity.Transaction;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for RecentTransactions: read-through, ring bound, write-through of debits and versioning.
+ */
+class RecentTransactionsTest {
+
+    private final List<StatementEntry> journal = new ArrayList<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private RecentTransactions recentTransactions(int entries, int maxAccounts) {
+        return new RecentTransactions((accountId, limit) -> {
+            loads.incrementAndGet();
+            List<StatementEntry> newestFirst = new ArrayList<>(journal).reversed();
+            return newestFirst.subList(0, Math.min(limit, newestFirst.size()));
+        }, entries, maxAccounts);
+    }
+
+    private static AccountSnapshot account(long id, long version) {
+        return AccountSnapshot.builder()
+                .id(id)
+                .accountNumber("ACC" + id)
+                .balance(new BigDecimal("1000.00"))
+                .status(Account.AccountStatus.ACTIVE)
+                .version(version)
+                .build();
+    }
+
+    private StatementEntry debit(long journalId) {
+        StatementEntry entry = StatementEntry.builder()
+                .journalId(journalId)
+                .transactionDate(LocalDateTime.of(2026, 10, 18, 10, 0).plusMinutes(journalId))
+                .transactionType(Transaction.TransactionType.WITHDRAWAL)
+                .amount(new BigDecimal("10.00"))
+                .balanceAfter(new BigDecimal("1000.00"))
+                .build();
+        journal.add(entry);
+        return entry;
+    }
+
+    private static List<Long> ids(List<StatementEntry> entries) {
+        return entries.stream().map(StatementEntry::getJournalId).toList();
+    }
+
+    @Test
+    void testLoadsOncePerAccountThenServesFromMemory() {
+        for (long id = 1; id <= 3; id++) {
+            debit(id);
+        }
+        RecentTransactions recent = recentTransactions(5, 10);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(List.of(3L, 2L, 1L), ids(recent.get(account(1, 3))));
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(4, recent.getHitCount());
+        assertEquals(1, recent.getMissCount());
+    }
+
+    @Test
+    void testDebitsAreAppendedAndRingIsBounded() {
+        for (long id = 1; id <= 3; id++) {
+            debit(id);
+        }
+        RecentTransactions recent = recentTransactions(3, 10);
+        recent.get(account(1, 3));
+
+        recent.record(account(1, 4), debit(4));
+        recent.record(account(1, 5), debit(5));
+
+        assertEquals(List.of(5L, 4L, 3L), ids(recent.get(account(1, 5))));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testDebitBeforeFirstLoadIsNotCached() {
+        RecentTransactions recent = recentTransactions(3, 10);
+
+        recent.record(account(1, 1), debit(1));
+
+        assertEquals(0, recent.size());
+        assertEquals(List.of(1L), ids(recent.get(account(1, 1))));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testRingBehindAccountIsReloaded() {
+        debit(1);
+        RecentTransactions recent = recentTransactions(3, 10);
+        recent.get(account(1, 1));
+
+        // Debit by another node: the read model has version 2, the ring still has version 1
+        debit(2);
+        assertEquals(List.of(2L, 1L), ids(recent.get(account(1, 2))));
+        assertEquals(2, loads.get());
+
+        // A later debit by this node after a missed version drops the ring
+        debit(3);
+        recent.record(account(1, 4), debit(4));
+        assertEquals(0, recent.size());
+    }
+
+    @Test
+    void testDebitAlreadyLoadedIsNotDuplicated() {
+        debit(1);
+        StatementEntry second = debit(2);
+        RecentTransactions recent = recentTransactions(3, 10);
+        // Loaded after the debit committed, but with the version read before it
+        recent.get(account(1, 1));
+
+        recent.record(account(1, 2), second);
+
+        assertEquals(List.of(2L, 1L), ids(recent.get(account(1, 2))));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testLeastRecentlyUsedAccountIsEvicted() {
+        RecentTransactions recent = recentTransactions(3, 2);
+
+        recent.get(account(1, 0));
+        recent.get(account(2, 0));
+        recent.get(account(1, 0));
+        recent.get(account(3, 0));
+
+        assertEquals(2, recent.size());
+        recent.get(account(1, 0));
+        assertEquals(3, loads.get());
+    }
+}
@@ -0,0 +1,66 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.SettlementProperties;
+import com.artivisi.atm.exception.SettlementInProgressException;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test that a node runs one settlement at a time, so a second run cannot exhaust the batch pool.
+ */
+class SettlementServiceTest {
+
+    @Test
+    void testSecondRunOnNodeIsRefusedBeforeTakingConnection() throws Exception {
+        CountDownLatch firstRunHasConnection = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger connections = new AtomicInteger();
+
+        // The batch pool: the first run blocks while holding its lock connection
+        DataSource batchDataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("getConnection")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    connections.incrementAndGet();
+                    firstRunHasConnection.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                    throw new SQLException("database unavailable");
+                });
+        SettlementService service = new SettlementService(null, batchDataSource, null, new SettlementProperties());
+
+        CompletableFuture<Object> firstRun = CompletableFuture.supplyAsync(() -> {
+            try {
+                return service.settle(LocalDate.of(2026, 10, 17));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(firstRunHasConnection.await(10, TimeUnit.SECONDS));
+
+        // A different date does not contend for the advisory lock, but the node is busy
+        SettlementInProgressException refused = assertThrows(SettlementInProgressException.class,
+                () -> service.settle(LocalDate.of(2026, 10, 18)));
+        assertTrue(refused.getMessage().contains("this node"));
+        assertEquals(1, connections.get());
+
+        release.countDown();
+        ExecutionException failed = assertThrows(ExecutionException.class, firstRun::get);
+        assertInstanceOf(IllegalStateException.class, failed.getCause());
+
+        // The gate is released when the run ends
+        assertThrows(IllegalStateException.class, () -> service.settle(LocalDate.of(2026, 10, 18)));
+        assertEquals(2, connections.get());
+    }
+}
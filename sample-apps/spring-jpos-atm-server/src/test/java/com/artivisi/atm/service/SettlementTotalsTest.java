@@ -0,0 +1,101 @@
+package com.artivisi.atm.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for settlement aggregation, reconciliation and the settlement file.
+ */
+@Slf4j
+class SettlementTotalsTest {
+
+    private static BigDecimal amount(String value) {
+        return new BigDecimal(value);
+    }
+
+    @Test
+    void testAggregatesPerInstitutionTerminalAndType() {
+        SettlementTotals totals = new SettlementTotals();
+        totals.add("TRM-ISS001", "ATM-002", "WITHDRAWAL", amount("100.00"), amount("1000.00"), amount("900.00"));
+        totals.add("TRM-ISS001", "ATM-001", "WITHDRAWAL", amount("50.00"), amount("900.00"), amount("850.00"));
+        totals.add("TRM-ISS001", "ATM-001", "WITHDRAWAL", amount("25.00"), amount("850.00"), amount("825.00"));
+        totals.add(null, null, "WITHDRAWAL", amount("10.00"), amount("825.00"), amount("815.00"));
+
+        List<SettlementTotals.Total> result = totals.totals();
+
+        assertEquals(4, totals.getRows());
+        assertEquals(0, totals.getExceptions());
+        assertEquals(3, result.size());
+        assertEquals(new SettlementTotals.Key("-", "-", "WITHDRAWAL"), result.get(0).key());
+        assertEquals(new SettlementTotals.Key("TRM-ISS001", "ATM-001", "WITHDRAWAL"), result.get(1).key());
+        assertEquals(2, result.get(1).count());
+        assertEquals(amount("75.00"), result.get(1).amount());
+    }
+
+    @Test
+    void testReconciliation() {
+        assertTrue(SettlementTotals.reconciles("WITHDRAWAL", amount("100.00"), amount("500.00"), amount("400.00")));
+        assertFalse(SettlementTotals.reconciles("WITHDRAWAL", amount("100.00"), amount("500.00"), amount("500.00")));
+        assertTrue(SettlementTotals.reconciles("DEPOSIT", amount("100.00"), amount("500.00"), amount("600.0")));
+        assertTrue(SettlementTotals.reconciles("BALANCE_INQUIRY", amount("0.00"), amount("500.00"), amount("500.00")));
+
+        SettlementTotals totals = new SettlementTotals();
+        assertFalse(totals.add("TRM-ISS001", "ATM-001", "WITHDRAWAL", amount("100.00"), amount("500.00"), amount("450.00")));
+        assertEquals(1, totals.getExceptions());
+    }
+
+    @Test
+    void testSettlementFile(@TempDir Path directory) throws Exception {
+        SettlementTotals totals = new SettlementTotals();
+        totals.add("TRM-ISS001", "ATM-001", "WITHDRAWAL", amount("100.00"), amount("1000.00"), amount("900.00"));
+        totals.add("TRM-ISS001", "ATM-002", "WITHDRAWAL", amount("50.00"), amount("900.00"), amount("850.00"));
+        totals.add("TRM-ISS002", "ATM-001", "DEPOSIT", amount("20.00"), amount("850.00"), amount("870.00"));
+        Path file = directory.resolve("settlement-20261018.csv");
+
+        SettlementTotals.writeFile(file, LocalDate.of(2026, 10, 18), totals.totals());
+
+        List<String> lines = Files.readAllLines(file);
+        assertTrue(lines.get(0).startsWith("H,20261018,"));
+        assertEquals(List.of(
+                "D,TRM-ISS001,ATM-001,WITHDRAWAL,1,100.00",
+                "D,TRM-ISS001,ATM-002,WITHDRAWAL,1,50.00",
+                "I,TRM-ISS001,,,2,150.00",
+                "D,TRM-ISS002,ATM-001,DEPOSIT,1,20.00",
+                "I,TRM-ISS002,,,1,20.00",
+                "T,,,DEPOSIT,1,20.00",
+                "T,,,WITHDRAWAL,2,150.00",
+                "Z,,,,3,170.00"), lines.subList(1, lines.size()));
+        assertFalse(Files.exists(directory.resolve("settlement-20261018.csv.part")));
+    }
+
+    @Test
+    void benchmarkAggregationMemoryIsBoundedByTerminals() {
+        // 2 million rows over 500 terminals of 10 institutions
+        int rows = 2_000_000;
+        SettlementTotals totals = new SettlementTotals();
+        BigDecimal amount = amount("100.00");
+        BigDecimal before = amount("1000.00");
+        BigDecimal after = amount("900.00");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            int terminal = i % 500;
+            totals.add("TRM-ISS" + (terminal % 10), "ATM-" + terminal, "WITHDRAWAL", amount, before, after);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        log.info("Aggregated {} rows into {} totals in {} ms ({} rows/s)", rows, totals.totals().size(),
+                elapsedMillis, rows * 1000L / Math.max(1, elapsedMillis));
+        assertEquals(500, totals.totals().size());
+        assertEquals(rows, totals.getRows());
+    }
+}
@@ -0,0 +1,257 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.StandInProperties;
+import com.artivisi.atm.dto.AccountSnapshot;
+import com.artivisi.atm.dto.WithdrawalRequest;
+import com.artivisi.atm.dto.WithdrawalResponse;
+import com.artivisi.atm.entity.Account;
+import com.artivisi.atm.exception.DependencyUnavailableException;
+import com.artivisi.atm.exception.InsufficientBalanceException;
+import com.artivisi.atm.exception.VelocityLimitExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for StandInService: eligibility, available balance, card exposure, durability of the journal
+ * across restarts, replay and cancellation.
+ */
+class StandInServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final AtomicLong now = new AtomicLong(1_800_000_000_000L);
+    private final AccountReadModel readModel = new AccountReadModel(accountNumber -> Optional.empty(), 100);
+    // References posted to the ledger; the unique constraint rejects a second post
+    private final Set<String> ledger = new HashSet<>();
+    private final List<String> posts = new ArrayList<>();
+    private final AtomicBoolean databaseDown = new AtomicBoolean();
+
+    private StandInService service() throws Exception {
+        StandInProperties properties = new StandInProperties();
+        properties.setEnabled(true);
+        properties.setFloorLimit(new BigDecimal("500000"));
+        properties.setCard(new StandInProperties.Exposure(new BigDecimal("1000000"), 3));
+        properties.setExposureWindow(Duration.ofHours(24));
+        properties.setDirectory(directory.toString());
+        StandInService service = new StandInService(properties, readModel, this::post, new SimpleMeterRegistry(), now::get);
+        service.load();
+        return service;
+    }
+
+    private WithdrawalResponse post(WithdrawalRequest request, String referenceNumber, LocalDateTime timestamp) {
+        if (databaseDown.get()) {
+            throw new DependencyUnavailableException("Database circuit open");
+        }
+        if (!ledger.add(referenceNumber)) {
+            throw new DuplicateKeyException("Duplicate reference " + referenceNumber);
+        }
+        posts.add(referenceNumber);
+        if ("9999999999".equals(request.getAccountNumber())) {
+            throw new InsufficientBalanceException("Insufficient balance");
+        }
+        return WithdrawalResponse.builder().referenceNumber(referenceNumber).journalId((long) posts.size()).build();
+    }
+
+    private void account(String accountNumber, String balance) {
+        readModel.update(AccountSnapshot.builder()
+                .accountNumber(accountNumber)
+                .balance(new BigDecimal(balance))
+                .currency("IDR")
+                .status(Account.AccountStatus.ACTIVE)
+                .version(1L)
+                .build());
+    }
+
+    private static WithdrawalRequest withdrawal(String accountNumber, String amount, String cardHash, String stan) {
+        return WithdrawalRequest.builder()
+                .accountNumber(accountNumber)
+                .amount(new BigDecimal(amount))
+                .cardHash(cardHash)
+                .institutionId("INST01")
+                .terminalId("ATM-001")
+                .stan(stan)
+                .transmissionDateTime("1019103000")
+                .build();
+    }
+
+    private static BigDecimal available(StandInService service, String accountNumber, String balance) {
+        return service.availableBalance(AccountSnapshot.builder()
+                .accountNumber(accountNumber).balance(new BigDecimal(balance)).build());
+    }
+
+    @Test
+    void testEligibility() throws Exception {
+        StandInService service = service();
+        assertTrue(service.eligible("310000", null));
+        assertTrue(service.eligible("010000", new BigDecimal("500000")));
+        assertFalse(service.eligible("010000", new BigDecimal("500000.01")));
+        assertFalse(service.eligible("010000", null));
+        assertFalse(service.eligible("400000", new BigDecimal("100")));
+    }
+
+    @Test
+    void testApprovalsReserveBalanceAndExposure() throws Exception {
+        account("1234567890", "600000");
+        StandInService service = service();
+
+        WithdrawalResponse first = service.withdraw(withdrawal("1234567890", "400000", "CARD1", "000001"));
+        assertNull(first.getJournalId());
+        assertEquals(new BigDecimal("200000"), first.getBalanceAfter());
+        assertEquals(new BigDecimal("200000"), available(service, "1234567890", "600000"));
+
+        // Not covered once the first approval is deducted
+        assertThrows(InsufficientBalanceException.class,
+                () -> service.withdraw(withdrawal("1234567890", "300000", "CARD1", "000002")));
+
+        // Exposure of the card: the declined withdrawal did not count
+        account("2222222222", "5000000");
+        service.withdraw(withdrawal("2222222222", "100000", "CARD1", "000003"));
+        service.withdraw(withdrawal("2222222222", "100000", "CARD1", "000004"));
+        VelocityLimitExceededException exceeded = assertThrows(VelocityLimitExceededException.class,
+                () -> service.withdraw(withdrawal("2222222222", "100000", "CARD1", "000005")));
+        assertEquals(VelocityLimitExceededException.Limit.COUNT, exceeded.getLimit());
+
+        // Only cached accounts can be decided
+        assertThrows(DependencyUnavailableException.class,
+                () -> service.withdraw(withdrawal("3333333333", "100000", "CARD2", "000006")));
+    }
+
+    @Test
+    void testJournalSurvivesRestartAndReplaysOnce() throws Exception {
+        account("1234567890", "600000");
+        account("9999999999", "600000");
+        StandInService service = service();
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000001"));
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000002"));
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000003"));
+        service.withdraw(withdrawal("9999999999", "100000", "CARD2", "000004"));
+
+        // Database still down: nothing posted
+        databaseDown.set(true);
+        service.replay();
+        assertEquals(4, service.pendingCount());
+        service.close();
+
+        // Restart: pending approvals, available balance and exposure come back from the journal
+        StandInService restarted = service();
+        assertEquals(4, restarted.pendingCount());
+        assertEquals(new BigDecimal("300000"), available(restarted, "1234567890", "600000"));
+        assertThrows(VelocityLimitExceededException.class,
+                () -> restarted.withdraw(withdrawal("1234567890", "100000", "CARD1", "000005")));
+
+        // Posted in order; the ledger declines the one it cannot cover
+        databaseDown.set(false);
+        restarted.replay();
+        assertEquals(0, restarted.pendingCount());
+        assertEquals(4, posts.size());
+        assertEquals(new BigDecimal("600000"), available(restarted, "1234567890", "600000"));
+        restarted.close();
+
+        // Outcomes were journaled: nothing posted again after another restart
+        StandInService again = service();
+        again.replay();
+        assertEquals(0, again.pendingCount());
+        assertEquals(4, posts.size());
+        again.close();
+    }
+
+    @Test
+    void testReplayAfterLostOutcomeDoesNotDebitTwice() throws Exception {
+        account("1234567890", "600000");
+        StandInService service = service();
+        WithdrawalResponse approval = service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000001"));
+        service.close();
+
+        // Posted by the previous run, which crashed before journaling the outcome
+        ledger.add(approval.getReferenceNumber());
+        StandInService restarted = service();
+        restarted.replay();
+        assertEquals(0, restarted.pendingCount());
+        assertTrue(posts.isEmpty());
+        restarted.close();
+    }
+
+    @Test
+    void testCancelBeforeAndAfterPosting() throws Exception {
+        account("1234567890", "600000");
+        StandInService service = service();
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000001"));
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000002"));
+
+        // Cancelled before posting: never debited, balance and exposure released
+        assertTrue(service.cancel("INST01", "ATM-001", "000001", "1019103000").isEmpty());
+        assertEquals(new BigDecimal("500000"), available(service, "1234567890", "600000"));
+        assertTrue(service.cancel("INST01", "ATM-001", "000001", "1019103000").isEmpty());
+
+        service.replay();
+        assertEquals(1, posts.size());
+
+        // Posted: to be credited on the ledger
+        Optional<StandInService.Posted> posted = service.cancel("INST01", "ATM-001", "000002", "1019103000");
+        assertTrue(posted.isPresent());
+        assertEquals(1L, posted.get().journalId());
+        assertTrue(service.cancel("INST01", "ATM-001", "000009", "1019103000").isEmpty());
+
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000003"));
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000004"));
+        service.close();
+    }
+
+    @Test
+    void testFinishedApprovalsAreCompactedAfterTheWindow() throws Exception {
+        account("1234567890", "600000");
+        StandInService service = service();
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000001"));
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000002"));
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000003"));
+        service.replay();
+
+        now.addAndGet(Duration.ofHours(25).toMillis());
+        service.replay();
+        // Compacted away, and the card's exposure is back
+        assertTrue(service.cancel("INST01", "ATM-001", "000001", "1019103000").isEmpty());
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000004"));
+        service.close();
+
+        StandInService restarted = service();
+        assertEquals(1, restarted.pendingCount());
+        restarted.close();
+    }
+
+    @Test
+    void testTornRecordIsSkipped() throws Exception {
+        account("1234567890", "600000");
+        StandInService service = service();
+        service.withdraw(withdrawal("1234567890", "100000", "CARD1", "000001"));
+        service.close();
+
+        // Crash in the middle of an append
+        Files.writeString(directory.resolve("stand-in.journal"), "A\tREF\t2027-01-15T08:00",
+                StandardOpenOption.APPEND);
+        StandInService restarted = service();
+        assertEquals(1, restarted.pendingCount());
+        restarted.withdraw(withdrawal("1234567890", "100000", "CARD1", "000002"));
+        restarted.close();
+
+        assertEquals(2, service().pendingCount());
+    }
+}
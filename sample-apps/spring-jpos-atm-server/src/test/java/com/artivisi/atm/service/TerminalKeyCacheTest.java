@@ -0,0 +1,115 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.entity.CryptoKey;
+import com.artivisi.atm.repository.CryptoKeyRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for TerminalKeyCache: keys and derived MAC keys are loaded once, and eviction reloads them.
+ */
+class TerminalKeyCacheTest {
+
+    private static final String TERMINAL = "TRM-ISS001-ATM-001";
+    private static final String OTHER_TERMINAL = "TRM-ISS001-ATM-002";
+
+    private final List<CryptoKey> table = new ArrayList<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final CryptoKeyRepository repository = (CryptoKeyRepository) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[]{CryptoKeyRepository.class}, (proxy, method, args) -> {
+                if (!method.getName().equals("findValidKeysForTerminal")) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                loads.incrementAndGet();
+                return table.stream()
+                        .filter(k -> k.getTerminalId().equals(args[0]) && k.getKeyType() == args[1])
+                        .toList();
+            });
+
+    private final TerminalKeyCache cache = new TerminalKeyCache(repository);
+
+    private CryptoKey key(String terminalId, CryptoKey.KeyStatus status, int version, String keyValue) {
+        CryptoKey key = new CryptoKey();
+        key.setId(UUID.randomUUID());
+        key.setTerminalId(terminalId);
+        key.setBankUuid("48a9e84c-ff57-4483-bf83-b255f34a6466");
+        key.setKeyType(CryptoKey.KeyType.TSK);
+        key.setKeyValue(keyValue);
+        key.setStatus(status);
+        key.setKeyVersion(version);
+        key.setEffectiveFrom(LocalDateTime.now());
+        table.add(key);
+        return key;
+    }
+
+    @Test
+    void testKeysServedFromCache() {
+        key(TERMINAL, CryptoKey.KeyStatus.PENDING, 2, "246A31D729B280DD7FCDA3BB7F187ABFA1BB0811D7EF3D68FDCA63579F3748B0");
+        key(TERMINAL, CryptoKey.KeyStatus.ACTIVE, 1, "3AC638783EF600FE5E25E8A2EE5B0D222EB810DDF64C3681DD11AFEFAF41614B");
+
+        assertEquals(2, cache.getValidKeys(TERMINAL, CryptoKey.KeyType.TSK).size());
+        CryptoKey active = cache.getActiveKey(TERMINAL, CryptoKey.KeyType.TSK);
+        assertEquals(1, active.getKeyVersion());
+        assertEquals(2, cache.getKeyByVersion(TERMINAL, CryptoKey.KeyType.TSK, 2).getKeyVersion());
+        assertNull(cache.getKeyByVersion(TERMINAL, CryptoKey.KeyType.TSK, 3));
+        assertEquals(1, loads.get());
+
+        // Derived once per key
+        byte[] macKey = cache.getMacKey(active);
+        assertEquals(16, macKey.length);
+        assertSame(macKey, cache.getMacKey(active));
+    }
+
+    @Test
+    void testEvictReloadsOnlyThatTerminal() {
+        CryptoKey active = key(TERMINAL, CryptoKey.KeyStatus.ACTIVE, 1, "3AC638783EF600FE5E25E8A2EE5B0D222EB810DDF64C3681DD11AFEFAF41614B");
+        key(OTHER_TERMINAL, CryptoKey.KeyStatus.ACTIVE, 1, "246A31D729B280DD7FCDA3BB7F187ABFA1BB0811D7EF3D68FDCA63579F3748B0");
+        cache.getActiveKey(TERMINAL, CryptoKey.KeyType.TSK);
+        cache.getActiveKey(OTHER_TERMINAL, CryptoKey.KeyType.TSK);
+        byte[] macKey = cache.getMacKey(active);
+        assertEquals(2, loads.get());
+
+        // Rotated: the old key is no longer valid
+        active.setStatus(CryptoKey.KeyStatus.EXPIRED);
+        table.remove(active);
+        cache.evict(TERMINAL);
+
+        assertNull(cache.getActiveKey(TERMINAL, CryptoKey.KeyType.TSK));
+        assertNotNull(cache.getActiveKey(OTHER_TERMINAL, CryptoKey.KeyType.TSK));
+        assertEquals(3, loads.get());
+        assertNotSame(macKey, cache.getMacKey(active));
+    }
+
+    @Test
+    void testEvictInTransactionRepeatedAfterCompletion() {
+        key(TERMINAL, CryptoKey.KeyStatus.ACTIVE, 1, "3AC638783EF600FE5E25E8A2EE5B0D222EB810DDF64C3681DD11AFEFAF41614B");
+        cache.getValidKeys(TERMINAL, CryptoKey.KeyType.TSK);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.evict(TERMINAL);
+            // A concurrent reader reloads before the rotation commits
+            cache.getValidKeys(TERMINAL, CryptoKey.KeyType.TSK);
+            assertEquals(2, loads.get());
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        cache.getValidKeys(TERMINAL, CryptoKey.KeyType.TSK);
+        assertEquals(3, loads.get());
+    }
+}
@@ -0,0 +1,41 @@
+package com.artivisi.atm.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the partition naming and retention rules of TransactionPartitionService.
+ */
+class TransactionPartitionServiceTest {
+
+    private static final YearMonth OCTOBER_2026 = YearMonth.of(2026, 10);
+
+    @Test
+    void testMonthOfPartitionName() {
+        assertEquals(YearMonth.of(2025, 1), TransactionPartitionService.monthOf("transactions_p202501"));
+        assertNull(TransactionPartitionService.monthOf("transactions"));
+        assertNull(TransactionPartitionService.monthOf("transactions_p2025"));
+        assertNull(TransactionPartitionService.monthOf("key_rotation_campaigns"));
+    }
+
+    @Test
+    void testMonthsToCreateIncludeCurrentMonthAndCrossYearEnd() {
+        assertEquals(List.of(OCTOBER_2026, YearMonth.of(2026, 11), YearMonth.of(2026, 12), YearMonth.of(2027, 1)),
+                TransactionPartitionService.monthsToCreate(OCTOBER_2026, 3));
+        assertEquals(List.of(OCTOBER_2026), TransactionPartitionService.monthsToCreate(OCTOBER_2026, -1));
+    }
+
+    @Test
+    void testRetention() {
+        // 24 months kept before October 2026: October 2024 onwards
+        assertTrue(TransactionPartitionService.isExpired("transactions_p202409", OCTOBER_2026, 24));
+        assertFalse(TransactionPartitionService.isExpired("transactions_p202410", OCTOBER_2026, 24));
+        assertFalse(TransactionPartitionService.isExpired("transactions_p202610", OCTOBER_2026, 0));
+        assertTrue(TransactionPartitionService.isExpired("transactions_p202609", OCTOBER_2026, 0));
+        assertFalse(TransactionPartitionService.isExpired("transactions_unrelated", OCTOBER_2026, 0));
+    }
+}
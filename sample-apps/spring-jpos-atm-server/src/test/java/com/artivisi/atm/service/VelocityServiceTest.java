@@ -0,0 +1,240 @@
+package com.artivisi.atm.service;
+
+import com.artivisi.atm.config.ClusterProperties;
+import com.artivisi.atm.config.VelocityProperties;
+import com.artivisi.atm.exception.VelocityLimitExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for VelocityService: limits, sliding window, release, refund, journal rebuild and concurrency.
+ */
+@Slf4j
+class VelocityServiceTest {
+
+    private static final long MINUTE = 60_000;
+
+    private final AtomicLong now = new AtomicLong(1_000 * 60 * MINUTE);
+    private final List<Object[]> journal = new ArrayList<>();
+
+    /**
+     * Returns the rows of journal (card hash, account number, amount, transaction date) to the rebuild.
+     */
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            for (Object[] row : journal) {
+                ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[]{ResultSet.class}, (proxy, method, methodArgs) -> switch (method.getName()) {
+                            case "getString" -> row[(Integer) methodArgs[0] - 1];
+                            case "getBigDecimal" -> row[(Integer) methodArgs[0] - 1];
+                            case "getTimestamp" -> row[(Integer) methodArgs[0] - 1];
+                            default -> throw new UnsupportedOperationException(method.getName());
+                        });
+                try {
+                    rch.processRow(rs);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    };
+
+    private VelocityService velocityService(int cardMaxCount, String cardMaxAmount) {
+        return velocityService(cardMaxCount, cardMaxAmount, false);
+    }
+
+    private VelocityService velocityService(int cardMaxCount, String cardMaxAmount, boolean cluster) {
+        return velocityService(cardMaxCount, cardMaxAmount, cluster, true);
+    }
+
+    private VelocityService velocityService(int cardMaxCount, String cardMaxAmount, boolean cluster, boolean enabled) {
+        ClusterProperties clusterProperties = new ClusterProperties();
+        clusterProperties.setEnabled(cluster);
+        VelocityProperties properties = new VelocityProperties();
+        properties.setEnabled(enabled);
+        properties.setWindow(Duration.ofHours(1));
+        properties.setBuckets(60);
+        properties.setCard(new VelocityProperties.Limits(new BigDecimal(cardMaxAmount), cardMaxCount));
+        properties.setAccount(new VelocityProperties.Limits(BigDecimal.ZERO, 0));
+        VelocityService service = new VelocityService(properties, clusterProperties, jdbcTemplate,
+                new SimpleMeterRegistry(), now::get);
+        service.rebuild();
+        return service;
+    }
+
+    private static BigDecimal amount(String value) {
+        return new BigDecimal(value);
+    }
+
+    @Test
+    void testCountAndAmountLimits() {
+        VelocityService service = velocityService(2, "500.00");
+        String card = service.hashPan("4111111111111111");
+
+        service.reserve(card, "1234567890", amount("100.00"));
+        VelocityLimitExceededException amountExceeded = assertThrows(VelocityLimitExceededException.class,
+                () -> service.reserve(card, "1234567890", amount("450.00")));
+        service.reserve(card, "1234567890", amount("400.00"));
+        VelocityLimitExceededException countExceeded = assertThrows(VelocityLimitExceededException.class,
+                () -> service.reserve(card, "1234567890", amount("1.00")));
+
+        assertEquals(VelocityLimitExceededException.Limit.AMOUNT, amountExceeded.getLimit());
+        assertEquals(VelocityLimitExceededException.Limit.COUNT, countExceeded.getLimit());
+        assertEquals(50000, service.cardAmount(card));
+        // Declines reserve nothing, on the card or on the account
+        assertEquals(50000, service.accountAmount("1234567890"));
+    }
+
+    @Test
+    void testRefusesToStartInClusterMode() {
+        // Per-node counters cannot bound a card across nodes: fail closed, never silently unenforced
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> velocityService(1, "0", true));
+        assertTrue(e.getMessage().contains("velocity.enabled=false"));
+
+        // Explicitly disabled: the cluster node starts, withdrawals are counted and never declined
+        VelocityService service = velocityService(1, "0", true, false);
+        String card = service.hashPan("4111111111111111");
+        service.reserve(card, "1234567890", amount("100.00"));
+        service.reserve(card, "1234567890", amount("100.00"));
+        assertEquals(20000, service.cardAmount(card));
+    }
+
+    @Test
+    void testReleaseAndSlidingWindow() {
+        VelocityService service = velocityService(1, "0");
+        String card = service.hashPan("4111111111111111");
+
+        VelocityService.Reservation declinedDebit = service.reserve(card, "1234567890", amount("100.00"));
+        service.release(declinedDebit);
+        service.reserve(card, "1234567890", amount("100.00"));
+        assertThrows(VelocityLimitExceededException.class, () -> service.reserve(card, "1234567890", amount("100.00")));
+
+        now.addAndGet(59 * MINUTE);
+        assertThrows(VelocityLimitExceededException.class, () -> service.reserve(card, "1234567890", amount("100.00")));
+        now.addAndGet(MINUTE);
+        service.reserve(card, "1234567890", amount("100.00"));
+    }
+
+    @Test
+    void testRefundOfReversedWithdrawal() {
+        VelocityService service = velocityService(1, "0");
+        String card = service.hashPan("4111111111111111");
+        long debitedAt = now.get();
+        service.reserve(card, "1234567890", amount("100.00"));
+
+        now.addAndGet(10 * MINUTE);
+        service.refund(card, "1234567890", amount("100.00"), debitedAt);
+        service.reserve(card, "1234567890", amount("100.00"));
+
+        // A withdrawal this node never counted (debited by another node) takes nothing back
+        service.refund(card, "1234567890", amount("100.00"), debitedAt);
+        assertEquals(10000, service.cardAmount(card));
+        assertEquals(10000, service.accountAmount("1234567890"));
+    }
+
+    @Test
+    void testRebuiltFromJournal() {
+        VelocityService hashes = velocityService(0, "0");
+        String card = hashes.hashPan("4111111111111111");
+        journal.add(new Object[]{card, "1234567890", amount("300.00"), new Timestamp(now.get() - 10 * MINUTE)});
+        journal.add(new Object[]{null, "1234567890", amount("50.00"), new Timestamp(now.get() - 5 * MINUTE)});
+        journal.add(new Object[]{card, "1234567890", amount("200.00"), new Timestamp(now.get() - 2 * MINUTE)});
+
+        VelocityService service = velocityService(3, "1000.00");
+
+        assertEquals(50000, service.cardAmount(card));
+        assertEquals(55000, service.accountAmount("1234567890"));
+        service.reserve(card, "1234567890", amount("10.00"));
+        assertThrows(VelocityLimitExceededException.class, () -> service.reserve(card, "1234567890", amount("10.00")));
+    }
+
+    @Test
+    void testIdleCountersAreRemovedAndReplaced() {
+        VelocityService service = velocityService(1, "0");
+        String card = service.hashPan("4111111111111111");
+        service.reserve(card, "1234567890", amount("100.00"));
+
+        service.removeIdleCounters();
+        assertEquals(1, service.cardCount());
+
+        now.addAndGet(60 * MINUTE);
+        service.removeIdleCounters();
+        assertEquals(0, service.cardCount());
+        assertEquals(0, service.accountCount());
+        service.reserve(card, "1234567890", amount("100.00"));
+        assertEquals(1, service.cardCount());
+    }
+
+    @Test
+    void testConcurrentReservationsNeverExceedLimit() throws Exception {
+        VelocityService service = velocityService(100, "0");
+        String card = service.hashPan("4111111111111111");
+        AtomicInteger approved = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 1000; i++) {
+                        try {
+                            service.reserve(card, "1234567890", amount("10.00"));
+                            approved.incrementAndGet();
+                        } catch (VelocityLimitExceededException e) {
+                            // Expected once the limit is reached
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        }
+
+        assertEquals(100, approved.get());
+        assertEquals(100000, service.cardAmount(card));
+    }
+
+    @Test
+    void benchmarkReserveAndRelease() {
+        VelocityService service = velocityService(0, "0");
+        List<String> cards = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            cards.add(service.hashPan("41111111" + String.format("%08d", i)));
+        }
+        BigDecimal amount = amount("100.00");
+        int operations = 200_000;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            VelocityService.Reservation reservation = service.reserve(cards.get(i % 1000), "ACC" + (i % 1000), amount);
+            if (i % 10 == 0) {
+                service.release(reservation);
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        log.info("{} velocity reservations in {} ms ({} ns per reservation on card and account)",
+                operations, elapsedNanos / 1_000_000, elapsedNanos / operations);
+        assertEquals(1000, service.cardCount());
+    }
+}
@@ -0,0 +1,86 @@
+package com.artivisi.atm.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for CircuitBreaker: opening on failures and slow calls, trial call, disabled threshold.
+ */
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private CircuitBreaker breaker(int failureThreshold) {
+        return new CircuitBreaker("test", failureThreshold, Duration.ofSeconds(2), Duration.ofSeconds(30), now::get);
+    }
+
+    private static void fail(CircuitBreaker breaker, int times) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+    }
+
+    @Test
+    void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = breaker(3);
+
+        fail(breaker, 2);
+        // A success resets the count
+        breaker.onSuccess(Duration.ofMillis(10).toNanos());
+        fail(breaker, 2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        fail(breaker, 1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isDegraded());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void testSlowCallsCountAsFailures() {
+        CircuitBreaker breaker = breaker(2);
+        breaker.onSuccess(Duration.ofSeconds(3).toNanos());
+        breaker.onSuccess(Duration.ofSeconds(3).toNanos());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testTrialCallAfterOpenDuration() {
+        CircuitBreaker breaker = breaker(1);
+        fail(breaker, 1);
+
+        now.addAndGet(Duration.ofSeconds(29).toNanos());
+        assertFalse(breaker.tryAcquire());
+
+        // One trial call; the others keep failing fast
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+
+        // Failed trial: open again for the full duration
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        now.addAndGet(Duration.ofSeconds(29).toNanos());
+        assertFalse(breaker.tryAcquire());
+
+        // Successful trial closes the circuit
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(Duration.ofMillis(10).toNanos());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void testZeroThresholdNeverOpens() {
+        CircuitBreaker breaker = breaker(0);
+        fail(breaker, 100);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
@@ -11,7 +11,7 @@ import org.springframework.web.bind.annotation.*;
 
 /**
  * REST API controller for ATM transactions.
- * Provides JSON endpoints for balance inquiry and withdrawal operations.
+ * Provides JSON endpoints for balance inquiry, mini-statement and withdrawal operations.
  * Used by testing tools and external integrations.
  */
 @RestController
@@ -40,6 +40,24 @@ public class TransactionApiController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Execute mini-statement transaction.
+     *
+     * @param request Mini-statement request
+     * @return Transaction response with balance and latest transactions
+     */
+    @PostMapping("/mini-statement")
+    public ResponseEntity<TransactionResponse> miniStatement(@Valid @RequestBody TransactionRequest request) {
+        log.info("API: Mini-statement request for PAN: {}", maskPan(request.getPan()));
+
+        // Ensure transaction type is set to MINI_STATEMENT
+        request.setType(TransactionRequest.TransactionType.MINI_STATEMENT);
+
+        TransactionResponse response = atmTransactionService.executeTransaction(request);
+
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Execute withdrawal transaction.
      *
@@ -57,7 +57,8 @@ public class Transaction {
 
     public enum TransactionType {
         BALANCE,
-        WITHDRAWAL
+        WITHDRAWAL,
+        MINI_STATEMENT
     }
 
     public enum TransactionStatus {
@@ -0,0 +1,25 @@
+package com.artivisi.atm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * One entry of a mini-statement response (field 48).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MiniStatementEntry {
+
+    /** MMdd */
+    private String date;
+    /** WDL, DEP, TRI, TRO, BAL or REV */
+    private String type;
+    private boolean debit;
+    private BigDecimal amount;
+}
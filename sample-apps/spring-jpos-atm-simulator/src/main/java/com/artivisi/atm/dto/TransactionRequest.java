@@ -33,6 +33,7 @@ public class TransactionRequest {
 
     public enum TransactionType {
         BALANCE,
-        WITHDRAWAL
+        WITHDRAWAL,
+        MINI_STATEMENT
     }
 }
@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Data
 @Builder
@@ -21,4 +22,6 @@ public class TransactionResponse {
     private LocalDateTime timestamp;
     private String terminalId;
     private String transactionId;
+    /** Mini-statement only, most recent first */
+    private List<MiniStatementEntry> miniStatement;
 }
@@ -3,6 +3,9 @@ package com.artivisi.atm.jpos.config;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.jpos.core.Configurable;
+import org.jpos.core.SimpleConfiguration;
+import org.jpos.iso.ISOPackager;
 import org.jpos.q2.Q2;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -39,6 +42,10 @@ public class JposConfig {
     @Value("${jpos.packager.class:org.jpos.iso.packager.BASE24Packager}")
     private String packagerClass;
 
+    // Field layout for Configurable packagers (GenericPackager); ignored by BASE24Packager
+    @Value("${jpos.packager.config:jar:packager/atm-binary.xml}")
+    private String packagerConfig;
+
     private Q2 q2;
     private Thread q2Thread;
 
@@ -47,7 +54,7 @@ public class JposConfig {
         log.info("Initializing Q2 container for ATM simulator");
         log.info("MUX name: {}", muxName);
         log.info("Channel: {} ({}:{})", channelClass, channelHost, channelPort);
-        log.info("Packager: {}", packagerClass);
+        log.info("Packager: {} ({})", packagerClass, packagerConfig);
 
         // Set system properties for Q2 XML property placeholders
         System.setProperty("jpos.mux.name", muxName);
@@ -56,6 +63,7 @@ public class JposConfig {
         System.setProperty("jpos.channel.timeout", channelTimeout.toString());
         System.setProperty("jpos.channel.class", channelClass);
         System.setProperty("jpos.packager.class", packagerClass);
+        System.setProperty("jpos.packager.config", packagerConfig);
 
         // Determine deploy directory using three-tier approach
         File deployDirectory = determineDeployDirectory();
@@ -142,6 +150,24 @@ public class JposConfig {
         return tempDeployDir.toFile();
     }
 
+    /**
+     * Packager used to build and MAC outgoing messages.
+     * Must match the channel packager, otherwise the MAC is computed over different bytes
+     * than the ones sent on the wire.
+     */
+    @Bean
+    public ISOPackager isoPackager() throws Exception {
+        ISOPackager packager = (ISOPackager) Class.forName(packagerClass)
+                .getDeclaredConstructor()
+                .newInstance();
+        if (packager instanceof Configurable configurable) {
+            SimpleConfiguration cfg = new SimpleConfiguration();
+            cfg.put("packager-config", packagerConfig);
+            configurable.setConfiguration(cfg);
+        }
+        return packager;
+    }
+
     @Bean
     public String muxName() {
         // jPOS QMUX automatically prepends "mux." to the name attribute
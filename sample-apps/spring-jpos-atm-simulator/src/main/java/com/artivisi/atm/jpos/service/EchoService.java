@@ -1,8 +1,8 @@
 package com.artivisi.atm.jpos.service;
 
 import com.artivisi.atm.jpos.config.SpringBeanFactory;
+import com.artivisi.atm.util.TerminalIdUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
 import org.jpos.q2.QBeanSupport;
 import org.springframework.core.env.Environment;
@@ -17,6 +17,7 @@ import java.util.Date;
  * - Send echo message every 3 minutes during idle periods
  * - This prevents socket timeout and detects connection problems proactively
  * - Server can detect if terminal is still alive
+ * - The echo is MAC'd (field 64): the server only counts an authenticated echo as activity
  *
  * Based on jPOS community recommendations:
  * "Since the MUX pool forces an echo on each channel every three minutes,
@@ -147,9 +148,10 @@ public class EchoService extends QBeanSupport implements Runnable {
      * ISO-8583 Echo Message Format:
      * - MTI: 0800 (Network Management Request)
      * - Processing Code (field 3): 301 (Echo test)
-     * - Other fields as required by server
+     * - Fields 41/42: terminal and institution, for the server's key lookup
+     * - Field 64: MAC (the server rejects an echo without one when MAC verification is enabled)
      */
-    private ISOMsg buildEchoMessage() throws ISOException {
+    private ISOMsg buildEchoMessage() throws Exception {
         ISOMsg msg = new ISOMsg();
         msg.setMTI("0800");
 
@@ -171,14 +173,17 @@ public class EchoService extends QBeanSupport implements Runnable {
         SimpleDateFormat dateFormat = new SimpleDateFormat("MMdd");
         msg.set(13, dateFormat.format(new Date()));
 
-        // Field 41: Terminal ID - get from Spring configuration
+        // Fields 41/42: Terminal and institution IDs - get from Spring configuration
         Environment env = SpringBeanFactory.getBean(Environment.class);
         String terminalId = env.getProperty("terminal.id", "ATM-001");
-        msg.set(41, String.format("%-15s", terminalId)); // Field 41 is 15 chars, left-aligned
+        TerminalIdUtil.setTerminalIdFields(msg, terminalId, env.getProperty("terminal.institution.id"));
 
         // Field 70: Network Management Information Code (301 = Echo test)
         msg.set(70, "301");
 
+        // Field 64: MAC over the fields above
+        SpringBeanFactory.getBean(ISO8583MessageBuilder.class).addMacToMessage(msg);
+
         log.debug("Built echo message: MTI={}, PC={}, Terminal={}",
                 msg.getMTI(), msg.getString(3), terminalId);
 
@@ -1,5 +1,6 @@
 package com.artivisi.atm.jpos.service;
 
+import com.artivisi.atm.dto.MiniStatementEntry;
 import com.artivisi.atm.dto.TransactionRequest;
 import com.artivisi.atm.service.RuntimeKeyManager;
 import com.artivisi.atm.util.AesCmacUtil;
@@ -10,13 +11,15 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
-import org.jpos.iso.packager.BASE24Packager;
+import org.jpos.iso.ISOPackager;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Random;
 
 @Service
@@ -33,7 +36,7 @@ public class ISO8583MessageBuilder {
     private String institutionId;
 
     private final Random random = new Random();
-    private final BASE24Packager packager = new BASE24Packager();
+    private final ISOPackager packager;
 
     public ISOMsg buildTransactionRequest(TransactionRequest request, String accountNumber)
         throws Exception {
@@ -108,7 +111,10 @@ public class ISO8583MessageBuilder {
         return msg;
     }
 
-    private void addMacToMessage(ISOMsg msg) throws Exception {
+    /**
+     * Set field 64 to the MAC of the message (TSK), as the server verifies it.
+     */
+    public void addMacToMessage(ISOMsg msg) throws Exception {
         msg.setPackager(packager);
 
         byte[] macData = msg.pack();
@@ -127,6 +133,7 @@ public class ISO8583MessageBuilder {
         return switch (type) {
             case BALANCE -> "310000";
             case WITHDRAWAL -> "010000";
+            case MINI_STATEMENT -> "380000";
         };
     }
 
@@ -192,4 +199,31 @@ public class ISO8583MessageBuilder {
 
         return null;
     }
+
+    /**
+     * Parse the mini-statement entries of a 380000 response.
+     * Field 48: 2-digit entry count, then 20 characters per entry, most recent first:
+     * MMdd (4) + type (3) + D/C (1) + amount in cents (12).
+     */
+    public List<MiniStatementEntry> parseMiniStatementFromResponse(ISOMsg response) {
+        if (!"380000".equals(response.getString(3)) || !response.hasField(48)) {
+            return null;
+        }
+
+        String field48 = response.getString(48);
+        log.debug("Field 48 (Mini-statement): {}", field48);
+
+        List<MiniStatementEntry> entries = new ArrayList<>();
+        int count = Integer.parseInt(field48.substring(0, 2));
+        for (int i = 0; i < count && field48.length() >= 2 + (i + 1) * 20; i++) {
+            String entry = field48.substring(2 + i * 20, 2 + (i + 1) * 20);
+            entries.add(MiniStatementEntry.builder()
+                    .date(entry.substring(0, 4))
+                    .type(entry.substring(4, 7))
+                    .debit(entry.charAt(7) == 'D')
+                    .amount(new BigDecimal(Long.parseLong(entry.substring(8, 20))).movePointLeft(2))
+                    .build());
+        }
+        return entries;
+    }
 }
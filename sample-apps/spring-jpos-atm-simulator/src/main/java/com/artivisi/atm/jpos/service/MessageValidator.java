@@ -46,8 +46,12 @@ public class MessageValidator {
             case "30" -> "Format error";
             case "51" -> "Insufficient funds";
             case "55" -> "Incorrect PIN";
+            case "61" -> "Exceeds withdrawal amount limit";
             case "62" -> "Restricted card";
+            case "65" -> "Exceeds withdrawal frequency limit";
+            case "68" -> "Response received too late";
             case "91" -> "System error";
+            case "94" -> "Duplicate transmission";
             case "96" -> "System malfunction";
             default -> "Transaction declined";
         };
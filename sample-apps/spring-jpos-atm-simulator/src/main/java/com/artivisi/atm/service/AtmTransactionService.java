@@ -1,5 +1,6 @@
 package com.artivisi.atm.service;
 
+import com.artivisi.atm.dto.MiniStatementEntry;
 import com.artivisi.atm.dto.TransactionRequest;
 import com.artivisi.atm.dto.TransactionResponse;
 import com.artivisi.atm.exception.TransactionException;
@@ -14,6 +15,7 @@ import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Service for handling ATM transaction business logic.
@@ -30,7 +32,7 @@ public class AtmTransactionService {
     private final MuxService muxService;
 
     /**
-     * Execute an ATM transaction (balance inquiry or withdrawal).
+     * Execute an ATM transaction (balance inquiry, mini-statement or withdrawal).
      *
      * @param request Transaction request details
      * @return Transaction response with result and balance
@@ -108,6 +110,7 @@ public class AtmTransactionService {
         String responseCode = isoResponse.getString(39);
         String responseMessage = messageValidator.getResponseMessage(responseCode);
         BigDecimal balance = messageBuilder.parseBalanceFromResponse(isoResponse);
+        List<MiniStatementEntry> miniStatement = messageBuilder.parseMiniStatementFromResponse(isoResponse);
 
         log.info("Transaction completed:");
         log.info("  Response Code: {}", responseCode);
@@ -115,6 +118,9 @@ public class AtmTransactionService {
         if (balance != null) {
             log.info("  Balance from server: {}", balance);
         }
+        if (miniStatement != null) {
+            log.info("  Mini-statement entries: {}", miniStatement.size());
+        }
 
         return TransactionResponse.builder()
                 .responseCode(responseCode)
@@ -123,6 +129,7 @@ public class AtmTransactionService {
                 .amount(request.getAmount())
                 .timestamp(LocalDateTime.now())
                 .terminalId(request.getTerminalId())
+                .miniStatement(miniStatement)
                 .build();
     }
 
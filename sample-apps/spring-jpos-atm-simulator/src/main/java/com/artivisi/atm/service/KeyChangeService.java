@@ -8,7 +8,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
-import org.jpos.iso.packager.BASE24Packager;
+import org.jpos.iso.ISOPackager;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -42,7 +42,7 @@ public class KeyChangeService {
     @Value("${terminal.institution.id}")
     private String institutionId;
 
-    private final BASE24Packager packager = new BASE24Packager();
+    private final ISOPackager packager;
 
     /**
      * Change key by initiating key change request to server.
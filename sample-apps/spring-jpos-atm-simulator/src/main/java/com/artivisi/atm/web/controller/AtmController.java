@@ -39,7 +39,7 @@ public class AtmController {
     }
 
     /**
-     * Execute ATM transaction (balance inquiry or withdrawal).
+     * Execute ATM transaction (balance inquiry, mini-statement or withdrawal).
      * Delegates to AtmTransactionService for business logic.
      */
     @PostMapping("/transaction")
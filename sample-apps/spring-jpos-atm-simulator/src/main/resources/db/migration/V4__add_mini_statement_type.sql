@@ -0,0 +1,4 @@
+-- Allow mini-statement transactions (processing code 380000)
+ALTER TABLE transactions DROP CONSTRAINT check_transaction_type;
+ALTER TABLE transactions ADD CONSTRAINT check_transaction_type
+    CHECK (type IN ('BALANCE', 'WITHDRAWAL', 'MINI_STATEMENT'));
@@ -38,7 +38,7 @@ document.addEventListener('DOMContentLoaded', () => {
         submitButton.classList.add('opacity-50', 'cursor-not-allowed');
 
         // Update progress text based on transaction type
-        const transactionType = formData.type === 'BALANCE' ? 'balance inquiry' : 'withdrawal';
+        const transactionType = { BALANCE: 'balance inquiry', MINI_STATEMENT: 'mini-statement' }[formData.type] || 'withdrawal';
         progressText.textContent = `Processing ${transactionType}...`;
 
         const startTime = new Date();
@@ -71,6 +71,8 @@ document.addEventListener('DOMContentLoaded', () => {
                             <p class="font-bold text-lg">${data.responseMessage}</p>
                             <p class="text-2xl font-bold mt-2">Balance: $${data.balance}</p>
                             ${data.amount ? `<p class="mt-1">Withdrawn: $${data.amount}</p>` : ''}
+                            ${data.miniStatement ? `<table class="mt-2 text-sm">${data.miniStatement.map(entry =>
+                                `<tr><td class="pr-3">${entry.date.substring(2)}/${entry.date.substring(0, 2)}</td><td class="pr-3">${entry.type}</td><td class="text-right">${entry.debit ? '-' : '+'}$${entry.amount}</td></tr>`).join('')}</table>` : ''}
                         </div>
                     </div>
                     <div class="mt-3 pt-3 border-t border-green-300 text-sm">